@@ -0,0 +1,65 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.mpar.trafficsim.model.Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single fixed step of the simulation with each driving model.
+ *
+ * The classic model runs the original rules through the driving model interface, so its score is
+ * directly comparable with {@link StepBenchmark}. With mixed traffic, personal cars and trucks can
+ * be given different models, which makes the call of the model bimorphic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DrivingModelBenchmark {
+    // Number of steps taken before the measurement
+    private static final int SETTLE_STEPS = 120;
+
+    @Param({"1000", "10000"})
+    private int vehicles;
+
+    @Param({"0.25"})
+    private double truckShare;
+
+    @Param({"FREE_FLOW", "DENSE"})
+    private Regime regime;
+
+    @Param({"CLASSIC", "IDM", "GIPPS", "KRAUSS"})
+    private DrivingModelType personalCarModel;
+
+    @Param({"CLASSIC", "IDM", "GIPPS", "KRAUSS"})
+    private DrivingModelType truckModel;
+
+    private Simulation simulation;
+
+    @Setup
+    public void setUp() {
+        simulation = Fixtures.createSimulation(vehicles, truckShare, true, regime);
+        simulation.setPersonalCarDrivingModel(personalCarModel.create());
+        simulation.setTruckDrivingModel(truckModel.create());
+        simulation.step(SETTLE_STEPS);
+    }
+
+    @Benchmark
+    public long step() {
+        simulation.step();
+        return simulation.getStepCount();
+    }
+}
@@ -0,0 +1,31 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import sk.mpar.trafficsim.model.ClassicDrivingModel;
+import sk.mpar.trafficsim.model.DrivingModel;
+import sk.mpar.trafficsim.model.GippsModel;
+import sk.mpar.trafficsim.model.IntelligentDriverModel;
+import sk.mpar.trafficsim.model.KraussModel;
+
+/**
+ * Driving models compared by the benchmarks, each with its default parameters.
+ */
+public enum DrivingModelType {
+    CLASSIC,
+    IDM,
+    GIPPS,
+    KRAUSS;
+
+    /**
+     * Creates a model of the type.
+     *
+     * @return The model
+     */
+    public DrivingModel create() {
+        return switch (this) {
+            case CLASSIC -> new ClassicDrivingModel();
+            case IDM -> new IntelligentDriverModel();
+            case GIPPS -> new GippsModel();
+            case KRAUSS -> new KraussModel();
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import sk.mpar.trafficsim.model.PersonalCar;
+import sk.mpar.trafficsim.model.Road;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.Truck;
+
+import java.util.Random;
+
+/**
+ * Builds the simulations measured by the benchmarks.
+ *
+ * The road is sized to the fleet, so that a regime means the same occupancy for every number of
+ * vehicles down to a minimum ring. All simulations are seeded, so every fork measures the same traffic.
+ */
+final class Fixtures {
+    // Seed of every benchmarked simulation
+    static final long SEED = 42;
+
+    private static final double LANE_WIDTH = 50;
+    private static final double MIN_INNER_RADIUS = 50;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a two-lane road whose lanes hold a number of vehicles at the occupancy of a regime.
+     *
+     * @param vehicles The number of vehicles
+     * @param truckShare The share of trucks between 0 and 1
+     * @param obstacle Whether the road has an obstacle
+     * @param regime The traffic regime
+     * @return The road
+     */
+    static Road createRoad(int vehicles, double truckShare, boolean obstacle, Regime regime) {
+        return createRoad(vehicles, truckShare, obstacle, regime, Road.DEFAULT_LANE_COUNT);
+    }
+
+    /**
+     * Creates a road whose lanes hold a number of vehicles at the occupancy of a regime.
+     *
+     * @param vehicles The number of vehicles
+     * @param truckShare The share of trucks between 0 and 1
+     * @param obstacle Whether the road has an obstacle
+     * @param regime The traffic regime
+     * @param laneCount The number of lanes
+     * @return The road
+     */
+    static Road createRoad(int vehicles, double truckShare, boolean obstacle, Regime regime, int laneCount) {
+        // All lanes together must be as long as the bodies divided by the occupancy
+        double meanLength = (1 - truckShare) * PersonalCar.WIDTH + truckShare * Truck.WIDTH;
+        double laneLength = vehicles * meanLength / regime.getOccupancy();
+
+        // The lanes are centered half a lane, one and a half lanes and so on outside the inner radius,
+        // so on average half the width of the road
+        double innerRadius = Math.max(MIN_INNER_RADIUS,
+                laneLength / (2 * Math.PI * laneCount) - laneCount * LANE_WIDTH / 2);
+        double center = innerRadius + laneCount * LANE_WIDTH;
+        return new Road(center, center, innerRadius, LANE_WIDTH, laneCount, obstacle ? Math.PI / 2 : Double.NaN);
+    }
+
+    /**
+     * Creates a populated simulation on a two-lane road.
+     *
+     * @see #createSimulation(int, double, boolean, Regime, int)
+     */
+    static Simulation createSimulation(int vehicles, double truckShare, boolean obstacle, Regime regime) {
+        return createSimulation(vehicles, truckShare, obstacle, regime, Road.DEFAULT_LANE_COUNT);
+    }
+
+    /**
+     * Creates a populated simulation.
+     * The vehicles are spread evenly over all lanes, in proportion to the lane lengths, with the
+     * trucks mixed in at random. Spawning through the gap placer is measured by {@link SpawnBenchmark}
+     * and only fills the places the obstacle took.
+     *
+     * @param vehicles The number of vehicles
+     * @param truckShare The share of trucks between 0 and 1
+     * @param obstacle Whether the road has an obstacle
+     * @param regime The traffic regime
+     * @param laneCount The number of lanes
+     * @return The simulation
+     * @throws IllegalStateException if the road could not hold the vehicles
+     */
+    static Simulation createSimulation(int vehicles, double truckShare, boolean obstacle, Regime regime,
+                                       int laneCount) {
+        Road road = createRoad(vehicles, truckShare, obstacle, regime, laneCount);
+        Simulation simulation = new Simulation(road, SEED);
+        Random random = new Random(SEED);
+
+        double radiusSum = 0;
+        for (int lane = 0; lane < laneCount; lane++) {
+            radiusSum += road.getLaneRadius(lane);
+        }
+        int spread = 0;
+        for (int lane = 0; lane < laneCount; lane++) {
+            double radius = road.getLaneRadius(lane);
+            int count = lane == laneCount - 1
+                    ? vehicles - spread
+                    : (int) Math.round(vehicles * radius / radiusSum);
+            spread += count;
+            for (int i = 0; i < count; i++) {
+                double angle = 2 * Math.PI * i / count;
+                double x = road.getCenterX() + radius * Math.cos(angle);
+                double y = road.getCenterY() + radius * Math.sin(angle);
+                if (random.nextDouble() < truckShare) {
+                    simulation.addTruck(Truck.DEFAULT_COLOR, x, y);
+                } else {
+                    simulation.addPersonalCar(PersonalCar.DEFAULT_COLOR, x, y);
+                }
+            }
+        }
+
+        // Vehicles that would have overlapped the obstacle are placed elsewhere
+        int missing = vehicles - simulation.getVehicleCount();
+        simulation.populate(missing, truckShare);
+        if (simulation.getVehicleCount() < vehicles) {
+            throw new IllegalStateException("Only " + simulation.getVehicleCount() + " of " + vehicles
+                    + " vehicles fit the road");
+        }
+        return simulation;
+    }
+}
@@ -0,0 +1,92 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.mpar.trafficsim.model.KinematicsKernel;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.VehicleStore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scalar and the vector kinematics kernel, alone on arrays of vehicle state and as part
+ * of the whole integration pass of a store, which also recalculates the positions.
+ *
+ * The forks add the Vector API module. The vector kernel uses the widest vectors of the processor;
+ * to compare AVX2 with AVX-512 on a host that has both, run once more with
+ * {@code -jvmArgsAppend "--add-modules=jdk.incubator.vector -XX:UseAVX=2"}, as the option replaces
+ * the arguments of the annotation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KinematicsBenchmark {
+    // Length of the step, as in the simulation
+    private static final double TIME_STEP = 1.0 / 60;
+
+    @Param({"1000", "10000", "100000"})
+    private int vehicles;
+
+    @Param({"SCALAR", "VECTOR"})
+    private KinematicsKernel kernel;
+
+    // State of the vehicles for the kernel alone
+    private double[] velocity;
+    private double[] acceleration;
+    private double[] maxVelocity;
+    private double[] angle;
+    private double[] laneRadius;
+
+    private VehicleStore store;
+
+    @Setup
+    public void setUp() {
+        if (!kernel.isAvailable()) {
+            throw new IllegalStateException("Kernel not available on this runtime: " + kernel);
+        }
+
+        // Half of the vehicles brake, so some hit the lower and some the upper velocity bound
+        Random random = new Random(Fixtures.SEED);
+        velocity = new double[vehicles];
+        acceleration = new double[vehicles];
+        maxVelocity = new double[vehicles];
+        angle = new double[vehicles];
+        laneRadius = new double[vehicles];
+        for (int i = 0; i < vehicles; i++) {
+            velocity[i] = random.nextDouble() * 3;
+            acceleration[i] = random.nextBoolean() ? 0.5 : -2.0;
+            maxVelocity[i] = random.nextBoolean() ? 3.0 : 2.0;
+            angle[i] = random.nextDouble() * 2 * Math.PI;
+            laneRadius[i] = random.nextBoolean() ? 250 : 300;
+        }
+
+        Simulation simulation = Fixtures.createSimulation(vehicles, 0.25, false, Regime.FREE_FLOW);
+        simulation.setKinematicsKernel(kernel);
+        store = simulation.getStore();
+    }
+
+    @Benchmark
+    public double[] advance() {
+        kernel.advance(velocity, acceleration, maxVelocity, angle, laneRadius, vehicles, TIME_STEP);
+        return angle;
+    }
+
+    @Benchmark
+    public VehicleStore integrate() {
+        store.integrate(TIME_STEP);
+        return store;
+    }
+}
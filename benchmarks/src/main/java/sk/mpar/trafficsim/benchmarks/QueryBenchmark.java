@@ -0,0 +1,106 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.mpar.trafficsim.model.CollisionDetector;
+import sk.mpar.trafficsim.model.LaneIndex;
+import sk.mpar.trafficsim.model.Road;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.Vehicle;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups the engine and the controller make between steps: picking the vehicle under
+ * the mouse, and the broad and narrow phases of the collision checks.
+ *
+ * Every invocation makes a single lookup, cycling through a fixed set of queries so that the branch
+ * predictor cannot learn the answer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class QueryBenchmark {
+    // Number of prepared queries; a power of two so the next one is picked by a mask
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    private int vehicles;
+
+    @Param({"FREE_FLOW", "DENSE"})
+    private Regime regime;
+
+    private Simulation simulation;
+    private CollisionDetector detector;
+
+    // Points to pick: half on vehicles, half anywhere on the road
+    private double[] pointsX = new double[QUERY_COUNT];
+    private double[] pointsY = new double[QUERY_COUNT];
+
+    // Vehicles to check for collisions, and for each the vehicle ahead of it
+    private Vehicle[] checked = new Vehicle[QUERY_COUNT];
+    private Vehicle[] leaders = new Vehicle[QUERY_COUNT];
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        simulation = Fixtures.createSimulation(vehicles, 0.25, true, regime);
+        Road road = simulation.getRoad();
+        List<Vehicle> fleet = simulation.getVehicles();
+
+        // The collision checks run against the index of the simulation, like a step does
+        LaneIndex laneIndex = simulation.getLaneIndex();
+        detector = new CollisionDetector(road, laneIndex);
+        detector.setMaxDimensions(simulation.getStore().getMaxWidth(), simulation.getStore().getMaxHeight());
+
+        Random random = new Random(Fixtures.SEED);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            Vehicle vehicle = fleet.get(random.nextInt(fleet.size()));
+            checked[i] = vehicle;
+            Vehicle leader = laneIndex.getLeader(vehicle);
+            leaders[i] = leader != null ? leader : vehicle;
+            if (i % 2 == 0) {
+                pointsX[i] = vehicle.getX();
+                pointsY[i] = vehicle.getY();
+            } else {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double radius = road.getInnerRadius() + random.nextDouble() * (road.getOuterRadius() - road.getInnerRadius());
+                pointsX[i] = road.getCenterX() + radius * Math.cos(angle);
+                pointsY[i] = road.getCenterY() + radius * Math.sin(angle);
+            }
+        }
+    }
+
+    @Benchmark
+    public Vehicle getVehicleAt() {
+        int i = next++ & (QUERY_COUNT - 1);
+        return simulation.getVehicleAt(pointsX[i], pointsY[i]);
+    }
+
+    @Benchmark
+    public int findCollisions() {
+        int i = next++ & (QUERY_COUNT - 1);
+        return detector.findCollisions(checked[i]);
+    }
+
+    @Benchmark
+    public boolean collidesWithLeader() {
+        int i = next++ & (QUERY_COUNT - 1);
+        return detector.collides(checked[i], leaders[i]);
+    }
+}
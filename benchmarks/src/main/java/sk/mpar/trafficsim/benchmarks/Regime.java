@@ -0,0 +1,24 @@
+package sk.mpar.trafficsim.benchmarks;
+
+/**
+ * Traffic regimes of the benchmarks, given by the share of the lane length covered by vehicle bodies.
+ */
+public enum Regime {
+    FREE_FLOW(0.1),
+    DENSE(0.5);
+
+    private final double occupancy;
+
+    Regime(double occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * Gets the share of the lane length covered by vehicle bodies.
+     *
+     * @return The occupancy between 0 and 1
+     */
+    public double getOccupancy() {
+        return occupancy;
+    }
+}
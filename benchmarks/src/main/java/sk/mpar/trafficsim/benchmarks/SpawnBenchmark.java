@@ -0,0 +1,69 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.Vehicle;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures spawning personal cars into a populated road.
+ *
+ * Every invocation adds a batch of cars, and the batch is removed again outside the measurement,
+ * so the fleet the placement works against stays the same. The score is the time per car.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SpawnBenchmark {
+    // Number of cars added by a single invocation
+    private static final int BATCH_SIZE = 10;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    private int vehicles;
+
+    @Param({"0.0", "0.25"})
+    private double truckShare;
+
+    @Param({"FREE_FLOW", "DENSE"})
+    private Regime regime;
+
+    private Simulation simulation;
+    private List<Vehicle> added;
+
+    @Setup
+    public void setUp() {
+        simulation = Fixtures.createSimulation(vehicles, truckShare, true, regime);
+    }
+
+    @TearDown(Level.Invocation)
+    public void removeAdded() {
+        for (Vehicle vehicle : added) {
+            simulation.removeVehicle(vehicle);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int addPersonalCars() {
+        added = simulation.addPersonalCars(BATCH_SIZE);
+        return added.size();
+    }
+}
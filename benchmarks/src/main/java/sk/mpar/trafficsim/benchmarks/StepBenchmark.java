@@ -0,0 +1,63 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.mpar.trafficsim.model.Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single fixed step of the simulation.
+ *
+ * The simulation is stepped before the measurement, so the vehicles have left their spawn positions
+ * and the traffic has settled into its regime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StepBenchmark {
+    // Number of steps taken before the measurement
+    private static final int SETTLE_STEPS = 120;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    private int vehicles;
+
+    @Param({"0.0", "0.25"})
+    private double truckShare;
+
+    @Param({"true", "false"})
+    private boolean obstacle;
+
+    @Param({"FREE_FLOW", "DENSE"})
+    private Regime regime;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private Simulation simulation;
+
+    @Setup
+    public void setUp() {
+        simulation = Fixtures.createSimulation(vehicles, truckShare, obstacle, regime);
+        simulation.setParallel(parallel);
+        simulation.step(SETTLE_STEPS);
+    }
+
+    @Benchmark
+    public long step() {
+        simulation.step();
+        return simulation.getStepCount();
+    }
+}
@@ -0,0 +1,61 @@
+package sk.mpar.trafficsim.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.mpar.trafficsim.model.Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single fixed step on roads with more lanes.
+ *
+ * The road keeps its total length for a number of vehicles, so a wider ring is shorter and each lane
+ * holds fewer vehicles. The cost per vehicle should stay flat as the lanes are added, since a vehicle
+ * only looks into its own lane and the lanes next to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WideRoadBenchmark {
+    // Number of steps taken before the measurement
+    private static final int SETTLE_STEPS = 120;
+
+    @Param({"10000", "100000"})
+    private int vehicles;
+
+    @Param({"2", "4", "8"})
+    private int lanes;
+
+    @Param({"FREE_FLOW", "DENSE"})
+    private Regime regime;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private Simulation simulation;
+
+    @Setup
+    public void setUp() {
+        simulation = Fixtures.createSimulation(vehicles, 0.25, true, regime, lanes);
+        simulation.setParallel(parallel);
+        simulation.step(SETTLE_STEPS);
+    }
+
+    @Benchmark
+    public long step() {
+        simulation.step();
+        return simulation.getStepCount();
+    }
+}
@@ -11,8 +11,12 @@ module sk.mpar.trafficsim {
     requires eu.hansolo.tilesfx;
     requires com.almasb.fxgl.all;
 
+    requires jdk.jfr;
+    requires static jdk.incubator.vector;
+
     opens sk.mpar.trafficsim to javafx.fxml;
     exports sk.mpar.trafficsim;
     exports sk.mpar.trafficsim.model;
     opens sk.mpar.trafficsim.model to javafx.fxml;
+    exports sk.mpar.trafficsim.view;
 }
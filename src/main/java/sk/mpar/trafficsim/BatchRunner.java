@@ -0,0 +1,578 @@
+package sk.mpar.trafficsim;
+
+import sk.mpar.trafficsim.model.MetricsCollector;
+import sk.mpar.trafficsim.model.Road;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.StepMetrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Command-line entry point that runs a grid of simulations without a user interface and writes a
+ * summary table of their traffic metrics.
+ * 
+ * The scenario is a properties file. Every grid parameter takes a comma-separated list of values,
+ * and every combination of values is one run:
+ * 
+ * <pre>
+ * # Grid parameters
+ * vehicles=20,40,80
+ * truckShare=0,0.25
+ * acceleration=1
+ * maxVelocity=1,2
+ * obstacleAngle=1.5708,none
+ * laneWidth=50
+ * lanes=2,4
+ * # Fixed parameters
+ * innerRadius=150
+ * seed=42
+ * warmupSteps=600
+ * steps=3600
+ * </pre>
+ * 
+ * Usage: {@code BatchRunner <scenario> [--grid <file>] [--steps <n>] [--replications <n>] [--threads <n>]
+ * [--output <file>] [key=values...]}. A grid file and {@code key=values} arguments override the values
+ * of the scenario in that order. The runs are spread over one thread per core; each runs its own
+ * simulation with the same seed, so runs differ only by their parameters.
+ * 
+ * With more than one replication, every grid point is run as an {@link Ensemble} of replications
+ * with the seeds {@code seed}, {@code seed + 1} and so on, and the summary holds the mean and the
+ * half-width of the confidence interval of every metric. The ensemble of a grid point stops early
+ * once the interval of {@code metric} (default flow) at level {@code confidence} (default 0.95) is
+ * within {@code tolerance} (default 0.01) of its mean, but not before {@code minReplications}
+ * (default 10) replications. The summary is written as CSV to the output file, or as an
+ * aligned table to the standard output. Without the JavaFX launcher it can be started with
+ * {@code mvn exec:java -Dexec.mainClass=sk.mpar.trafficsim.BatchRunner -Dexec.args="scenario.properties"}.
+ */
+public class BatchRunner {
+    // Values used for parameters missing from the scenario
+    private static final String DEFAULT_VEHICLES = "20";
+    private static final String DEFAULT_TRUCK_SHARE = "0";
+    private static final String DEFAULT_ACCELERATION = "1";
+    private static final String DEFAULT_MAX_VELOCITY = "1";
+    private static final String DEFAULT_OBSTACLE_ANGLE = "none";
+    private static final String DEFAULT_LANE_WIDTH = "50";
+    private static final String DEFAULT_LANES = Integer.toString(Road.DEFAULT_LANE_COUNT);
+    private static final String DEFAULT_INNER_RADIUS = "150";
+    private static final String DEFAULT_SEED = "42";
+    private static final String DEFAULT_WARMUP_STEPS = "600";
+    private static final String DEFAULT_STEPS = "3600";
+    private static final String DEFAULT_REPLICATIONS = "1";
+    private static final String DEFAULT_MIN_REPLICATIONS = "10";
+    private static final String DEFAULT_METRIC = "flow";
+    private static final String DEFAULT_CONFIDENCE = "0.95";
+    private static final String DEFAULT_TOLERANCE = "0.01";
+
+    // System property bounding the platform threads that carry the virtual threads
+    private static final String CARRIER_PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+    private static final String[] GRID_COLUMNS = {
+            "vehicles", "truck_share", "acceleration", "max_velocity", "obstacle_angle", "lane_width", "lanes"
+    };
+
+    private BatchRunner() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            exitWithUsage("Missing scenario file");
+        }
+
+        // Read the scenario, then apply the grid file and the overrides from the command line
+        Properties scenario = new Properties();
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            load(scenario, Paths.get(args[0]));
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--grid" -> load(scenario, Paths.get(value(args, ++i)));
+                    case "--steps" -> scenario.setProperty("steps", value(args, ++i));
+                    case "--replications" -> scenario.setProperty("replications", value(args, ++i));
+                    case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                    case "--output" -> output = Paths.get(value(args, ++i));
+                    default -> {
+                        int separator = args[i].indexOf('=');
+                        if (separator <= 0) {
+                            exitWithUsage("Unknown argument: " + args[i]);
+                        }
+                        scenario.setProperty(args[i].substring(0, separator), args[i].substring(separator + 1));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read " + e.getMessage());
+            System.exit(1);
+        } catch (NumberFormatException e) {
+            exitWithUsage("Invalid number: " + e.getMessage());
+        }
+
+        List<GridPoint> points;
+        RunSettings settings;
+        int replications;
+        try {
+            replications = Integer.parseInt(scenario.getProperty("replications", DEFAULT_REPLICATIONS));
+            points = expandGrid(scenario);
+            settings = new RunSettings(
+                    Double.parseDouble(scenario.getProperty("innerRadius", DEFAULT_INNER_RADIUS)),
+                    Long.parseLong(scenario.getProperty("seed", DEFAULT_SEED)),
+                    Integer.parseInt(scenario.getProperty("warmupSteps", DEFAULT_WARMUP_STEPS)),
+                    Integer.parseInt(scenario.getProperty("steps", DEFAULT_STEPS)));
+        } catch (NumberFormatException e) {
+            exitWithUsage("Invalid number in the scenario: " + e.getMessage());
+            return;
+        }
+
+        // Run every grid point once, or as an ensemble of replications
+        threads = Math.max(1, threads);
+        List<String[]> rows = new ArrayList<>();
+        if (replications > 1) {
+            rows.add(ensembleColumns());
+            try {
+                for (Ensemble.Result result : runEnsembles(points, settings, scenario, replications, threads)) {
+                    rows.add(ensembleCells(result));
+                }
+            } catch (NumberFormatException e) {
+                exitWithUsage("Invalid number in the scenario: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                exitWithUsage(e.getMessage());
+            }
+        } else {
+            rows.add(runColumns());
+            for (RunResult result : runAll(points, settings, threads)) {
+                rows.add(result.cells());
+            }
+        }
+
+        try {
+            if (output != null) {
+                Files.write(output, toCsv(rows), StandardCharsets.UTF_8);
+                System.err.println("Wrote " + (rows.size() - 1) + " rows to " + output);
+            } else {
+                printTable(rows, System.out);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot write " + output + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds every combination of the values of the grid parameters.
+     * 
+     * @param scenario The scenario with comma-separated lists of values
+     * @return The grid points, with the last parameter varying fastest
+     * @throws NumberFormatException if a value is not a number, or a road would have no lane
+     */
+    static List<GridPoint> expandGrid(Properties scenario) {
+        int[] vehicles = parseInts(scenario.getProperty("vehicles", DEFAULT_VEHICLES));
+        double[] truckShares = parseDoubles(scenario.getProperty("truckShare", DEFAULT_TRUCK_SHARE));
+        double[] accelerations = parseDoubles(scenario.getProperty("acceleration", DEFAULT_ACCELERATION));
+        double[] maxVelocities = parseDoubles(scenario.getProperty("maxVelocity", DEFAULT_MAX_VELOCITY));
+        double[] obstacleAngles = parseDoubles(scenario.getProperty("obstacleAngle", DEFAULT_OBSTACLE_ANGLE));
+        double[] laneWidths = parseDoubles(scenario.getProperty("laneWidth", DEFAULT_LANE_WIDTH));
+        int[] laneCounts = parseInts(scenario.getProperty("lanes", DEFAULT_LANES));
+        for (int lanes : laneCounts) {
+            if (lanes < 1) {
+                throw new NumberFormatException("lanes must be at least 1: " + lanes);
+            }
+        }
+
+        List<GridPoint> points = new ArrayList<>();
+        for (int count : vehicles) {
+            for (double truckShare : truckShares) {
+                for (double acceleration : accelerations) {
+                    for (double maxVelocity : maxVelocities) {
+                        for (double obstacleAngle : obstacleAngles) {
+                            for (double laneWidth : laneWidths) {
+                                for (int lanes : laneCounts) {
+                                    points.add(new GridPoint(count, truckShare, acceleration, maxVelocity,
+                                            obstacleAngle, laneWidth, lanes));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Runs every grid point on a pool of threads and collects the results in grid order.
+     * 
+     * @param points The grid points
+     * @param settings The parameters shared by all runs
+     * @param threads The number of runs executed at the same time
+     * @return The results, one per grid point
+     */
+    static List<RunResult> runAll(List<GridPoint> points, RunSettings settings, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, points.size())));
+        try {
+            List<Future<RunResult>> futures = new ArrayList<>();
+            for (GridPoint point : points) {
+                futures.add(executor.submit(() -> run(point, settings)));
+            }
+
+            List<RunResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(futures.get(i).get());
+                System.err.printf(Locale.ROOT, "Run %d/%d done%n", i + 1, futures.size());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the runs", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A run failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs every grid point as an ensemble of replications that differ in their seeds, one grid
+     * point after another. The replications of a grid point run on virtual threads, and the number
+     * of their carrier threads is bounded by the number of threads unless it was already set.
+     * 
+     * @param points The grid points
+     * @param settings The parameters shared by all runs
+     * @param scenario The scenario with the parameters of the ensembles
+     * @param replications The maximum number of replications of a grid point
+     * @param threads The number of replications running at the same time
+     * @return The results, one per grid point
+     */
+    static List<Ensemble.Result> runEnsembles(List<GridPoint> points, RunSettings settings, Properties scenario,
+                                              int replications, int threads) {
+        SummaryMetric metric = SummaryMetric.ofColumn(scenario.getProperty("metric", DEFAULT_METRIC));
+        double confidence = Double.parseDouble(scenario.getProperty("confidence", DEFAULT_CONFIDENCE));
+        double tolerance = Double.parseDouble(scenario.getProperty("tolerance", DEFAULT_TOLERANCE));
+        int minReplications = Integer.parseInt(scenario.getProperty("minReplications", DEFAULT_MIN_REPLICATIONS));
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("The confidence must lie between 0 and 1");
+        }
+
+        // Only takes effect before the first virtual thread is started
+        if (System.getProperty(CARRIER_PARALLELISM) == null) {
+            System.setProperty(CARRIER_PARALLELISM, Integer.toString(threads));
+        }
+
+        List<Ensemble.Result> results = new ArrayList<>();
+        try {
+            for (GridPoint point : points) {
+                Ensemble ensemble = new Ensemble(point, settings, metric, confidence, tolerance,
+                        minReplications, replications, threads);
+                Ensemble.Result result = ensemble.run();
+                results.add(result);
+                System.err.printf(Locale.ROOT, "Grid point %d/%d: %d replications, %s %s +- %s%s%n",
+                        results.size(), points.size(), result.getReplications(), metric.getColumn(),
+                        format(result.get(metric).getMean()), format(result.get(metric).getHalfWidth(confidence)),
+                        result.isConverged() ? ", converged" : "");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the replications", e);
+        }
+        return results;
+    }
+
+    /**
+     * Runs a single grid point: populates the road, lets the traffic settle and averages the
+     * metrics of every step of the measured window.
+     * 
+     * @param point The parameters of the run
+     * @param settings The parameters shared by all runs
+     * @return The averaged metrics
+     */
+    static RunResult run(GridPoint point, RunSettings settings) {
+        return run(point, settings, settings.seed, () -> false);
+    }
+
+    /**
+     * Runs a single grid point with a seed of its own, giving up as soon as it is cancelled.
+     * 
+     * @param point The parameters of the run
+     * @param settings The parameters shared by all runs
+     * @param seed The seed of the simulation
+     * @param cancelled Checked before every step; the run is abandoned once it returns true
+     * @return The averaged metrics, or null if the run was cancelled
+     */
+    static RunResult run(GridPoint point, RunSettings settings, long seed, BooleanSupplier cancelled) {
+        Road road = new Road(0, 0, settings.innerRadius, point.laneWidth, point.lanes, point.obstacleAngle);
+        Simulation simulation = new Simulation(road, seed);
+        simulation.setDefaultAcceleration(point.acceleration);
+        simulation.setMaxVelocity(point.maxVelocity);
+        int placed = simulation.populate(point.vehicles, point.truckShare).size();
+
+        // Let the traffic settle before measuring
+        for (int i = 0; i < settings.warmupSteps; i++) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            simulation.step();
+        }
+
+        MetricsCollector collector = new MetricsCollector(simulation);
+        double speedSum = 0;
+        double flowSum = 0;
+        double densitySum = 0;
+        double stoppedSum = 0;
+        long laneChanges = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < settings.steps; i++) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            simulation.step();
+            StepMetrics metrics = collector.collect();
+
+            // Weigh the lanes by their vehicles for the speeds, and add up the lanes for the flow
+            double speed = 0;
+            double flow = 0;
+            double density = 0;
+            int stopped = 0;
+            for (int lane = 0; lane < metrics.getLaneCount(); lane++) {
+                speed += metrics.getMeanSpeed(lane) * metrics.getVehicles(lane);
+                flow += metrics.getFlow(lane);
+                density += metrics.getDensity(lane);
+                stopped += metrics.getStopped(lane);
+            }
+            int count = Math.max(1, metrics.getVehicleCount());
+            speedSum += speed / count;
+            flowSum += flow;
+            densitySum += density / metrics.getLaneCount();
+            stoppedSum += (double) stopped / count;
+            laneChanges += metrics.getLaneChanges();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int steps = Math.max(1, settings.steps);
+        double measuredTime = steps * simulation.getTimeStep();
+        return new RunResult(point, placed, speedSum / steps, flowSum / steps, densitySum / steps,
+                stoppedSum / steps, laneChanges / measuredTime, seconds > 0 ? settings.steps / seconds : 0);
+    }
+
+    private static String[] runColumns() {
+        List<String> columns = new ArrayList<>(List.of(GRID_COLUMNS));
+        columns.add("placed");
+        for (SummaryMetric metric : SummaryMetric.values()) {
+            columns.add(metric.getColumn());
+        }
+        columns.add("steps_per_second");
+        return columns.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the header of the ensemble summary, in which every metric has its mean and the half-width
+     * of its confidence interval.
+     */
+    private static String[] ensembleColumns() {
+        List<String> columns = new ArrayList<>(List.of(GRID_COLUMNS));
+        columns.add("replications");
+        columns.add("converged");
+        columns.add("placed");
+        for (SummaryMetric metric : SummaryMetric.values()) {
+            columns.add(metric.getColumn());
+            columns.add(metric.getColumn() + "_ci");
+        }
+        columns.add("wall_seconds");
+        return columns.toArray(new String[0]);
+    }
+
+    private static String[] ensembleCells(Ensemble.Result result) {
+        List<String> cells = new ArrayList<>(List.of(result.getPoint().cells()));
+        cells.add(Long.toString(result.getReplications()));
+        cells.add(Boolean.toString(result.isConverged()));
+        cells.add(format(result.getPlaced().getMean()));
+        for (SummaryMetric metric : SummaryMetric.values()) {
+            cells.add(format(result.get(metric).getMean()));
+            cells.add(format(result.get(metric).getHalfWidth(result.getConfidence())));
+        }
+        cells.add(String.format(Locale.ROOT, "%.2f", result.getWallSeconds()));
+        return cells.toArray(new String[0]);
+    }
+
+    private static List<String> toCsv(List<String[]> rows) {
+        List<String> lines = new ArrayList<>();
+        for (String[] row : rows) {
+            lines.add(String.join(",", row));
+        }
+        return lines;
+    }
+
+    /**
+     * Prints rows as a table with aligned columns.
+     */
+    private static void printTable(List<String[]> rows, PrintStream out) {
+        int[] widths = new int[rows.get(0).length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < row.length; i++) {
+                line.append(i == 0 ? "" : "  ").append(" ".repeat(widths[i] - row[i].length())).append(row[i]);
+            }
+            out.println(line);
+        }
+    }
+
+    private static void load(Properties properties, Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            exitWithUsage("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static int[] parseInts(String values) {
+        String[] parts = values.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Parses a list of numbers in which "none" stands for NaN.
+     */
+    private static double[] parseDoubles(String values) {
+        String[] parts = values.split(",");
+        double[] result = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            result[i] = part.equalsIgnoreCase("none") ? Double.NaN : Double.parseDouble(part);
+        }
+        return result;
+    }
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: BatchRunner <scenario> [--grid <file>] [--steps <n>] [--replications <n>] "
+                + "[--threads <n>] [--output <file>] [key=values...]");
+        System.exit(2);
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "none" : String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    /**
+     * Parameters that vary between the runs of a grid.
+     */
+    static class GridPoint {
+        final int vehicles;
+        final double truckShare;
+        final double acceleration;
+        final double maxVelocity;
+        final double obstacleAngle; // NaN for a road without an obstacle
+        final double laneWidth;
+        final int lanes;
+
+        GridPoint(int vehicles, double truckShare, double acceleration, double maxVelocity,
+                  double obstacleAngle, double laneWidth, int lanes) {
+            this.vehicles = vehicles;
+            this.truckShare = truckShare;
+            this.acceleration = acceleration;
+            this.maxVelocity = maxVelocity;
+            this.obstacleAngle = obstacleAngle;
+            this.laneWidth = laneWidth;
+            this.lanes = lanes;
+        }
+
+        String[] cells() {
+            return new String[] {
+                    Integer.toString(vehicles), format(truckShare), format(acceleration),
+                    format(maxVelocity), format(obstacleAngle), format(laneWidth), Integer.toString(lanes)
+            };
+        }
+    }
+
+    /**
+     * Parameters shared by all runs of a grid.
+     */
+    static class RunSettings {
+        final double innerRadius;
+        final long seed;
+        final int warmupSteps;
+        final int steps;
+
+        RunSettings(double innerRadius, long seed, int warmupSteps, int steps) {
+            this.innerRadius = innerRadius;
+            this.seed = seed;
+            this.warmupSteps = warmupSteps;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * Metrics of a run, averaged over the measured steps.
+     */
+    static class RunResult {
+        final GridPoint point;
+        final int placed;
+        final double meanSpeed;
+        final double flow;
+        final double density;
+        final double stoppedShare;
+        final double laneChangeRate;
+        final double stepsPerSecond;
+
+        RunResult(GridPoint point, int placed, double meanSpeed, double flow, double density,
+                  double stoppedShare, double laneChangeRate, double stepsPerSecond) {
+            this.point = point;
+            this.placed = placed;
+            this.meanSpeed = meanSpeed;
+            this.flow = flow;
+            this.density = density;
+            this.stoppedShare = stoppedShare;
+            this.laneChangeRate = laneChangeRate;
+            this.stepsPerSecond = stepsPerSecond;
+        }
+
+        double get(SummaryMetric metric) {
+            return switch (metric) {
+                case MEAN_SPEED -> meanSpeed;
+                case FLOW -> flow;
+                case DENSITY -> density;
+                case STOPPED_SHARE -> stoppedShare;
+                case LANE_CHANGE_RATE -> laneChangeRate;
+            };
+        }
+
+        String[] cells() {
+            List<String> cells = new ArrayList<>(List.of(point.cells()));
+            cells.add(Integer.toString(placed));
+            for (SummaryMetric metric : SummaryMetric.values()) {
+                cells.add(format(get(metric)));
+            }
+            cells.add(String.format(Locale.ROOT, "%.0f", stepsPerSecond));
+            return cells.toArray(new String[0]);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package sk.mpar.trafficsim;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Monte Carlo ensemble of replications of a grid point that differ only in the seed of the simulation.
+ * 
+ * Every replication runs on its own virtual thread, and at most a fixed number of them are in flight
+ * at a time; a new one starts whenever one finishes. The virtual threads are carried by the platform
+ * threads of the virtual thread scheduler, whose number is bounded by the system property
+ * {@code jdk.virtualThreadScheduler.parallelism}. The results are aggregated in the order of the
+ * seeds as soon as they are available, so the ensemble stops at the same replication however the
+ * threads are scheduled. The ensemble stops early once the confidence interval of the chosen metric
+ * is narrow enough relative to its mean; replications still running are then cancelled.
+ */
+class Ensemble {
+    private BatchRunner.GridPoint point;
+    private BatchRunner.RunSettings settings;
+    private SummaryMetric metric;
+    private double confidence;
+    private double tolerance;
+    private int minReplications;
+    private int maxReplications;
+    private int concurrency;
+
+    /**
+     * Creates an ensemble.
+     * 
+     * @param point The parameters of the replications
+     * @param settings The parameters shared by all replications; replication i uses the seed plus i
+     * @param metric The metric whose convergence stops the ensemble
+     * @param confidence The confidence level of the intervals between 0 and 1
+     * @param tolerance The half-width of the confidence interval relative to the mean at which the
+     *        metric has converged, or 0 to always run the maximum number of replications
+     * @param minReplications The number of replications run before convergence is checked
+     * @param maxReplications The maximum number of replications
+     * @param concurrency The maximum number of replications running at the same time
+     */
+    Ensemble(BatchRunner.GridPoint point, BatchRunner.RunSettings settings, SummaryMetric metric,
+             double confidence, double tolerance, int minReplications, int maxReplications, int concurrency) {
+        this.point = point;
+        this.settings = settings;
+        this.metric = metric;
+        this.confidence = confidence;
+        this.tolerance = tolerance;
+        this.minReplications = Math.max(2, minReplications);
+        this.maxReplications = Math.max(1, maxReplications);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Runs replications until the metric has converged or the maximum number has been run.
+     * 
+     * @return The aggregated metrics
+     * @throws InterruptedException If the thread is interrupted while waiting for a replication
+     */
+    Result run() throws InterruptedException {
+        BlockingQueue<Replication> finished = new LinkedBlockingQueue<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Result result = new Result(point, confidence);
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                // Start the first batch of replications
+                int started = 0;
+                while (started < Math.min(concurrency, maxReplications)) {
+                    start(executor, started++, finished, cancelled);
+                }
+
+                // Aggregate the results in the order of the seeds, starting a replication for every finished one
+                BatchRunner.RunResult[] pending = new BatchRunner.RunResult[maxReplications];
+                int aggregated = 0;
+                while (aggregated < maxReplications && !result.converged) {
+                    Replication replication = finished.take();
+                    if (replication.failure != null) {
+                        throw new IllegalStateException("Replication " + replication.index + " failed",
+                                replication.failure);
+                    }
+                    pending[replication.index] = replication.result;
+                    while (aggregated < started && pending[aggregated] != null && !result.converged) {
+                        result.add(pending[aggregated]);
+                        pending[aggregated++] = null;
+                        result.converged = hasConverged(result);
+                    }
+                    if (!result.converged && started < maxReplications) {
+                        start(executor, started++, finished, cancelled);
+                    }
+                }
+            } finally {
+                // Let the replications still running return at their next step
+                cancelled.set(true);
+            }
+        }
+        result.wallSeconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    private void start(ExecutorService executor, int index, BlockingQueue<Replication> finished,
+                       AtomicBoolean cancelled) {
+        executor.execute(() -> {
+            try {
+                BatchRunner.RunResult result = BatchRunner.run(point, settings, settings.seed + index, cancelled::get);
+                finished.add(new Replication(index, result, null));
+            } catch (RuntimeException | Error e) {
+                finished.add(new Replication(index, null, e));
+            }
+        });
+    }
+
+    private boolean hasConverged(Result result) {
+        RunningStatistics statistics = result.get(metric);
+        return tolerance > 0 && statistics.getCount() >= minReplications
+                && statistics.getRelativeHalfWidth(confidence) <= tolerance;
+    }
+
+    /**
+     * Outcome of a single replication, handed from its thread to the aggregating thread.
+     */
+    private static class Replication {
+        final int index;
+        final BatchRunner.RunResult result;
+        final Throwable failure;
+
+        Replication(int index, BatchRunner.RunResult result, Throwable failure) {
+            this.index = index;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Metrics of an ensemble, aggregated over its replications.
+     */
+    static class Result {
+        private final BatchRunner.GridPoint point;
+        private final double confidence;
+        private final Map<SummaryMetric, RunningStatistics> statistics = new EnumMap<>(SummaryMetric.class);
+        private final RunningStatistics placed = new RunningStatistics();
+        private boolean converged;
+        private double wallSeconds;
+
+        Result(BatchRunner.GridPoint point, double confidence) {
+            this.point = point;
+            this.confidence = confidence;
+            for (SummaryMetric metric : SummaryMetric.values()) {
+                statistics.put(metric, new RunningStatistics());
+            }
+        }
+
+        private void add(BatchRunner.RunResult result) {
+            placed.add(result.placed);
+            for (SummaryMetric metric : SummaryMetric.values()) {
+                statistics.get(metric).add(result.get(metric));
+            }
+        }
+
+        // Getters
+
+        BatchRunner.GridPoint getPoint() {
+            return point;
+        }
+
+        double getConfidence() {
+            return confidence;
+        }
+
+        RunningStatistics get(SummaryMetric metric) {
+            return statistics.get(metric);
+        }
+
+        RunningStatistics getPlaced() {
+            return placed;
+        }
+
+        long getReplications() {
+            return placed.getCount();
+        }
+
+        boolean isConverged() {
+            return converged;
+        }
+
+        double getWallSeconds() {
+            return wallSeconds;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package sk.mpar.trafficsim;
+
+/**
+ * Metrics of a run of the {@link BatchRunner}, averaged over its measured steps.
+ */
+enum SummaryMetric {
+    /**
+     * Mean speed of the vehicles.
+     */
+    MEAN_SPEED("mean_speed"),
+    /**
+     * Flow summed over the lanes.
+     */
+    FLOW("flow"),
+    /**
+     * Density averaged over the lanes.
+     */
+    DENSITY("density"),
+    /**
+     * Share of the vehicles that are stopped.
+     */
+    STOPPED_SHARE("stopped_share"),
+    /**
+     * Lane changes per second.
+     */
+    LANE_CHANGE_RATE("lane_change_rate");
+
+    private final String column;
+
+    SummaryMetric(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Gets the metric by the name of its column.
+     * 
+     * @param column The column name, e.g. "flow"
+     * @return The metric
+     * @throws IllegalArgumentException If no metric has the column
+     */
+    static SummaryMetric ofColumn(String column) {
+        for (SummaryMetric metric : values()) {
+            if (metric.column.equals(column)) {
+                return metric;
+            }
+        }
+        throw new IllegalArgumentException("Unknown metric: " + column);
+    }
+
+    // Getters
+
+    String getColumn() {
+        return column;
+    }
+}
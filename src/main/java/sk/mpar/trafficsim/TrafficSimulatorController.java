@@ -2,8 +2,11 @@ package sk.mpar.trafficsim;
 
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
+import javafx.scene.Cursor;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ColorPicker;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
@@ -16,13 +19,23 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.util.Pair;
+import sk.mpar.trafficsim.model.MetricsExporter;
+import sk.mpar.trafficsim.model.MetricsFormat;
+import sk.mpar.trafficsim.model.OverflowPolicy;
 import sk.mpar.trafficsim.model.PersonalCar;
 import sk.mpar.trafficsim.model.Road;
 import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.TrajectoryWriter;
 import sk.mpar.trafficsim.model.Truck;
 import sk.mpar.trafficsim.model.Vehicle;
+import sk.mpar.trafficsim.view.Colors;
+import sk.mpar.trafficsim.view.RenderMode;
+import sk.mpar.trafficsim.view.SimulationView;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Controller for the traffic simulator UI.
@@ -53,6 +66,18 @@ public class TrafficSimulatorController {
     @FXML
     private Label vehicleCountLabel;
 
+    @FXML
+    private CheckBox canvasRenderingCheckBox;
+
+    @FXML
+    private CheckBox profilingCheckBox;
+
+    @FXML
+    private CheckBox recordingCheckBox;
+
+    @FXML
+    private CheckBox metricsCheckBox;
+
     @FXML
     private Spinner<Integer> carCountSpinner;
 
@@ -80,6 +105,13 @@ public class TrafficSimulatorController {
     // Simulation components
     private Road road;
     private Simulation simulation;
+    private SimulationView simulationView;
+
+    // Writer of the trajectory being recorded, or null while not recording
+    private TrajectoryWriter trajectoryWriter;
+
+    // Exporter of the step metrics, or null while not exporting
+    private MetricsExporter metricsExporter;
 
     /**
      * Initializes the controller.
@@ -95,8 +127,9 @@ public class TrafficSimulatorController {
 
         road = new Road(initialCenterX, initialCenterY, initialInnerRadius, laneWidth, obstacleAngle);
 
-        // Create the simulation
-        simulation = new Simulation(road, simulationPane);
+        // Create the simulation and its view
+        simulation = new Simulation(road);
+        simulationView = new SimulationView(simulation, simulationPane);
 
         // We need to wait until the pane is laid out to get its actual size
         // and update the road and simulation if necessary
@@ -134,13 +167,14 @@ public class TrafficSimulatorController {
         truckCountSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 10, 1));
 
         // Set up the car color picker
-        carColorPicker.setValue(PersonalCar.DEFAULT_COLOR);
+        carColorPicker.setValue(Colors.toColor(PersonalCar.DEFAULT_COLOR));
 
         // Set up the truck color picker
-        truckColorPicker.setValue(Truck.DEFAULT_COLOR);
+        truckColorPicker.setValue(Colors.toColor(Truck.DEFAULT_COLOR));
 
-        // Set up mouse click handling for the simulation pane
+        // Set up mouse click and hover handling for the simulation pane
         simulationPane.setOnMouseClicked(this::handleMouseClick);
+        simulationPane.setOnMouseMoved(this::handleMouseMove);
 
         // We need to wait until the scene is set before adding the key event filter
         simulationPane.sceneProperty().addListener((observable, oldValue, newValue) -> {
@@ -206,14 +240,14 @@ public class TrafficSimulatorController {
                 // If shift is pressed, add a truck, otherwise add a car
                 if (event.isShiftDown()) {
                     // Add a truck with the selected color at the click position
-                    Color color = truckColorPicker.getValue();
+                    int color = Colors.toArgb(truckColorPicker.getValue());
                     Truck truck = simulation.addTruck(color, x, y);
                     if (truck != null) {
                         updateVehicleCount();
                     }
                 } else {
                     // Add a car with the selected color at the click position
-                    Color color = carColorPicker.getValue();
+                    int color = Colors.toArgb(carColorPicker.getValue());
                     PersonalCar car = simulation.addPersonalCar(color, x, y);
                     if (car != null) {
                         updateVehicleCount();
@@ -223,27 +257,159 @@ public class TrafficSimulatorController {
         }
     }
 
+    /**
+     * Handles mouse move events on the simulation pane by showing a hand cursor over vehicles.
+     * 
+     * @param event The mouse event
+     */
+    private void handleMouseMove(MouseEvent event) {
+        Vehicle hoveredVehicle = simulation.getVehicleAt(event.getX(), event.getY());
+        simulationPane.setCursor(hoveredVehicle != null ? Cursor.HAND : Cursor.DEFAULT);
+    }
+
     /**
      * Toggles the simulation between running and stopped.
      */
     @FXML
     private void toggleSimulation() {
-        if (simulation.isRunning()) {
-            simulation.stop();
+        if (simulationView.isRunning()) {
+            simulationView.stop();
             startStopButton.setText("Start");
         } else {
-            simulation.start();
+            simulationView.start();
             startStopButton.setText("Stop");
         }
     }
 
+    /**
+     * Switches between drawing the vehicles as nodes and onto a canvas.
+     */
+    @FXML
+    private void toggleRenderMode() {
+        simulationView.setRenderMode(currentRenderMode());
+    }
+
+    /**
+     * Switches the profiling overlay on or off.
+     */
+    @FXML
+    private void toggleProfiling() {
+        simulationView.setProfiling(profilingCheckBox.isSelected());
+    }
+
+    /**
+     * Starts recording the trajectories of the vehicles into a file chosen by the user, or stops recording.
+     */
+    @FXML
+    private void toggleRecording() {
+        if (!recordingCheckBox.isSelected()) {
+            stopRecording();
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Record Trajectories");
+        fileChooser.setInitialFileName("trajectories.traj");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Trajectory files", "*.traj"));
+        File file = fileChooser.showSaveDialog(simulationPane.getScene().getWindow());
+        if (file == null) {
+            recordingCheckBox.setSelected(false);
+            return;
+        }
+
+        try {
+            trajectoryWriter = new TrajectoryWriter(simulation, file.toPath());
+        } catch (IOException e) {
+            recordingCheckBox.setSelected(false);
+            new Alert(Alert.AlertType.ERROR, "Could not record to " + file + ": " + e.getMessage()).showAndWait();
+        }
+    }
+
+    /**
+     * Closes the trajectory file being recorded, if any.
+     */
+    private void stopRecording() {
+        if (trajectoryWriter == null) {
+            return;
+        }
+        try {
+            trajectoryWriter.close();
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Could not finish the recording: " + e.getMessage()).showAndWait();
+        }
+        trajectoryWriter = null;
+        recordingCheckBox.setSelected(false);
+    }
+
+    /**
+     * Starts exporting the metrics of every step into a file chosen by the user, or stops exporting.
+     * The format follows the extension of the file. Samples are dropped rather than stalling the UI.
+     */
+    @FXML
+    private void toggleMetrics() {
+        if (!metricsCheckBox.isSelected()) {
+            stopMetrics();
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Metrics");
+        fileChooser.setInitialFileName("metrics.csv");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV files", "*.csv"),
+                new FileChooser.ExtensionFilter("Binary metrics files", "*.metrics"));
+        File file = fileChooser.showSaveDialog(simulationPane.getScene().getWindow());
+        if (file == null) {
+            metricsCheckBox.setSelected(false);
+            return;
+        }
+
+        MetricsFormat format = file.getName().endsWith(".csv") ? MetricsFormat.CSV : MetricsFormat.BINARY;
+        try {
+            metricsExporter = new MetricsExporter(simulation, file.toPath(), format, OverflowPolicy.DROP);
+        } catch (IOException e) {
+            metricsCheckBox.setSelected(false);
+            new Alert(Alert.AlertType.ERROR, "Could not export to " + file + ": " + e.getMessage()).showAndWait();
+        }
+    }
+
+    /**
+     * Closes the metrics file being exported, if any, and reports dropped samples.
+     */
+    private void stopMetrics() {
+        if (metricsExporter == null) {
+            return;
+        }
+        try {
+            metricsExporter.close();
+            if (metricsExporter.getDroppedSamples() > 0) {
+                new Alert(Alert.AlertType.WARNING, metricsExporter.getDroppedSamples() + " of "
+                        + (metricsExporter.getWrittenSamples() + metricsExporter.getDroppedSamples())
+                        + " samples were dropped because the disk could not keep up.").showAndWait();
+            }
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Could not finish the metrics export: " + e.getMessage()).showAndWait();
+        }
+        metricsExporter = null;
+        metricsCheckBox.setSelected(false);
+    }
+
+    /**
+     * Gets the render mode selected in the UI.
+     * 
+     * @return The selected render mode
+     */
+    private RenderMode currentRenderMode() {
+        return canvasRenderingCheckBox.isSelected() ? RenderMode.CANVAS : RenderMode.NODES;
+    }
+
     /**
      * Adds personal cars to the simulation.
      */
     @FXML
     private void addCar() {
         int count = carCountSpinner.getValue();
-        Color color = carColorPicker.getValue();
+        int color = Colors.toArgb(carColorPicker.getValue());
         simulation.addPersonalCars(count, color);
         updateVehicleCount();
     }
@@ -254,7 +420,7 @@ public class TrafficSimulatorController {
     @FXML
     private void addTruck() {
         int count = truckCountSpinner.getValue();
-        Color color = truckColorPicker.getValue();
+        int color = Colors.toArgb(truckColorPicker.getValue());
         simulation.addTrucks(count, color);
         updateVehicleCount();
     }
@@ -264,10 +430,8 @@ public class TrafficSimulatorController {
      */
     @FXML
     private void colorAllCars() {
-        Color color = carColorPicker.getValue();
-        for (PersonalCar car : simulation.getVehicles(PersonalCar.class)) {
-            car.setColor(color);
-        }
+        int color = Colors.toArgb(carColorPicker.getValue());
+        simulation.setPersonalCarColor(color);
     }
 
     /**
@@ -275,10 +439,8 @@ public class TrafficSimulatorController {
      */
     @FXML
     private void colorAllTrucks() {
-        Color color = truckColorPicker.getValue();
-        for (Truck truck : simulation.getVehicles(Truck.class)) {
-            truck.setColor(color);
-        }
+        int color = Colors.toArgb(truckColorPicker.getValue());
+        simulation.setTruckColor(color);
     }
 
     /**
@@ -333,12 +495,7 @@ public class TrafficSimulatorController {
             double height = dimensions.getValue();
 
             // Update all personal cars
-            for (PersonalCar car : simulation.getVehicles(PersonalCar.class)) {
-                car.getShape().setWidth(width);
-                car.getShape().setHeight(height);
-                car.getShape().setX(car.getX() - width / 2);
-                car.getShape().setY(car.getY() - height / 2);
-            }
+            simulation.setPersonalCarDimensions(width, height);
         });
     }
 
@@ -394,12 +551,7 @@ public class TrafficSimulatorController {
             double height = dimensions.getValue();
 
             // Update all trucks
-            for (Truck truck : simulation.getVehicles(Truck.class)) {
-                truck.getShape().setWidth(width);
-                truck.getShape().setHeight(height);
-                truck.getShape().setX(truck.getX() - width / 2);
-                truck.getShape().setY(truck.getY() - height / 2);
-            }
+            simulation.setTruckDimensions(width, height);
         });
     }
 
@@ -442,7 +594,7 @@ public class TrafficSimulatorController {
         grid.setPadding(new Insets(20, 150, 10, 10));
 
         // Create the form fields
-        ColorPicker colorPicker = new ColorPicker(vehicle.getColor());
+        ColorPicker colorPicker = new ColorPicker(Colors.toColor(vehicle.getColor()));
 
         Spinner<Double> velocitySpinner = new Spinner<>();
         velocitySpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(0, 10, vehicle.getVelocity(), 0.1));
@@ -457,7 +609,7 @@ public class TrafficSimulatorController {
         maxVelocitySpinner.setEditable(true);
 
         Spinner<Integer> laneSpinner = new Spinner<>();
-        laneSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 1, vehicle.getLane()));
+        laneSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, simulation.getRoad().getLaneCount() - 1, vehicle.getLane()));
 
         // Add fields for dimensions if it's a personal car or truck
         final Spinner<Double> widthSpinner;
@@ -465,22 +617,22 @@ public class TrafficSimulatorController {
 
         if (vehicle instanceof PersonalCar) {
             Spinner<Double> tempWidthSpinner = new Spinner<>();
-            tempWidthSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(30, 100, vehicle.getShape().getWidth(), 1));
+            tempWidthSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(30, 100, vehicle.getWidth(), 1));
             tempWidthSpinner.setEditable(true);
             widthSpinner = tempWidthSpinner;
 
             Spinner<Double> tempHeightSpinner = new Spinner<>();
-            tempHeightSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(15, 50, vehicle.getShape().getHeight(), 1));
+            tempHeightSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(15, 50, vehicle.getHeight(), 1));
             tempHeightSpinner.setEditable(true);
             heightSpinner = tempHeightSpinner;
         } else if (vehicle instanceof Truck) {
             Spinner<Double> tempWidthSpinner = new Spinner<>();
-            tempWidthSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(60, 200, vehicle.getShape().getWidth(), 1));
+            tempWidthSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(60, 200, vehicle.getWidth(), 1));
             tempWidthSpinner.setEditable(true);
             widthSpinner = tempWidthSpinner;
 
             Spinner<Double> tempHeightSpinner = new Spinner<>();
-            tempHeightSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(20, 80, vehicle.getShape().getHeight(), 1));
+            tempHeightSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(20, 80, vehicle.getHeight(), 1));
             tempHeightSpinner.setEditable(true);
             heightSpinner = tempHeightSpinner;
         } else {
@@ -518,7 +670,7 @@ public class TrafficSimulatorController {
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == saveButtonType) {
                 // Update the vehicle properties
-                vehicle.setColor(colorPicker.getValue());
+                vehicle.setColor(Colors.toArgb(colorPicker.getValue()));
                 vehicle.setVelocity(velocitySpinner.getValue());
                 vehicle.setAcceleration(accelerationSpinner.getValue());
                 vehicle.setMaxVelocity(maxVelocitySpinner.getValue());
@@ -526,7 +678,7 @@ public class TrafficSimulatorController {
                 // Update the lane if it changed
                 int newLane = laneSpinner.getValue();
                 if (newLane != vehicle.getLane()) {
-                    vehicle.changeLane(newLane, road.getInnerRadius(), road.getLaneWidth());
+                    simulation.changeLane(vehicle, newLane);
                 }
 
                 // Update the dimensions if applicable
@@ -534,13 +686,8 @@ public class TrafficSimulatorController {
                     double newWidth = widthSpinner.getValue();
                     double newHeight = heightSpinner.getValue();
 
-                    // Resize the shape
-                    vehicle.getShape().setWidth(newWidth);
-                    vehicle.getShape().setHeight(newHeight);
-
-                    // Update the position to keep the vehicle centered
-                    vehicle.getShape().setX(vehicle.getX() - newWidth / 2);
-                    vehicle.getShape().setY(vehicle.getY() - newHeight / 2);
+                    // Resize the vehicle; it stays centered on its position
+                    vehicle.setDimensions(newWidth, newHeight);
                 }
 
                 return new Pair<>(saveButtonType, vehicle);
@@ -561,7 +708,12 @@ public class TrafficSimulatorController {
      * @param obstacleAngle The angle where the obstacle is located
      */
     private void updateRoadAndSimulation(double width, double height, double laneWidth, double obstacleAngle) {
+        // Recordings and exports belong to the old road, so finish them
+        stopRecording();
+        stopMetrics();
+
         // Remove existing road and simulation elements from the pane
+        simulationView.dispose();
         simulationPane.getChildren().clear();
 
         // Calculate new road parameters
@@ -571,7 +723,9 @@ public class TrafficSimulatorController {
 
         // Create a new road and simulation
         road = new Road(centerX, centerY, innerRadius, laneWidth, obstacleAngle);
-        simulation = new Simulation(road, simulationPane);
+        simulation = new Simulation(road);
+        simulationView = new SimulationView(simulation, simulationPane, currentRenderMode());
+        simulationView.setProfiling(profilingCheckBox.isSelected());
 
         // Update UI to reflect the new simulation
         updateVehicleCount();
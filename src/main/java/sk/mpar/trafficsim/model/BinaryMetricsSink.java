@@ -0,0 +1,159 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes samples into a columnar binary file.
+ * 
+ * Samples are gathered into row groups; a full group, and the last group when the sink is closed, is
+ * written as one block in which every column is contiguous, so a reader can load a single metric
+ * without touching the others. The layout is little-endian:
+ * 
+ * <pre>
+ * header  int magic, int version, int laneCount, int columnCount
+ * group   int rowCount, then the columns of rowCount values each:
+ *         long step, double time, int vehicles, long laneChanges, double laneChangeRate, long droppedBefore,
+ *         then per lane: int vehicles, int stopped, double meanSpeed, p10Speed, p50Speed, p90Speed,
+ *         density, flow
+ * </pre>
+ */
+class BinaryMetricsSink implements MetricsSink {
+    // "METR" in the first four bytes of a file
+    private static final int MAGIC = 0x5254454D;
+    private static final int VERSION = 1;
+
+    // Maximum number of samples in a row group
+    private static final int GROUP_SIZE = 1024;
+
+    // Columns before the per-lane ones, and per lane
+    private static final int GLOBAL_COLUMNS = 6;
+    private static final int LANE_COLUMNS = 8;
+
+    // Bytes of a sample across all columns
+    private static final int GLOBAL_ROW_SIZE = 8 + 8 + 4 + 8 + 8 + 8;
+    private static final int LANE_ROW_SIZE = 4 + 4 + 6 * 8;
+
+    private FileChannel channel;
+    private int laneCount;
+    private ByteBuffer block;
+
+    // Samples of the group in progress
+    private StepMetrics[] rows = new StepMetrics[GROUP_SIZE];
+    private long[] droppedBefore = new long[GROUP_SIZE];
+    private int rowCount;
+
+    /**
+     * Creates the file and writes the header.
+     * 
+     * @param path The file to write
+     * @param laneCount The number of lanes of the road
+     * @throws IOException If the file cannot be created
+     */
+    BinaryMetricsSink(Path path, int laneCount) throws IOException {
+        this.laneCount = laneCount;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        block = ByteBuffer.allocateDirect(4 + GROUP_SIZE * (GLOBAL_ROW_SIZE + laneCount * LANE_ROW_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(MAGIC).putInt(VERSION).putInt(laneCount).putInt(GLOBAL_COLUMNS + laneCount * LANE_COLUMNS);
+        writeBlock();
+    }
+
+    @Override
+    public void write(StepMetrics metrics, long dropped) throws IOException {
+        rows[rowCount] = metrics;
+        droppedBefore[rowCount] = dropped;
+        rowCount++;
+        if (rowCount == GROUP_SIZE) {
+            writeGroup();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Groups are only written when full, so that every column stays contiguous over many samples
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeGroup();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the group in progress as a block, column by column.
+     */
+    private void writeGroup() throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        block.putInt(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            block.putLong(rows[i].getStep());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            block.putDouble(rows[i].getTime());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            block.putInt(rows[i].getVehicleCount());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            block.putLong(rows[i].getLaneChanges());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            block.putDouble(rows[i].getLaneChangeRate());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            block.putLong(droppedBefore[i]);
+        }
+        for (int lane = 0; lane < laneCount; lane++) {
+            for (int i = 0; i < rowCount; i++) {
+                block.putInt(rows[i].getVehicles(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putInt(rows[i].getStopped(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putDouble(rows[i].getMeanSpeed(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putDouble(rows[i].getP10Speed(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putDouble(rows[i].getP50Speed(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putDouble(rows[i].getP90Speed(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putDouble(rows[i].getDensity(lane));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                block.putDouble(rows[i].getFlow(lane));
+            }
+        }
+        writeBlock();
+        Arrays.fill(rows, 0, rowCount, null);
+        rowCount = 0;
+    }
+
+    /**
+     * Writes the bytes gathered in the block buffer to the file.
+     */
+    private void writeBlock() throws IOException {
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        block.clear();
+    }
+}
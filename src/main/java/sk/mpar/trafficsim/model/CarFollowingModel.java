@@ -0,0 +1,87 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Driving model given by a car-following law, with lanes chosen by {@link MobilLaneChange} or not
+ * changed at all.
+ * 
+ * Subclasses only implement the law on plain numbers. The methods taking a context are final, so
+ * once the JIT compiler has inlined a call of the simulation for a concrete model, the call of the
+ * law inside it has a known receiver and is inlined as well.
+ */
+public abstract class CarFollowingModel implements DrivingModel {
+    // Smallest gap passed to the law, so that overlapping bodies give a finite braking
+    static final double MIN_GAP = 1e-3;
+
+    private final MobilLaneChange laneChange;
+
+    /**
+     * Creates the model.
+     * 
+     * @param laneChange The lane-changing rule, or null to change lanes only to avoid the obstacle
+     */
+    protected CarFollowingModel(MobilLaneChange laneChange) {
+        this.laneChange = laneChange;
+    }
+
+    /**
+     * Computes the acceleration of a vehicle behind a leader.
+     * 
+     * @param velocity The velocity of the vehicle
+     * @param maxVelocity The desired velocity of the vehicle
+     * @param maxAcceleration The acceleration of the vehicle on free road
+     * @param gap The free distance to the leader, at least {@link #MIN_GAP}, or infinity without a leader
+     * @param leaderVelocity The velocity of the leader
+     * @param timeStep The length of the step in seconds
+     * @param noise A pseudo-random number in [0, 1) for stochastic laws, 0 when the acceleration is
+     *        only estimated for a lane change
+     * @return The acceleration, negative for braking
+     */
+    public abstract double getAcceleration(double velocity, double maxVelocity, double maxAcceleration,
+                                           double gap, double leaderVelocity, double timeStep, double noise);
+
+    /**
+     * Gets the deceleration the model brakes with when it has time to.
+     * 
+     * @return The deceleration, positive
+     */
+    public abstract double getComfortableDeceleration();
+
+    /**
+     * Estimates the acceleration of any vehicle behind a leader, with the parameters of its profile
+     * and without noise.
+     * 
+     * @param vehicle The vehicle
+     * @param gap The free distance to the leader, or infinity without a leader
+     * @param leaderVelocity The velocity of the leader
+     * @param timeStep The length of the step in seconds
+     * @return The acceleration
+     */
+    final double estimateAcceleration(Vehicle vehicle, double gap, double leaderVelocity, double timeStep) {
+        ParameterProfile profile = vehicle.getProfile();
+        return getAcceleration(vehicle.getVelocity(), profile.getMaxVelocity(), profile.getAcceleration(),
+                Math.max(MIN_GAP, gap), leaderVelocity, timeStep, 0);
+    }
+
+    @Override
+    public final int chooseLane(DrivingContext context) {
+        return laneChange == null ? context.getLane() : laneChange.chooseLane(context, this);
+    }
+
+    @Override
+    public final double getAcceleration(DrivingContext context) {
+        return getAcceleration(context.getVelocity(), context.getMaxVelocity(), context.getMaxAcceleration(),
+                Math.max(MIN_GAP, context.getGapAhead()), context.getLeaderVelocity(), context.getTimeStep(),
+                context.getNoise());
+    }
+
+    @Override
+    public final double getBrakingAcceleration(DrivingContext context) {
+        return -getComfortableDeceleration();
+    }
+
+    // Getters
+
+    public MobilLaneChange getLaneChange() {
+        return laneChange;
+    }
+}
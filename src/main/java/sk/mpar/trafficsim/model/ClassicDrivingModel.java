@@ -0,0 +1,95 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * The original rules of the simulator: a vehicle accelerates at the acceleration of its profile
+ * until a leader is closer than the look-ahead angle, then tries the passing lane of the road and
+ * brakes hard if it is taken. A vehicle in the middle of a lane change ignores its leader.
+ */
+public final class ClassicDrivingModel implements DrivingModel {
+    // Angle within which a vehicle ahead in the same lane is considered too close
+    public static final double DEFAULT_LOOK_AHEAD_ANGLE = 0.3;
+    // Acceleration of a vehicle that is blocked ahead
+    public static final double DEFAULT_BRAKING_ACCELERATION = -2.0;
+
+    private final double lookAheadAngle;
+    private final double brakingAcceleration;
+
+    /**
+     * Creates the model with the original parameters.
+     */
+    public ClassicDrivingModel() {
+        this(DEFAULT_LOOK_AHEAD_ANGLE, DEFAULT_BRAKING_ACCELERATION);
+    }
+
+    /**
+     * Creates the model with custom parameters.
+     * 
+     * @param lookAheadAngle The angle to the leader in radians below which a vehicle reacts to it
+     * @param brakingAcceleration The acceleration of a vehicle that is blocked, negative
+     */
+    public ClassicDrivingModel(double lookAheadAngle, double brakingAcceleration) {
+        this.lookAheadAngle = lookAheadAngle;
+        this.brakingAcceleration = brakingAcceleration;
+    }
+
+    @Override
+    public int chooseLane(DrivingContext context) {
+        return chooseLane(context.getLane(), context.getAngleAhead(), context.getRoad());
+    }
+
+    @Override
+    public double getAcceleration(DrivingContext context) {
+        return getAcceleration(context.isChangingLane(), context.getAngleAhead(), context.getMaxAcceleration());
+    }
+
+    /**
+     * Chooses the lane of a vehicle from the angle to its leader.
+     * 
+     * @param lane The lane of the vehicle
+     * @param angleAhead The angle to the leader in the lane, or infinity without a leader
+     * @param road The road
+     * @return The passing lane if the leader is too close and the road has one, the lane otherwise
+     */
+    int chooseLane(int lane, double angleAhead, Road road) {
+        if (angleAhead < lookAheadAngle) {
+            int passingLane = road.getPassingLane(lane);
+            return passingLane >= 0 ? passingLane : lane;
+        }
+        return lane;
+    }
+
+    /**
+     * Computes the acceleration of a vehicle from the angle to its leader.
+     * 
+     * @param changingLane Whether the vehicle is in the middle of a lane change
+     * @param angleAhead The angle to the leader in the lane, or infinity without a leader
+     * @param maxAcceleration The acceleration of the vehicle on free road
+     * @return The acceleration
+     */
+    double getAcceleration(boolean changingLane, double angleAhead, double maxAcceleration) {
+        if (!changingLane && angleAhead < lookAheadAngle) {
+            return brakingAcceleration;
+        }
+        return maxAcceleration;
+    }
+
+    @Override
+    public double getBrakingAcceleration(DrivingContext context) {
+        return brakingAcceleration;
+    }
+
+    @Override
+    public boolean isEvasive() {
+        return true;
+    }
+
+    // Getters
+
+    public double getLookAheadAngle() {
+        return lookAheadAngle;
+    }
+
+    public double getBrakingAcceleration() {
+        return brakingAcceleration;
+    }
+}
@@ -0,0 +1,209 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Geometry-only collision checks between vehicles.
+ * 
+ * Every vehicle drives along the middle of its lane with its body tangent to the lane, so in polar
+ * coordinates the body occupies an arc interval around its angle and a radial band around the lane
+ * radius. Two bodies collide if both their radial bands and their arc intervals overlap. Candidates
+ * are taken from the {@link LaneIndex}, so only vehicles within the arc window in the lanes the tallest
+ * body can reach are tested. The checks do not allocate once the hit buffer has grown to its size.
+ * A detector is not thread-safe; concurrent callers need a detector each.
+ */
+public class CollisionDetector {
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private Road road;
+    private LaneIndex laneIndex;
+
+    // Largest vehicle dimensions, used to bound the candidate window
+    private double maxWidth;
+    private double maxHeight;
+
+    // Vehicles found by the last call to findCollisions
+    private Vehicle[] hits = new Vehicle[8];
+    private int hitCount;
+
+    // Number of pairs tested for overlap since the detector was created
+    private long pairChecks;
+
+    /**
+     * Creates a collision detector working on the lane index of a road.
+     * 
+     * @param road The road
+     * @param laneIndex The index of the vehicles on the road
+     */
+    public CollisionDetector(Road road, LaneIndex laneIndex) {
+        this.road = road;
+        this.laneIndex = laneIndex;
+    }
+
+    /**
+     * Sets the largest dimensions of any vehicle on the road.
+     * Must be called before {@link #findCollisions(Vehicle)} whenever the dimensions may have changed.
+     * 
+     * @param maxWidth The largest width (in direction of travel)
+     * @param maxHeight The largest height (perpendicular to travel)
+     */
+    public void setMaxDimensions(double maxWidth, double maxHeight) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * Finds all indexed vehicles that collide with an indexed vehicle.
+     * The result is available through {@link #getCollision(int)} until the next call.
+     * 
+     * @param vehicle The vehicle to check
+     * @return The number of colliding vehicles
+     */
+    public int findCollisions(Vehicle vehicle) {
+        return findCollisions(vehicle, vehicle.getLane(), laneIndex.getAngle(vehicle));
+    }
+
+    /**
+     * Finds all indexed vehicles that would collide with a vehicle placed at the given lane and angle.
+     * The result is available through {@link #getCollision(int)} until the next call.
+     * 
+     * @param vehicle The vehicle to check; it is never reported as colliding with itself
+     * @param lane The lane to place the vehicle in
+     * @param angle The angle to place the vehicle at, normalized to [0, 2*PI)
+     * @return The number of colliding vehicles
+     */
+    public int findCollisions(Vehicle vehicle, int lane, double angle) {
+        hitCount = 0;
+
+        double radius = road.getLaneRadius(lane);
+
+        // Bodies taller than a lane can reach past the neighboring lanes
+        int reach = road.getLaneReach((vehicle.getHeight() + maxHeight) / 2);
+        int firstLane = Math.max(0, lane - reach);
+        int lastLane = Math.min(road.getLaneCount() - 1, lane + reach);
+        for (int otherLane = firstLane; otherLane <= lastLane; otherLane++) {
+            double otherRadius = road.getLaneRadius(otherLane);
+            if (Math.abs(radius - otherRadius) > (vehicle.getHeight() + maxHeight) / 2) {
+                continue;
+            }
+            int size = laneIndex.size(otherLane);
+            if (size == 0) {
+                continue;
+            }
+
+            // No vehicle further away than this window can overlap
+            double window = vehicle.getWidth() / 2 / radius + maxWidth / 2 / otherRadius;
+            int start = laneIndex.lowerBound(otherLane, angle);
+
+            // Walk forward from the angle
+            int visited = 0;
+            for (; visited < size; visited++) {
+                int slot = (start + visited) % size;
+                double otherAngle = laneIndex.getAngle(otherLane, slot);
+                if (LaneIndex.forwardAngle(angle, otherAngle) > window) {
+                    break;
+                }
+                check(vehicle, angle, radius, laneIndex.get(otherLane, slot), otherAngle, otherRadius);
+            }
+
+            // Walk backward from the angle, without visiting a vehicle twice
+            for (int i = 1; i <= size - visited; i++) {
+                int slot = (start - i + size) % size;
+                double otherAngle = laneIndex.getAngle(otherLane, slot);
+                if (LaneIndex.forwardAngle(otherAngle, angle) > window) {
+                    break;
+                }
+                check(vehicle, angle, radius, laneIndex.get(otherLane, slot), otherAngle, otherRadius);
+            }
+        }
+
+        return hitCount;
+    }
+
+    /**
+     * Gets a vehicle found by the last call to {@link #findCollisions(Vehicle)}.
+     * 
+     * @param i The number of the collision
+     * @return The colliding vehicle
+     */
+    public Vehicle getCollision(int i) {
+        return hits[i];
+    }
+
+    /**
+     * Gets the number of pairs of vehicles tested for overlap since the detector was created.
+     * 
+     * @return The number of pair checks
+     */
+    public long getPairChecks() {
+        return pairChecks;
+    }
+
+    /**
+     * Checks if two vehicles collide, using their cached angles.
+     * Meant for vehicles that are not indexed yet, such as a vehicle that is about to be placed.
+     * 
+     * @param a The first vehicle
+     * @param b The second vehicle
+     * @return true if the vehicles collide, false otherwise
+     */
+    public boolean collides(Vehicle a, Vehicle b) {
+        return overlaps(a.getAngle(), road.getLaneRadius(a.getLane()), a.getWidth(), a.getHeight(),
+                b.getAngle(), road.getLaneRadius(b.getLane()), b.getWidth(), b.getHeight());
+    }
+
+    /**
+     * Checks if two bodies tangent to the ring overlap.
+     * 
+     * @param angleA Angle of the center of the first body in radians
+     * @param radiusA Distance of the first body from the center of the road
+     * @param lengthA Length of the first body in direction of travel
+     * @param widthA Width of the first body perpendicular to travel
+     * @param angleB Angle of the center of the second body in radians
+     * @param radiusB Distance of the second body from the center of the road
+     * @param lengthB Length of the second body in direction of travel
+     * @param widthB Width of the second body perpendicular to travel
+     * @return true if the bodies overlap, false otherwise
+     */
+    public static boolean overlaps(double angleA, double radiusA, double lengthA, double widthA,
+                                   double angleB, double radiusB, double lengthB, double widthB) {
+        // The radial bands must overlap
+        if (Math.abs(radiusA - radiusB) > (widthA + widthB) / 2) {
+            return false;
+        }
+
+        // The arc intervals must overlap
+        double halfSpanA = lengthA / 2 / radiusA;
+        double halfSpanB = lengthB / 2 / radiusB;
+        return angularDistance(angleA, angleB) <= halfSpanA + halfSpanB;
+    }
+
+    /**
+     * Calculates the shorter angle between two angles.
+     * 
+     * @param a The first angle in radians
+     * @param b The second angle in radians
+     * @return The angle between them in [0, PI]
+     */
+    public static double angularDistance(double a, double b) {
+        double difference = Math.abs(a - b) % TWO_PI;
+        return Math.min(difference, TWO_PI - difference);
+    }
+
+    /**
+     * Records a collision if the candidate overlaps the vehicle.
+     */
+    private void check(Vehicle vehicle, double angle, double radius, Vehicle other, double otherAngle, double otherRadius) {
+        if (other == vehicle) {
+            return;
+        }
+        pairChecks++;
+        if (overlaps(angle, radius, vehicle.getWidth(), vehicle.getHeight(),
+                otherAngle, otherRadius, other.getWidth(), other.getHeight())) {
+            if (hitCount == hits.length) {
+                hits = Arrays.copyOf(hits, hits.length * 2);
+            }
+            hits[hitCount++] = other;
+        }
+    }
+}
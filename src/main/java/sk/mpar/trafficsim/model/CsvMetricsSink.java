@@ -0,0 +1,63 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes samples as comma-separated values, one row per sample and a group of columns per lane.
+ */
+class CsvMetricsSink implements MetricsSink {
+    private BufferedWriter writer;
+    private StringBuilder row = new StringBuilder();
+
+    /**
+     * Creates the file and writes the header row.
+     * 
+     * @param path The file to write
+     * @param laneCount The number of lanes of the road
+     * @throws IOException If the file cannot be created
+     */
+    CsvMetricsSink(Path path, int laneCount) throws IOException {
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        row.append("step,time,vehicles,lane_changes,lane_change_rate,dropped_before");
+        for (int lane = 0; lane < laneCount; lane++) {
+            for (String column : new String[] {"vehicles", "stopped", "mean_speed", "p10_speed", "p50_speed",
+                    "p90_speed", "density", "flow"}) {
+                row.append(",lane").append(lane).append('_').append(column);
+            }
+        }
+        writer.append(row).append('\n');
+    }
+
+    @Override
+    public void write(StepMetrics metrics, long droppedBefore) throws IOException {
+        row.setLength(0);
+        row.append(metrics.getStep()).append(',').append(metrics.getTime()).append(',')
+                .append(metrics.getVehicleCount()).append(',').append(metrics.getLaneChanges()).append(',')
+                .append(metrics.getLaneChangeRate()).append(',').append(droppedBefore);
+        for (int lane = 0; lane < metrics.getLaneCount(); lane++) {
+            row.append(',').append(metrics.getVehicles(lane))
+                    .append(',').append(metrics.getStopped(lane))
+                    .append(',').append(metrics.getMeanSpeed(lane))
+                    .append(',').append(metrics.getP10Speed(lane))
+                    .append(',').append(metrics.getP50Speed(lane))
+                    .append(',').append(metrics.getP90Speed(lane))
+                    .append(',').append(metrics.getDensity(lane))
+                    .append(',').append(metrics.getFlow(lane));
+        }
+        writer.append(row).append('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,310 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Surroundings of the vehicle a {@link DrivingModel} decides for.
+ * 
+ * A context is reused for every vehicle of a step and only looks up what a model asks for, so a
+ * model that never looks at the lane next to it does not pay for it. The neighbours of a lane are
+ * looked up once per vehicle and cached. Distances are measured in the units of the velocity, so
+ * that a vehicle at velocity v covers a distance of v per second; gaps are measured from bumper to
+ * bumper. A context is not thread-safe; every thread deciding vehicles has its own.
+ */
+public final class DrivingContext {
+    private Road road;
+    private LaneIndex laneIndex;
+
+    // Vehicle being decided and where it is heading
+    private Vehicle vehicle;
+    private int lane;
+    private double angle;
+    private boolean changingLane;
+    private double timeStep;
+    private long step;
+
+    // Angle to the leader, or NaN until it is looked up
+    private double angleAhead;
+
+    // Neighbours per lane, valid while their stamp equals the stamp of the vehicle
+    private int stamp;
+    private int[] leaderStamps;
+    private Vehicle[] leaders;
+    private double[] leaderAngles;
+    private int[] followerStamps;
+    private Vehicle[] followers;
+    private double[] followerAngles;
+
+    /**
+     * Creates a context for the vehicles of a road.
+     * 
+     * @param road The road
+     * @param laneIndex The lane index of the vehicles
+     */
+    DrivingContext(Road road, LaneIndex laneIndex) {
+        this.road = road;
+        this.laneIndex = laneIndex;
+        int laneCount = road.getLaneCount();
+        leaderStamps = new int[laneCount];
+        leaders = new Vehicle[laneCount];
+        leaderAngles = new double[laneCount];
+        followerStamps = new int[laneCount];
+        followers = new Vehicle[laneCount];
+        followerAngles = new double[laneCount];
+    }
+
+    /**
+     * Prepares the context for the vehicles of a step.
+     * 
+     * @param timeStep The length of the step in seconds
+     * @param step The number of the step
+     */
+    void beginStep(double timeStep, long step) {
+        this.timeStep = timeStep;
+        this.step = step;
+    }
+
+    /**
+     * Points the context at the next vehicle.
+     * 
+     * @param vehicle The vehicle
+     * @param lane The lane the vehicle is in or heading for
+     * @param angle The indexed angle of the vehicle
+     * @param changingLane Whether the vehicle is in the middle of a lane change
+     */
+    void set(Vehicle vehicle, int lane, double angle, boolean changingLane) {
+        this.vehicle = vehicle;
+        this.lane = lane;
+        this.angle = angle;
+        this.changingLane = changingLane;
+        this.angleAhead = Double.NaN;
+
+        // Invalidate the cached neighbours; on overflow the old stamps could match again
+        if (++stamp == 0) {
+            Arrays.fill(leaderStamps, 0);
+            Arrays.fill(followerStamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Gets the angle from the center of the vehicle forward to the center of its leader in the lane
+     * it is heading for.
+     * 
+     * @return The angle in radians, or infinity if there is no leader
+     */
+    public double getAngleAhead() {
+        if (Double.isNaN(angleAhead)) {
+            angleAhead = lane == vehicle.getLane()
+                    ? laneIndex.getGapAhead(vehicle)
+                    : laneIndex.getGapAhead(lane, angle, vehicle);
+        }
+        return angleAhead;
+    }
+
+    /**
+     * Gets the closest vehicle ahead in a lane.
+     * 
+     * @param laneNumber The lane
+     * @return The leader, or null if the lane has no other vehicle
+     */
+    public Vehicle getLeader(int laneNumber) {
+        findLeader(laneNumber);
+        return leaders[laneNumber];
+    }
+
+    /**
+     * Gets the free distance to the closest vehicle ahead in a lane.
+     * 
+     * @param laneNumber The lane
+     * @return The gap, negative if the bodies overlap, or infinity if there is no leader
+     */
+    public double getGapAhead(int laneNumber) {
+        Vehicle leader = getLeader(laneNumber);
+        if (leader == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return toDistance(leaderAngles[laneNumber], laneNumber) - (vehicle.getWidth() + leader.getWidth()) / (2 * Vehicle.SPEED_MULTIPLIER);
+    }
+
+    /**
+     * Gets the closest vehicle behind in a lane.
+     * 
+     * @param laneNumber The lane
+     * @return The follower, or null if the lane has no other vehicle
+     */
+    public Vehicle getFollower(int laneNumber) {
+        findFollower(laneNumber);
+        return followers[laneNumber];
+    }
+
+    /**
+     * Gets the free distance to the closest vehicle behind in a lane.
+     * 
+     * @param laneNumber The lane
+     * @return The gap, negative if the bodies overlap, or infinity if there is no follower
+     */
+    public double getGapBehind(int laneNumber) {
+        Vehicle follower = getFollower(laneNumber);
+        if (follower == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return toDistance(followerAngles[laneNumber], laneNumber) - (vehicle.getWidth() + follower.getWidth()) / (2 * Vehicle.SPEED_MULTIPLIER);
+    }
+
+    /**
+     * Gets the free distance to the leader in the lane the vehicle is heading for.
+     * 
+     * @return The gap, or infinity if there is no leader
+     */
+    public double getGapAhead() {
+        return getGapAhead(lane);
+    }
+
+    /**
+     * Gets the velocity of the leader in the lane the vehicle is heading for.
+     * 
+     * @return The velocity, or the velocity of the vehicle itself if there is no leader
+     */
+    public double getLeaderVelocity() {
+        Vehicle leader = getLeader(lane);
+        return leader == null ? vehicle.getVelocity() : leader.getVelocity();
+    }
+
+    /**
+     * Gets the length of a vehicle in the distance units of the context.
+     * 
+     * @param other The vehicle
+     * @return The length
+     */
+    public double getLength(Vehicle other) {
+        return other.getWidth() / Vehicle.SPEED_MULTIPLIER;
+    }
+
+    /**
+     * Gets a pseudo-random number for the vehicle and the step.
+     * The number only depends on the vehicle and the step, so it is the same however the vehicles
+     * are distributed over threads and after a checkpoint is restored.
+     * 
+     * @return A number in [0, 1)
+     */
+    public double getNoise() {
+        // SplitMix64 finalizer over the handle and the step
+        long z = (vehicle.getHandle() * 0x9E3779B97F4A7C15L) ^ (step + 0x632BE59BD9B4E019L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Finds the leader of the vehicle in a lane, unless it is cached.
+     */
+    private void findLeader(int laneNumber) {
+        if (leaderStamps[laneNumber] == stamp) {
+            return;
+        }
+        leaderStamps[laneNumber] = stamp;
+        leaders[laneNumber] = null;
+        leaderAngles[laneNumber] = Double.POSITIVE_INFINITY;
+
+        // Vehicles at exactly the same angle are not ahead
+        int size = laneIndex.size(laneNumber);
+        int start = laneIndex.lowerBound(laneNumber, angle);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            Vehicle other = laneIndex.get(laneNumber, slot);
+            double otherAngle = laneIndex.getAngle(laneNumber, slot);
+            if (other != vehicle && otherAngle != angle) {
+                leaders[laneNumber] = other;
+                leaderAngles[laneNumber] = LaneIndex.forwardAngle(angle, otherAngle);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the follower of the vehicle in a lane, unless it is cached.
+     */
+    private void findFollower(int laneNumber) {
+        if (followerStamps[laneNumber] == stamp) {
+            return;
+        }
+        followerStamps[laneNumber] = stamp;
+        followers[laneNumber] = null;
+        followerAngles[laneNumber] = Double.POSITIVE_INFINITY;
+
+        // Vehicles at exactly the same angle are not behind
+        int size = laneIndex.size(laneNumber);
+        int start = laneIndex.lowerBound(laneNumber, angle);
+        for (int i = 1; i <= size; i++) {
+            int slot = (start - i + size) % size;
+            Vehicle other = laneIndex.get(laneNumber, slot);
+            double otherAngle = laneIndex.getAngle(laneNumber, slot);
+            if (other != vehicle && otherAngle != angle) {
+                followers[laneNumber] = other;
+                followerAngles[laneNumber] = LaneIndex.forwardAngle(otherAngle, angle);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Converts an angle along a lane into a distance.
+     */
+    private double toDistance(double angleAlong, int laneNumber) {
+        return angleAlong * road.getLaneRadius(laneNumber) / Vehicle.SPEED_MULTIPLIER;
+    }
+
+    // Getters
+
+    /**
+     * Gets the vehicle being decided.
+     * 
+     * @return The vehicle
+     */
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Gets the lane the vehicle is in, or is heading for if it already decided to change lanes.
+     * 
+     * @return The lane
+     */
+    public int getLane() {
+        return lane;
+    }
+
+    public Road getRoad() {
+        return road;
+    }
+
+    public int getLaneCount() {
+        return leaders.length;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+
+    public boolean isChangingLane() {
+        return changingLane;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    public double getVelocity() {
+        return vehicle.getVelocity();
+    }
+
+    public double getMaxVelocity() {
+        return vehicle.getProfile().getMaxVelocity();
+    }
+
+    public double getMaxAcceleration() {
+        return vehicle.getProfile().getAcceleration();
+    }
+}
@@ -0,0 +1,52 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Decides how a vehicle follows the traffic ahead of it and when it changes lanes.
+ * 
+ * A simulation assigns one model per vehicle type and asks it once per vehicle and step, after the
+ * rules of the road have been applied: vehicles leaving the road or hitting the obstacle or another
+ * vehicle are stopped by the simulation, and a lane change proposed by the model is only carried
+ * out if the gap in the target lane is free. Since a simulation has one model per vehicle type, every
+ * call site sees at most two implementations, which the JIT compiler inlines behind a type check;
+ * implementations should be final classes without state that changes during a step, so that the
+ * parallel update can call them from several threads at once.
+ */
+public interface DrivingModel {
+    /**
+     * Chooses the lane the vehicle would like to be in.
+     * Only called for vehicles that are not in the middle of a lane change.
+     * 
+     * @param context The surroundings of the vehicle
+     * @return The lane to change to, or the lane of the context to stay
+     */
+    int chooseLane(DrivingContext context);
+
+    /**
+     * Computes the acceleration of the vehicle in the lane of the context.
+     * 
+     * @param context The surroundings of the vehicle
+     * @return The acceleration, negative for braking
+     */
+    double getAcceleration(DrivingContext context);
+
+    /**
+     * Computes the acceleration of a vehicle that has to give way to the obstacle because it cannot
+     * change to a free lane.
+     * 
+     * @param context The surroundings of the vehicle
+     * @return The acceleration, negative for braking
+     */
+    double getBrakingAcceleration(DrivingContext context);
+
+    /**
+     * Checks if the lane changes chosen by the model are manoeuvres around an obstruction. A vehicle
+     * in such a manoeuvre is not asked for a lane again until it has returned to the inner lane after
+     * passing the obstacle. The default implementation returns false: lane changes are discretionary
+     * and the model is asked for a lane on every step.
+     * 
+     * @return true if chosen lane changes are manoeuvres, false otherwise
+     */
+    default boolean isEvasive() {
+        return false;
+    }
+}
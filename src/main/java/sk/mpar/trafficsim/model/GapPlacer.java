@@ -0,0 +1,386 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds free positions for new vehicles from the gaps between the vehicles in the lane index.
+ * 
+ * For a vehicle of a given size, every indexed vehicle whose radial band overlaps the lane blocks an
+ * interval of center angles, and the obstacle blocks another. The free gaps are the complement of the
+ * union of these intervals on the circle. A position is drawn uniformly from the total length of the
+ * free gaps, so a placement succeeds whenever any gap can hold the vehicle.
+ * 
+ * The gaps are collected once for a run of placements of the same size. Each placement then splits
+ * the gap it was drawn from around the new vehicle, and a tree of partial sums over the gap lengths
+ * finds the gap of a drawn point, so a run of n placements costs O(n log n) on top of collecting.
+ */
+class GapPlacer {
+    private static final double TWO_PI = 2 * Math.PI;
+
+    // Safety margin so that a placed vehicle never touches its neighbors
+    private static final double MARGIN = 1e-9;
+
+    // Runs shorter than this are sorted by insertion
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private Road road;
+    private LaneIndex laneIndex;
+
+    // Blocked intervals of center angles in the lane being examined
+    private double[] starts = new double[16];
+    private double[] ends = new double[16];
+    private int intervalCount;
+
+    // Free gaps of the collected lanes, as start angle, length and lane
+    private double[] gapStarts = new double[16];
+    private double[] gapLengths = new double[16];
+    private int[] gapLanes = new int[16];
+    private int gapCount;
+
+    // Partial sums of the gap lengths, 1-based, over a number of gaps that only depends on the gaps
+    // collected, so that the rounding of the sums does not depend on earlier placements; and the
+    // total length of the gaps
+    private double[] gapSums = new double[17];
+    private int sumCount;
+    private double total;
+
+    // Size and lanes of the vehicles the gaps were collected for
+    private int collectedLane;
+    private double length;
+    private double width;
+
+    // Largest height of the indexed and placed vehicles
+    private double maxHeight;
+
+    // Whether a placed vehicle can block the neighboring lanes, so the gaps have to be collected again
+    private boolean blocksNeighbors;
+    private boolean stale;
+
+    // Result of the last successful placement
+    private int placedLane;
+    private double placedAngle;
+
+    /**
+     * Creates a placer working on the lane index of a road.
+     * 
+     * @param road The road
+     * @param laneIndex The index of the vehicles on the road
+     */
+    GapPlacer(Road road, LaneIndex laneIndex) {
+        this.road = road;
+        this.laneIndex = laneIndex;
+    }
+
+    /**
+     * Collects the free gaps for vehicles of a given size, to be drawn from by {@link #place(Random)}.
+     * 
+     * @param lane The lane to place the vehicles in, or -1 for any lane
+     * @param length The length of the vehicles in direction of travel
+     * @param width The width of the vehicles perpendicular to travel
+     * @param maxHeight The largest height of the indexed vehicles, perpendicular to travel
+     */
+    void collect(int lane, double length, double width, double maxHeight) {
+        this.collectedLane = lane;
+        this.length = length;
+        this.width = width;
+        this.maxHeight = Math.max(maxHeight, width);
+
+        // Two vehicles of this size in neighboring lanes overlap if the lanes are narrower than them
+        blocksNeighbors = lane < 0 && road.getLaneCount() > 1 && road.getLaneWidth() <= width;
+
+        gapCount = 0;
+        int firstLane = lane < 0 ? 0 : lane;
+        int lastLane = lane < 0 ? road.getLaneCount() - 1 : lane;
+        for (int l = firstLane; l <= lastLane; l++) {
+            collectGaps(l);
+        }
+        sumCount = Math.max(16, Integer.highestOneBit(gapCount) << 2);
+        buildSums();
+        stale = false;
+    }
+
+    /**
+     * Finds a random free position for a vehicle of the size the gaps were collected for and takes
+     * the room of the vehicle out of the gaps. The position is available through
+     * {@link #getPlacedLane()} and {@link #getPlacedAngle()}. The placed vehicle must be added to the
+     * lane index before the next call.
+     * 
+     * @param random The source of randomness
+     * @return true if a free position was found, false if no gap can hold the vehicle
+     */
+    boolean place(Random random) {
+        if (stale) {
+            collect(collectedLane, length, width, maxHeight);
+        }
+        if (total <= 0) {
+            return false;
+        }
+
+        // Pick a point uniformly from the total length of the gaps
+        double point = random.nextDouble() * total;
+        int gap = findGap(point);
+        if (gap < 0) {
+            return false;
+        }
+        double offset = Math.max(0, Math.min(point - sumBefore(gap), gapLengths[gap]));
+        placedLane = gapLanes[gap];
+        placedAngle = VehicleStore.normalize(gapStarts[gap] + offset);
+
+        if (blocksNeighbors) {
+            stale = true;
+        } else {
+            split(gap, offset);
+        }
+        return true;
+    }
+
+    int getPlacedLane() {
+        return placedLane;
+    }
+
+    double getPlacedAngle() {
+        return placedAngle;
+    }
+
+    /**
+     * Adds the gaps of a lane that can hold the center of a vehicle of the collected size.
+     */
+    private void collectGaps(int lane) {
+        intervalCount = 0;
+        double radius = road.getLaneRadius(lane);
+        double halfSpan = length / 2 / radius;
+
+        // Vehicles in lanes whose radial band overlaps block the angles around them
+        int laneReach = road.getLaneReach((width + maxHeight) / 2);
+        int firstLane = Math.max(0, lane - laneReach);
+        int lastLane = Math.min(road.getLaneCount() - 1, lane + laneReach);
+        for (int otherLane = firstLane; otherLane <= lastLane; otherLane++) {
+            double otherRadius = road.getLaneRadius(otherLane);
+            for (int slot = 0; slot < laneIndex.size(otherLane); slot++) {
+                Vehicle other = laneIndex.get(otherLane, slot);
+                if (Math.abs(radius - otherRadius) > (width + other.getHeight()) / 2) {
+                    continue;
+                }
+                double reach = halfSpan + other.getWidth() / 2 / otherRadius + MARGIN;
+                addInterval(laneIndex.getAngle(otherLane, slot) - reach, 2 * reach);
+            }
+        }
+
+        // The obstacle blocks the angles where the L1 distance to its center is within its half diagonal
+        double slack = Road.OBSTACLE_SIZE / Math.sqrt(2)
+                - Math.max(0, Math.abs(radius - road.getObstacleRadius()) - width / 2);
+        if (road.hasObstacle() && slack >= 0) {
+            double reach = (length / 2 + slack) / road.getObstacleRadius() + MARGIN;
+            addInterval(road.getNormalizedObstacleAngle() - reach, 2 * reach);
+        }
+
+        if (intervalCount == 0) {
+            addGap(0, TWO_PI, lane);
+            return;
+        }
+
+        // Sort the intervals by start and sweep the circle once. Coverage that wraps past 2*PI
+        // continues at the beginning, so the sweep starts at the furthest end minus a full turn.
+        sortIntervals(0, intervalCount);
+        double coveredTo = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < intervalCount; i++) {
+            coveredTo = Math.max(coveredTo, ends[i]);
+        }
+        coveredTo -= TWO_PI;
+
+        for (int i = 0; i < intervalCount; i++) {
+            if (starts[i] > coveredTo) {
+                addGap(coveredTo, starts[i] - coveredTo, lane);
+            }
+            coveredTo = Math.max(coveredTo, ends[i]);
+        }
+    }
+
+    /**
+     * Takes the room of a vehicle placed at an offset into a gap out of the gap.
+     * 
+     * The centers of the intervals blocked around other vehicles and the obstacle are further apart
+     * than the room a placed vehicle blocks, so the room never reaches past the gap into the next one.
+     */
+    private void split(int gap, double offset) {
+        double radius = road.getLaneRadius(gapLanes[gap]);
+        double reach = length / radius + MARGIN;
+        double start = gapStarts[gap];
+        double gapLength = gapLengths[gap];
+
+        // A lane without any vehicle is a single gap around the whole circle
+        if (gapLength >= TWO_PI) {
+            gapStarts[gap] = start + offset + reach;
+            setLength(gap, Math.max(0, TWO_PI - 2 * reach));
+            return;
+        }
+
+        setLength(gap, Math.max(0, offset - reach));
+        double after = gapLength - offset - reach;
+        if (after > 0) {
+            if (gapCount == sumCount) {
+                sumCount *= 2;
+                buildSums();
+            }
+            addGap(start + offset + reach, 0, gapLanes[gap]);
+            setLength(gapCount - 1, after);
+        }
+    }
+
+    /**
+     * Sorts the blocked intervals in a range by start, keeping every end with its start.
+     */
+    private void sortIntervals(int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            // Partition around the median of the first, middle and last start
+            int middle = (from + to) >>> 1;
+            double a = starts[from];
+            double b = starts[middle];
+            double c = starts[to - 1];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (starts[i] < pivot) {
+                    i++;
+                }
+                while (starts[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swapIntervals(i++, j--);
+                }
+            }
+
+            // Recurse into the smaller part and loop over the larger one
+            if (j - from < to - i) {
+                sortIntervals(from, j + 1);
+                from = i;
+            } else {
+                sortIntervals(i, to);
+                to = j + 1;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            double start = starts[i];
+            double end = ends[i];
+            int j = i - 1;
+            while (j >= from && starts[j] > start) {
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+                j--;
+            }
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+        }
+    }
+
+    private void swapIntervals(int i, int j) {
+        double start = starts[i];
+        double end = ends[i];
+        starts[i] = starts[j];
+        ends[i] = ends[j];
+        starts[j] = start;
+        ends[j] = end;
+    }
+
+    /**
+     * Records a blocked interval, with its start normalized to [0, 2*PI).
+     */
+    private void addInterval(double start, double length) {
+        if (intervalCount == starts.length) {
+            starts = Arrays.copyOf(starts, intervalCount * 2);
+            ends = Arrays.copyOf(ends, intervalCount * 2);
+        }
+        double normalizedStart = VehicleStore.normalize(start);
+        starts[intervalCount] = normalizedStart;
+        ends[intervalCount] = normalizedStart + length;
+        intervalCount++;
+    }
+
+    /**
+     * Records a free gap of a lane. Gaps recorded after the partial sums are built have to get their
+     * length through {@link #setLength(int, double)}.
+     */
+    private void addGap(double start, double length, int lane) {
+        if (gapCount == gapStarts.length) {
+            gapStarts = Arrays.copyOf(gapStarts, gapCount * 2);
+            gapLengths = Arrays.copyOf(gapLengths, gapCount * 2);
+            gapLanes = Arrays.copyOf(gapLanes, gapCount * 2);
+        }
+        gapStarts[gapCount] = start;
+        gapLengths[gapCount] = length;
+        gapLanes[gapCount] = lane;
+        gapCount++;
+    }
+
+    /**
+     * Builds the partial sums of the gap lengths in linear time.
+     */
+    private void buildSums() {
+        if (gapSums.length <= sumCount) {
+            gapSums = new double[sumCount + 1];
+        }
+        Arrays.fill(gapSums, 0, sumCount + 1, 0);
+        total = 0;
+        for (int i = 1; i <= sumCount; i++) {
+            if (i <= gapCount) {
+                gapSums[i] += gapLengths[i - 1];
+                total += gapLengths[i - 1];
+            }
+            int parent = i + (i & -i);
+            if (parent <= sumCount) {
+                gapSums[parent] += gapSums[i];
+            }
+        }
+    }
+
+    /**
+     * Changes the length of a gap and the partial sums that include it.
+     */
+    private void setLength(int gap, double newLength) {
+        double delta = newLength - gapLengths[gap];
+        gapLengths[gap] = newLength;
+        total += delta;
+        for (int i = gap + 1; i <= sumCount; i += i & -i) {
+            gapSums[i] += delta;
+        }
+    }
+
+    /**
+     * Sums the lengths of the gaps before a gap.
+     */
+    private double sumBefore(int gap) {
+        double sum = 0;
+        for (int i = gap; i > 0; i -= i & -i) {
+            sum += gapSums[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the gap a point on the total length of the gaps falls into.
+     * 
+     * @return The gap, or -1 if all gaps are empty
+     */
+    private int findGap(double point) {
+        int position = 0;
+        double remaining = point;
+        for (int step = sumCount; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= sumCount && gapSums[next] <= remaining) {
+                position = next;
+                remaining -= gapSums[next];
+            }
+        }
+
+        // Rounding of the sums can point past the last gap or at an empty one
+        int gap = Math.min(position, gapCount - 1);
+        while (gap >= 0 && gapLengths[gap] <= 0) {
+            gap--;
+        }
+        return gap;
+    }
+}
@@ -0,0 +1,87 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Car-following model of Gipps.
+ * 
+ * After every reaction time a driver picks the lower of two velocities: the one reached by
+ * accelerating freely, and the highest one from which it can still stop behind the leader if the
+ * leader brakes as hard as the driver expects. The simulation integrates continuously, so the
+ * acceleration returned closes the difference to that velocity within one reaction time.
+ */
+public final class GippsModel extends CarFollowingModel {
+    public static final double DEFAULT_REACTION_TIME = 1.0;
+    public static final double DEFAULT_COMFORTABLE_DECELERATION = 1.5;
+    public static final double DEFAULT_MIN_GAP = 2.0;
+
+    private final double reactionTime;
+    private final double comfortableDeceleration;
+    private final double leaderDeceleration;
+    private final double minGap;
+
+    /**
+     * Creates the model with the default parameters and MOBIL lane changing.
+     */
+    public GippsModel() {
+        this(DEFAULT_REACTION_TIME, DEFAULT_COMFORTABLE_DECELERATION, DEFAULT_COMFORTABLE_DECELERATION,
+                DEFAULT_MIN_GAP, new MobilLaneChange());
+    }
+
+    /**
+     * Creates the model.
+     * 
+     * @param reactionTime The reaction time of the drivers in seconds
+     * @param comfortableDeceleration The deceleration a vehicle brakes with, positive
+     * @param leaderDeceleration The deceleration the drivers expect of their leaders, positive
+     * @param minGap The gap kept to a standing leader
+     * @param laneChange The lane-changing rule, or null to change lanes only to avoid the obstacle
+     */
+    public GippsModel(double reactionTime, double comfortableDeceleration, double leaderDeceleration,
+                      double minGap, MobilLaneChange laneChange) {
+        super(laneChange);
+        this.reactionTime = reactionTime;
+        this.comfortableDeceleration = comfortableDeceleration;
+        this.leaderDeceleration = leaderDeceleration;
+        this.minGap = minGap;
+    }
+
+    @Override
+    public double getAcceleration(double velocity, double maxVelocity, double maxAcceleration,
+                                  double gap, double leaderVelocity, double timeStep, double noise) {
+        double tau = reactionTime;
+
+        // Velocity reached by accelerating freely
+        double ratio = maxVelocity > 0 ? Math.max(0, velocity / maxVelocity) : 1;
+        double freeVelocity = velocity + 2.5 * maxAcceleration * tau * (1 - ratio) * Math.sqrt(0.025 + ratio);
+
+        // Highest velocity that still allows stopping behind the leader
+        double b = comfortableDeceleration;
+        double safeVelocity = Double.POSITIVE_INFINITY;
+        if (gap != Double.POSITIVE_INFINITY) {
+            double radicand = b * b * tau * tau
+                    + b * (2 * (gap - minGap) - velocity * tau + leaderVelocity * leaderVelocity / leaderDeceleration);
+            safeVelocity = radicand > 0 ? -b * tau + Math.sqrt(radicand) : 0;
+        }
+
+        double target = Math.max(0, Math.min(freeVelocity, safeVelocity));
+        return (target - velocity) / tau;
+    }
+
+    // Getters
+
+    @Override
+    public double getComfortableDeceleration() {
+        return comfortableDeceleration;
+    }
+
+    public double getReactionTime() {
+        return reactionTime;
+    }
+
+    public double getLeaderDeceleration() {
+        return leaderDeceleration;
+    }
+
+    public double getMinGap() {
+        return minGap;
+    }
+}
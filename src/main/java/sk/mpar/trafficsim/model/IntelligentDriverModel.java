@@ -0,0 +1,74 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Intelligent Driver Model of Treiber, Hennecke and Helbing.
+ * 
+ * The acceleration blends free-road acceleration towards the desired velocity with braking that
+ * keeps a desired gap, made of a minimum gap, a time headway and a term that grows when closing in
+ * on a slower leader. The maximum velocity and the acceleration come from the profile of the vehicle.
+ */
+public final class IntelligentDriverModel extends CarFollowingModel {
+    public static final double DEFAULT_MIN_GAP = 2.0;
+    public static final double DEFAULT_TIME_HEADWAY = 1.5;
+    public static final double DEFAULT_COMFORTABLE_DECELERATION = 1.5;
+
+    private final double minGap;
+    private final double timeHeadway;
+    private final double comfortableDeceleration;
+
+    /**
+     * Creates the model with the default parameters and MOBIL lane changing.
+     */
+    public IntelligentDriverModel() {
+        this(DEFAULT_MIN_GAP, DEFAULT_TIME_HEADWAY, DEFAULT_COMFORTABLE_DECELERATION, new MobilLaneChange());
+    }
+
+    /**
+     * Creates the model.
+     * 
+     * @param minGap The gap kept to a standing leader
+     * @param timeHeadway The time in seconds by which a vehicle follows its leader
+     * @param comfortableDeceleration The deceleration a vehicle is comfortable with, positive
+     * @param laneChange The lane-changing rule, or null to change lanes only to avoid the obstacle
+     */
+    public IntelligentDriverModel(double minGap, double timeHeadway, double comfortableDeceleration,
+                                  MobilLaneChange laneChange) {
+        super(laneChange);
+        this.minGap = minGap;
+        this.timeHeadway = timeHeadway;
+        this.comfortableDeceleration = comfortableDeceleration;
+    }
+
+    @Override
+    public double getAcceleration(double velocity, double maxVelocity, double maxAcceleration,
+                                  double gap, double leaderVelocity, double timeStep, double noise) {
+        // Free-road term with the usual exponent of 4
+        double ratio = maxVelocity > 0 ? velocity / maxVelocity : 1;
+        double ratio2 = ratio * ratio;
+        double free = 1 - ratio2 * ratio2;
+        if (gap == Double.POSITIVE_INFINITY) {
+            return maxAcceleration * free;
+        }
+
+        // Interaction term with the desired gap
+        double approach = velocity * (velocity - leaderVelocity) / (2 * Math.sqrt(maxAcceleration * comfortableDeceleration));
+        double desiredGap = minGap + Math.max(0, velocity * timeHeadway + approach);
+        double interaction = desiredGap / gap;
+        return maxAcceleration * (free - interaction * interaction);
+    }
+
+    // Getters
+
+    @Override
+    public double getComfortableDeceleration() {
+        return comfortableDeceleration;
+    }
+
+    public double getMinGap() {
+        return minGap;
+    }
+
+    public double getTimeHeadway() {
+        return timeHeadway;
+    }
+}
@@ -0,0 +1,108 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Implementations of the integration pass that advances the velocities and angles of all vehicles.
+ * 
+ * Both kernels perform the same operations in the same order, so they produce bit-identical states
+ * and a simulation can switch between them at any step. The positions are recalculated from the
+ * angles afterwards with {@link Math#cos} and {@link Math#sin} by the store, outside the kernel.
+ */
+public enum KinematicsKernel {
+    /**
+     * Plain loop over the slots, available on every runtime.
+     */
+    SCALAR {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void advance(double[] velocity, double[] acceleration, double[] maxVelocity,
+                            double[] angle, double[] laneRadius, int count, double deltaTime) {
+            advanceScalar(velocity, acceleration, maxVelocity, angle, laneRadius, 0, count, deltaTime);
+        }
+    },
+
+    /**
+     * Loop over as many slots at once as the widest vector registers of the processor hold, built on
+     * the incubating Vector API. Only available when the module {@code jdk.incubator.vector} has been
+     * added to the runtime, for example with {@code --add-modules jdk.incubator.vector}, and the
+     * processor has vectors of at least two doubles.
+     */
+    VECTOR {
+        @Override
+        public boolean isAvailable() {
+            return VECTOR_AVAILABLE;
+        }
+
+        @Override
+        public void advance(double[] velocity, double[] acceleration, double[] maxVelocity,
+                            double[] angle, double[] laneRadius, int count, double deltaTime) {
+            if (!VECTOR_AVAILABLE) {
+                throw new IllegalStateException("The Vector API is not available, add the module jdk.incubator.vector");
+            }
+            VectorKinematics.advance(velocity, acceleration, maxVelocity, angle, laneRadius, count, deltaTime);
+        }
+    };
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+    // Resolved once, so the vector classes are never loaded on a runtime without the module
+    private static final boolean VECTOR_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && VectorKinematics.isSupported();
+
+    /**
+     * Checks if the kernel can run on this runtime and processor.
+     * 
+     * @return true if the kernel is available, false otherwise
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Advances the vehicles in the first slots by one step: the velocity is changed by the
+     * acceleration and clamped between 0 and the maximum velocity, and the angle is advanced by the
+     * distance travelled along the lane and wrapped to [0, 2*PI).
+     * 
+     * @param velocity The velocities, updated in place
+     * @param acceleration The accelerations
+     * @param maxVelocity The maximum velocities
+     * @param angle The angles in radians, normalized to [0, 2*PI) and updated in place
+     * @param laneRadius The radii of the lanes of the vehicles
+     * @param count The number of slots to advance
+     * @param deltaTime Time elapsed since last update in seconds
+     * @throws IllegalStateException if the kernel is not available
+     */
+    public abstract void advance(double[] velocity, double[] acceleration, double[] maxVelocity,
+                                 double[] angle, double[] laneRadius, int count, double deltaTime);
+
+    /**
+     * Gets the fastest kernel available on this runtime.
+     * 
+     * @return {@link #VECTOR} if it is available, {@link #SCALAR} otherwise
+     */
+    public static KinematicsKernel getDefault() {
+        return VECTOR_AVAILABLE ? VECTOR : SCALAR;
+    }
+
+    /**
+     * Advances a range of slots one at a time. Also finishes the slots the vector kernel leaves over.
+     * 
+     * @param from The first slot, inclusive
+     * @param to The last slot, exclusive
+     */
+    static void advanceScalar(double[] velocity, double[] acceleration, double[] maxVelocity,
+                              double[] angle, double[] laneRadius, int from, int to, double deltaTime) {
+        for (int slot = from; slot < to; slot++) {
+            // Update velocity based on acceleration and clamp it between 0 and the maximum velocity
+            double v = velocity[slot] + acceleration[slot] * deltaTime;
+            v = Math.max(0, Math.min(v, maxVelocity[slot]));
+            velocity[slot] = v;
+
+            // The angle change depends on the velocity and the radius of the lane
+            // Smaller radius means the vehicle needs to turn more to travel the same distance
+            double a = angle[slot] + (v * deltaTime * Vehicle.SPEED_MULTIPLIER) / laneRadius[slot];
+            angle[slot] = a < TWO_PI ? a : a % TWO_PI;
+        }
+    }
+}
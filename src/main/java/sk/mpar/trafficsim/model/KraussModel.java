@@ -0,0 +1,73 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Car-following model of Krauß, as used by SUMO.
+ * 
+ * A driver heads for the highest velocity that is reachable within the step, does not exceed the
+ * desired velocity and is safe behind the leader, and then dawdles: it falls short of that velocity
+ * by a random part of one step of acceleration, scaled by the imperfection. The randomness comes from
+ * the context, so runs stay reproducible and independent of the number of threads.
+ */
+public final class KraussModel extends CarFollowingModel {
+    public static final double DEFAULT_REACTION_TIME = 1.0;
+    public static final double DEFAULT_COMFORTABLE_DECELERATION = 1.5;
+    public static final double DEFAULT_IMPERFECTION = 0.5;
+
+    private final double reactionTime;
+    private final double comfortableDeceleration;
+    private final double imperfection;
+
+    /**
+     * Creates the model with the default parameters and MOBIL lane changing.
+     */
+    public KraussModel() {
+        this(DEFAULT_REACTION_TIME, DEFAULT_COMFORTABLE_DECELERATION, DEFAULT_IMPERFECTION, new MobilLaneChange());
+    }
+
+    /**
+     * Creates the model.
+     * 
+     * @param reactionTime The reaction time of the drivers in seconds
+     * @param comfortableDeceleration The deceleration a vehicle brakes with, positive
+     * @param imperfection The dawdling of the drivers between 0 (none) and 1
+     * @param laneChange The lane-changing rule, or null to change lanes only to avoid the obstacle
+     */
+    public KraussModel(double reactionTime, double comfortableDeceleration, double imperfection,
+                       MobilLaneChange laneChange) {
+        super(laneChange);
+        this.reactionTime = reactionTime;
+        this.comfortableDeceleration = comfortableDeceleration;
+        this.imperfection = imperfection;
+    }
+
+    @Override
+    public double getAcceleration(double velocity, double maxVelocity, double maxAcceleration,
+                                  double gap, double leaderVelocity, double timeStep, double noise) {
+        // Safe velocity behind the leader
+        double safeVelocity = Double.POSITIVE_INFINITY;
+        if (gap != Double.POSITIVE_INFINITY) {
+            safeVelocity = leaderVelocity + (gap - leaderVelocity * reactionTime)
+                    / ((velocity + leaderVelocity) / (2 * comfortableDeceleration) + reactionTime);
+        }
+
+        // Desired velocity, less the dawdling
+        double desired = Math.min(Math.min(maxVelocity, velocity + maxAcceleration * timeStep), safeVelocity);
+        double target = Math.max(0, desired - imperfection * maxAcceleration * timeStep * noise);
+        return (target - velocity) / timeStep;
+    }
+
+    // Getters
+
+    @Override
+    public double getComfortableDeceleration() {
+        return comfortableDeceleration;
+    }
+
+    public double getReactionTime() {
+        return reactionTime;
+    }
+
+    public double getImperfection() {
+        return imperfection;
+    }
+}
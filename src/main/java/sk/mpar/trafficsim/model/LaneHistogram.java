@@ -0,0 +1,95 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Number and mean speed of the vehicles in equal angular bins of every lane.
+ * Built in a single pass over the vehicle store, independently of how many vehicles share a bin.
+ */
+public class LaneHistogram {
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private int laneCount;
+    private int binCount;
+
+    // Per-bin values, indexed by lane * binCount + bin
+    private int[] counts;
+    private double[] speedSums;
+    private int maxCount;
+
+    /**
+     * Creates an empty histogram.
+     * 
+     * @param laneCount The number of lanes
+     * @param binCount The number of angular bins per lane
+     */
+    public LaneHistogram(int laneCount, int binCount) {
+        this.laneCount = laneCount;
+        this.binCount = binCount;
+        this.counts = new int[laneCount * binCount];
+        this.speedSums = new double[laneCount * binCount];
+    }
+
+    /**
+     * Rebuilds the histogram from the current state of a store.
+     * 
+     * @param store The store holding the vehicles
+     */
+    public void update(VehicleStore store) {
+        Arrays.fill(counts, 0);
+        Arrays.fill(speedSums, 0);
+        maxCount = 0;
+
+        for (int slot = 0; slot < store.size(); slot++) {
+            int lane = store.lane[slot];
+            if (lane < 0 || lane >= laneCount) {
+                continue;
+            }
+            int bin = Math.min(binCount - 1, (int) (store.angle[slot] / TWO_PI * binCount));
+            int i = lane * binCount + bin;
+            counts[i]++;
+            speedSums[i] += store.velocity[slot];
+            maxCount = Math.max(maxCount, counts[i]);
+        }
+    }
+
+    /**
+     * Gets the number of vehicles in a bin.
+     * 
+     * @param lane The lane
+     * @param bin The bin, counted from angle 0 in direction of travel
+     * @return The number of vehicles
+     */
+    public int getCount(int lane, int bin) {
+        return counts[lane * binCount + bin];
+    }
+
+    /**
+     * Gets the mean velocity of the vehicles in a bin.
+     * 
+     * @param lane The lane
+     * @param bin The bin, counted from angle 0 in direction of travel
+     * @return The mean velocity, or 0 if the bin is empty
+     */
+    public double getMeanSpeed(int lane, int bin) {
+        int i = lane * binCount + bin;
+        return counts[i] == 0 ? 0 : speedSums[i] / counts[i];
+    }
+
+    /**
+     * Gets the largest number of vehicles in any bin.
+     * 
+     * @return The largest count
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+}
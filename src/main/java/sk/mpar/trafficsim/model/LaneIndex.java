@@ -0,0 +1,605 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Per-lane index of vehicles ordered by their angular position on the ring.
+ * 
+ * Every lane of the road has an index of its own, so lookups and lane-change checks only touch
+ * the lanes they ask about, however wide the road is. The index is refreshed once per step.
+ * Vehicles only move forward by a small angle per step, so the lanes stay nearly sorted and an
+ * insertion sort restores the order in linear time. Leader and follower lookups are O(1) and gap
+ * checks in a lane are O(log n).
+ * 
+ * A vehicle whose lane is not a lane of the road is off the road. It is kept apart from the lanes,
+ * takes no part in any lookup, and joins its lane again once it is moved back onto the road.
+ */
+public class LaneIndex {
+    private static final double TWO_PI = 2 * Math.PI;
+
+    // Indexed lane of the vehicles that are off the road
+    private static final int OFF_ROAD = -2;
+
+    // Runs of moved vehicles shorter than this are sorted by insertion before they are merged
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private Road road;
+    private Lane[] lanes;
+
+    // Vehicles found in the wrong lane during a refresh, their angles, and room for merging them
+    private Vehicle[] moved = new Vehicle[16];
+    private double[] movedAngles = new double[16];
+    private Vehicle[] mergedMoved = new Vehicle[16];
+    private double[] mergedMovedAngles = new double[16];
+
+    // Vehicles off the road, in no particular order
+    private Vehicle[] offRoad = new Vehicle[16];
+    private int offRoadCount;
+
+    /**
+     * Creates an empty index for the lanes of a road.
+     * 
+     * @param road The road whose lanes are indexed
+     * @param laneCount The number of lanes
+     */
+    public LaneIndex(Road road, int laneCount) {
+        this.road = road;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Adds a vehicle to the lane it is currently in.
+     * 
+     * @param vehicle The vehicle to add
+     */
+    public void add(Vehicle vehicle) {
+        insert(vehicle, vehicle.getAngle());
+    }
+
+    /**
+     * Removes a vehicle from the index.
+     * 
+     * @param vehicle The vehicle to remove
+     */
+    public void remove(Vehicle vehicle) {
+        if (vehicle.indexedLane == OFF_ROAD) {
+            removeOffRoad(vehicle);
+            return;
+        }
+        if (vehicle.indexedLane < 0) {
+            return;
+        }
+        Lane lane = lanes[vehicle.indexedLane];
+        int slot = vehicle.indexedSlot;
+        System.arraycopy(lane.vehicles, slot + 1, lane.vehicles, slot, lane.size - slot - 1);
+        System.arraycopy(lane.angles, slot + 1, lane.angles, slot, lane.size - slot - 1);
+        lane.size--;
+        lane.vehicles[lane.size] = null;
+        lane.renumber(slot, lane.size);
+        vehicle.indexedLane = -1;
+    }
+
+    /**
+     * Moves a vehicle to the lane it is currently in, keeping its indexed angle.
+     * Must be called after the lane of a vehicle has changed.
+     * 
+     * @param vehicle The vehicle that changed lane
+     */
+    public void reindex(Vehicle vehicle) {
+        if (vehicle.indexedLane == indexedLaneOf(vehicle.getLane())) {
+            return;
+        }
+        double angle = vehicle.indexedLane >= 0 ? getAngle(vehicle) : vehicle.getAngle();
+        remove(vehicle);
+        insert(vehicle, angle);
+    }
+
+    /**
+     * Brings the index up to date after the vehicles have moved.
+     */
+    public void refresh() {
+        // Vehicles whose lane was changed outside of the index leave their old lane in one pass per lane
+        int movedCount = 0;
+        for (int l = 0; l < lanes.length; l++) {
+            Lane lane = lanes[l];
+            int kept = 0;
+            for (int i = 0; i < lane.size; i++) {
+                Vehicle vehicle = lane.vehicles[i];
+                if (vehicle.getLane() == l) {
+                    lane.vehicles[kept++] = vehicle;
+                } else if (isLane(vehicle.getLane())) {
+                    movedCount = addMoved(vehicle, movedCount);
+                } else {
+                    addOffRoad(vehicle);
+                }
+            }
+            Arrays.fill(lane.vehicles, kept, lane.size, null);
+            lane.size = kept;
+        }
+
+        // Vehicles moved back onto the road join their lanes with the others
+        for (int i = offRoadCount - 1; i >= 0; i--) {
+            Vehicle vehicle = offRoad[i];
+            if (isLane(vehicle.getLane())) {
+                removeOffRoad(vehicle);
+                movedCount = addMoved(vehicle, movedCount);
+            }
+        }
+
+        for (Lane lane : lanes) {
+            for (int i = 0; i < lane.size; i++) {
+                lane.angles[i] = lane.vehicles[i].getAngle();
+            }
+            lane.sort();
+        }
+
+        // The moved vehicles join their new lanes, sorted by angle and merged in linear time
+        if (movedCount > 0) {
+            sortMoved(movedCount);
+            for (int i = 0; i < movedCount; i++) {
+                Vehicle vehicle = moved[i];
+                lanes[vehicle.getLane()].append(vehicle, movedAngles[i]);
+                vehicle.indexedLane = vehicle.getLane();
+                moved[i] = null;
+            }
+            for (Lane lane : lanes) {
+                lane.mergeAppended();
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of a lane with vehicles in a known order, as saved in a checkpoint.
+     * 
+     * @param laneNumber The lane
+     * @param vehicles The vehicles in index order
+     * @param angles The indexed angles of the vehicles
+     * @param count The number of vehicles
+     */
+    void restore(int laneNumber, Vehicle[] vehicles, double[] angles, int count) {
+        Lane lane = lanes[laneNumber];
+        lane.vehicles = Arrays.copyOf(vehicles, Math.max(16, count));
+        lane.angles = Arrays.copyOf(angles, Math.max(16, count));
+        lane.size = count;
+        for (int i = 0; i < count; i++) {
+            vehicles[i].indexedLane = laneNumber;
+        }
+        lane.renumber(0, count);
+    }
+
+    /**
+     * Gets the indexed angle of a vehicle.
+     * 
+     * @param vehicle The vehicle
+     * @return The angle in radians, normalized to [0, 2*PI)
+     */
+    public double getAngle(Vehicle vehicle) {
+        return lanes[vehicle.indexedLane].angles[vehicle.indexedSlot];
+    }
+
+    /**
+     * Finds the closest vehicle ahead in the same lane.
+     * 
+     * @param vehicle The vehicle to find the leader of
+     * @return The leader, or null if the vehicle is alone in its lane
+     */
+    public Vehicle getLeader(Vehicle vehicle) {
+        Lane lane = lanes[vehicle.indexedLane];
+        double angle = lane.angles[vehicle.indexedSlot];
+
+        // Vehicles at exactly the same angle are not ahead
+        for (int i = 1; i < lane.size; i++) {
+            int slot = (vehicle.indexedSlot + i) % lane.size;
+            if (lane.angles[slot] != angle) {
+                return lane.vehicles[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the closest vehicle behind in the same lane.
+     * 
+     * @param vehicle The vehicle to find the follower of
+     * @return The follower, or null if the vehicle is alone in its lane
+     */
+    public Vehicle getFollower(Vehicle vehicle) {
+        Lane lane = lanes[vehicle.indexedLane];
+        double angle = lane.angles[vehicle.indexedSlot];
+
+        for (int i = 1; i < lane.size; i++) {
+            int slot = (vehicle.indexedSlot - i + lane.size) % lane.size;
+            if (lane.angles[slot] != angle) {
+                return lane.vehicles[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calculates the angle from a vehicle forward to its leader.
+     * 
+     * @param vehicle The vehicle
+     * @return The angle to the leader in radians, or infinity if there is no leader
+     */
+    public double getGapAhead(Vehicle vehicle) {
+        Vehicle leader = getLeader(vehicle);
+        if (leader == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return forwardAngle(getAngle(vehicle), getAngle(leader));
+    }
+
+    /**
+     * Calculates the angle from a position in a lane forward to the closest vehicle ahead of it.
+     * Vehicles at exactly the same angle are not ahead.
+     * 
+     * @param laneNumber The lane
+     * @param angle The position, normalized to [0, 2*PI)
+     * @param exclude A vehicle to ignore, or null
+     * @return The angle to the closest vehicle ahead in radians, or infinity if there is none
+     */
+    public double getGapAhead(int laneNumber, double angle, Vehicle exclude) {
+        Lane lane = lanes[laneNumber];
+        int start = lane.lowerBound(angle);
+        for (int i = 0; i < lane.size; i++) {
+            int slot = (start + i) % lane.size;
+            if (lane.vehicles[slot] != exclude && lane.angles[slot] != angle) {
+                return forwardAngle(angle, lane.angles[slot]);
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Checks that no vehicle in a lane is closer to an angle than the given window, in either direction.
+     * 
+     * @param laneNumber The lane to check
+     * @param angle The angle to check around, normalized to [0, 2*PI)
+     * @param window The minimum angle to the closest vehicle
+     * @param exclude A vehicle to ignore, or null
+     * @return true if the lane is free around the angle, false otherwise
+     */
+    public boolean isGapFree(int laneNumber, double angle, double window, Vehicle exclude) {
+        return isGapFree(laneNumber, angle, window, exclude, null);
+    }
+
+    /**
+     * Checks that no vehicle in a lane is closer to an angle than the given window, ignoring two vehicles.
+     * 
+     * @param laneNumber The lane to check
+     * @param angle The angle to check around, normalized to [0, 2*PI)
+     * @param window The minimum angle to the closest vehicle
+     * @param exclude A vehicle to ignore, or null
+     * @param otherExclude Another vehicle to ignore, or null
+     * @return true if the lane is free around the angle, false otherwise
+     */
+    public boolean isGapFree(int laneNumber, double angle, double window, Vehicle exclude, Vehicle otherExclude) {
+        Lane lane = lanes[laneNumber];
+        if (lane.size == 0) {
+            return true;
+        }
+        int start = lane.lowerBound(angle);
+
+        // Walk forward from the angle while the vehicles are within the window
+        for (int i = 0; i < lane.size; i++) {
+            int slot = (start + i) % lane.size;
+            if (forwardAngle(angle, lane.angles[slot]) >= window) {
+                break;
+            }
+            if (lane.vehicles[slot] != exclude && lane.vehicles[slot] != otherExclude) {
+                return false;
+            }
+        }
+
+        // Walk backward from the angle while the vehicles are within the window
+        for (int i = 1; i <= lane.size; i++) {
+            int slot = (start - i + lane.size) % lane.size;
+            if (forwardAngle(lane.angles[slot], angle) >= window) {
+                break;
+            }
+            if (lane.vehicles[slot] != exclude && lane.vehicles[slot] != otherExclude) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of vehicles in a lane.
+     * 
+     * @param laneNumber The lane
+     * @return The number of vehicles in the lane
+     */
+    public int size(int laneNumber) {
+        return lanes[laneNumber].size;
+    }
+
+    /**
+     * Gets the vehicle at a position of a lane, in order of increasing angle.
+     * 
+     * @param laneNumber The lane
+     * @param slot The position in the lane
+     * @return The vehicle
+     */
+    public Vehicle get(int laneNumber, int slot) {
+        return lanes[laneNumber].vehicles[slot];
+    }
+
+    /**
+     * Gets the indexed angle at a position of a lane.
+     * 
+     * @param laneNumber The lane
+     * @param slot The position in the lane
+     * @return The angle in radians, normalized to [0, 2*PI)
+     */
+    public double getAngle(int laneNumber, int slot) {
+        return lanes[laneNumber].angles[slot];
+    }
+
+    /**
+     * Finds the first position of a lane whose angle is not smaller than the given angle.
+     * 
+     * @param laneNumber The lane
+     * @param angle The angle, normalized to [0, 2*PI)
+     * @return The position, equal to the size of the lane if all angles are smaller
+     */
+    public int lowerBound(int laneNumber, double angle) {
+        return lanes[laneNumber].lowerBound(angle);
+    }
+
+    /**
+     * Calculates the angle travelled forward from one angle to another.
+     * 
+     * @param from The start angle, normalized to [0, 2*PI)
+     * @param to The end angle, normalized to [0, 2*PI)
+     * @return The forward angle in [0, 2*PI)
+     */
+    static double forwardAngle(double from, double to) {
+        double difference = to - from;
+        return difference < 0 ? difference + TWO_PI : difference;
+    }
+
+    /**
+     * Checks if a lane is a lane of the road.
+     */
+    private boolean isLane(int laneNumber) {
+        return laneNumber >= 0 && laneNumber < lanes.length;
+    }
+
+    /**
+     * Gets the indexed lane of a vehicle in a lane, which is {@link #OFF_ROAD} off the road.
+     */
+    private int indexedLaneOf(int laneNumber) {
+        return isLane(laneNumber) ? laneNumber : OFF_ROAD;
+    }
+
+    /**
+     * Adds a vehicle to the vehicles to join a new lane, returning their new count.
+     */
+    private int addMoved(Vehicle vehicle, int movedCount) {
+        if (movedCount == moved.length) {
+            moved = Arrays.copyOf(moved, movedCount * 2);
+            movedAngles = Arrays.copyOf(movedAngles, movedCount * 2);
+        }
+        moved[movedCount] = vehicle;
+        movedAngles[movedCount] = vehicle.getAngle();
+        return movedCount + 1;
+    }
+
+    /**
+     * Sorts the moved vehicles by angle on their primitive angles. Vehicles at the same angle keep
+     * the order they were found in: short runs are sorted by insertion and then merged pairwise.
+     */
+    private void sortMoved(int count) {
+        for (int from = 0; from < count; from += INSERTION_SORT_THRESHOLD) {
+            int to = Math.min(count, from + INSERTION_SORT_THRESHOLD);
+            for (int i = from + 1; i < to; i++) {
+                double angle = movedAngles[i];
+                Vehicle vehicle = moved[i];
+                int j = i - 1;
+                while (j >= from && movedAngles[j] > angle) {
+                    movedAngles[j + 1] = movedAngles[j];
+                    moved[j + 1] = moved[j];
+                    j--;
+                }
+                movedAngles[j + 1] = angle;
+                moved[j + 1] = vehicle;
+            }
+        }
+        if (count <= INSERTION_SORT_THRESHOLD) {
+            return;
+        }
+
+        if (mergedMoved.length < count) {
+            mergedMoved = new Vehicle[moved.length];
+            mergedMovedAngles = new double[moved.length];
+        }
+        for (int run = INSERTION_SORT_THRESHOLD; run < count; run *= 2) {
+            for (int from = 0; from < count; from += 2 * run) {
+                int middle = Math.min(count, from + run);
+                int to = Math.min(count, from + 2 * run);
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    if (right >= to || (left < middle && movedAngles[left] <= movedAngles[right])) {
+                        mergedMoved[i] = moved[left];
+                        mergedMovedAngles[i] = movedAngles[left++];
+                    } else {
+                        mergedMoved[i] = moved[right];
+                        mergedMovedAngles[i] = movedAngles[right++];
+                    }
+                }
+            }
+
+            // The merged runs become the input of the next pass
+            Vehicle[] vehicles = moved;
+            moved = mergedMoved;
+            mergedMoved = vehicles;
+            double[] angles = movedAngles;
+            movedAngles = mergedMovedAngles;
+            mergedMovedAngles = angles;
+        }
+        Arrays.fill(mergedMoved, 0, count, null);
+    }
+
+    /**
+     * Adds a vehicle to the vehicles off the road; its indexed slot is its position among them.
+     */
+    private void addOffRoad(Vehicle vehicle) {
+        if (offRoadCount == offRoad.length) {
+            offRoad = Arrays.copyOf(offRoad, offRoadCount * 2);
+        }
+        offRoad[offRoadCount] = vehicle;
+        vehicle.indexedLane = OFF_ROAD;
+        vehicle.indexedSlot = offRoadCount++;
+    }
+
+    /**
+     * Removes a vehicle from the vehicles off the road, moving the last one into its place.
+     */
+    private void removeOffRoad(Vehicle vehicle) {
+        int slot = vehicle.indexedSlot;
+        Vehicle last = offRoad[--offRoadCount];
+        offRoad[slot] = last;
+        last.indexedSlot = slot;
+        offRoad[offRoadCount] = null;
+        vehicle.indexedLane = -1;
+    }
+
+    /**
+     * Inserts a vehicle into its current lane at the given angle, or among the vehicles off the road.
+     */
+    private void insert(Vehicle vehicle, double angle) {
+        if (!isLane(vehicle.getLane())) {
+            addOffRoad(vehicle);
+            return;
+        }
+        Lane lane = lanes[vehicle.getLane()];
+        lane.ensureCapacity(lane.size + 1);
+        int slot = lane.lowerBound(angle);
+        System.arraycopy(lane.vehicles, slot, lane.vehicles, slot + 1, lane.size - slot);
+        System.arraycopy(lane.angles, slot, lane.angles, slot + 1, lane.size - slot);
+        lane.vehicles[slot] = vehicle;
+        lane.angles[slot] = angle;
+        lane.size++;
+        vehicle.indexedLane = vehicle.getLane();
+        lane.renumber(slot, lane.size);
+    }
+
+    /**
+     * Vehicles of a single lane sorted by angle, with the angles kept in a parallel array.
+     */
+    private static class Lane {
+        private Vehicle[] vehicles = new Vehicle[16];
+        private double[] angles = new double[16];
+        private int size;
+
+        // Start of the vehicles appended after the sorted ones, and scratch space for merging them
+        private int appendedFrom = -1;
+        private Vehicle[] mergedVehicles = new Vehicle[0];
+        private double[] mergedAngles = new double[0];
+
+        void ensureCapacity(int capacity) {
+            if (capacity > vehicles.length) {
+                int newLength = Math.max(capacity, vehicles.length * 2);
+                vehicles = Arrays.copyOf(vehicles, newLength);
+                angles = Arrays.copyOf(angles, newLength);
+            }
+        }
+
+        /**
+         * Finds the first slot whose angle is not smaller than the given angle.
+         */
+        int lowerBound(double angle) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (angles[middle] < angle) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Restores the order after the angles have changed slightly.
+         */
+        void sort() {
+            for (int i = 1; i < size; i++) {
+                double angle = angles[i];
+                if (angle >= angles[i - 1]) {
+                    continue;
+                }
+                Vehicle vehicle = vehicles[i];
+                int j = i - 1;
+                while (j >= 0 && angles[j] > angle) {
+                    angles[j + 1] = angles[j];
+                    vehicles[j + 1] = vehicles[j];
+                    j--;
+                }
+                angles[j + 1] = angle;
+                vehicles[j + 1] = vehicle;
+            }
+            renumber(0, size);
+        }
+
+        /**
+         * Adds a vehicle after the sorted ones, to be merged by {@link #mergeAppended()}.
+         * Vehicles must be appended in order of their angles.
+         */
+        void append(Vehicle vehicle, double angle) {
+            if (appendedFrom < 0) {
+                appendedFrom = size;
+            }
+            ensureCapacity(size + 1);
+            vehicles[size] = vehicle;
+            angles[size] = angle;
+            size++;
+        }
+
+        /**
+         * Merges the appended vehicles into the sorted ones. Vehicles at the same angle keep the
+         * appended ones first, as an insertion at the lower bound would.
+         */
+        void mergeAppended() {
+            if (appendedFrom < 0) {
+                return;
+            }
+            if (mergedVehicles.length < size) {
+                mergedVehicles = new Vehicle[vehicles.length];
+                mergedAngles = new double[vehicles.length];
+            }
+            int sorted = 0;
+            int appended = appendedFrom;
+            for (int i = 0; i < size; i++) {
+                boolean takeAppended = appended < size
+                        && (sorted >= appendedFrom || angles[appended] <= angles[sorted]);
+                int from = takeAppended ? appended++ : sorted++;
+                mergedVehicles[i] = vehicles[from];
+                mergedAngles[i] = angles[from];
+            }
+            System.arraycopy(mergedVehicles, 0, vehicles, 0, size);
+            System.arraycopy(mergedAngles, 0, angles, 0, size);
+            Arrays.fill(mergedVehicles, 0, size, null);
+            appendedFrom = -1;
+            renumber(0, size);
+        }
+
+        /**
+         * Stores the slot of each vehicle in the given range in the vehicle.
+         */
+        void renumber(int from, int to) {
+            for (int i = from; i < to; i++) {
+                vehicles[i].indexedSlot = i;
+            }
+        }
+    }
+}
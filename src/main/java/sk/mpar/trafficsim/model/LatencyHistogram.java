@@ -0,0 +1,153 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with a bounded relative error, in the style of HdrHistogram.
+ * 
+ * Values below 128 ns have a bucket each. Above that, every power of two is split into 64 buckets of
+ * equal width, so a value is reported within 1/64 (about 1.6%) of its actual size over the whole range
+ * of a long. Recording is a few shifts and an increment and never allocates, so durations can be
+ * recorded on every step and every frame. A histogram is not thread-safe; readers on other threads
+ * work on a {@link #copy()} taken on the recording thread.
+ */
+public class LatencyHistogram {
+    // Number of low bits that select the bucket within a power of two
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // Enough buckets for every non-negative long
+    private static final int BUCKET_COUNT = indexOf(Long.MAX_VALUE) + 1;
+
+    private long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a duration.
+     * 
+     * @param nanos The duration in nanoseconds; negative durations are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Gets the duration below or at which a percentage of the recorded durations lie.
+     * The result is the upper end of the bucket holding the percentile, capped at the maximum.
+     * 
+     * @param percentile The percentile between 0 and 100
+     * @return The duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * totalCount));
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return Math.min(max, highestValueOf(index));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     * 
+     * @return The count
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * Gets the shortest recorded duration.
+     * 
+     * @return The duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * Gets the longest recorded duration.
+     * 
+     * @return The duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the exact mean of the recorded durations.
+     * 
+     * @return The mean in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * Forgets all recorded durations.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Creates an independent copy of the histogram.
+     * 
+     * @return The copy
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKET_COUNT);
+        copy.totalCount = totalCount;
+        copy.sum = sum;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    /**
+     * Gets the bucket of a non-negative value.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // Shift the value so that its highest bit lands in the upper half of the sub-buckets
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT
+                + (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Gets the largest value that falls into a bucket.
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
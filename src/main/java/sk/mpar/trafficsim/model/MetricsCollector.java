@@ -0,0 +1,108 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Computes {@link StepMetrics} from the current state of a simulation.
+ * 
+ * The vehicles are distributed over the lanes in a single pass over the vehicle store; the speed
+ * percentiles then sort the speeds of every lane in buffers that are reused between samples.
+ * A collector remembers the lane-change count of its previous sample, so it serves one simulation.
+ */
+public class MetricsCollector {
+    // Velocity below which a vehicle counts as stopped
+    public static final double STOPPED_VELOCITY = 0.01;
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private Simulation simulation;
+
+    // Speeds of the vehicles of every lane, reused between samples
+    private double[][] speeds;
+
+    // Lane-change count and time of the previous sample
+    private long lastLaneChanges;
+    private double lastTime;
+
+    /**
+     * Creates a collector for a simulation.
+     * 
+     * @param simulation The simulation to measure
+     */
+    public MetricsCollector(Simulation simulation) {
+        this.simulation = simulation;
+        this.speeds = new double[simulation.getRoad().getLaneCount()][16];
+        this.lastLaneChanges = simulation.getLaneChangeCount();
+        this.lastTime = simulation.getStepCount() * simulation.getTimeStep();
+    }
+
+    /**
+     * Collects the metrics of the current state.
+     * 
+     * @return The sample
+     */
+    public StepMetrics collect() {
+        Road road = simulation.getRoad();
+        VehicleStore store = simulation.getStore();
+        int laneCount = road.getLaneCount();
+        int[] vehicles = new int[laneCount];
+        int[] stopped = new int[laneCount];
+        double[] meanSpeed = new double[laneCount];
+        double[] flow = new double[laneCount];
+
+        // Distribute the speeds over the lanes, summing speeds and angular speeds on the way
+        for (int slot = 0; slot < store.size(); slot++) {
+            int lane = store.lane[slot];
+            if (lane < 0 || lane >= laneCount) {
+                continue;
+            }
+            double velocity = store.velocity[slot];
+            if (vehicles[lane] == speeds[lane].length) {
+                speeds[lane] = Arrays.copyOf(speeds[lane], vehicles[lane] * 2);
+            }
+            speeds[lane][vehicles[lane]++] = velocity;
+            meanSpeed[lane] += velocity;
+            flow[lane] += velocity * Vehicle.SPEED_MULTIPLIER / store.laneRadius[slot];
+            if (velocity < STOPPED_VELOCITY) {
+                stopped[lane]++;
+            }
+        }
+
+        double[] p10Speed = new double[laneCount];
+        double[] p50Speed = new double[laneCount];
+        double[] p90Speed = new double[laneCount];
+        double[] density = new double[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            int count = vehicles[lane];
+            density[lane] = count / (TWO_PI * road.getLaneRadius(lane));
+
+            // A vehicle passes a point once per revolution
+            flow[lane] /= TWO_PI;
+            if (count > 0) {
+                meanSpeed[lane] /= count;
+                Arrays.sort(speeds[lane], 0, count);
+                p10Speed[lane] = percentile(speeds[lane], count, 10);
+                p50Speed[lane] = percentile(speeds[lane], count, 50);
+                p90Speed[lane] = percentile(speeds[lane], count, 90);
+            }
+        }
+
+        // Lane changes since the previous sample
+        double time = simulation.getStepCount() * simulation.getTimeStep();
+        long laneChanges = simulation.getLaneChangeCount() - lastLaneChanges;
+        double laneChangeRate = time > lastTime ? laneChanges / (time - lastTime) : 0;
+        lastLaneChanges = simulation.getLaneChangeCount();
+        lastTime = time;
+
+        return new StepMetrics(simulation.getStepCount(), time, store.size(), laneChanges, laneChangeRate,
+                vehicles, stopped, meanSpeed, p10Speed, p50Speed, p90Speed, density, flow);
+    }
+
+    /**
+     * Gets a percentile of sorted values by the nearest-rank method.
+     */
+    private static double percentile(double[] sorted, int count, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
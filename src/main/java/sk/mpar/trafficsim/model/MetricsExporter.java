@@ -0,0 +1,193 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the {@link StepMetrics} of every step of a simulation to a file from a background thread.
+ * 
+ * The metrics are collected on the simulation thread and handed to a writer thread through a bounded
+ * queue, so the step loop never waits for the disk. When the writer falls behind and the queue is
+ * full, the {@link OverflowPolicy} decides whether the simulation waits or the sample is dropped.
+ * Dropped samples are counted, and every written sample carries the number of samples dropped just
+ * before it, so gaps in the output are visible.
+ */
+public class MetricsExporter implements SimulationListener, Closeable {
+    // Default number of samples that can wait for the writer
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    // How long a blocked simulation thread waits before checking that the writer is still alive
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    // Sample that tells the writer thread to finish
+    private static final StepMetrics END = new StepMetrics(-1, 0, 0, 0, 0, new int[0], new int[0],
+            new double[0], new double[0], new double[0], new double[0], new double[0], new double[0]);
+
+    private Simulation simulation;
+    private MetricsCollector collector;
+    private OverflowPolicy policy;
+    private BlockingQueue<StepMetrics> queue;
+    private MetricsSink sink;
+    private Thread writer;
+
+    // Counts shared with the writer thread
+    private AtomicLong pendingDrops = new AtomicLong();
+    private AtomicLong droppedSamples = new AtomicLong();
+    private AtomicLong writtenSamples = new AtomicLong();
+    private volatile IOException failure;
+
+    private boolean closed = false;
+
+    /**
+     * Creates the output file and starts exporting the metrics of every following step,
+     * with a queue of {@link #DEFAULT_QUEUE_CAPACITY} samples.
+     * 
+     * @param simulation The simulation to measure
+     * @param path The file to write
+     * @param format The format of the file
+     * @param policy What to do with a sample when the queue is full
+     * @throws IOException If the file cannot be created
+     */
+    public MetricsExporter(Simulation simulation, Path path, MetricsFormat format, OverflowPolicy policy)
+            throws IOException {
+        this(simulation, path, format, policy, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates the output file and starts exporting the metrics of every following step.
+     * 
+     * @param simulation The simulation to measure
+     * @param path The file to write
+     * @param format The format of the file
+     * @param policy What to do with a sample when the queue is full
+     * @param queueCapacity The number of samples that can wait for the writer
+     * @throws IOException If the file cannot be created
+     */
+    public MetricsExporter(Simulation simulation, Path path, MetricsFormat format, OverflowPolicy policy,
+                           int queueCapacity) throws IOException {
+        this.simulation = simulation;
+        this.collector = new MetricsCollector(simulation);
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        int laneCount = simulation.getRoad().getLaneCount();
+        sink = format == MetricsFormat.CSV ? new CsvMetricsSink(path, laneCount) : new BinaryMetricsSink(path, laneCount);
+
+        writer = new Thread(this::writeSamples, "metrics-writer");
+        writer.setDaemon(true);
+        writer.start();
+        simulation.addListener(this);
+    }
+
+    @Override
+    public void vehicleAdded(Vehicle vehicle) {
+        // Every sample covers all vehicles
+    }
+
+    @Override
+    public void vehicleRemoved(Vehicle vehicle) {
+        // Every sample covers all vehicles
+    }
+
+    @Override
+    public void stepTaken(long stepCount) {
+        StepMetrics metrics = collector.collect();
+        if (failure == null && queue.offer(metrics)) {
+            return;
+        }
+
+        // The queue is full: wait for the writer, unless it has failed, or drop the sample
+        if (policy == OverflowPolicy.BLOCK) {
+            try {
+                while (failure == null) {
+                    if (queue.offer(metrics, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pendingDrops.incrementAndGet();
+        droppedSamples.incrementAndGet();
+    }
+
+    /**
+     * Takes samples from the queue and writes them until the end marker arrives or writing fails.
+     * Runs on the writer thread.
+     */
+    private void writeSamples() {
+        try (MetricsSink output = sink) {
+            while (true) {
+                StepMetrics metrics = queue.poll();
+                if (metrics == null) {
+                    // Caught up; write out what is buffered while waiting
+                    output.flush();
+                    metrics = queue.take();
+                }
+                if (metrics == END) {
+                    return;
+                }
+                output.write(metrics, pendingDrops.getAndSet(0));
+                writtenSamples.incrementAndGet();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new IOException("Metrics writer interrupted", e);
+        }
+    }
+
+    /**
+     * Stops exporting, waits until the queued samples are written and closes the file.
+     * 
+     * @throws IOException If writing any sample or closing the file failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        simulation.removeListener(this);
+        try {
+            while (writer.isAlive() && !queue.offer(END, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // The writer is still draining the queue
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the metrics file", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Gets the number of samples dropped because the queue was full or the writer had failed.
+     * 
+     * @return The number of dropped samples
+     */
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    /**
+     * Gets the number of samples handed to the file so far.
+     * 
+     * @return The number of written samples
+     */
+    public long getWrittenSamples() {
+        return writtenSamples.get();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+}
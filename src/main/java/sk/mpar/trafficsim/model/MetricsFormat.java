@@ -0,0 +1,16 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * File formats a {@link MetricsExporter} can write.
+ */
+public enum MetricsFormat {
+    /**
+     * Comma-separated values with a header row and one row per sample.
+     */
+    CSV,
+
+    /**
+     * Little-endian binary file of row groups, each holding the values of a column contiguously.
+     */
+    BINARY
+}
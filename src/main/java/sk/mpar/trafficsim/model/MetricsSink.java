@@ -0,0 +1,25 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the samples of a {@link MetricsExporter}, called only from its writer thread.
+ */
+interface MetricsSink extends Closeable {
+    /**
+     * Writes a sample.
+     * 
+     * @param metrics The sample
+     * @param droppedBefore The number of samples dropped since the previous written sample
+     * @throws IOException If the sample cannot be written
+     */
+    void write(StepMetrics metrics, long droppedBefore) throws IOException;
+
+    /**
+     * Called when the queue has run empty, so that the sink can write out what it has buffered.
+     * 
+     * @throws IOException If the data cannot be written
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,126 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Lane-changing rule MOBIL ("minimizing overall braking induced by lane changes") of Kesting,
+ * Treiber and Helbing.
+ * 
+ * A vehicle changes to a neighbouring lane if it is safe, meaning the new follower would not have to
+ * brake harder than the safe deceleration, and if it pays off: the acceleration the vehicle gains,
+ * plus the politeness times what the new and the old follower gain, must exceed the threshold. The
+ * accelerations are estimated with the car-following law of the vehicle, for the followers with the
+ * parameters of their own profiles.
+ */
+public final class MobilLaneChange {
+    public static final double DEFAULT_POLITENESS = 0.2;
+    public static final double DEFAULT_THRESHOLD = 0.1;
+    public static final double DEFAULT_SAFE_DECELERATION = 4.0;
+
+    private final double politeness;
+    private final double threshold;
+    private final double safeDeceleration;
+
+    /**
+     * Creates the rule with the default parameters.
+     */
+    public MobilLaneChange() {
+        this(DEFAULT_POLITENESS, DEFAULT_THRESHOLD, DEFAULT_SAFE_DECELERATION);
+    }
+
+    /**
+     * Creates the rule.
+     * 
+     * @param politeness The weight of the gains of the followers, 0 for egoistic drivers
+     * @param threshold The smallest gain of acceleration worth a lane change
+     * @param safeDeceleration The hardest braking a lane change may impose on the new follower, positive
+     */
+    public MobilLaneChange(double politeness, double threshold, double safeDeceleration) {
+        this.politeness = politeness;
+        this.threshold = threshold;
+        this.safeDeceleration = safeDeceleration;
+    }
+
+    /**
+     * Chooses the most advantageous neighbouring lane that is safe to change to.
+     * 
+     * @param context The surroundings of the vehicle
+     * @param model The car-following law of the vehicle
+     * @return The lane to change to, or the lane of the context to stay
+     */
+    int chooseLane(DrivingContext context, CarFollowingModel model) {
+        Vehicle vehicle = context.getVehicle();
+        int lane = context.getLane();
+        double timeStep = context.getTimeStep();
+        double length = context.getLength(vehicle);
+
+        // Acceleration of the vehicle and of its follower if the vehicle stays
+        double gapAhead = context.getGapAhead(lane);
+        double current = model.estimateAcceleration(vehicle, gapAhead, leaderVelocity(context, lane), timeStep);
+        double oldFollowerGain = 0;
+        Vehicle oldFollower = context.getFollower(lane);
+        if (oldFollower != null) {
+            double before = model.estimateAcceleration(oldFollower, context.getGapBehind(lane),
+                    vehicle.getVelocity(), timeStep);
+            double after = oldFollower == context.getLeader(lane)
+                    ? model.estimateAcceleration(oldFollower, Double.POSITIVE_INFINITY, 0, timeStep)
+                    : model.estimateAcceleration(oldFollower, context.getGapBehind(lane) + length + gapAhead,
+                    leaderVelocity(context, lane), timeStep);
+            oldFollowerGain = after - before;
+        }
+
+        int bestLane = lane;
+        double bestIncentive = threshold;
+        for (int target = lane - 1; target <= lane + 1; target += 2) {
+            if (target < 0 || target >= context.getLaneCount()) {
+                continue;
+            }
+
+            // Safety: the new follower must not have to brake too hard
+            double targetGapAhead = context.getGapAhead(target);
+            double targetGapBehind = context.getGapBehind(target);
+            double newFollowerGain = 0;
+            Vehicle newFollower = context.getFollower(target);
+            if (newFollower != null) {
+                double after = model.estimateAcceleration(newFollower, targetGapBehind, vehicle.getVelocity(), timeStep);
+                if (after < -safeDeceleration || targetGapBehind <= 0) {
+                    continue;
+                }
+                double before = newFollower == context.getLeader(target)
+                        ? model.estimateAcceleration(newFollower, Double.POSITIVE_INFINITY, 0, timeStep)
+                        : model.estimateAcceleration(newFollower, targetGapBehind + length + targetGapAhead,
+                        leaderVelocity(context, target), timeStep);
+                newFollowerGain = after - before;
+            }
+            if (targetGapAhead <= 0) {
+                continue;
+            }
+
+            // Incentive: the own gain plus the weighted gains of both followers
+            double changed = model.estimateAcceleration(vehicle, targetGapAhead, leaderVelocity(context, target), timeStep);
+            double incentive = changed - current + politeness * (newFollowerGain + oldFollowerGain);
+            if (incentive > bestIncentive) {
+                bestIncentive = incentive;
+                bestLane = target;
+            }
+        }
+        return bestLane;
+    }
+
+    private static double leaderVelocity(DrivingContext context, int lane) {
+        Vehicle leader = context.getLeader(lane);
+        return leader == null ? 0 : leader.getVelocity();
+    }
+
+    // Getters
+
+    public double getPoliteness() {
+        return politeness;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double getSafeDeceleration() {
+        return safeDeceleration;
+    }
+}
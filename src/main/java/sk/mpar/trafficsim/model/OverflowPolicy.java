@@ -0,0 +1,16 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * What a {@link MetricsExporter} does with a sample when its queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait on the simulation thread until the writer has made room, slowing the simulation down.
+     */
+    BLOCK,
+
+    /**
+     * Discard the sample and count it, so the simulation never waits for the disk.
+     */
+    DROP
+}
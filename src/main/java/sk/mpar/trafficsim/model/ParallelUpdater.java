@@ -0,0 +1,320 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Two-phase update of the vehicles of a simulation.
+ * 
+ * In the decide phase every vehicle computes its acceleration and lane-change intent from the state
+ * at the start of the step without writing anything shared, so the slots are split into contiguous
+ * ranges that are decided as tasks of the fork-join pool the step runs in, the common pool unless it
+ * is called from a worker of another pool. In the commit phase the decisions are applied one vehicle
+ * at a time in slot order; a lane change is only applied if the target gap is still free, which
+ * resolves two vehicles merging into the same gap. A decision only depends on the state at the start
+ * of the step, so the result does not depend on the number of threads or on how the slots are split.
+ */
+class ParallelUpdater {
+    // Smallest number of vehicles worth handing to another thread
+    private static final int MIN_RANGE_SIZE = 1024;
+    // Ranges per thread of the pool, so that a thread that is held up does not hold up the step
+    private static final int RANGES_PER_THREAD = 4;
+
+    private Simulation simulation;
+    private Road road;
+    private VehicleStore store;
+    private LaneIndex laneIndex;
+
+    // One decider per range, each with its own collision detector and driving context, since neither
+    // is thread-safe, and a reusable task running it
+    private Decider[] deciders = new Decider[0];
+    private ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[0];
+
+    // Decisions, indexed by slot
+    private boolean[] stop = new boolean[0];
+    private double[] acceleration = new double[0];
+    private int[] targetLane = new int[0];
+    private boolean[] changingLane = new boolean[0];
+    private Vehicle[] excluded = new Vehicle[0];
+
+    // Lanes some vehicle has entered during the commit phase, indexed by lane
+    private boolean[] entered;
+
+    /**
+     * Creates an updater for a simulation.
+     * 
+     * @param simulation The simulation to update
+     * @param road The road of the simulation
+     * @param store The store holding the vehicles
+     * @param laneIndex The lane index of the vehicles
+     */
+    ParallelUpdater(Simulation simulation, Road road, VehicleStore store, LaneIndex laneIndex) {
+        this.simulation = simulation;
+        this.road = road;
+        this.store = store;
+        this.laneIndex = laneIndex;
+        this.entered = new boolean[road.getLaneCount()];
+    }
+
+    /**
+     * Lets every vehicle react to its surroundings.
+     * The vehicles must have been moved and the lane index refreshed.
+     * 
+     * @param maxWidth The largest width of any vehicle
+     * @param maxHeight The largest height of any vehicle
+     * @param deltaTime The length of the step in seconds
+     */
+    void update(double maxWidth, double maxHeight, double deltaTime) {
+        StepProfiler profiler = simulation.getProfiler();
+        int size = store.size();
+        int rangeCount = getRangeCount(size);
+        ensureCapacity(size, rangeCount);
+        for (int range = 0; range < rangeCount; range++) {
+            long from = (long) size * range / rangeCount;
+            long to = (long) size * (range + 1) / rangeCount;
+            deciders[range].prepare((int) from, (int) to, maxWidth, maxHeight, deltaTime);
+        }
+
+        // Decide the first range on this thread while the pool decides the others
+        if (rangeCount > 1) {
+            for (int range = 1; range < rangeCount; range++) {
+                tasks[range].reinitialize();
+                tasks[range].fork();
+            }
+            deciders[0].run();
+            for (int range = rangeCount - 1; range >= 1; range--) {
+                tasks[range].join();
+            }
+        } else {
+            deciders[0].run();
+        }
+
+        // Gather the events counted by the ranges
+        for (int range = 0; range < rangeCount; range++) {
+            Decider decider = deciders[range];
+            profiler.add(StepCounter.PAIR_CHECKS, decider.detector.getPairChecks() - decider.pairChecks);
+            profiler.add(StepCounter.LANE_CHANGES_ATTEMPTED, decider.counts[StepCounter.LANE_CHANGES_ATTEMPTED.ordinal()]);
+            profiler.add(StepCounter.VEHICLE_COLLISIONS, decider.counts[StepCounter.VEHICLE_COLLISIONS.ordinal()]);
+            profiler.add(StepCounter.OBSTACLE_COLLISIONS, decider.counts[StepCounter.OBSTACLE_COLLISIONS.ordinal()]);
+        }
+
+        // Commit sequentially in slot order
+        profiler.enter(StepPhase.COMMIT);
+        Arrays.fill(entered, false);
+        for (int slot = 0; slot < size; slot++) {
+            commit(slot, profiler);
+        }
+    }
+
+    /**
+     * Gets the number of ranges the slots are split into.
+     * A single range is decided on the calling thread without involving the pool.
+     */
+    private int getRangeCount(int size) {
+        int parallelism = ForkJoinTask.inForkJoinPool()
+                ? ForkJoinTask.getPool().getParallelism()
+                : ForkJoinPool.getCommonPoolParallelism();
+        if (parallelism <= 1) {
+            return 1;
+        }
+        return Math.max(1, Math.min(size / MIN_RANGE_SIZE, parallelism * RANGES_PER_THREAD));
+    }
+
+    /**
+     * Decides the reaction of a single vehicle, following the rules of the sequential update.
+     * Reads the state at the start of the step and writes only the decision arrays at the slot
+     * and the event counts of its chunk.
+     */
+    private void decide(int slot, CollisionDetector detector, DrivingContext context, long[] counts) {
+        Vehicle vehicle = store.getVehicle(slot);
+        int lane = vehicle.getLane();
+        boolean changing = vehicle.isChangingLane();
+
+        // A vehicle off the road stands still, as in the sequential update
+        if (!road.hasLane(lane) || !road.isOnRoad(vehicle.getX(), vehicle.getY())) {
+            stop[slot] = true;
+            acceleration[slot] = 0;
+            targetLane[slot] = lane;
+            changingLane[slot] = changing;
+            excluded[slot] = null;
+            return;
+        }
+        double vehicleAngle = laneIndex.getAngle(vehicle);
+        DrivingModel model = simulation.getDrivingModel(store.type[slot]);
+        boolean stopped = false;
+        double accel = vehicle.getAcceleration();
+        Vehicle exclude = null;
+
+        // Check for collision with the obstacle
+        if (road.collidesWithObstacle(vehicleAngle, road.getLaneRadius(lane), vehicle.getWidth(), vehicle.getHeight())) {
+            counts[StepCounter.OBSTACLE_COLLISIONS.ordinal()]++;
+            stopped = true;
+            int otherLane = road.getPassingLane(lane);
+            if (otherLane >= 0) {
+                counts[StepCounter.LANE_CHANGES_ATTEMPTED.ordinal()]++;
+                if (laneIndex.isGapFree(otherLane, vehicleAngle, Simulation.LANE_CHANGE_GAP, vehicle)) {
+                    changing = true;
+                    lane = otherLane;
+                }
+            }
+        }
+
+        // Check if the vehicle is near the obstacle and needs to change lanes
+        if (road.isNearObstacle(vehicleAngle, lane) && lane == Road.OBSTACLE_LANE && !changing) {
+            int evasionLane = road.getPassingLane(Road.OBSTACLE_LANE);
+            boolean evasionFree = false;
+            if (evasionLane >= 0) {
+                counts[StepCounter.LANE_CHANGES_ATTEMPTED.ordinal()]++;
+                evasionFree = laneIndex.isGapFree(evasionLane, vehicleAngle, Simulation.LANE_CHANGE_GAP, vehicle);
+            }
+            if (evasionFree) {
+                changing = true;
+                lane = evasionLane;
+            } else {
+                context.set(vehicle, lane, vehicleAngle, changing);
+                accel = model.getBrakingAcceleration(context);
+            }
+        }
+
+        // If the vehicle has passed the obstacle, it can return one lane inward
+        if (changing && lane > Road.OBSTACLE_LANE) {
+            double obstacleAngle = road.getNormalizedObstacleAngle();
+            double angleDiff = Math.abs(vehicleAngle - obstacleAngle);
+            angleDiff = Math.min(angleDiff, 2 * Math.PI - angleDiff);
+            if (!road.hasObstacle() || angleDiff > 0.5) {
+                counts[StepCounter.LANE_CHANGES_ATTEMPTED.ordinal()]++;
+                if (laneIndex.isGapFree(lane - 1, vehicleAngle, Simulation.LANE_CHANGE_GAP, vehicle)) {
+                    lane--;
+                    changing = lane > Road.OBSTACLE_LANE;
+                }
+            }
+        }
+
+        // Let the driving model pick a lane from the lane the vehicle is heading for
+        context.set(vehicle, lane, vehicleAngle, changing);
+        int chosenLane = changing ? lane : model.chooseLane(context);
+        boolean chosenFree = false;
+        if (chosenLane != lane) {
+            counts[StepCounter.LANE_CHANGES_ATTEMPTED.ordinal()]++;
+            chosenFree = laneIndex.isGapFree(chosenLane, vehicleAngle, Simulation.LANE_CHANGE_GAP, vehicle);
+        }
+        if (chosenFree) {
+            changing = model.isEvasive();
+            lane = chosenLane;
+        } else {
+            accel = model.getAcceleration(context);
+        }
+
+        // Check for collisions with nearby vehicles
+        int collisionCount = detector.findCollisions(vehicle, lane, vehicleAngle);
+        counts[StepCounter.VEHICLE_COLLISIONS.ordinal()] += collisionCount;
+        for (int i = 0; i < collisionCount; i++) {
+            Vehicle otherVehicle = detector.getCollision(i);
+            stopped = true;
+            int otherLane = road.getPassingLane(lane);
+            if (otherLane < 0) {
+                continue;
+            }
+            counts[StepCounter.LANE_CHANGES_ATTEMPTED.ordinal()]++;
+            if (laneIndex.isGapFree(otherLane, vehicleAngle, Simulation.LANE_CHANGE_GAP, vehicle, otherVehicle)) {
+                changing = true;
+                lane = otherLane;
+                exclude = otherVehicle;
+            }
+        }
+
+        stop[slot] = stopped;
+        acceleration[slot] = accel;
+        targetLane[slot] = lane;
+        changingLane[slot] = changing;
+        excluded[slot] = exclude;
+    }
+
+    /**
+     * Applies the decision of a single vehicle.
+     * A lane change counts as accepted if it is still possible when it is applied.
+     */
+    private void commit(int slot, StepProfiler profiler) {
+        Vehicle vehicle = store.getVehicle(slot);
+        Vehicle exclude = excluded[slot];
+        excluded[slot] = null;
+        if (stop[slot]) {
+            vehicle.setVelocity(0);
+        }
+        vehicle.setAcceleration(acceleration[slot]);
+
+        int lane = targetLane[slot];
+        if (lane == vehicle.getLane()) {
+            vehicle.setChangingLane(changingLane[slot]);
+            return;
+        }
+
+        // The decide phase found the gap free; only a vehicle that entered the lane since, earlier in
+        // this phase, can have taken it, as vehicles leaving a lane only widen its gaps
+        if (!entered[lane] || laneIndex.isGapFree(lane, laneIndex.getAngle(vehicle), Simulation.LANE_CHANGE_GAP, vehicle, exclude)) {
+            vehicle.setChangingLane(changingLane[slot]);
+            simulation.changeLane(vehicle, lane);
+            entered[lane] = true;
+            profiler.count(StepCounter.LANE_CHANGES_ACCEPTED);
+        }
+    }
+
+    /**
+     * Grows the decision arrays and the deciders to the given number of vehicles and ranges.
+     */
+    private void ensureCapacity(int size, int rangeCount) {
+        if (size > stop.length) {
+            int capacity = Math.max(size, stop.length * 2);
+            stop = Arrays.copyOf(stop, capacity);
+            acceleration = Arrays.copyOf(acceleration, capacity);
+            targetLane = Arrays.copyOf(targetLane, capacity);
+            changingLane = Arrays.copyOf(changingLane, capacity);
+            excluded = Arrays.copyOf(excluded, capacity);
+        }
+        if (rangeCount > deciders.length) {
+            int oldLength = deciders.length;
+            deciders = Arrays.copyOf(deciders, rangeCount);
+            tasks = Arrays.copyOf(tasks, rangeCount);
+            for (int range = oldLength; range < rangeCount; range++) {
+                deciders[range] = new Decider();
+                tasks[range] = ForkJoinTask.adapt(deciders[range]);
+            }
+        }
+    }
+
+    /**
+     * Decides the vehicles of a contiguous range of slots.
+     */
+    private final class Decider implements Runnable {
+        private CollisionDetector detector = new CollisionDetector(road, laneIndex);
+        private DrivingContext context = new DrivingContext(road, laneIndex);
+
+        // Events counted while deciding, indexed by counter
+        private long[] counts = new long[StepCounter.values().length];
+        private long pairChecks;
+
+        // Slots to decide, the last one exclusive
+        private int from;
+        private int to;
+
+        /**
+         * Prepares the decider for a step.
+         */
+        void prepare(int from, int to, double maxWidth, double maxHeight, double deltaTime) {
+            this.from = from;
+            this.to = to;
+            detector.setMaxDimensions(maxWidth, maxHeight);
+            context.beginStep(deltaTime, simulation.getStepCount());
+            pairChecks = detector.getPairChecks();
+            Arrays.fill(counts, 0);
+        }
+
+        @Override
+        public void run() {
+            for (int slot = from; slot < to; slot++) {
+                decide(slot, detector, context, counts);
+            }
+        }
+    }
+}
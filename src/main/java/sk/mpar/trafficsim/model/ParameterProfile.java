@@ -0,0 +1,107 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Driving parameters shared by a group of vehicles.
+ * 
+ * Every vehicle references a profile instead of holding its own copy of the parameters, so changing
+ * a profile is O(1) and takes effect for all its vehicles on the next step. A simulation keeps one
+ * profile per vehicle type. A vehicle whose parameters are changed individually gets an override
+ * profile of its own, which inherits every parameter it does not override from its parent.
+ */
+public class ParameterProfile {
+    // Acceleration of vehicles that have free road ahead
+    public static final double DEFAULT_ACCELERATION = 1.0;
+
+    // Profile the parameters that are not set are inherited from, or null
+    private final ParameterProfile parent;
+
+    // Parameters, NaN when inherited from the parent
+    private double maxVelocity = Double.NaN;
+    private double acceleration = Double.NaN;
+
+    /**
+     * Creates a profile with its own values for all parameters.
+     * 
+     * @param maxVelocity The maximum velocity
+     * @param acceleration The acceleration of vehicles that have free road ahead
+     */
+    public ParameterProfile(double maxVelocity, double acceleration) {
+        this.parent = null;
+        this.maxVelocity = maxVelocity;
+        this.acceleration = acceleration;
+    }
+
+    /**
+     * Creates an override profile that inherits all parameters from a parent until they are set.
+     * 
+     * @param parent The profile to inherit from
+     */
+    public ParameterProfile(ParameterProfile parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Checks if the profile inherits from another profile.
+     * 
+     * @return true for an override profile, false for a profile with its own values
+     */
+    public boolean isOverride() {
+        return parent != null;
+    }
+
+    /**
+     * Stops overriding the parameters, so that all of them are inherited from the parent again.
+     * Has no effect on a profile that is not an override.
+     */
+    public void clearOverrides() {
+        if (parent != null) {
+            maxVelocity = Double.NaN;
+            acceleration = Double.NaN;
+        }
+    }
+
+    /**
+     * Gets the maximum velocity set on this profile itself.
+     * 
+     * @return The maximum velocity, or NaN if it is inherited
+     */
+    double getOwnMaxVelocity() {
+        return maxVelocity;
+    }
+
+    /**
+     * Gets the acceleration set on this profile itself.
+     * 
+     * @return The acceleration, or NaN if it is inherited
+     */
+    double getOwnAcceleration() {
+        return acceleration;
+    }
+
+    // Getters and setters
+
+    public ParameterProfile getParent() {
+        return parent;
+    }
+
+    public double getMaxVelocity() {
+        return Double.isNaN(maxVelocity) ? parent.getMaxVelocity() : maxVelocity;
+    }
+
+    public void setMaxVelocity(double maxVelocity) {
+        this.maxVelocity = maxVelocity;
+    }
+
+    /**
+     * Gets the acceleration of vehicles that have free road ahead.
+     * 
+     * @return The acceleration
+     */
+    public double getAcceleration() {
+        return Double.isNaN(acceleration) ? parent.getAcceleration() : acceleration;
+    }
+
+    public void setAcceleration(double acceleration) {
+        this.acceleration = acceleration;
+    }
+}
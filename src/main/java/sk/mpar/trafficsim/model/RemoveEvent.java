@@ -0,0 +1,23 @@
+package sk.mpar.trafficsim.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering the removal of a vehicle from the simulation.
+ */
+@Name("sk.mpar.trafficsim.Remove")
+@Label("Vehicle Remove")
+@Category({"Traffic Simulator", "Simulation"})
+@Description("Removing a vehicle from the road")
+class RemoveEvent extends Event {
+    @Label("Vehicle Type")
+    String vehicleType;
+
+    @Label("Vehicle Count")
+    @Description("Number of vehicles on the road after the call")
+    int vehicleCount;
+}
@@ -0,0 +1,67 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Random;
+
+/**
+ * Random number generator whose state can be read and restored, so that a checkpointed simulation
+ * draws the same numbers after it is loaded as it would have without the checkpoint.
+ * 
+ * It runs the same linear congruential generator as {@link Random} and produces exactly the same
+ * sequence for the same seed; only the state is kept in a field of its own instead of a private one.
+ */
+class ResumableRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // Set by setSeed, which the constructors of Random call, so it has no initializer
+    private long state;
+
+    /**
+     * Creates a generator with a seed that differs from every other invocation.
+     */
+    ResumableRandom() {
+        super();
+    }
+
+    /**
+     * Creates a generator with a seed.
+     * 
+     * @param seed The seed
+     */
+    ResumableRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Gets the internal state of the generator.
+     * 
+     * @return The 48-bit state
+     */
+    long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state read by {@link #getState()}.
+     * 
+     * @param state The 48-bit state
+     */
+    void setState(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -1,32 +1,33 @@
 package sk.mpar.trafficsim.model;
 
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
-import javafx.scene.shape.Rectangle;
-import javafx.scene.shape.Shape;
-import javafx.scene.layout.Pane;
-import javafx.collections.ObservableList;
-
 /**
- * Represents the circular two-lane road with an obstacle.
+ * Represents the circular road with any number of lanes and an optional obstacle.
+ * Lanes are numbered from 0 for the innermost one outward; the obstacle sits in the innermost lane.
+ * The road only holds geometry; its visual representation lives in the view layer.
  */
 public class Road {
+    // Size of the square obstacle
+    public static final double OBSTACLE_SIZE = 30;
+    // Number of lanes of the road unless given otherwise
+    public static final int DEFAULT_LANE_COUNT = 2;
+    // Lane the obstacle sits in
+    public static final int OBSTACLE_LANE = 0;
+
     // Road parameters
     private double centerX;
     private double centerY;
     private double innerRadius;
     private double laneWidth;
+    private int laneCount;
     private double outerRadius;
 
-    // Visual representation
-    private Circle innerCircle;
-    private Circle outerCircle;
-    private Circle middleCircle; // Circle for lane divider
-    private Shape roadShape; // The actual road shape (ring)
-
     // Obstacle
-    private Rectangle obstacle;
+    private boolean obstacle;
     private double obstacleAngle; // Angle in radians where the obstacle is located
+    private double normalizedObstacleAngle; // Obstacle angle normalized to [0, 2*PI)
+    private double obstacleX;
+    private double obstacleY;
+    private double obstacleRadius; // Distance of the obstacle from the center
 
     /**
      * Creates a new circular road with two lanes and an obstacle.
@@ -38,61 +39,116 @@ public class Road {
      * @param obstacleAngle Angle in radians where the obstacle is located
      */
     public Road(double centerX, double centerY, double innerRadius, double laneWidth, double obstacleAngle) {
+        this(centerX, centerY, innerRadius, laneWidth, DEFAULT_LANE_COUNT, obstacleAngle);
+    }
+
+    /**
+     * Creates a new circular road with two lanes and no obstacle.
+     * 
+     * @param centerX X coordinate of the center of the road
+     * @param centerY Y coordinate of the center of the road
+     * @param innerRadius Radius of the inner edge of the road
+     * @param laneWidth Width of each lane
+     */
+    public Road(double centerX, double centerY, double innerRadius, double laneWidth) {
+        this(centerX, centerY, innerRadius, laneWidth, DEFAULT_LANE_COUNT, Double.NaN);
+    }
+
+    /**
+     * Creates a new circular road with any number of lanes.
+     * 
+     * @param centerX X coordinate of the center of the road
+     * @param centerY Y coordinate of the center of the road
+     * @param innerRadius Radius of the inner edge of the road
+     * @param laneWidth Width of each lane
+     * @param laneCount Number of lanes
+     * @param obstacleAngle Angle in radians where the obstacle is located, or NaN for a road without one
+     * @throws IllegalArgumentException if the road has no lane
+     */
+    public Road(double centerX, double centerY, double innerRadius, double laneWidth, int laneCount,
+                double obstacleAngle) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("A road needs at least one lane: " + laneCount);
+        }
         this.centerX = centerX;
         this.centerY = centerY;
         this.innerRadius = innerRadius;
         this.laneWidth = laneWidth;
-        this.outerRadius = innerRadius + 2 * laneWidth; // Two lanes
-        this.obstacleAngle = obstacleAngle;
+        this.laneCount = laneCount;
+        this.outerRadius = innerRadius + laneCount * laneWidth;
+        this.obstacle = !Double.isNaN(obstacleAngle);
+        this.obstacleAngle = obstacle ? obstacleAngle : 0;
+        this.normalizedObstacleAngle = VehicleStore.normalize(obstacleAngle);
 
-        // Create the visual representation of the road
-        createRoadShape();
-
-        // Create the obstacle
+        // Place the obstacle
         createObstacle();
     }
 
     /**
-     * Creates the visual representation of the road.
+     * Calculates the position of the obstacle on the road.
      */
-    private void createRoadShape() {
-        // Create inner and outer circles
-        innerCircle = new Circle(centerX, centerY, innerRadius);
-        innerCircle.setStroke(Color.WHITE);
-        innerCircle.setStrokeWidth(2);
-        innerCircle.setFill(Color.TRANSPARENT);
-
-        // Create middle circle (lane divider)
-        double middleRadius = innerRadius + laneWidth;
-        middleCircle = new Circle(centerX, centerY, middleRadius);
-        middleCircle.setStroke(Color.WHITE);
-        middleCircle.setStrokeWidth(2);
-        middleCircle.getStrokeDashArray().addAll(10.0, 10.0); // Dashed line
-        middleCircle.setFill(Color.TRANSPARENT);
-
-        // Create outer circle
-        outerCircle = new Circle(centerX, centerY, outerRadius);
-        outerCircle.setStroke(Color.WHITE);
-        outerCircle.setStrokeWidth(2);
-        outerCircle.setFill(Color.TRANSPARENT);
-
-        // Create the road shape as a ring (outer circle minus inner circle)
-        roadShape = Shape.subtract(outerCircle, innerCircle);
-        roadShape.setFill(Color.DARKGRAY);
+    private void createObstacle() {
+        // The obstacle sits in the middle of the inner lane
+        obstacleRadius = getLaneRadius(OBSTACLE_LANE);
+
+        // Calculate the position of the obstacle based on the angle
+        obstacleX = centerX + obstacleRadius * Math.cos(obstacleAngle);
+        obstacleY = centerY + obstacleRadius * Math.sin(obstacleAngle);
     }
 
     /**
-     * Creates the obstacle on the road.
+     * Gets the distance from the center to the middle of a lane.
+     * 
+     * @param lane The lane (0 for the innermost)
+     * @return The radius of the lane
      */
-    private void createObstacle() {
-        // Calculate the position of the obstacle based on the angle
-        double obstacleX = centerX + (innerRadius + laneWidth / 2) * Math.cos(obstacleAngle);
-        double obstacleY = centerY + (innerRadius + laneWidth / 2) * Math.sin(obstacleAngle);
+    public double getLaneRadius(int lane) {
+        return innerRadius + (lane * laneWidth) + (laneWidth / 2);
+    }
 
-        // Create the obstacle as a rectangle
-        obstacle = new Rectangle(obstacleX - 15, obstacleY - 15, 30, 30);
-        obstacle.setFill(Color.ORANGE);
-        obstacle.setRotate(Math.toDegrees(obstacleAngle) + 45); // Rotate to align with the road
+    /**
+     * Finds the lane at a distance from the center. Distances inside or outside the road give the
+     * innermost or the outermost lane.
+     * 
+     * @param distance The distance from the center
+     * @return The lane
+     */
+    public int getLaneAt(double distance) {
+        int lane = (int) Math.floor((distance - innerRadius) / laneWidth);
+        return Math.max(0, Math.min(laneCount - 1, lane));
+    }
+
+    /**
+     * Counts the lanes on either side of a lane whose middles are within a distance of its middle.
+     * Two bodies can only overlap across that many lanes when the distance is the sum of their half
+     * heights.
+     *
+     * @param distance The largest distance between the middles of the lanes
+     * @return The number of lanes on either side, at most one less than the number of lanes
+     */
+    public int getLaneReach(double distance) {
+        return (int) Math.min(laneCount - 1, Math.floor(distance / laneWidth));
+    }
+
+    /**
+     * Gets the lane a vehicle changes to when it passes or evades: the next lane outward, or the next
+     * lane inward from the outermost lane.
+     * 
+     * @param lane The lane of the vehicle
+     * @return The passing lane, or -1 on a road with a single lane
+     */
+    public int getPassingLane(int lane) {
+        return lane + 1 < laneCount ? lane + 1 : lane - 1;
+    }
+
+    /**
+     * Checks if a lane number is a lane of the road.
+     * 
+     * @param lane The lane number
+     * @return true if the road has the lane, false if a vehicle in it is off the road
+     */
+    public boolean hasLane(int lane) {
+        return lane >= 0 && lane < laneCount;
     }
 
     /**
@@ -117,15 +173,19 @@ public class Road {
      * @return true if the vehicle is near the obstacle, false otherwise
      */
     public boolean isNearObstacle(Vehicle vehicle) {
-        // Calculate the angle of the vehicle
-        double vehicleAngle = Math.atan2(vehicle.getY() - centerY, vehicle.getX() - centerX);
-
-        // Normalize angles to [0, 2*PI)
-        vehicleAngle = (vehicleAngle + 2 * Math.PI) % (2 * Math.PI);
-        double normalizedObstacleAngle = (obstacleAngle + 2 * Math.PI) % (2 * Math.PI);
+        return isNearObstacle(vehicle.getAngle(), vehicle.getLane());
+    }
 
-        // Check if the vehicle is in the inner lane (lane 0)
-        if (vehicle.getLane() == 0) {
+    /**
+     * Checks if a position on the road is near the obstacle.
+     * 
+     * @param vehicleAngle The angle of the position, normalized to [0, 2*PI)
+     * @param lane The lane of the position
+     * @return true if the position is near the obstacle, false otherwise
+     */
+    public boolean isNearObstacle(double vehicleAngle, int lane) {
+        // Check if the vehicle is in the lane of the obstacle
+        if (obstacle && lane == OBSTACLE_LANE) {
             // Check if the vehicle is near the obstacle angle
             double angleDifference = Math.abs(vehicleAngle - normalizedObstacleAngle);
             angleDifference = Math.min(angleDifference, 2 * Math.PI - angleDifference);
@@ -145,11 +205,41 @@ public class Road {
      * @return true if the vehicle collides with the obstacle, false otherwise
      */
     public boolean collidesWithObstacle(Vehicle vehicle) {
-        return vehicle.collidesWithObstacle(obstacle);
+        return collidesWithObstacle(vehicle.getAngle(), getLaneRadius(vehicle.getLane()), vehicle.getWidth(), vehicle.getHeight());
+    }
+
+    /**
+     * Checks if a vehicle body given in polar coordinates collides with the obstacle.
+     * The obstacle is a square turned by 45 degrees against the road, so in the local frame of the road
+     * it is a diamond; the body collides with it if its L1 distance from the obstacle center is within
+     * the half diagonal of the square.
+     * 
+     * @param angle Angle of the center of the body in radians
+     * @param radius Distance of the center of the body from the center of the road
+     * @param length Length of the body in direction of travel
+     * @param width Width of the body perpendicular to travel
+     * @return true if the body collides with the obstacle, false otherwise
+     */
+    public boolean collidesWithObstacle(double angle, double radius, double length, double width) {
+        if (!obstacle) {
+            return false;
+        }
+        double along = CollisionDetector.angularDistance(angle, obstacleAngle) * obstacleRadius;
+        double across = Math.abs(radius - obstacleRadius);
+        return Math.max(0, along - length / 2) + Math.max(0, across - width / 2) <= OBSTACLE_SIZE / Math.sqrt(2);
     }
 
     // Getters
 
+    /**
+     * Checks if the road has an obstacle.
+     * 
+     * @return true if the road has an obstacle, false otherwise
+     */
+    public boolean hasObstacle() {
+        return obstacle;
+    }
+
     public double getCenterX() {
         return centerX;
     }
@@ -166,31 +256,31 @@ public class Road {
         return laneWidth;
     }
 
-    public double getOuterRadius() {
-        return outerRadius;
+    public int getLaneCount() {
+        return laneCount;
     }
 
-    public Shape getRoadShape() {
-        return roadShape;
-    }
-
-    public Rectangle getObstacle() {
-        return obstacle;
+    public double getOuterRadius() {
+        return outerRadius;
     }
 
     public double getObstacleAngle() {
         return obstacleAngle;
     }
 
-    public Circle getInnerCircle() {
-        return innerCircle;
+    public double getNormalizedObstacleAngle() {
+        return normalizedObstacleAngle;
+    }
+
+    public double getObstacleX() {
+        return obstacleX;
     }
 
-    public Circle getMiddleCircle() {
-        return middleCircle;
+    public double getObstacleY() {
+        return obstacleY;
     }
 
-    public Circle getOuterCircle() {
-        return outerCircle;
+    public double getObstacleRadius() {
+        return obstacleRadius;
     }
 }
@@ -1,82 +1,112 @@
 package sk.mpar.trafficsim.model;
 
-import javafx.animation.AnimationTimer;
-import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Objects;
 
 /**
  * Manages the traffic simulation.
+ * The simulation has no JavaFX dependencies; it is stepped explicitly via {@link #update(double)}
+ * and can be rendered by any number of {@link SimulationListener}s.
+ * 
+ * Callers driven by a clock should use {@link #advance(double)}, which accumulates the elapsed time
+ * and consumes it in fixed steps of {@link #getTimeStep()} seconds. Runs are therefore reproducible
+ * independently of the frame rate, and a long stall costs at most {@link #getMaxSubsteps()} steps.
  */
 public class Simulation {
     // Simulation components
     private Road road;
-    private List<Vehicle> vehicles;
-    private Pane simulationPane;
+    private VehicleStore store;
+    private List<SimulationListener> listeners;
+    private LaneIndex laneIndex;
+    private CollisionDetector collisionDetector;
+    private ParallelUpdater parallelUpdater;
+    private GapPlacer gapPlacer;
+    private DrivingContext drivingContext;
+    private StepProfiler profiler = new StepProfiler();
+    private LatencyHistogram stepTimes = new LatencyHistogram();
 
     // Simulation parameters
-    private double defaultAcceleration = 1.0;
-    private boolean isRunning = false;
-    private Random random = new Random();
-
-    // Animation timer for the simulation loop
-    private AnimationTimer animationTimer;
-
-    // Time tracking for deltaTime calculation
-    private long lastUpdateTime = 0;
+    private ParameterProfile personalCarProfile = PersonalCar.createDefaultProfile();
+    private ParameterProfile truckProfile = Truck.createDefaultProfile();
+    private ClassicDrivingModel[] classicModels = {new ClassicDrivingModel(), new ClassicDrivingModel()}; // Indexed by type, null if not classic
+    private DrivingModel[] drivingModels = {classicModels[0], classicModels[1]}; // Indexed by type
+    private boolean parallel = false;
+    private ResumableRandom random;
+
+    // Fixed-step integration
+    private double timeStep = DEFAULT_TIME_STEP;
+    private int maxSubsteps = DEFAULT_MAX_SUBSTEPS;
+    private double accumulator = 0;
+    private long stepCount = 0;
+    private long droppedSteps = 0;
+
+    // Number of lane changes since the simulation was created
+    private long laneChangeCount = 0;
+
+    // Default length of a single step in seconds
+    public static final double DEFAULT_TIME_STEP = 1.0 / 60;
+    // Default maximum number of steps taken by a single call to advance
+    public static final int DEFAULT_MAX_SUBSTEPS = 5;
+
+    // Minimum angle to the closest vehicle in the target lane for a lane change
+    static final double LANE_CHANGE_GAP = 0.3; // Adjust this threshold as needed
 
     /**
      * Creates a new simulation.
      * 
      * @param road The road for the simulation
-     * @param simulationPane The pane where the simulation will be rendered
      */
-    public Simulation(Road road, Pane simulationPane) {
-        this.road = road;
-        this.simulationPane = simulationPane;
-        this.vehicles = new ArrayList<>();
-
-        // Add the road shape to the pane
-        simulationPane.getChildren().add(road.getRoadShape());
-
-        // Add the lane markings
-        simulationPane.getChildren().addAll(
-            road.getInnerCircle(),
-            road.getMiddleCircle(),
-            road.getOuterCircle()
-        );
-
-        // Add the obstacle
-        simulationPane.getChildren().add(road.getObstacle());
+    public Simulation(Road road) {
+        this(road, new ResumableRandom());
+    }
 
-        // Initialize the animation timer
-        initializeAnimationTimer();
+    /**
+     * Creates a new simulation whose random decisions are derived from a seed.
+     * Two simulations created with the same seed and driven by the same calls evolve identically.
+     * 
+     * @param road The road for the simulation
+     * @param seed The seed of the random number generator
+     */
+    public Simulation(Road road, long seed) {
+        this(road, new ResumableRandom(seed));
     }
 
     /**
-     * Initializes the animation timer for the simulation loop.
+     * Creates a simulation drawing from a generator.
+     * 
+     * @param road The road for the simulation
+     * @param random The random number generator
      */
-    private void initializeAnimationTimer() {
-        animationTimer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                // Calculate delta time in seconds
-                if (lastUpdateTime == 0) {
-                    lastUpdateTime = now;
-                    return;
-                }
+    Simulation(Road road, ResumableRandom random) {
+        this.road = road;
+        this.random = random;
+        this.store = new VehicleStore(road.getCenterX(), road.getCenterY());
+        this.listeners = new ArrayList<>();
+        this.laneIndex = new LaneIndex(road, road.getLaneCount());
+        this.collisionDetector = new CollisionDetector(road, laneIndex);
+        this.parallelUpdater = new ParallelUpdater(this, road, store, laneIndex);
+        this.gapPlacer = new GapPlacer(road, laneIndex);
+        this.drivingContext = new DrivingContext(road, laneIndex);
+    }
 
-                double deltaTime = (now - lastUpdateTime) / 1_000_000_000.0; // Convert nanoseconds to seconds
-                lastUpdateTime = now;
+    /**
+     * Registers a listener that is notified when vehicles are added or removed.
+     * 
+     * @param listener The listener to add
+     */
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
 
-                // Update the simulation
-                update(deltaTime);
-            }
-        };
+    /**
+     * Unregisters a previously added listener.
+     * 
+     * @param listener The listener to remove
+     */
+    public void removeListener(SimulationListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -84,405 +114,436 @@ public class Simulation {
      * 
      * @param deltaTime Time elapsed since last update in seconds
      */
-    private void update(double deltaTime) {
-        // Update each vehicle
-        for (Vehicle vehicle : vehicles) {
-            // Store the original position
-            double originalX = vehicle.getX();
-            double originalY = vehicle.getY();
+    public void update(double deltaTime) {
+        // Record the phases of the step whenever a recording wants the step event
+        StepEvent event = new StepEvent();
+        event.begin();
+        long start = System.nanoTime();
+        profiler.beginStep(event.isEnabled());
+
+        // Move every vehicle first, in one pass over the state arrays
+        profiler.enter(StepPhase.INTEGRATE);
+        store.integrate(deltaTime);
+
+        // Bring the lane index up to date with the new positions
+        profiler.enter(StepPhase.INDEX);
+        laneIndex.refresh();
+
+        // Let each vehicle react to its surroundings, either in place or in two phases
+        if (parallel) {
+            profiler.enter(StepPhase.DECIDE);
+            parallelUpdater.update(store.getMaxWidth(), store.getMaxHeight(), deltaTime);
+        } else {
+            updateSequentially(deltaTime);
+        }
 
-            // Update the vehicle's position
-            vehicle.update(deltaTime);
+        profiler.endStep();
+        stepTimes.record(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.vehicleCount = store.size();
+            event.deltaTime = deltaTime;
+            event.parallel = parallel;
+            event.setPhases(profiler);
+            event.commit();
+        }
+    }
 
-            // Check if the vehicle is still on the road
-            if (!road.isOnRoad(vehicle.getX(), vehicle.getY())) {
-                // If not, revert to the original position
+    /**
+     * Lets each vehicle react to its surroundings in slot order, applying every decision immediately.
+     * 
+     * @param deltaTime Length of the step in seconds
+     */
+    private void updateSequentially(double deltaTime) {
+        // The largest body bounds the window of the collision checks
+        profiler.enter(StepPhase.COLLISION);
+        collisionDetector.setMaxDimensions(store.getMaxWidth(), store.getMaxHeight());
+        long pairChecks = collisionDetector.getPairChecks();
+        drivingContext.beginStep(deltaTime, stepCount);
+
+        for (int slot = 0; slot < store.size(); slot++) {
+            profiler.enter(StepPhase.ON_ROAD);
+            Vehicle vehicle = store.getVehicle(slot);
+
+            // A vehicle off the road, put there by a lane set outside the road, stands still and takes
+            // no part in the traffic until it is moved back onto a lane; the lane index leaves it out
+            if (!road.hasLane(vehicle.getLane()) || !road.isOnRoad(vehicle.getX(), vehicle.getY())) {
                 vehicle.setVelocity(0);
-                // TODO: Implement better handling of vehicles going off-road
+                vehicle.setAcceleration(0);
+                continue;
             }
+            double vehicleAngle = laneIndex.getAngle(vehicle);
+            DrivingModel model = drivingModels[store.type[slot]];
+            ClassicDrivingModel classic = classicModels[store.type[slot]];
 
             // Check for collision with the obstacle
-            if (road.collidesWithObstacle(vehicle)) {
-                // If colliding with the obstacle, revert to the original position
-                vehicle.setVelocity(0);
-                // Try to change lanes immediately
-                int targetLane = (vehicle.getLane() == 0) ? 1 : 0;
-                boolean canChangeLane = true;
-
-                // Check if it's safe to change to the target lane
-                for (Vehicle otherVehicle : vehicles) {
-                    if (otherVehicle != vehicle && otherVehicle.getLane() == targetLane) {
-                        // Calculate the angle between the vehicles
-                        double angle1 = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                        double angle2 = Math.atan2(otherVehicle.getY() - road.getCenterY(), otherVehicle.getX() - road.getCenterX());
-
-                        // Normalize angles to [0, 2*PI)
-                        angle1 = (angle1 + 2 * Math.PI) % (2 * Math.PI);
-                        angle2 = (angle2 + 2 * Math.PI) % (2 * Math.PI);
-
-                        // Calculate the angle difference
-                        double angleDiff = Math.abs(angle1 - angle2);
-                        angleDiff = Math.min(angleDiff, 2 * Math.PI - angleDiff);
-
-                        // If the vehicles are too close, don't change lanes
-                        if (angleDiff < 0.3) { // Adjust this threshold as needed
-                            canChangeLane = false;
-                            break;
-                        }
-                    }
-                }
+            profiler.enter(StepPhase.OBSTACLE);
+            double laneRadius = road.getLaneRadius(vehicle.getLane());
+            if (road.collidesWithObstacle(vehicleAngle, laneRadius, vehicle.getWidth(), vehicle.getHeight())) {
+                profiler.count(StepCounter.OBSTACLE_COLLISIONS);
 
-                if (canChangeLane) {
+                // If colliding with the obstacle, stop the vehicle
+                vehicle.setVelocity(0);
+                // Try to change lanes immediately if it's safe to do so
+                int targetLane = road.getPassingLane(vehicle.getLane());
+                if (targetLane >= 0 && isLaneChangeSafe(targetLane, vehicleAngle, null)) {
                     vehicle.setChangingLane(true);
-                    vehicle.changeLane(targetLane, road.getInnerRadius(), road.getLaneWidth());
+                    changeLane(vehicle, targetLane);
                 }
             }
 
             // Check if the vehicle is near the obstacle and needs to change lanes
-            if (road.isNearObstacle(vehicle) && vehicle.getLane() == 0 && !vehicle.isChangingLane()) {
-                // Try to change to the outer lane to avoid the obstacle
-                boolean canChangeLane = true;
-
-                // Check if there's a vehicle in the way
-                for (Vehicle otherVehicle : vehicles) {
-                    if (otherVehicle != vehicle && otherVehicle.getLane() == 1) {
-                        // Calculate the angle between the vehicles
-                        double angle1 = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                        double angle2 = Math.atan2(otherVehicle.getY() - road.getCenterY(), otherVehicle.getX() - road.getCenterX());
-
-                        // Normalize angles to [0, 2*PI)
-                        angle1 = (angle1 + 2 * Math.PI) % (2 * Math.PI);
-                        angle2 = (angle2 + 2 * Math.PI) % (2 * Math.PI);
-
-                        // Calculate the angle difference
-                        double angleDiff = Math.abs(angle1 - angle2);
-                        angleDiff = Math.min(angleDiff, 2 * Math.PI - angleDiff);
-
-                        // If the vehicles are too close, don't change lanes
-                        if (angleDiff < 0.3) { // Adjust this threshold as needed
-                            canChangeLane = false;
-                            break;
-                        }
-                    }
-                }
-
-                if (canChangeLane) {
+            if (road.isNearObstacle(vehicleAngle, vehicle.getLane()) && vehicle.getLane() == Road.OBSTACLE_LANE
+                    && !vehicle.isChangingLane()) {
+                // Try to change to the next lane to avoid the obstacle if there's no vehicle in the way
+                int evasionLane = road.getPassingLane(Road.OBSTACLE_LANE);
+                if (evasionLane >= 0 && isLaneChangeSafe(evasionLane, vehicleAngle, null)) {
                     vehicle.setChangingLane(true);
-                    vehicle.changeLane(1, road.getInnerRadius(), road.getLaneWidth());
+                    changeLane(vehicle, evasionLane);
                 } else {
                     // If can't change lane, slow down only if we're in the same lane as the obstacle
-                    vehicle.setAcceleration(-2.0);
+                    drivingContext.set(vehicle, vehicle.getLane(), vehicleAngle, vehicle.isChangingLane());
+                    vehicle.setAcceleration(model.getBrakingAcceleration(drivingContext));
                 }
             }
 
-            // If the vehicle has passed the obstacle, it can return to the inner lane
-            if (vehicle.isChangingLane() && vehicle.getLane() == 1) {
-                // Calculate the angle of the vehicle and the obstacle
-                double vehicleAngle = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                double obstacleAngle = road.getObstacleAngle();
-
-                // Normalize angles to [0, 2*PI)
-                vehicleAngle = (vehicleAngle + 2 * Math.PI) % (2 * Math.PI);
-                obstacleAngle = (obstacleAngle + 2 * Math.PI) % (2 * Math.PI);
-
-                // Calculate the angle difference
+            // If the vehicle has passed the obstacle, it can return one lane inward, and its manoeuvre
+            // ends once it is back in the lane of the obstacle
+            if (vehicle.isChangingLane() && vehicle.getLane() > Road.OBSTACLE_LANE) {
+                // Calculate the angle difference between the vehicle and the obstacle
+                double obstacleAngle = road.getNormalizedObstacleAngle();
                 double angleDiff = Math.abs(vehicleAngle - obstacleAngle);
                 angleDiff = Math.min(angleDiff, 2 * Math.PI - angleDiff);
 
-                // If the vehicle has passed the obstacle, it can return to the inner lane
-                if (angleDiff > 0.5) { // Adjust this threshold as needed
-                    boolean canChangeLane = true;
-
-                    // Check if there's a vehicle in the way
-                    for (Vehicle otherVehicle : vehicles) {
-                        if (otherVehicle != vehicle && otherVehicle.getLane() == 0) {
-                            // Calculate the angle between the vehicles
-                            double angle1 = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                            double angle2 = Math.atan2(otherVehicle.getY() - road.getCenterY(), otherVehicle.getX() - road.getCenterX());
-
-                            // Normalize angles to [0, 2*PI)
-                            angle1 = (angle1 + 2 * Math.PI) % (2 * Math.PI);
-                            angle2 = (angle2 + 2 * Math.PI) % (2 * Math.PI);
-
-                            // Calculate the angle difference
-                            double vehicleAngleDiff = Math.abs(angle1 - angle2);
-                            vehicleAngleDiff = Math.min(vehicleAngleDiff, 2 * Math.PI - vehicleAngleDiff);
-
-                            // If the vehicles are too close, don't change lanes
-                            if (vehicleAngleDiff < 0.3) { // Adjust this threshold as needed
-                                canChangeLane = false;
-                                break;
-                            }
-                        }
-                    }
-
-                    if (canChangeLane) {
-                        vehicle.setChangingLane(false);
-                        vehicle.changeLane(0, road.getInnerRadius(), road.getLaneWidth());
-                    }
+                // If the vehicle has passed the obstacle and there's no vehicle in the way, return
+                int returnLane = vehicle.getLane() - 1;
+                if ((!road.hasObstacle() || angleDiff > 0.5) // Adjust this threshold as needed
+                        && isLaneChangeSafe(returnLane, vehicleAngle, null)) {
+                    vehicle.setChangingLane(returnLane > Road.OBSTACLE_LANE);
+                    changeLane(vehicle, returnLane);
                 }
             }
 
-            // Check for vehicles ahead in the same lane
-            Vehicle vehicleAhead = null;
-            double minAngleDiff = Double.MAX_VALUE;
-
-            for (Vehicle otherVehicle : vehicles) {
-                if (vehicle != otherVehicle && otherVehicle.getLane() == vehicle.getLane()) {
-                    // Calculate the angle between the vehicles
-                    double angle1 = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                    double angle2 = Math.atan2(otherVehicle.getY() - road.getCenterY(), otherVehicle.getX() - road.getCenterX());
-
-                    // Normalize angles to [0, 2*PI)
-                    angle1 = (angle1 + 2 * Math.PI) % (2 * Math.PI);
-                    angle2 = (angle2 + 2 * Math.PI) % (2 * Math.PI);
-
-                    // Calculate the angle difference
-                    double angleDiff = (angle2 - angle1 + 2 * Math.PI) % (2 * Math.PI);
-
-                    // Check if the other vehicle is ahead (within a small angle)
-                    if (angleDiff > 0 && angleDiff < 0.3) { // Adjust this threshold as needed
-                        if (angleDiff < minAngleDiff) {
-                            minAngleDiff = angleDiff;
-                            vehicleAhead = otherVehicle;
-                        }
-                    }
+            // Let the driving model pick a lane, unless the vehicle is in the middle of a manoeuvre. The
+            // classic rules only look at the leader in the lane and are called without a context.
+            profiler.enter(StepPhase.LEADER);
+            int lane = vehicle.getLane();
+            boolean changingLane = vehicle.isChangingLane();
+            double angleAhead = Double.POSITIVE_INFINITY;
+            int chosenLane = lane;
+            if (classic != null) {
+                if (!changingLane) {
+                    angleAhead = laneIndex.getGapAhead(vehicle);
+                    chosenLane = classic.chooseLane(lane, angleAhead, road);
                 }
+            } else {
+                drivingContext.set(vehicle, lane, vehicleAngle, changingLane);
+                chosenLane = changingLane ? lane : model.chooseLane(drivingContext);
             }
 
-            // If there's a vehicle ahead, try to change lanes or slow down
-            if (vehicleAhead != null && !vehicle.isChangingLane()) {
-                // Determine the target lane (opposite of current lane)
-                int targetLane = (vehicle.getLane() == 0) ? 1 : 0;
-
-                // Check if it's safe to change to the target lane
-                boolean canChangeLane = true;
-
-                for (Vehicle otherVehicle : vehicles) {
-                    if (otherVehicle != vehicle && otherVehicle.getLane() == targetLane) {
-                        // Calculate the angle between the vehicles
-                        double angle1 = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                        double angle2 = Math.atan2(otherVehicle.getY() - road.getCenterY(), otherVehicle.getX() - road.getCenterX());
-
-                        // Normalize angles to [0, 2*PI)
-                        angle1 = (angle1 + 2 * Math.PI) % (2 * Math.PI);
-                        angle2 = (angle2 + 2 * Math.PI) % (2 * Math.PI);
-
-                        // Calculate the angle difference
-                        double angleDiff = Math.abs(angle1 - angle2);
-                        angleDiff = Math.min(angleDiff, 2 * Math.PI - angleDiff);
-
-                        // If the vehicles are too close, don't change lanes
-                        if (angleDiff < 0.3) { // Adjust this threshold as needed
-                            canChangeLane = false;
-                            break;
-                        }
-                    }
-                }
-
-                if (canChangeLane) {
-                    // Change to the target lane
-                    vehicle.setChangingLane(true);
-                    vehicle.changeLane(targetLane, road.getInnerRadius(), road.getLaneWidth());
-                } else {
-                    // If can't change lane, slow down only if the vehicle ahead is in the same lane
-                    vehicle.setAcceleration(-2.0);
-                }
+            // Change to the chosen lane if it's safe, otherwise follow the leader in the current lane
+            if (chosenLane != lane && isLaneChangeSafe(chosenLane, vehicleAngle, null)) {
+                vehicle.setChangingLane(model.isEvasive());
+                changeLane(vehicle, chosenLane);
+            } else if (classic != null) {
+                vehicle.setAcceleration(classic.getAcceleration(changingLane, angleAhead, vehicle.getProfile().getAcceleration()));
             } else {
-                // If there's no vehicle ahead, accelerate to maximum velocity
-                vehicle.setAcceleration(defaultAcceleration);
+                vehicle.setAcceleration(model.getAcceleration(drivingContext));
             }
 
-            // Check for collisions with other vehicles
-            for (Vehicle otherVehicle : vehicles) {
-                if (vehicle != otherVehicle && vehicle.collidesWith(otherVehicle)) {
-                    // If colliding with another vehicle, revert to the original position
-                    vehicle.setVelocity(0);
-
-                    // Try to change lanes to avoid the collision
-                    int targetLane = (vehicle.getLane() == 0) ? 1 : 0;
-                    boolean canChangeLane = true;
-
-                    // Check if it's safe to change to the target lane
-                    for (Vehicle thirdVehicle : vehicles) {
-                        if (thirdVehicle != vehicle && thirdVehicle != otherVehicle && thirdVehicle.getLane() == targetLane) {
-                            // Calculate the angle between the vehicles
-                            double angle1 = Math.atan2(vehicle.getY() - road.getCenterY(), vehicle.getX() - road.getCenterX());
-                            double angle2 = Math.atan2(thirdVehicle.getY() - road.getCenterY(), thirdVehicle.getX() - road.getCenterX());
-
-                            // Normalize angles to [0, 2*PI)
-                            angle1 = (angle1 + 2 * Math.PI) % (2 * Math.PI);
-                            angle2 = (angle2 + 2 * Math.PI) % (2 * Math.PI);
-
-                            // Calculate the angle difference
-                            double angleDiff = Math.abs(angle1 - angle2);
-                            angleDiff = Math.min(angleDiff, 2 * Math.PI - angleDiff);
-
-                            // If the vehicles are too close, don't change lanes
-                            if (angleDiff < 0.3) { // Adjust this threshold as needed
-                                canChangeLane = false;
-                                break;
-                            }
-                        }
-                    }
-
-                    if (canChangeLane) {
-                        vehicle.setChangingLane(true);
-                        vehicle.changeLane(targetLane, road.getInnerRadius(), road.getLaneWidth());
-                    }
+            // Check for collisions with nearby vehicles
+            profiler.enter(StepPhase.COLLISION);
+            int collisionCount = collisionDetector.findCollisions(vehicle);
+            profiler.add(StepCounter.VEHICLE_COLLISIONS, collisionCount);
+            for (int i = 0; i < collisionCount; i++) {
+                Vehicle otherVehicle = collisionDetector.getCollision(i);
+
+                // If colliding with another vehicle, stop the vehicle
+                vehicle.setVelocity(0);
+
+                // Try to change lanes to avoid the collision if it's safe to do so
+                int targetLane = road.getPassingLane(vehicle.getLane());
+                if (targetLane >= 0 && isLaneChangeSafe(targetLane, vehicleAngle, otherVehicle)) {
+                    vehicle.setChangingLane(true);
+                    changeLane(vehicle, targetLane);
                 }
             }
         }
+
+        profiler.add(StepCounter.PAIR_CHECKS, collisionDetector.getPairChecks() - pairChecks);
     }
 
     /**
-     * Adds a personal car to the simulation at a random position.
+     * Checks if the gap around an angle in a lane is free for a lane change.
+     * The scan is timed and counted as a lane change attempt.
      * 
-     * @return The added car
+     * @param targetLane The lane to change to
+     * @param angle The angle of the vehicle
+     * @param exclude A vehicle to ignore, or null
+     * @return true if the gap is free, false otherwise
      */
-    public PersonalCar addPersonalCar() {
-        return addPersonalCar(PersonalCar.DEFAULT_COLOR);
+    private boolean isLaneChangeSafe(int targetLane, double angle, Vehicle exclude) {
+        StepPhase phase = profiler.enter(StepPhase.LANE_CHANGE);
+        profiler.count(StepCounter.LANE_CHANGES_ATTEMPTED);
+        boolean free = laneIndex.isGapFree(targetLane, angle, LANE_CHANGE_GAP, exclude);
+        if (free) {
+            profiler.count(StepCounter.LANE_CHANGES_ACCEPTED);
+        }
+        profiler.enter(phase);
+        return free;
     }
 
     /**
-     * Adds a personal car with the specified color to the simulation at a specific position.
+     * Advances the simulation by the elapsed wall-clock time using fixed steps.
+     * The time is added to an accumulator and consumed in steps of {@link #getTimeStep()} seconds;
+     * the remainder is kept for the next call. If more than {@link #getMaxSubsteps()} steps are due,
+     * the excess time is dropped so that a stall does not cause a burst of work or a huge step.
      * 
-     * @param color The color of the car
-     * @param x The x coordinate where to add the car
-     * @param y The y coordinate where to add the car
-     * @return The added car, or null if a car could not be added at that position
+     * @param elapsedTime Time elapsed since the last call in seconds
+     * @return The number of steps taken
      */
-    public PersonalCar addPersonalCar(Color color, double x, double y) {
-        // Calculate the distance from the center
-        double distance = Math.sqrt(Math.pow(x - road.getCenterX(), 2) + Math.pow(y - road.getCenterY(), 2));
-
-        // Determine the lane based on the distance
-        int lane;
-        if (distance < road.getInnerRadius() + road.getLaneWidth()) {
-            lane = 0; // Inner lane
-        } else {
-            lane = 1; // Outer lane
+    public int advance(double elapsedTime) {
+        if (elapsedTime > 0) {
+            accumulator += elapsedTime;
         }
 
-        // Create a car at the specified position
-        PersonalCar car = new PersonalCar(x, y, lane, road.getCenterX(), road.getCenterY(), 
-                                         road.getInnerRadius(), road.getLaneWidth());
+        int steps = (int) Math.min(maxSubsteps, Math.floor(accumulator / timeStep));
+        step(steps);
+        accumulator -= steps * timeStep;
 
-        // Set the color if different from default
-        if (!color.equals(PersonalCar.DEFAULT_COLOR)) {
-            car.setColor(color);
+        // Drop whatever could not be consumed within the substep cap
+        if (accumulator >= timeStep) {
+            long dropped = (long) Math.floor(accumulator / timeStep);
+            droppedSteps += dropped;
+            accumulator -= dropped * timeStep;
         }
+        return steps;
+    }
 
-        // Check if the car collides with the obstacle
-        if (road.collidesWithObstacle(car)) {
-            return null; // Can't add car at this position
-        }
+    /**
+     * Takes a single fixed step.
+     */
+    public void step() {
+        update(timeStep);
+        stepCount++;
+        fireStepTaken();
+    }
 
-        // Check if the car collides with any existing vehicle
-        for (Vehicle vehicle : vehicles) {
-            if (car.collidesWith(vehicle)) {
-                return null; // Can't add car at this position
-            }
+    /**
+     * Takes a number of fixed steps, independently of any clock.
+     * 
+     * @param steps The number of steps to take
+     */
+    public void step(int steps) {
+        for (int i = 0; i < steps; i++) {
+            step();
         }
+    }
 
-        // If we get here, the car doesn't collide with anything
-        // Set initial acceleration
-        car.setAcceleration(defaultAcceleration);
-
-        // Add the car to the list of vehicles
-        vehicles.add(car);
+    /**
+     * Discards the time accumulated by {@link #advance(double)} but not consumed yet.
+     * The current state also becomes the previous state, so an interpolated rendering does not jump back.
+     * Should be called when the clock driving the simulation is paused.
+     */
+    public void resetAccumulator() {
+        accumulator = 0;
+        store.syncPreviousState();
+    }
 
-        // Add the car's shape to the pane
-        simulationPane.getChildren().add(car.getShape());
+    /**
+     * Gets the length of a single fixed step.
+     * 
+     * @return The step length in seconds
+     */
+    public double getTimeStep() {
+        return timeStep;
+    }
 
-        return car;
+    /**
+     * Sets the length of a single fixed step.
+     * 
+     * @param timeStep The step length in seconds
+     */
+    public void setTimeStep(double timeStep) {
+        if (timeStep <= 0) {
+            throw new IllegalArgumentException("Time step must be positive: " + timeStep);
+        }
+        this.timeStep = timeStep;
     }
 
     /**
-     * Adds a personal car with the specified color to the simulation at a random position.
+     * Gets the maximum number of steps taken by a single call to {@link #advance(double)}.
      * 
-     * @param color The color of the car
-     * @return The added car, or null if a car could not be added
+     * @return The maximum number of steps
      */
-    public PersonalCar addPersonalCar(Color color) {
-        // Try multiple positions to find one without collisions
-        for (int attempts = 0; attempts < 50; attempts++) {
-            // Generate a random angle
-            double angle = random.nextDouble() * 2 * Math.PI;
+    public int getMaxSubsteps() {
+        return maxSubsteps;
+    }
 
-            // Randomly choose a lane (0 for inner, 1 for outer)
-            int lane = random.nextInt(2);
+    /**
+     * Sets the maximum number of steps taken by a single call to {@link #advance(double)}.
+     * 
+     * @param maxSubsteps The maximum number of steps
+     */
+    public void setMaxSubsteps(int maxSubsteps) {
+        if (maxSubsteps < 1) {
+            throw new IllegalArgumentException("Maximum number of substeps must be at least 1: " + maxSubsteps);
+        }
+        this.maxSubsteps = maxSubsteps;
+    }
 
-            // Calculate the radius of the lane
-            double laneRadius = road.getInnerRadius() + (lane * road.getLaneWidth()) + (road.getLaneWidth() / 2);
+    /**
+     * Gets the fraction of a step accumulated but not consumed yet.
+     * Renderers use it to interpolate between the state before the last step and the current state.
+     * 
+     * @return The fraction in [0, 1)
+     */
+    public double getAccumulatedFraction() {
+        return accumulator / timeStep;
+    }
 
-            // Calculate the position based on the angle and lane radius
-            double x = road.getCenterX() + laneRadius * Math.cos(angle);
-            double y = road.getCenterY() + laneRadius * Math.sin(angle);
+    /**
+     * Gets the number of fixed steps taken so far.
+     * 
+     * @return The number of steps
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
 
-            // Create a temporary car to check for collisions
-            PersonalCar car = new PersonalCar(x, y, lane, road.getCenterX(), road.getCenterY(), 
-                                             road.getInnerRadius(), road.getLaneWidth());
+    /**
+     * Gets the number of steps dropped by {@link #advance(double)} because of the substep cap.
+     * 
+     * @return The number of dropped steps
+     */
+    public long getDroppedSteps() {
+        return droppedSteps;
+    }
 
-            // Set the color if different from default
-            if (!color.equals(PersonalCar.DEFAULT_COLOR)) {
-                car.setColor(color);
-            }
+    /**
+     * Gets the time accumulated by {@link #advance(double)} but not consumed yet.
+     * 
+     * @return The accumulated time in seconds
+     */
+    double getAccumulator() {
+        return accumulator;
+    }
 
-            // Check if the car collides with the obstacle
-            if (road.collidesWithObstacle(car)) {
-                continue; // Try another position
-            }
+    /**
+     * Restores the clock of a checkpointed simulation.
+     * 
+     * @param accumulator The accumulated time in seconds
+     * @param stepCount The number of steps taken
+     * @param droppedSteps The number of dropped steps
+     */
+    void restoreClock(double accumulator, long stepCount, long droppedSteps) {
+        this.accumulator = accumulator;
+        this.stepCount = stepCount;
+        this.droppedSteps = droppedSteps;
+    }
 
-            // Check if the car collides with any existing vehicle
-            boolean collides = false;
-            for (Vehicle vehicle : vehicles) {
-                if (car.collidesWith(vehicle)) {
-                    collides = true;
-                    break;
-                }
-            }
+    /**
+     * Gets the random number generator of the simulation.
+     * 
+     * @return The generator
+     */
+    ResumableRandom getRandom() {
+        return random;
+    }
 
-            if (collides) {
-                continue; // Try another position
-            }
+    /**
+     * Moves a vehicle to another lane.
+     * 
+     * @param vehicle The vehicle to move
+     * @param newLane The new lane (0 for the innermost)
+     * @throws IllegalArgumentException If the road has no such lane
+     */
+    public void changeLane(Vehicle vehicle, int newLane) {
+        if (!road.hasLane(newLane)) {
+            throw new IllegalArgumentException("The road has no lane " + newLane);
+        }
+        vehicle.changeLane(newLane, road.getInnerRadius(), road.getLaneWidth());
+        laneIndex.reindex(vehicle);
+        laneChangeCount++;
+    }
 
-            // If we get here, the car doesn't collide with anything
-            // Set initial acceleration
-            car.setAcceleration(defaultAcceleration);
+    /**
+     * Gets the number of lane changes since the simulation was created or loaded.
+     * 
+     * @return The number of lane changes
+     */
+    public long getLaneChangeCount() {
+        return laneChangeCount;
+    }
 
-            // Add the car to the list of vehicles
-            vehicles.add(car);
+    /**
+     * Adds a personal car to the simulation at a random position.
+     * 
+     * @return The added car
+     */
+    public PersonalCar addPersonalCar() {
+        return addPersonalCar(PersonalCar.DEFAULT_COLOR);
+    }
 
-            // Add the car's shape to the pane
-            simulationPane.getChildren().add(car.getShape());
+    /**
+     * Adds a personal car with the specified color to the simulation at a specific position.
+     * 
+     * @param color The color of the car
+     * @param x The x coordinate where to add the car
+     * @param y The y coordinate where to add the car
+     * @return The added car, or null if a car could not be added at that position
+     */
+    public PersonalCar addPersonalCar(int color, double x, double y) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        PersonalCar car = (PersonalCar) placeVehicleAt(VehicleStore.TYPE_PERSONAL_CAR, color, x, y);
+        commitSpawn(event, PersonalCar.class, 1, car != null ? 1 : 0);
+        return car;
+    }
 
-            return car;
+    /**
+     * Adds a personal car with the specified color to the simulation at a random free position.
+     * 
+     * @param color The color of the car
+     * @return The added car, or null if no gap on the road can hold a car
+     */
+    public PersonalCar addPersonalCar(int color) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        PersonalCar car = (PersonalCar) placeVehicle(VehicleStore.TYPE_PERSONAL_CAR, -1, color);
+        if (car != null) {
+            fireVehicleAdded(car);
         }
-
-        // If we couldn't find a valid position after multiple attempts, return null
-        return null;
+        commitSpawn(event, PersonalCar.class, 1, car != null ? 1 : 0);
+        return car;
     }
 
     /**
-     * Adds multiple personal cars to the simulation at random positions.
+     * Adds multiple personal cars to the simulation at random free positions.
      * 
      * @param count The number of cars to add
+     * @return The added cars; fewer than requested if the road is full
      */
-    public void addPersonalCars(int count) {
-        addPersonalCars(count, PersonalCar.DEFAULT_COLOR);
+    public List<Vehicle> addPersonalCars(int count) {
+        return addPersonalCars(count, PersonalCar.DEFAULT_COLOR);
     }
 
     /**
-     * Adds multiple personal cars with the specified color to the simulation at random positions.
+     * Adds multiple personal cars with the specified color to the simulation at random free positions.
+     * The listeners are notified once about all added cars.
      * 
      * @param count The number of cars to add
      * @param color The color of the cars
+     * @return The added cars; fewer than requested if the road is full
      */
-    public void addPersonalCars(int count, Color color) {
-        for (int i = 0; i < count; i++) {
-            addPersonalCar(color);
-        }
+    public List<Vehicle> addPersonalCars(int count, int color) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        List<Vehicle> added = new ArrayList<>(count);
+        placeVehicles(VehicleStore.TYPE_PERSONAL_CAR, count, -1, color, added);
+        fireVehiclesAdded(added);
+        commitSpawn(event, PersonalCar.class, count, added.size());
+        return added;
     }
 
     /**
@@ -502,137 +563,264 @@ public class Simulation {
      * @param y The y coordinate where to add the truck
      * @return The added truck, or null if a truck could not be added at that position
      */
-    public Truck addTruck(Color color, double x, double y) {
-        // Calculate the distance from the center
-        double distance = Math.sqrt(Math.pow(x - road.getCenterX(), 2) + Math.pow(y - road.getCenterY(), 2));
+    public Truck addTruck(int color, double x, double y) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        Truck truck = (Truck) placeVehicleAt(VehicleStore.TYPE_TRUCK, color, x, y);
+        commitSpawn(event, Truck.class, 1, truck != null ? 1 : 0);
+        return truck;
+    }
 
-        // Determine the lane based on the distance
-        int lane;
-        if (distance < road.getInnerRadius() + road.getLaneWidth()) {
-            lane = 0; // Inner lane
-        } else {
-            lane = 1; // Outer lane
+    /**
+     * Adds a truck with the specified color to the simulation at a random free position.
+     * 
+     * @param color The color of the truck
+     * @return The added truck, or null if no gap on the road can hold a truck
+     */
+    public Truck addTruck(int color) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        Truck truck = (Truck) placeVehicle(VehicleStore.TYPE_TRUCK, -1, color);
+        if (truck != null) {
+            fireVehicleAdded(truck);
         }
+        commitSpawn(event, Truck.class, 1, truck != null ? 1 : 0);
+        return truck;
+    }
 
-        // Create a truck at the specified position
-        Truck truck = new Truck(x, y, lane, road.getCenterX(), road.getCenterY(), 
-                               road.getInnerRadius(), road.getLaneWidth());
+    /**
+     * Adds multiple trucks to the simulation at random free positions.
+     * 
+     * @param count The number of trucks to add
+     * @return The added trucks; fewer than requested if the road is full
+     */
+    public List<Vehicle> addTrucks(int count) {
+        return addTrucks(count, Truck.DEFAULT_COLOR);
+    }
 
-        // Set the color if different from default
-        if (!color.equals(Truck.DEFAULT_COLOR)) {
-            truck.setColor(color);
-        }
+    /**
+     * Adds multiple trucks with the specified color to the simulation at random free positions.
+     * The listeners are notified once about all added trucks.
+     * 
+     * @param count The number of trucks to add
+     * @param color The color of the trucks
+     * @return The added trucks; fewer than requested if the road is full
+     */
+    public List<Vehicle> addTrucks(int count, int color) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        List<Vehicle> added = new ArrayList<>(count);
+        placeVehicles(VehicleStore.TYPE_TRUCK, count, -1, color, added);
+        fireVehiclesAdded(added);
+        commitSpawn(event, Truck.class, count, added.size());
+        return added;
+    }
 
-        // Check if the truck collides with the obstacle
-        if (road.collidesWithObstacle(truck)) {
-            return null; // Can't add truck at this position
-        }
+    /**
+     * Populates the road with a mix of personal cars and trucks at random free positions.
+     * Trucks are placed first, since long vehicles need the largest gaps.
+     * The listeners are notified once about all added vehicles.
+     * 
+     * @param personalCars The number of personal cars to add
+     * @param trucks The number of trucks to add
+     * @return The added vehicles; fewer than requested if the road is full
+     */
+    public List<Vehicle> populate(int personalCars, int trucks) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        List<Vehicle> added = new ArrayList<>(personalCars + trucks);
+        placeVehicles(VehicleStore.TYPE_TRUCK, trucks, -1, Truck.DEFAULT_COLOR, added);
+        placeVehicles(VehicleStore.TYPE_PERSONAL_CAR, personalCars, -1, PersonalCar.DEFAULT_COLOR, added);
+        fireVehiclesAdded(added);
+        commitSpawn(event, Vehicle.class, personalCars + trucks, added.size());
+        return added;
+    }
 
-        // Check if the truck collides with any existing vehicle
-        for (Vehicle vehicle : vehicles) {
-            if (truck.collidesWith(vehicle)) {
-                return null; // Can't add truck at this position
+    /**
+     * Populates the road with a number of vehicles, a share of which are trucks.
+     * 
+     * @param count The total number of vehicles to add
+     * @param truckShare The share of trucks between 0 and 1
+     * @return The added vehicles; fewer than requested if the road is full
+     */
+    public List<Vehicle> populate(int count, double truckShare) {
+        int trucks = (int) Math.round(count * truckShare);
+        return populate(count - trucks, trucks);
+    }
+
+    /**
+     * Fills every lane up to a density, adding a share of trucks.
+     * Lanes that already hold enough vehicles are left as they are.
+     * 
+     * @param density The target number of vehicles per unit of lane length
+     * @param truckShare The share of trucks among the added vehicles between 0 and 1
+     * @return The added vehicles; fewer than requested if a lane is full
+     */
+    public List<Vehicle> populateDensity(double density, double truckShare) {
+        SpawnEvent event = new SpawnEvent();
+        event.begin();
+        int requested = 0;
+        List<Vehicle> added = new ArrayList<>();
+        for (int lane = 0; lane < road.getLaneCount(); lane++) {
+            double laneLength = 2 * Math.PI * road.getLaneRadius(lane);
+            int missing = (int) Math.round(density * laneLength) - laneIndex.size(lane);
+            if (missing <= 0) {
+                continue;
             }
+            requested += missing;
+            int trucks = (int) Math.round(missing * truckShare);
+            placeVehicles(VehicleStore.TYPE_TRUCK, trucks, lane, Truck.DEFAULT_COLOR, added);
+            placeVehicles(VehicleStore.TYPE_PERSONAL_CAR, missing - trucks, lane, PersonalCar.DEFAULT_COLOR, added);
         }
-
-        // If we get here, the truck doesn't collide with anything
-        // Set initial acceleration
-        truck.setAcceleration(defaultAcceleration);
-
-        // Add the truck to the list of vehicles
-        vehicles.add(truck);
-
-        // Add the truck's shape to the pane
-        simulationPane.getChildren().add(truck.getShape());
-
-        return truck;
+        fireVehiclesAdded(added);
+        commitSpawn(event, Vehicle.class, requested, added.size());
+        return added;
     }
 
     /**
-     * Adds a truck with the specified color to the simulation at a random position.
+     * Checks if a vehicle that is not in the simulation yet would collide with any vehicle in it.
+     * Only the vehicles of the lane index near the vehicle are tested.
      * 
-     * @param color The color of the truck
-     * @return The added truck, or null if a truck could not be added
+     * @param vehicle The vehicle to check
+     * @return true if the vehicle would collide, false otherwise
      */
-    public Truck addTruck(Color color) {
-        // Try multiple positions to find one without collisions
-        for (int attempts = 0; attempts < 50; attempts++) {
-            // Generate a random angle
-            double angle = random.nextDouble() * 2 * Math.PI;
-
-            // Randomly choose a lane (0 for inner, 1 for outer)
-            int lane = random.nextInt(2);
-
-            // Calculate the radius of the lane
-            double laneRadius = road.getInnerRadius() + (lane * road.getLaneWidth()) + (road.getLaneWidth() / 2);
+    private boolean collidesWithVehicles(Vehicle vehicle) {
+        collisionDetector.setMaxDimensions(Math.max(store.getMaxWidth(), vehicle.getWidth()),
+                Math.max(store.getMaxHeight(), vehicle.getHeight()));
+        return collisionDetector.findCollisions(vehicle, vehicle.getLane(), vehicle.getAngle()) > 0;
+    }
 
-            // Calculate the position based on the angle and lane radius
-            double x = road.getCenterX() + laneRadius * Math.cos(angle);
-            double y = road.getCenterY() + laneRadius * Math.sin(angle);
+    /**
+     * Adds a vehicle of a type at a specific position if it does not collide with anything there.
+     * 
+     * @param type The type id of the vehicle
+     * @param color The color of the vehicle
+     * @param x The x coordinate where to add the vehicle
+     * @param y The y coordinate where to add the vehicle
+     * @return The added vehicle, or null if a vehicle could not be added at that position
+     */
+    private Vehicle placeVehicleAt(byte type, int color, double x, double y) {
+        // Calculate the distance from the center
+        double distance = Math.sqrt(Math.pow(x - road.getCenterX(), 2) + Math.pow(y - road.getCenterY(), 2));
 
-            // Create a temporary truck to check for collisions
-            Truck truck = new Truck(x, y, lane, road.getCenterX(), road.getCenterY(), 
-                                   road.getInnerRadius(), road.getLaneWidth());
+        // Determine the lane based on the distance
+        int lane = road.getLaneAt(distance);
 
-            // Set the color if different from default
-            if (!color.equals(Truck.DEFAULT_COLOR)) {
-                truck.setColor(color);
-            }
+        // Create the vehicle in the store, but leave it out of the index until it is known to fit
+        Vehicle vehicle = createVehicle(type, x, y, lane, color);
 
-            // Check if the truck collides with the obstacle
-            if (road.collidesWithObstacle(truck)) {
-                continue; // Try another position
-            }
+        // Check if the vehicle collides with the obstacle or with any existing vehicle near it
+        if (road.collidesWithObstacle(vehicle) || collidesWithVehicles(vehicle)) {
+            store.remove(vehicle.getHandle());
+            return null; // Can't add the vehicle at this position
+        }
 
-            // Check if the truck collides with any existing vehicle
-            boolean collides = false;
-            for (Vehicle vehicle : vehicles) {
-                if (truck.collidesWith(vehicle)) {
-                    collides = true;
-                    break;
-                }
-            }
+        // If we get here, the vehicle doesn't collide with anything
+        laneIndex.add(vehicle);
 
-            if (collides) {
-                continue; // Try another position
-            }
+        // Notify the listeners about the new vehicle
+        fireVehicleAdded(vehicle);
 
-            // If we get here, the truck doesn't collide with anything
-            // Set initial acceleration
-            truck.setAcceleration(defaultAcceleration);
+        return vehicle;
+    }
 
-            // Add the truck to the list of vehicles
-            vehicles.add(truck);
+    /**
+     * Creates a vehicle of a type directly in the store, sharing the profile of its type.
+     * The vehicle is not indexed and the listeners are not notified.
+     * 
+     * @param type The type id of the vehicle
+     * @param x The x coordinate of the vehicle
+     * @param y The y coordinate of the vehicle
+     * @param lane The lane of the vehicle
+     * @param color The color of the vehicle
+     * @return The created vehicle
+     */
+    private Vehicle createVehicle(byte type, double x, double y, int lane, int color) {
+        boolean truck = type == VehicleStore.TYPE_TRUCK;
+        ParameterProfile profile = truck ? truckProfile : personalCarProfile;
+        double angle = Math.atan2(y - road.getCenterY(), x - road.getCenterX());
+        int handle = store.add(type, angle, lane, road.getLaneRadius(lane), color,
+                truck ? Truck.WIDTH : PersonalCar.WIDTH, truck ? Truck.HEIGHT : PersonalCar.HEIGHT, profile);
+        Vehicle vehicle = truck ? new Truck(store, handle) : new PersonalCar(store, handle);
+        vehicle.setAcceleration(profile.getAcceleration());
+        return vehicle;
+    }
 
-            // Add the truck's shape to the pane
-            simulationPane.getChildren().add(truck.getShape());
+    /**
+     * Places vehicles of a type until the count is reached or no gap can hold another one.
+     * The listeners are not notified.
+     * 
+     * @param type The type id of the vehicles
+     * @param count The number of vehicles to place
+     * @param lane The lane to place the vehicles in, or -1 for any lane
+     * @param color The color of the vehicles
+     * @param added The list the placed vehicles are added to
+     */
+    private void placeVehicles(byte type, int count, int lane, int color, List<Vehicle> added) {
+        if (count <= 0) {
+            return;
+        }
 
-            return truck;
+        // The gaps are collected once and every placed vehicle takes its room out of them
+        collectGaps(type, lane);
+        for (int i = 0; i < count; i++) {
+            Vehicle vehicle = placeInGap(type, color);
+            if (vehicle == null) {
+                break; // No gap left for this type
+            }
+            added.add(vehicle);
         }
+    }
 
-        // If we couldn't find a valid position after multiple attempts, return null
-        return null;
+    /**
+     * Places a vehicle of a type at a random free position found by the gap placer.
+     * The listeners are not notified.
+     * 
+     * @param type The type id of the vehicle
+     * @param lane The lane to place the vehicle in, or -1 for any lane
+     * @param color The color of the vehicle
+     * @return The placed vehicle, or null if no gap can hold it
+     */
+    private Vehicle placeVehicle(byte type, int lane, int color) {
+        collectGaps(type, lane);
+        return placeInGap(type, color);
     }
 
     /**
-     * Adds multiple trucks to the simulation at random positions.
+     * Lets the gap placer collect the free gaps for vehicles of a type.
      * 
-     * @param count The number of trucks to add
+     * @param type The type id of the vehicles
+     * @param lane The lane to place the vehicles in, or -1 for any lane
      */
-    public void addTrucks(int count) {
-        addTrucks(count, Truck.DEFAULT_COLOR);
+    private void collectGaps(byte type, int lane) {
+        boolean truck = type == VehicleStore.TYPE_TRUCK;
+        double length = truck ? Truck.WIDTH : PersonalCar.WIDTH;
+        double width = truck ? Truck.HEIGHT : PersonalCar.HEIGHT;
+        gapPlacer.collect(lane, length, width, store.getMaxHeight());
     }
 
     /**
-     * Adds multiple trucks with the specified color to the simulation at random positions.
+     * Places a vehicle of a type in one of the gaps collected for the type and adds it to the index.
      * 
-     * @param count The number of trucks to add
-     * @param color The color of the trucks
+     * @param type The type id of the vehicle
+     * @param color The color of the vehicle
+     * @return The placed vehicle, or null if no gap can hold it
      */
-    public void addTrucks(int count, Color color) {
-        for (int i = 0; i < count; i++) {
-            addTruck(color);
+    private Vehicle placeInGap(byte type, int color) {
+        if (!gapPlacer.place(random)) {
+            return null;
         }
+
+        // Calculate the position based on the placed angle and lane radius
+        int placedLane = gapPlacer.getPlacedLane();
+        double angle = gapPlacer.getPlacedAngle();
+        double laneRadius = road.getLaneRadius(placedLane);
+        double x = road.getCenterX() + laneRadius * Math.cos(angle);
+        double y = road.getCenterY() + laneRadius * Math.sin(angle);
+
+        Vehicle vehicle = createVehicle(type, x, y, placedLane, color);
+        laneIndex.add(vehicle);
+        return vehicle;
     }
 
     /**
@@ -641,11 +829,20 @@ public class Simulation {
      * @param vehicle The vehicle to remove
      */
     public void removeVehicle(Vehicle vehicle) {
-        // Remove the vehicle's shape from the pane
-        simulationPane.getChildren().remove(vehicle.getShape());
-
-        // Remove the vehicle from the list
-        vehicles.remove(vehicle);
+        // Move the vehicle out of the store and notify the listeners
+        if (vehicle.store == store) {
+            RemoveEvent event = new RemoveEvent();
+            event.begin();
+            laneIndex.remove(vehicle);
+            store.release(vehicle);
+            fireVehicleRemoved(vehicle);
+            event.end();
+            if (event.shouldCommit()) {
+                event.vehicleType = vehicle.getClass().getSimpleName();
+                event.vehicleCount = store.size();
+                event.commit();
+            }
+        }
     }
 
     /**
@@ -654,13 +851,13 @@ public class Simulation {
      * @return true if a vehicle was removed, false if there were no vehicles to remove
      */
     public boolean removeRandomVehicle() {
-        if (vehicles.isEmpty()) {
+        if (store.size() == 0) {
             return false;
         }
 
         // Select a random vehicle
-        int index = random.nextInt(vehicles.size());
-        Vehicle vehicle = vehicles.get(index);
+        int index = random.nextInt(store.size());
+        Vehicle vehicle = store.getVehicle(index);
 
         // Remove the vehicle
         removeVehicle(vehicle);
@@ -669,49 +866,100 @@ public class Simulation {
     }
 
     /**
-     * Starts the simulation.
+     * Sets the acceleration of all vehicles that have free road ahead.
+     * Only the profiles of the vehicle types change; the vehicles pick it up on the next step.
+     * 
+     * @param acceleration The new default acceleration
      */
-    public void start() {
-        if (!isRunning) {
-            isRunning = true;
-            lastUpdateTime = 0;
-            animationTimer.start();
-        }
+    public void setDefaultAcceleration(double acceleration) {
+        personalCarProfile.setAcceleration(acceleration);
+        truckProfile.setAcceleration(acceleration);
     }
 
     /**
-     * Stops the simulation.
+     * Gets the acceleration of personal cars that have free road ahead.
+     * 
+     * @return The default acceleration
      */
-    public void stop() {
-        if (isRunning) {
-            isRunning = false;
-            animationTimer.stop();
-        }
+    public double getDefaultAcceleration() {
+        return personalCarProfile.getAcceleration();
     }
 
     /**
-     * Sets the default acceleration for new vehicles.
+     * Gets the parameters shared by all personal cars.
+     * Changes to the profile apply to every personal car without an override on the next step.
      * 
-     * @param acceleration The new default acceleration
+     * @return The profile of personal cars
      */
-    public void setDefaultAcceleration(double acceleration) {
-        this.defaultAcceleration = acceleration;
+    public ParameterProfile getPersonalCarProfile() {
+        return personalCarProfile;
+    }
 
-        // Update acceleration for all existing vehicles
-        for (Vehicle vehicle : vehicles) {
-            vehicle.setAcceleration(acceleration);
-        }
+    /**
+     * Gets the parameters shared by all trucks.
+     * Changes to the profile apply to every truck without an override on the next step.
+     * 
+     * @return The profile of trucks
+     */
+    public ParameterProfile getTruckProfile() {
+        return truckProfile;
+    }
+
+    /**
+     * Selects how vehicles react to their surroundings in each step.
+     * In sequential mode each vehicle acts on the decisions of the vehicles before it in the same step.
+     * In parallel mode all vehicles decide on the state at the start of the step, in parallel on the
+     * fork-join pool the step is called from or else the common pool, and the decisions are applied
+     * afterwards; the result is the same for any number of threads, but differs from the sequential
+     * update. A pool of a single thread, or a fleet too small to split, is decided on the calling
+     * thread, where the two passes cost as much as a sequential step or up to a tenth more in dense
+     * traffic. The parallel update only pays off with several threads and thousands of vehicles, so
+     * it is off by default.
+     * 
+     * @param parallel true for the parallel two-phase update, false for the sequential update
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Selects the kernel that advances the velocities and angles of all vehicles at the start of each
+     * step. By default the vector kernel is used when the runtime has the Vector API.
+     * 
+     * @param kinematicsKernel The kernel
+     * @throws IllegalArgumentException if the kernel is not available on this runtime
+     */
+    public void setKinematicsKernel(KinematicsKernel kinematicsKernel) {
+        store.setKinematicsKernel(kinematicsKernel);
+    }
+
+    /**
+     * Gets the kernel that advances the vehicles at the start of each step.
+     * 
+     * @return The kernel
+     */
+    public KinematicsKernel getKinematicsKernel() {
+        return store.getKinematicsKernel();
+    }
+
+    /**
+     * Checks if the vehicles are updated in parallel.
+     * 
+     * @return true if the parallel two-phase update is used, false otherwise
+     */
+    public boolean isParallel() {
+        return parallel;
     }
 
     /**
      * Sets the maximum velocity for all vehicles.
+     * Vehicles whose maximum velocity was set individually keep it.
      * 
      * @param maxVelocity The new maximum velocity
      */
     public void setMaxVelocity(double maxVelocity) {
-        for (Vehicle vehicle : vehicles) {
-            vehicle.setMaxVelocity(maxVelocity);
-        }
+        personalCarProfile.setMaxVelocity(maxVelocity);
+        truckProfile.setMaxVelocity(maxVelocity);
     }
 
     /**
@@ -720,11 +968,7 @@ public class Simulation {
      * @param maxVelocity The new maximum velocity for personal cars
      */
     public void setPersonalCarMaxVelocity(double maxVelocity) {
-        for (Vehicle vehicle : vehicles) {
-            if (vehicle instanceof PersonalCar) {
-                vehicle.setMaxVelocity(maxVelocity);
-            }
-        }
+        personalCarProfile.setMaxVelocity(maxVelocity);
     }
 
     /**
@@ -733,11 +977,112 @@ public class Simulation {
      * @param maxVelocity The new maximum velocity for trucks
      */
     public void setTruckMaxVelocity(double maxVelocity) {
-        for (Vehicle vehicle : vehicles) {
-            if (vehicle instanceof Truck) {
-                vehicle.setMaxVelocity(maxVelocity);
-            }
-        }
+        truckProfile.setMaxVelocity(maxVelocity);
+    }
+
+    /**
+     * Sets the driving model of all vehicles.
+     * Checkpoints save the driving models that come with the simulator, with their parameters; a
+     * simulation driven by another implementation cannot be checkpointed.
+     * 
+     * @param model The new driving model
+     */
+    public void setDrivingModel(DrivingModel model) {
+        setPersonalCarDrivingModel(model);
+        setTruckDrivingModel(model);
+    }
+
+    /**
+     * Sets the driving model of all personal cars.
+     * 
+     * @param model The new driving model of personal cars
+     */
+    public void setPersonalCarDrivingModel(DrivingModel model) {
+        setDrivingModel(VehicleStore.TYPE_PERSONAL_CAR, model);
+    }
+
+    /**
+     * Sets the driving model of all trucks.
+     * 
+     * @param model The new driving model of trucks
+     */
+    public void setTruckDrivingModel(DrivingModel model) {
+        setDrivingModel(VehicleStore.TYPE_TRUCK, model);
+    }
+
+    /**
+     * Sets the driving model of a vehicle type. The sequential update calls the rules of a
+     * {@link ClassicDrivingModel} directly, without filling in a driving context.
+     */
+    private void setDrivingModel(byte type, DrivingModel model) {
+        drivingModels[type] = Objects.requireNonNull(model);
+        classicModels[type] = model instanceof ClassicDrivingModel ? (ClassicDrivingModel) model : null;
+    }
+
+    /**
+     * Gets the driving model of personal cars.
+     * 
+     * @return The driving model, by default a {@link ClassicDrivingModel}
+     */
+    public DrivingModel getPersonalCarDrivingModel() {
+        return drivingModels[VehicleStore.TYPE_PERSONAL_CAR];
+    }
+
+    /**
+     * Gets the driving model of trucks.
+     * 
+     * @return The driving model, by default a {@link ClassicDrivingModel}
+     */
+    public DrivingModel getTruckDrivingModel() {
+        return drivingModels[VehicleStore.TYPE_TRUCK];
+    }
+
+    /**
+     * Gets the driving model of a vehicle type.
+     * 
+     * @param type The type id
+     * @return The driving model
+     */
+    DrivingModel getDrivingModel(byte type) {
+        return drivingModels[type];
+    }
+
+    /**
+     * Sets the color of all personal cars.
+     * 
+     * @param color The new color as packed 0xAARRGGBB
+     */
+    public void setPersonalCarColor(int color) {
+        store.setColor(VehicleStore.TYPE_PERSONAL_CAR, color);
+    }
+
+    /**
+     * Sets the color of all trucks.
+     * 
+     * @param color The new color as packed 0xAARRGGBB
+     */
+    public void setTruckColor(int color) {
+        store.setColor(VehicleStore.TYPE_TRUCK, color);
+    }
+
+    /**
+     * Sets the dimensions of all personal cars.
+     * 
+     * @param width The new width (in direction of travel)
+     * @param height The new height (perpendicular to travel)
+     */
+    public void setPersonalCarDimensions(double width, double height) {
+        store.setDimensions(VehicleStore.TYPE_PERSONAL_CAR, width, height);
+    }
+
+    /**
+     * Sets the dimensions of all trucks.
+     * 
+     * @param width The new width (in direction of travel)
+     * @param height The new height (perpendicular to travel)
+     */
+    public void setTruckDimensions(double width, double height) {
+        store.setDimensions(VehicleStore.TYPE_TRUCK, width, height);
     }
 
     /**
@@ -746,49 +1091,214 @@ public class Simulation {
      * @return The number of vehicles
      */
     public int getVehicleCount() {
-        return vehicles.size();
+        return store.size();
+    }
+
+    /**
+     * Gets the number of vehicles of the specified type in O(1).
+     * 
+     * @param vehicleClass The class of the vehicle type
+     * @return The number of vehicles of the type
+     */
+    public int getVehicleCount(Class<? extends Vehicle> vehicleClass) {
+        return getVehicles(vehicleClass).size();
+    }
+
+    /**
+     * Gets all vehicles in the simulation.
+     * 
+     * @return A read-only live view of the vehicles
+     */
+    public List<Vehicle> getVehicles() {
+        return store.getVehicles();
     }
 
     /**
-     * Checks if the simulation is running.
+     * Gets the store holding the state of the vehicles.
      * 
-     * @return true if the simulation is running, false otherwise
+     * @return The vehicle store
      */
-    public boolean isRunning() {
-        return isRunning;
+    public VehicleStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gets the index of the vehicles by lane, as of the last step.
+     * 
+     * @return The lane index
+     */
+    public LaneIndex getLaneIndex() {
+        return laneIndex;
+    }
+
+    /**
+     * Gets the histogram of the wall-clock time taken by every step since the simulation was created.
+     * It is updated by the thread that steps the simulation; other threads should read a copy.
+     * 
+     * @return The histogram of step times in nanoseconds
+     */
+    public LatencyHistogram getStepTimes() {
+        return stepTimes;
+    }
+
+    /**
+     * Gets the profiler recording the phases of each step.
+     * It is disabled until switched on with {@link StepProfiler#setEnabled(boolean)}.
+     * 
+     * @return The profiler
+     */
+    public StepProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Gets the road of the simulation.
+     * 
+     * @return The road
+     */
+    public Road getRoad() {
+        return road;
     }
 
     /**
      * Gets all vehicles of the specified type.
+     * The store keeps the vehicles partitioned by type, so no list is built.
      * 
      * @param <T> The type of vehicle to get
      * @param vehicleClass The class of the vehicle type
-     * @return A list of vehicles of the specified type
+     * @return A read-only live view of the vehicles of the specified type
      */
+    @SuppressWarnings("unchecked")
     public <T extends Vehicle> List<T> getVehicles(Class<T> vehicleClass) {
-        List<T> result = new ArrayList<>();
-        for (Vehicle vehicle : vehicles) {
-            if (vehicleClass.isInstance(vehicle)) {
-                result.add(vehicleClass.cast(vehicle));
-            }
+        if (vehicleClass == PersonalCar.class) {
+            return (List<T>) store.getVehicles(VehicleStore.TYPE_PERSONAL_CAR);
+        } else if (vehicleClass == Truck.class) {
+            return (List<T>) store.getVehicles(VehicleStore.TYPE_TRUCK);
+        } else if (vehicleClass == Vehicle.class) {
+            return (List<T>) store.getVehicles();
         }
-        return result;
+        return Collections.emptyList();
     }
 
     /**
      * Finds a vehicle at the specified position.
+     * The point is converted to polar coordinates once and only the vehicles of the lane index within
+     * reach of it are tested, so beyond a binary search per lane the cost depends on the vehicles near
+     * the point rather than on the size of the fleet.
      * 
      * @param x The x coordinate
      * @param y The y coordinate
      * @return The vehicle at the specified position, or null if there is no vehicle at that position
      */
     public Vehicle getVehicleAt(double x, double y) {
-        for (Vehicle vehicle : vehicles) {
-            // Check if the point (x, y) is inside the vehicle's shape
-            if (vehicle.getShape().contains(x - vehicle.getShape().getX(), y - vehicle.getShape().getY())) {
-                return vehicle;
+        // Convert the point to polar coordinates
+        double dx = x - road.getCenterX();
+        double dy = y - road.getCenterY();
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double angle = VehicleStore.normalize(Math.atan2(dy, dx));
+
+        // No point of a body is further from its center than half its diagonal
+        double reach = Math.hypot(store.getMaxWidth() / 2, store.getMaxHeight() / 2);
+
+        for (int lane = 0; lane < road.getLaneCount(); lane++) {
+            double laneRadius = road.getLaneRadius(lane);
+            int size = laneIndex.size(lane);
+            if (size == 0 || Math.abs(distance - laneRadius) > reach) {
+                continue;
+            }
+
+            // Bodies further away from the angle than the window cannot contain the point
+            double window = reach < laneRadius ? Math.asin(reach / laneRadius) : Math.PI;
+            int start = laneIndex.lowerBound(lane, angle);
+
+            // Walk forward from the angle
+            int visited = 0;
+            for (; visited < size; visited++) {
+                int slot = (start + visited) % size;
+                if (LaneIndex.forwardAngle(angle, laneIndex.getAngle(lane, slot)) > window) {
+                    break;
+                }
+                if (laneIndex.get(lane, slot).contains(x, y)) {
+                    return laneIndex.get(lane, slot);
+                }
+            }
+
+            // Walk backward from the angle, without visiting a vehicle twice
+            for (int i = 1; i <= size - visited; i++) {
+                int slot = (start - i + size) % size;
+                if (LaneIndex.forwardAngle(laneIndex.getAngle(lane, slot), angle) > window) {
+                    break;
+                }
+                if (laneIndex.get(lane, slot).contains(x, y)) {
+                    return laneIndex.get(lane, slot);
+                }
             }
         }
         return null;
     }
+
+    /**
+     * Ends a spawn event and commits it if the running recording asks for it.
+     * 
+     * @param event The event begun when the call started
+     * @param vehicleClass The class of the added vehicles, or Vehicle for a mix of types
+     * @param requested The number of vehicles the call asked for
+     * @param added The number of vehicles actually added
+     */
+    private void commitSpawn(SpawnEvent event, Class<? extends Vehicle> vehicleClass, int requested, int added) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.vehicleType = vehicleClass.getSimpleName();
+            event.requested = requested;
+            event.added = added;
+            event.vehicleCount = store.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Notifies the listeners that a vehicle has been added.
+     * 
+     * @param vehicle The added vehicle
+     */
+    private void fireVehicleAdded(Vehicle vehicle) {
+        for (SimulationListener listener : listeners) {
+            listener.vehicleAdded(vehicle);
+        }
+    }
+
+    /**
+     * Notifies the listeners that vehicles have been added in bulk.
+     * 
+     * @param vehicles The added vehicles
+     */
+    private void fireVehiclesAdded(List<Vehicle> vehicles) {
+        if (vehicles.isEmpty()) {
+            return;
+        }
+        List<Vehicle> added = Collections.unmodifiableList(vehicles);
+        for (SimulationListener listener : listeners) {
+            listener.vehiclesAdded(added);
+        }
+    }
+
+    /**
+     * Notifies the listeners that a step has been taken.
+     */
+    private void fireStepTaken() {
+        for (SimulationListener listener : listeners) {
+            listener.stepTaken(stepCount);
+        }
+    }
+
+    /**
+     * Notifies the listeners that a vehicle has been removed.
+     * 
+     * @param vehicle The removed vehicle
+     */
+    private void fireVehicleRemoved(Vehicle vehicle) {
+        for (SimulationListener listener : listeners) {
+            listener.vehicleRemoved(vehicle);
+        }
+    }
 }
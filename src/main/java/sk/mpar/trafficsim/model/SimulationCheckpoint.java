@@ -0,0 +1,463 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves the complete state of a {@link Simulation} into a compact binary checkpoint and restores it.
+ * 
+ * A checkpoint holds the road, the clock, the parameter profiles, the driving models, the state of the
+ * random number generator, every vehicle with its handle and the order of the lane index. Only the
+ * driving models that come with the simulator can be saved. A simulation loaded from
+ * a checkpoint continues exactly like the saved one would have, bit for bit, as long as both are driven
+ * by the same calls. Vehicles are written column by column straight from the arrays of the
+ * {@link VehicleStore}, so saving and loading are mostly bulk copies; files are written and read
+ * through memory mapping. Listeners, the profiler and the histograms are not part of the state.
+ * 
+ * The layout is little-endian:
+ * 
+ * <pre>
+ * header    int magic, int version
+ * road      double centerX, centerY, innerRadius, laneWidth, obstacleAngle (NaN without an obstacle),
+ *           int laneCount
+ * clock     double timeStep, double accumulator, long stepCount, long droppedSteps,
+ *           int maxSubsteps, int parallel
+ * random    long state
+ * profiles  int count, then per profile: int parent (-1 for none), double maxVelocity, double acceleration
+ *           (NaN when inherited); the first two are the profiles of personal cars and trucks
+ * models    for personal cars and then trucks: int kind (0 classic, 1 IDM, 2 Gipps, 3 Krauss),
+ *           double[4] parameters in the order of the constructor (0 when unused), int laneChange
+ *           (0 none, 1 MOBIL), double politeness, threshold, safeDeceleration (0 without MOBIL)
+ * vehicles  int size, int handleCount, int freeHandleCount, int[freeHandleCount] freeHandles,
+ *           then one column of size entries each: double x, y, angle, laneRadius, velocity,
+ *           acceleration, width, height, previousAngle, previousLaneRadius; int handle, lane, color,
+ *           profile; byte type, changingLane
+ * lanes     int laneCount, then per lane: int count, int[count] handles, double[count] angles
+ * </pre>
+ * 
+ * Checkpoints of the earlier versions have no models and load with the classic model; the first
+ * version has no lane count either.
+ */
+public final class SimulationCheckpoint {
+    // "SIMC" in the first four bytes of a checkpoint
+    private static final int MAGIC = 0x434D4953;
+    private static final int VERSION = 3;
+    // Checkpoints of this version have no lane count and two lanes
+    private static final int VERSION_TWO_LANES = 1;
+    // Checkpoints of this and the earlier version have no driving models
+    private static final int VERSION_NO_MODELS = 2;
+
+    // Kinds of the saved driving models
+    private static final int MODEL_CLASSIC = 0;
+    private static final int MODEL_IDM = 1;
+    private static final int MODEL_GIPPS = 2;
+    private static final int MODEL_KRAUSS = 3;
+
+    // Sizes of the parts that do not depend on the number of vehicles
+    private static final int HEADER_SIZE = 8 + 5 * 8 + 4 + 4 * 8 + 2 * 4 + 8;
+    private static final int PROFILE_SIZE = 4 + 2 * 8;
+    private static final int MODEL_SIZE = 4 + 4 * 8 + 4 + 3 * 8;
+    private static final int VEHICLE_SIZE = 10 * 8 + 4 * 4 + 2;
+
+    private SimulationCheckpoint() {
+    }
+
+    /**
+     * Saves the state of a simulation into a file, replacing its contents.
+     * 
+     * @param simulation The simulation to save
+     * @param path The file to write
+     * @throws IOException If the file cannot be written
+     * @throws IllegalArgumentException If a driving model of the simulation cannot be saved
+     */
+    public static void save(Simulation simulation, Path path) throws IOException {
+        checkModels(simulation);
+        List<ParameterProfile> profiles = collectProfiles(simulation);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(simulation, profiles));
+            write(simulation, profiles, buffer.order(ByteOrder.LITTLE_ENDIAN));
+            buffer.force();
+        }
+    }
+
+    /**
+     * Loads a simulation from a file written by {@link #save(Simulation, Path)}.
+     * 
+     * @param path The file to read
+     * @return A new simulation in the saved state, without listeners
+     * @throws IOException If the file cannot be read or is not a checkpoint
+     */
+    public static Simulation load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Corrupt checkpoint: " + path, e);
+        }
+    }
+
+    /**
+     * Saves the state of a simulation into memory, for branching runs without touching the disk.
+     * 
+     * @param simulation The simulation to save
+     * @return A buffer holding the checkpoint, positioned at its start
+     * @throws IllegalArgumentException If a driving model of the simulation cannot be saved
+     */
+    public static ByteBuffer encode(Simulation simulation) {
+        checkModels(simulation);
+        List<ParameterProfile> profiles = collectProfiles(simulation);
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(sizeOf(simulation, profiles)));
+        write(simulation, profiles, buffer.order(ByteOrder.LITTLE_ENDIAN));
+        return buffer.flip();
+    }
+
+    /**
+     * Loads a simulation from a checkpoint in memory. The buffer can be decoded any number of times.
+     * 
+     * @param checkpoint The checkpoint, as returned by {@link #encode(Simulation)}
+     * @return A new simulation in the saved state, without listeners
+     * @throws IllegalArgumentException If the buffer does not hold a checkpoint
+     */
+    public static Simulation decode(ByteBuffer checkpoint) {
+        try {
+            return read(checkpoint.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated checkpoint", e);
+        }
+    }
+
+    /**
+     * Checks that the driving models of a simulation can be saved, before anything is written.
+     */
+    private static void checkModels(Simulation simulation) {
+        for (DrivingModel model : new DrivingModel[] {
+                simulation.getPersonalCarDrivingModel(), simulation.getTruckDrivingModel()}) {
+            if (!(model instanceof ClassicDrivingModel || model instanceof IntelligentDriverModel
+                    || model instanceof GippsModel || model instanceof KraussModel)) {
+                throw new IllegalArgumentException("Cannot checkpoint driving model " + model.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Lists the profiles used by the simulation, every parent before its overrides.
+     * The shared profiles of personal cars and trucks come first.
+     */
+    private static List<ParameterProfile> collectProfiles(Simulation simulation) {
+        Map<ParameterProfile, Integer> indices = new IdentityHashMap<>();
+        List<ParameterProfile> profiles = new ArrayList<>();
+        addProfile(simulation.getPersonalCarProfile(), indices, profiles);
+        addProfile(simulation.getTruckProfile(), indices, profiles);
+        VehicleStore store = simulation.getStore();
+        for (int slot = 0; slot < store.size(); slot++) {
+            addProfile(store.profile[slot], indices, profiles);
+        }
+        return profiles;
+    }
+
+    private static void addProfile(ParameterProfile profile, Map<ParameterProfile, Integer> indices,
+                                   List<ParameterProfile> profiles) {
+        if (indices.containsKey(profile)) {
+            return;
+        }
+        if (profile.getParent() != null) {
+            addProfile(profile.getParent(), indices, profiles);
+        }
+        indices.put(profile, profiles.size());
+        profiles.add(profile);
+    }
+
+    /**
+     * Computes the size of the checkpoint of a simulation in bytes.
+     */
+    private static long sizeOf(Simulation simulation, List<ParameterProfile> profiles) {
+        VehicleStore store = simulation.getStore();
+        LaneIndex laneIndex = simulation.getLaneIndex();
+        long size = HEADER_SIZE + 4 + (long) profiles.size() * PROFILE_SIZE + 2 * MODEL_SIZE;
+        size += 3 * 4 + (long) store.getFreeHandles().length * 4 + (long) store.size() * VEHICLE_SIZE;
+        size += 4;
+        for (int lane = 0; lane < simulation.getRoad().getLaneCount(); lane++) {
+            size += 4 + (long) laneIndex.size(lane) * (4 + 8);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the checkpoint of a simulation into a buffer large enough to hold it.
+     */
+    private static void write(Simulation simulation, List<ParameterProfile> profiles, ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(VERSION);
+
+        // Road
+        Road road = simulation.getRoad();
+        buffer.putDouble(road.getCenterX()).putDouble(road.getCenterY());
+        buffer.putDouble(road.getInnerRadius()).putDouble(road.getLaneWidth());
+        buffer.putDouble(road.hasObstacle() ? road.getObstacleAngle() : Double.NaN);
+        buffer.putInt(road.getLaneCount());
+
+        // Clock and random number generator
+        buffer.putDouble(simulation.getTimeStep()).putDouble(simulation.getAccumulator());
+        buffer.putLong(simulation.getStepCount()).putLong(simulation.getDroppedSteps());
+        buffer.putInt(simulation.getMaxSubsteps()).putInt(simulation.isParallel() ? 1 : 0);
+        buffer.putLong(simulation.getRandom().getState());
+
+        // Profiles, with their parents referenced by position
+        Map<ParameterProfile, Integer> indices = new IdentityHashMap<>();
+        buffer.putInt(profiles.size());
+        for (ParameterProfile profile : profiles) {
+            buffer.putInt(profile.getParent() != null ? indices.get(profile.getParent()) : -1);
+            buffer.putDouble(profile.getOwnMaxVelocity()).putDouble(profile.getOwnAcceleration());
+            indices.put(profile, indices.size());
+        }
+
+        // Driving models
+        writeModel(simulation.getPersonalCarDrivingModel(), buffer);
+        writeModel(simulation.getTruckDrivingModel(), buffer);
+
+        // Vehicles, one state array after another
+        VehicleStore store = simulation.getStore();
+        int size = store.size();
+        int[] freeHandles = store.getFreeHandles();
+        buffer.putInt(size).putInt(store.getHandleCount()).putInt(freeHandles.length);
+        buffer.asIntBuffer().put(freeHandles);
+        buffer.position(buffer.position() + freeHandles.length * 4);
+        for (double[] column : doubleColumns(store)) {
+            buffer.asDoubleBuffer().put(column, 0, size);
+            buffer.position(buffer.position() + size * 8);
+        }
+        for (int slot = 0; slot < size; slot++) {
+            buffer.putInt(store.handleAt(slot));
+        }
+        buffer.asIntBuffer().put(store.lane, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().put(store.color, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        ParameterProfile carProfile = simulation.getPersonalCarProfile();
+        ParameterProfile truckProfile = simulation.getTruckProfile();
+        for (int slot = 0; slot < size; slot++) {
+            ParameterProfile profile = store.profile[slot];
+            buffer.putInt(profile == carProfile ? 0 : profile == truckProfile ? 1 : indices.get(profile));
+        }
+        buffer.put(store.type, 0, size);
+        for (int slot = 0; slot < size; slot++) {
+            buffer.put((byte) (store.changingLane[slot] ? 1 : 0));
+        }
+
+        // Order of the lane index, which breaks ties between vehicles at the same angle
+        LaneIndex laneIndex = simulation.getLaneIndex();
+        buffer.putInt(road.getLaneCount());
+        for (int lane = 0; lane < road.getLaneCount(); lane++) {
+            int count = laneIndex.size(lane);
+            buffer.putInt(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(laneIndex.get(lane, i).handle);
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.putDouble(laneIndex.getAngle(lane, i));
+            }
+        }
+    }
+
+    /**
+     * Reads a checkpoint from the current position of a buffer.
+     */
+    private static Simulation read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a simulation checkpoint");
+        }
+        int version = buffer.getInt();
+        if (version < VERSION_TWO_LANES || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+        }
+
+        // Road
+        double centerX = buffer.getDouble();
+        double centerY = buffer.getDouble();
+        double innerRadius = buffer.getDouble();
+        double laneWidth = buffer.getDouble();
+        double obstacleAngle = buffer.getDouble();
+        int roadLaneCount = version == VERSION_TWO_LANES ? Road.DEFAULT_LANE_COUNT : buffer.getInt();
+        Road road = new Road(centerX, centerY, innerRadius, laneWidth, roadLaneCount, obstacleAngle);
+
+        // Clock and random number generator
+        double timeStep = buffer.getDouble();
+        double accumulator = buffer.getDouble();
+        long stepCount = buffer.getLong();
+        long droppedSteps = buffer.getLong();
+        int maxSubsteps = buffer.getInt();
+        boolean parallel = buffer.getInt() != 0;
+        ResumableRandom random = new ResumableRandom(0);
+        random.setState(buffer.getLong());
+
+        Simulation simulation = new Simulation(road, random);
+        simulation.setTimeStep(timeStep);
+        simulation.setMaxSubsteps(maxSubsteps);
+        simulation.setParallel(parallel);
+        simulation.restoreClock(accumulator, stepCount, droppedSteps);
+
+        // Profiles; the shared ones of the new simulation take the saved values
+        ParameterProfile[] profiles = new ParameterProfile[buffer.getInt()];
+        for (int i = 0; i < profiles.length; i++) {
+            int parent = buffer.getInt();
+            double maxVelocity = buffer.getDouble();
+            double acceleration = buffer.getDouble();
+            if (i < 2) {
+                profiles[i] = i == 0 ? simulation.getPersonalCarProfile() : simulation.getTruckProfile();
+                profiles[i].setMaxVelocity(maxVelocity);
+                profiles[i].setAcceleration(acceleration);
+            } else if (parent < 0) {
+                profiles[i] = new ParameterProfile(maxVelocity, acceleration);
+            } else {
+                profiles[i] = new ParameterProfile(profiles[parent]);
+                profiles[i].setMaxVelocity(maxVelocity);
+                profiles[i].setAcceleration(acceleration);
+            }
+        }
+
+        // Driving models
+        if (version > VERSION_NO_MODELS) {
+            simulation.setPersonalCarDrivingModel(readModel(buffer));
+            simulation.setTruckDrivingModel(readModel(buffer));
+        }
+
+        // Vehicles, written straight into the state arrays
+        VehicleStore store = simulation.getStore();
+        int size = buffer.getInt();
+        int handleCount = buffer.getInt();
+        int[] freeHandles = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(freeHandles);
+        buffer.position(buffer.position() + freeHandles.length * 4);
+        store.clear(Math.max(size, handleCount));
+        for (double[] column : doubleColumns(store)) {
+            buffer.asDoubleBuffer().get(column, 0, size);
+            buffer.position(buffer.position() + size * 8);
+        }
+        int[] handles = new int[size];
+        buffer.asIntBuffer().get(handles);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().get(store.lane, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().get(store.color, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        for (int slot = 0; slot < size; slot++) {
+            store.profile[slot] = profiles[buffer.getInt()];
+        }
+        buffer.get(store.type, 0, size);
+        for (int slot = 0; slot < size; slot++) {
+            store.changingLane[slot] = buffer.get() != 0;
+        }
+        store.restoreHandles(size, handles, handleCount, freeHandles, freeHandles.length);
+        for (int slot = 0; slot < size; slot++) {
+            if (store.type[slot] == VehicleStore.TYPE_TRUCK) {
+                new Truck(store, handles[slot]);
+            } else {
+                new PersonalCar(store, handles[slot]);
+            }
+        }
+
+        // Lane index in the saved order
+        LaneIndex laneIndex = simulation.getLaneIndex();
+        int laneCount = buffer.getInt();
+        if (laneCount != road.getLaneCount()) {
+            throw new IllegalArgumentException("Lane index has " + laneCount + " lanes, the road " + road.getLaneCount());
+        }
+        for (int lane = 0; lane < laneCount; lane++) {
+            int count = buffer.getInt();
+            Vehicle[] vehicles = new Vehicle[count];
+            for (int i = 0; i < count; i++) {
+                vehicles[i] = store.getVehicle(store.slotOf(buffer.getInt()));
+            }
+            double[] angles = new double[count];
+            buffer.asDoubleBuffer().get(angles);
+            buffer.position(buffer.position() + count * 8);
+            laneIndex.restore(lane, vehicles, angles, count);
+        }
+
+        // Vehicles off the road are in none of the lanes
+        for (int slot = 0; slot < size; slot++) {
+            if (!road.hasLane(store.lane[slot])) {
+                laneIndex.add(store.getVehicle(slot));
+            }
+        }
+        return simulation;
+    }
+
+    /**
+     * Writes the kind and the parameters of a driving model.
+     */
+    private static void writeModel(DrivingModel model, ByteBuffer buffer) {
+        MobilLaneChange laneChange = null;
+        if (model instanceof ClassicDrivingModel classic) {
+            buffer.putInt(MODEL_CLASSIC);
+            buffer.putDouble(classic.getLookAheadAngle()).putDouble(classic.getBrakingAcceleration());
+            buffer.putDouble(0).putDouble(0);
+        } else if (model instanceof IntelligentDriverModel idm) {
+            buffer.putInt(MODEL_IDM);
+            buffer.putDouble(idm.getMinGap()).putDouble(idm.getTimeHeadway());
+            buffer.putDouble(idm.getComfortableDeceleration()).putDouble(0);
+            laneChange = idm.getLaneChange();
+        } else if (model instanceof GippsModel gipps) {
+            buffer.putInt(MODEL_GIPPS);
+            buffer.putDouble(gipps.getReactionTime()).putDouble(gipps.getComfortableDeceleration());
+            buffer.putDouble(gipps.getLeaderDeceleration()).putDouble(gipps.getMinGap());
+            laneChange = gipps.getLaneChange();
+        } else {
+            KraussModel krauss = (KraussModel) model;
+            buffer.putInt(MODEL_KRAUSS);
+            buffer.putDouble(krauss.getReactionTime()).putDouble(krauss.getComfortableDeceleration());
+            buffer.putDouble(krauss.getImperfection()).putDouble(0);
+            laneChange = krauss.getLaneChange();
+        }
+
+        if (laneChange == null) {
+            buffer.putInt(0).putDouble(0).putDouble(0).putDouble(0);
+        } else {
+            buffer.putInt(1).putDouble(laneChange.getPoliteness()).putDouble(laneChange.getThreshold())
+                    .putDouble(laneChange.getSafeDeceleration());
+        }
+    }
+
+    /**
+     * Reads a driving model written by {@link #writeModel(DrivingModel, ByteBuffer)}.
+     */
+    private static DrivingModel readModel(ByteBuffer buffer) {
+        int kind = buffer.getInt();
+        double[] parameters = new double[4];
+        buffer.asDoubleBuffer().get(parameters);
+        buffer.position(buffer.position() + parameters.length * 8);
+        boolean mobil = buffer.getInt() != 0;
+        double politeness = buffer.getDouble();
+        double threshold = buffer.getDouble();
+        double safeDeceleration = buffer.getDouble();
+        MobilLaneChange laneChange = mobil ? new MobilLaneChange(politeness, threshold, safeDeceleration) : null;
+
+        return switch (kind) {
+            case MODEL_CLASSIC -> new ClassicDrivingModel(parameters[0], parameters[1]);
+            case MODEL_IDM -> new IntelligentDriverModel(parameters[0], parameters[1], parameters[2], laneChange);
+            case MODEL_GIPPS -> new GippsModel(parameters[0], parameters[1], parameters[2], parameters[3], laneChange);
+            case MODEL_KRAUSS -> new KraussModel(parameters[0], parameters[1], parameters[2], laneChange);
+            default -> throw new IllegalArgumentException("Unknown driving model " + kind);
+        };
+    }
+
+    /**
+     * Gets the state arrays of a store that hold doubles, in the order they are saved.
+     */
+    private static double[][] doubleColumns(VehicleStore store) {
+        return new double[][] {
+                store.x, store.y, store.angle, store.laneRadius, store.velocity, store.acceleration,
+                store.width, store.height, store.previousAngle, store.previousLaneRadius
+        };
+    }
+}
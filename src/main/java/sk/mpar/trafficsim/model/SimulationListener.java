@@ -0,0 +1,44 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.List;
+
+/**
+ * Observer of a {@link Simulation}.
+ * Views register a listener to keep their own representation in sync with the simulation.
+ */
+public interface SimulationListener {
+    /**
+     * Called after a vehicle has been added to the simulation.
+     * 
+     * @param vehicle The added vehicle
+     */
+    void vehicleAdded(Vehicle vehicle);
+
+    /**
+     * Called after several vehicles have been added to the simulation at once.
+     * The default implementation calls {@link #vehicleAdded(Vehicle)} for each vehicle.
+     * 
+     * @param vehicles The added vehicles
+     */
+    default void vehiclesAdded(List<Vehicle> vehicles) {
+        for (Vehicle vehicle : vehicles) {
+            vehicleAdded(vehicle);
+        }
+    }
+
+    /**
+     * Called after a vehicle has been removed from the simulation.
+     * 
+     * @param vehicle The removed vehicle
+     */
+    void vehicleRemoved(Vehicle vehicle);
+
+    /**
+     * Called after the simulation has taken a step.
+     * The default implementation does nothing.
+     * 
+     * @param stepCount The number of steps taken so far
+     */
+    default void stepTaken(long stepCount) {
+    }
+}
@@ -0,0 +1,31 @@
+package sk.mpar.trafficsim.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering a call that adds vehicles to the simulation.
+ */
+@Name("sk.mpar.trafficsim.Spawn")
+@Label("Vehicle Spawn")
+@Category({"Traffic Simulator", "Simulation"})
+@Description("Adding one or more vehicles to the road")
+class SpawnEvent extends Event {
+    @Label("Vehicle Type")
+    String vehicleType;
+
+    @Label("Requested")
+    @Description("Number of vehicles the call asked for")
+    int requested;
+
+    @Label("Added")
+    @Description("Number of vehicles that found room on the road")
+    int added;
+
+    @Label("Vehicle Count")
+    @Description("Number of vehicles on the road after the call")
+    int vehicleCount;
+}
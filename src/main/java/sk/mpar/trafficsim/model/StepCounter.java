@@ -0,0 +1,31 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Events of a simulation step counted by the {@link StepProfiler}.
+ */
+public enum StepCounter {
+    /**
+     * Pairs of vehicles tested for overlap.
+     */
+    PAIR_CHECKS,
+
+    /**
+     * Lane changes for which the target lane was scanned.
+     */
+    LANE_CHANGES_ATTEMPTED,
+
+    /**
+     * Lane changes that found the target lane free.
+     */
+    LANE_CHANGES_ACCEPTED,
+
+    /**
+     * Collisions between two vehicles, counted once for each of them.
+     */
+    VEHICLE_COLLISIONS,
+
+    /**
+     * Collisions of a vehicle with the obstacle.
+     */
+    OBSTACLE_COLLISIONS
+}
@@ -0,0 +1,85 @@
+package sk.mpar.trafficsim.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event covering a single simulation step, with the time spent in each of its phases.
+ * 
+ * The phase durations are taken from the {@link StepProfiler} of the simulation, which records the
+ * step whenever this event is enabled in the running recording, even while the profiler is off.
+ */
+@Name("sk.mpar.trafficsim.Step")
+@Label("Simulation Step")
+@Category({"Traffic Simulator", "Simulation"})
+@Description("A single fixed time step of the simulation")
+@StackTrace(false)
+class StepEvent extends Event {
+    @Label("Vehicle Count")
+    int vehicleCount;
+
+    @Label("Delta Time")
+    @Description("Simulated time advanced by the step in seconds")
+    double deltaTime;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    @Label("Integrate")
+    @Timespan(Timespan.NANOSECONDS)
+    long integrate;
+
+    @Label("Index")
+    @Timespan(Timespan.NANOSECONDS)
+    long index;
+
+    @Label("On Road")
+    @Timespan(Timespan.NANOSECONDS)
+    long onRoad;
+
+    @Label("Obstacle")
+    @Timespan(Timespan.NANOSECONDS)
+    long obstacle;
+
+    @Label("Leader")
+    @Timespan(Timespan.NANOSECONDS)
+    long leader;
+
+    @Label("Lane Change")
+    @Timespan(Timespan.NANOSECONDS)
+    long laneChange;
+
+    @Label("Collision")
+    @Timespan(Timespan.NANOSECONDS)
+    long collision;
+
+    @Label("Decide")
+    @Timespan(Timespan.NANOSECONDS)
+    long decide;
+
+    @Label("Commit")
+    @Timespan(Timespan.NANOSECONDS)
+    long commit;
+
+    /**
+     * Copies the phase durations of the last recorded step.
+     * 
+     * @param profiler The profiler that recorded the step
+     */
+    void setPhases(StepProfiler profiler) {
+        integrate = profiler.getStepNanos(StepPhase.INTEGRATE);
+        index = profiler.getStepNanos(StepPhase.INDEX);
+        onRoad = profiler.getStepNanos(StepPhase.ON_ROAD);
+        obstacle = profiler.getStepNanos(StepPhase.OBSTACLE);
+        leader = profiler.getStepNanos(StepPhase.LEADER);
+        laneChange = profiler.getStepNanos(StepPhase.LANE_CHANGE);
+        collision = profiler.getStepNanos(StepPhase.COLLISION);
+        decide = profiler.getStepNanos(StepPhase.DECIDE);
+        commit = profiler.getStepNanos(StepPhase.COMMIT);
+    }
+}
@@ -0,0 +1,123 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Aggregate traffic metrics of a simulation after one step, collected by a {@link MetricsCollector}.
+ * 
+ * Speeds are velocities as stored on the vehicles. Density is the number of vehicles per unit of
+ * lane length and flow is the number of vehicles passing a fixed point of a lane per second, so that
+ * flow = density * mean speed * {@link Vehicle#SPEED_MULTIPLIER} in every lane. A sample is
+ * immutable, so it can be handed to another thread.
+ */
+public class StepMetrics {
+    private final long step;
+    private final double time;
+    private final int vehicleCount;
+    private final long laneChanges;
+    private final double laneChangeRate;
+
+    // Per-lane values, indexed by lane
+    private final int[] vehicles;
+    private final int[] stopped;
+    private final double[] meanSpeed;
+    private final double[] p10Speed;
+    private final double[] p50Speed;
+    private final double[] p90Speed;
+    private final double[] density;
+    private final double[] flow;
+
+    StepMetrics(long step, double time, int vehicleCount, long laneChanges, double laneChangeRate,
+                int[] vehicles, int[] stopped, double[] meanSpeed, double[] p10Speed, double[] p50Speed,
+                double[] p90Speed, double[] density, double[] flow) {
+        this.step = step;
+        this.time = time;
+        this.vehicleCount = vehicleCount;
+        this.laneChanges = laneChanges;
+        this.laneChangeRate = laneChangeRate;
+        this.vehicles = vehicles;
+        this.stopped = stopped;
+        this.meanSpeed = meanSpeed;
+        this.p10Speed = p10Speed;
+        this.p50Speed = p50Speed;
+        this.p90Speed = p90Speed;
+        this.density = density;
+        this.flow = flow;
+    }
+
+    /**
+     * Gets the number of steps the simulation had taken when the sample was collected.
+     * 
+     * @return The step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Gets the simulated time of the sample.
+     * 
+     * @return The time in seconds
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the number of lane changes since the previous sample.
+     * 
+     * @return The number of lane changes
+     */
+    public long getLaneChanges() {
+        return laneChanges;
+    }
+
+    /**
+     * Gets the lane changes since the previous sample per second of simulated time.
+     * 
+     * @return The lane-change rate
+     */
+    public double getLaneChangeRate() {
+        return laneChangeRate;
+    }
+
+    // Getters
+
+    public int getVehicleCount() {
+        return vehicleCount;
+    }
+
+    public int getLaneCount() {
+        return vehicles.length;
+    }
+
+    public int getVehicles(int lane) {
+        return vehicles[lane];
+    }
+
+    public int getStopped(int lane) {
+        return stopped[lane];
+    }
+
+    public double getMeanSpeed(int lane) {
+        return meanSpeed[lane];
+    }
+
+    public double getP10Speed(int lane) {
+        return p10Speed[lane];
+    }
+
+    public double getP50Speed(int lane) {
+        return p50Speed[lane];
+    }
+
+    public double getP90Speed(int lane) {
+        return p90Speed[lane];
+    }
+
+    public double getDensity(int lane) {
+        return density[lane];
+    }
+
+    public double getFlow(int lane) {
+        return flow[lane];
+    }
+}
@@ -0,0 +1,51 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Phases of a simulation step timed by the {@link StepProfiler}.
+ */
+public enum StepPhase {
+    /**
+     * Moving every vehicle by its velocity.
+     */
+    INTEGRATE,
+
+    /**
+     * Bringing the lane index up to date.
+     */
+    INDEX,
+
+    /**
+     * Checking that the vehicles are still on the road.
+     */
+    ON_ROAD,
+
+    /**
+     * Reacting to the obstacle.
+     */
+    OBSTACLE,
+
+    /**
+     * Looking for the vehicle ahead.
+     */
+    LEADER,
+
+    /**
+     * Scanning the target lane before a lane change.
+     */
+    LANE_CHANGE,
+
+    /**
+     * Finding and resolving collisions between vehicles.
+     */
+    COLLISION,
+
+    /**
+     * Deciding the reactions of all vehicles in the parallel update.
+     */
+    DECIDE,
+
+    /**
+     * Applying the decisions in the parallel update.
+     */
+    COMMIT
+}
@@ -0,0 +1,190 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Records how long the phases of each simulation step take and how often expensive events happen.
+ * 
+ * A step is split into consecutive phases: entering a phase ends the previous one, so every
+ * nanosecond of the step is attributed to exactly one phase at the cost of one clock read per phase
+ * change. While the profiler is disabled every call returns immediately, so the instrumentation can
+ * stay in the hot loop. The values of the last step and the totals since the last reset are kept.
+ * A profiler is not thread-safe and is only used on the thread that steps the simulation.
+ */
+public class StepProfiler {
+    private static final StepPhase[] PHASES = StepPhase.values();
+    private static final StepCounter[] COUNTERS = StepCounter.values();
+
+    private boolean enabled = false;
+
+    // Phase being timed and when it was entered, while a step is in progress
+    private boolean inStep = false;
+    private StepPhase phase;
+    private long phaseStart;
+
+    // Values of the step in progress or the last step
+    private long[] stepNanos = new long[PHASES.length];
+    private long[] stepCounts = new long[COUNTERS.length];
+
+    // Totals over all profiled steps since the last reset
+    private long[] totalNanos = new long[PHASES.length];
+    private long[] totalCounts = new long[COUNTERS.length];
+    private long profiledSteps;
+
+    /**
+     * Starts recording a step.
+     * 
+     * @param force true to record the values of the step even while the profiler is disabled; such
+     *        a step is not added to the totals
+     */
+    void beginStep(boolean force) {
+        if (!enabled && !force) {
+            return;
+        }
+        Arrays.fill(stepNanos, 0);
+        Arrays.fill(stepCounts, 0);
+        inStep = true;
+        phase = null;
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the current phase and starts timing another one.
+     * 
+     * @param next The phase to time from now on
+     * @return The phase that was being timed, or null if none was
+     */
+    StepPhase enter(StepPhase next) {
+        if (!inStep) {
+            return null;
+        }
+        StepPhase previous = phase;
+        long now = System.nanoTime();
+        if (previous != null) {
+            stepNanos[previous.ordinal()] += now - phaseStart;
+        }
+        phase = next;
+        phaseStart = now;
+        return previous;
+    }
+
+    /**
+     * Counts a single event in the current step.
+     * 
+     * @param counter The counter of the event
+     */
+    void count(StepCounter counter) {
+        if (inStep) {
+            stepCounts[counter.ordinal()]++;
+        }
+    }
+
+    /**
+     * Counts a number of events in the current step.
+     * 
+     * @param counter The counter of the events
+     * @param amount The number of events
+     */
+    void add(StepCounter counter, long amount) {
+        if (inStep) {
+            stepCounts[counter.ordinal()] += amount;
+        }
+    }
+
+    /**
+     * Ends the current phase and adds the step to the totals if the profiler is enabled.
+     */
+    void endStep() {
+        if (!inStep) {
+            return;
+        }
+        enter(null);
+        inStep = false;
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < PHASES.length; i++) {
+            totalNanos[i] += stepNanos[i];
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            totalCounts[i] += stepCounts[i];
+        }
+        profiledSteps++;
+    }
+
+    /**
+     * Checks if the profiler records steps.
+     * 
+     * @return true if steps are recorded, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches recording on or off. A step in progress is recorded to its end.
+     * 
+     * @param enabled true to record steps, false to stop
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Clears the totals.
+     */
+    public void reset() {
+        Arrays.fill(totalNanos, 0);
+        Arrays.fill(totalCounts, 0);
+        profiledSteps = 0;
+    }
+
+    /**
+     * Gets the time spent in a phase during the last recorded step.
+     * 
+     * @param phase The phase
+     * @return The time in nanoseconds
+     */
+    public long getStepNanos(StepPhase phase) {
+        return stepNanos[phase.ordinal()];
+    }
+
+    /**
+     * Gets the number of events counted during the last recorded step.
+     * 
+     * @param counter The counter
+     * @return The number of events
+     */
+    public long getStepCount(StepCounter counter) {
+        return stepCounts[counter.ordinal()];
+    }
+
+    /**
+     * Gets the time spent in a phase over all recorded steps since the last reset.
+     * 
+     * @param phase The phase
+     * @return The time in nanoseconds
+     */
+    public long getTotalNanos(StepPhase phase) {
+        return totalNanos[phase.ordinal()];
+    }
+
+    /**
+     * Gets the number of events counted over all recorded steps since the last reset.
+     * 
+     * @param counter The counter
+     * @return The number of events
+     */
+    public long getTotalCount(StepCounter counter) {
+        return totalCounts[counter.ordinal()];
+    }
+
+    /**
+     * Gets the number of steps recorded since the last reset.
+     * 
+     * @return The number of steps
+     */
+    public long getProfiledSteps() {
+        return profiledSteps;
+    }
+}
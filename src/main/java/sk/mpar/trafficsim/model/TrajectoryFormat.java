@@ -0,0 +1,56 @@
+package sk.mpar.trafficsim.model;
+
+/**
+ * Layout of the binary trajectory files written by {@link TrajectoryWriter}.
+ * 
+ * All values are little-endian. A file starts with a header describing the road, followed by one
+ * frame per recorded step and, once the writer is closed, an index of the frames:
+ * 
+ * <pre>
+ * header  int magic, int version, double centerX, double centerY, double innerRadius,
+ *         double laneWidth, double obstacleAngle (NaN without an obstacle), double timeStep,
+ *         int laneCount, int reserved, long indexOffset (0 until the writer is closed)
+ * frame   long step, int vehicleCount, int marker, then per vehicle:
+ *         int id, short lane, byte type, byte flags, double angle, float velocity, float acceleration
+ * index   long frameCount, then per frame: long step, long offset of the frame
+ * </pre>
+ */
+final class TrajectoryFormat {
+    // "TRAJ" in the first four bytes of a file
+    static final int MAGIC = 0x4A415254;
+    static final int VERSION = 1;
+
+    // Header fields
+    static final int HEADER_SIZE = 72;
+    static final int CENTER_X = 8;
+    static final int CENTER_Y = 16;
+    static final int INNER_RADIUS = 24;
+    static final int LANE_WIDTH = 32;
+    static final int OBSTACLE_ANGLE = 40;
+    static final int TIME_STEP = 48;
+    static final int LANE_COUNT = 56;
+    static final int INDEX_OFFSET = 64;
+
+    // Frame header, ending with a marker that lets a reader find the end of an unclosed file
+    static final int FRAME_HEADER_SIZE = 16;
+    static final int FRAME_MARKER = 0x46524D45;
+
+    // Vehicle record and its fields
+    static final int VEHICLE_SIZE = 24;
+    static final int ID = 0;
+    static final int LANE = 4;
+    static final int TYPE = 6;
+    static final int FLAGS = 7;
+    static final int ANGLE = 8;
+    static final int VELOCITY = 16;
+    static final int ACCELERATION = 20;
+
+    // Flags of a vehicle record
+    static final byte FLAG_CHANGING_LANE = 1;
+
+    // Index entry
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    private TrajectoryFormat() {
+    }
+}
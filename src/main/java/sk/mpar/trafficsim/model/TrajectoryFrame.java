@@ -0,0 +1,103 @@
+package sk.mpar.trafficsim.model;
+
+import java.nio.ByteBuffer;
+
+import static sk.mpar.trafficsim.model.TrajectoryFormat.*;
+
+/**
+ * State of every vehicle at one recorded step, as read by {@link TrajectoryReader}.
+ * Vehicles are listed in the order of the slots of the store at that step.
+ */
+public class TrajectoryFrame {
+    private long step;
+    private int[] ids;
+    private int[] lanes;
+    private byte[] types;
+    private boolean[] changingLane;
+    private double[] angles;
+    private float[] velocities;
+    private float[] accelerations;
+
+    /**
+     * Decodes a frame.
+     * 
+     * @param buffer The bytes of the frame, starting at its header, in little-endian order
+     */
+    TrajectoryFrame(ByteBuffer buffer) {
+        step = buffer.getLong(0);
+        int count = buffer.getInt(8);
+        ids = new int[count];
+        lanes = new int[count];
+        types = new byte[count];
+        changingLane = new boolean[count];
+        angles = new double[count];
+        velocities = new float[count];
+        accelerations = new float[count];
+
+        int offset = FRAME_HEADER_SIZE;
+        for (int i = 0; i < count; i++, offset += VEHICLE_SIZE) {
+            ids[i] = buffer.getInt(offset + ID);
+            lanes[i] = buffer.getShort(offset + LANE);
+            types[i] = buffer.get(offset + TYPE);
+            changingLane[i] = (buffer.get(offset + FLAGS) & FLAG_CHANGING_LANE) != 0;
+            angles[i] = buffer.getDouble(offset + ANGLE);
+            velocities[i] = buffer.getFloat(offset + VELOCITY);
+            accelerations[i] = buffer.getFloat(offset + ACCELERATION);
+        }
+    }
+
+    /**
+     * Gets the number of steps the simulation had taken when the frame was recorded.
+     * 
+     * @return The step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Gets the number of vehicles in the frame.
+     * 
+     * @return The number of vehicles
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Gets the id of a vehicle, which is its handle in the store. A handle is unique among the
+     * vehicles on the road but may be given to a new vehicle after the vehicle holding it was removed.
+     * 
+     * @param index The index of the vehicle in the frame
+     * @return The id
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    // Getters
+
+    public int getLane(int index) {
+        return lanes[index];
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public boolean isChangingLane(int index) {
+        return changingLane[index];
+    }
+
+    public double getAngle(int index) {
+        return angles[index];
+    }
+
+    public double getVelocity(int index) {
+        return velocities[index];
+    }
+
+    public double getAcceleration(int index) {
+        return accelerations[index];
+    }
+}
@@ -0,0 +1,250 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static sk.mpar.trafficsim.model.TrajectoryFormat.*;
+
+/**
+ * Reads trajectory files written by {@link TrajectoryWriter}.
+ * 
+ * Opening a file loads its index, so any recorded step can be read with a single positioned read.
+ * Files whose writer was never closed have no index; their frames are found by walking the frame
+ * headers from the start up to the last complete frame.
+ */
+public class TrajectoryReader implements Closeable {
+    private Path path;
+    private FileChannel channel;
+
+    // Road and step length of the recorded simulation
+    private double centerX;
+    private double centerY;
+    private double innerRadius;
+    private double laneWidth;
+    private double obstacleAngle;
+    private double timeStep;
+    private int laneCount;
+
+    // Step and offset of every frame, in recording order
+    private long[] frameSteps;
+    private long[] frameOffsets;
+    private int frameCount;
+    private boolean indexed;
+
+    /**
+     * Opens a trajectory file.
+     * 
+     * @param path The file to read
+     * @throws IOException If the file cannot be read or is not a trajectory file
+     */
+    public TrajectoryReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        // Read the description of the road
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a trajectory file: " + path);
+        }
+        if (header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Unsupported trajectory file version " + header.getInt(4) + ": " + path);
+        }
+        centerX = header.getDouble(CENTER_X);
+        centerY = header.getDouble(CENTER_Y);
+        innerRadius = header.getDouble(INNER_RADIUS);
+        laneWidth = header.getDouble(LANE_WIDTH);
+        obstacleAngle = header.getDouble(OBSTACLE_ANGLE);
+        timeStep = header.getDouble(TIME_STEP);
+        laneCount = header.getInt(LANE_COUNT);
+
+        // Load the index, or rebuild it if the writer did not get to append it
+        long indexOffset = header.getLong(INDEX_OFFSET);
+        indexed = indexOffset != 0;
+        if (indexed) {
+            loadIndex(indexOffset);
+        } else {
+            scanFrames();
+        }
+    }
+
+    /**
+     * Loads the index appended by the writer.
+     * 
+     * @param indexOffset The offset of the index in the file
+     * @throws IOException If the index cannot be read
+     */
+    private void loadIndex(long indexOffset) throws IOException {
+        frameCount = (int) read(indexOffset, 8).getLong(0);
+        frameSteps = new long[frameCount];
+        frameOffsets = new long[frameCount];
+        LongBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset + 8,
+                (long) frameCount * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        for (int i = 0; i < frameCount; i++) {
+            frameSteps[i] = entries.get(2 * i);
+            frameOffsets[i] = entries.get(2 * i + 1);
+        }
+    }
+
+    /**
+     * Finds the frames by walking their headers. The walk stops at the first header without a marker
+     * and at a frame that does not fit into the file, which is where an interrupted writer stopped.
+     * 
+     * @throws IOException If the file cannot be read
+     */
+    private void scanFrames() throws IOException {
+        frameSteps = new long[1024];
+        frameOffsets = new long[1024];
+        long size = channel.size();
+        long offset = HEADER_SIZE;
+        while (offset + FRAME_HEADER_SIZE <= size) {
+            ByteBuffer frameHeader = read(offset, FRAME_HEADER_SIZE);
+            long frameSize = FRAME_HEADER_SIZE + (long) frameHeader.getInt(8) * VEHICLE_SIZE;
+            if (frameHeader.getInt(12) != FRAME_MARKER || frameHeader.getInt(8) < 0 || offset + frameSize > size) {
+                break;
+            }
+            if (frameCount == frameSteps.length) {
+                frameSteps = Arrays.copyOf(frameSteps, frameCount * 2);
+                frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+            }
+            frameSteps[frameCount] = frameHeader.getLong(0);
+            frameOffsets[frameCount] = offset;
+            frameCount++;
+            offset += frameSize;
+        }
+    }
+
+    /**
+     * Reads a frame.
+     * 
+     * @param frame The index of the frame, between 0 and {@link #getFrameCount()} - 1
+     * @return The frame
+     * @throws IOException If the frame cannot be read
+     */
+    public TrajectoryFrame readFrame(int frame) throws IOException {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException(frame);
+        }
+        long offset = frameOffsets[frame];
+        int count = read(offset, FRAME_HEADER_SIZE).getInt(8);
+        return new TrajectoryFrame(read(offset, FRAME_HEADER_SIZE + count * VEHICLE_SIZE));
+    }
+
+    /**
+     * Finds the last frame recorded at or before a step.
+     * 
+     * @param step The step to seek to
+     * @return The index of the frame, or -1 if the first frame was recorded after the step
+     */
+    public int findFrame(long step) {
+        int index = Arrays.binarySearch(frameSteps, 0, frameCount, step);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Gets the step a frame was recorded at.
+     * 
+     * @param frame The index of the frame
+     * @return The step
+     */
+    public long getStep(int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException(frame);
+        }
+        return frameSteps[frame];
+    }
+
+    /**
+     * Gets the number of recorded frames.
+     * 
+     * @return The number of frames
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Checks if the file was closed by its writer and carries an index.
+     * 
+     * @return true if the index was read from the file, false if it was rebuilt by walking the frames
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Checks if the recorded road had an obstacle.
+     * 
+     * @return true if the road had an obstacle, false otherwise
+     */
+    public boolean hasObstacle() {
+        return !Double.isNaN(obstacleAngle);
+    }
+
+    /**
+     * Closes the file.
+     * 
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a number of bytes at an offset.
+     * 
+     * @param offset The offset in the file
+     * @param size The number of bytes
+     * @return A little-endian buffer holding the bytes
+     * @throws IOException If the file cannot be read or ends before the bytes
+     */
+    private ByteBuffer read(long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of trajectory file: " + path);
+            }
+        }
+        return buffer;
+    }
+
+    // Getters
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public double getInnerRadius() {
+        return innerRadius;
+    }
+
+    public double getLaneWidth() {
+        return laneWidth;
+    }
+
+    public double getObstacleAngle() {
+        return obstacleAngle;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+}
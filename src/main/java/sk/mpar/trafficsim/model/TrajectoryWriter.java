@@ -0,0 +1,219 @@
+package sk.mpar.trafficsim.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static sk.mpar.trafficsim.model.TrajectoryFormat.*;
+
+/**
+ * Records the state of every vehicle of a {@link Simulation} after each step into an append-only
+ * binary file, laid out as described by {@link TrajectoryFormat} and read back by {@link TrajectoryReader}.
+ * 
+ * The file is written through a memory-mapped region, so recording a step copies the state arrays of
+ * the store into the page cache without a system call; the operating system writes the pages out in
+ * the background. Only moving on to the next region maps more of the file. Closing the writer appends
+ * an index of the frames; a file that was never closed, for example because the application was
+ * killed, keeps every frame up to the last step and is indexed by the reader instead.
+ */
+public class TrajectoryWriter implements SimulationListener, Closeable {
+    // Size of the part of the file mapped at a time
+    private static final long REGION_SIZE = 8L << 20;
+
+    private Simulation simulation;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+
+    // Mapped part of the file and the offset in the file where it starts
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    // Offset in the file where the next frame is written
+    private long position = HEADER_SIZE;
+
+    // Step and offset of every written frame
+    private long[] frameSteps = new long[1024];
+    private long[] frameOffsets = new long[1024];
+    private int frameCount;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a trajectory file, writes the current state of the simulation as its first frame and
+     * records a frame after every following step until the writer is closed.
+     * An existing file is overwritten.
+     * 
+     * @param simulation The simulation to record
+     * @param path The file to write
+     * @throws IOException If the file cannot be created or mapped
+     */
+    public TrajectoryWriter(Simulation simulation, Path path) throws IOException {
+        this.simulation = simulation;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // Describe the road the positions are relative to
+        Road road = simulation.getRoad();
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putDouble(CENTER_X, road.getCenterX());
+        header.putDouble(CENTER_Y, road.getCenterY());
+        header.putDouble(INNER_RADIUS, road.getInnerRadius());
+        header.putDouble(LANE_WIDTH, road.getLaneWidth());
+        header.putDouble(OBSTACLE_ANGLE, road.hasObstacle() ? road.getNormalizedObstacleAngle() : Double.NaN);
+        header.putDouble(TIME_STEP, simulation.getTimeStep());
+        header.putInt(LANE_COUNT, road.getLaneCount());
+        header.putLong(INDEX_OFFSET, 0);
+
+        writeFrame();
+        simulation.addListener(this);
+    }
+
+    @Override
+    public void vehicleAdded(Vehicle vehicle) {
+        // The next frame holds every vehicle in the store
+    }
+
+    @Override
+    public void vehicleRemoved(Vehicle vehicle) {
+        // The next frame holds every vehicle in the store
+    }
+
+    @Override
+    public void stepTaken(long stepCount) {
+        try {
+            writeFrame();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the current state of every vehicle as a frame.
+     * 
+     * @throws IOException If the next region of the file cannot be mapped
+     */
+    private void writeFrame() throws IOException {
+        VehicleStore store = simulation.getStore();
+        int count = store.size();
+        long size = FRAME_HEADER_SIZE + (long) count * VEHICLE_SIZE;
+        ensureMapped(size);
+        addToIndex(simulation.getStepCount(), position);
+
+        int offset = (int) (position - regionStart);
+        region.putLong(offset, simulation.getStepCount());
+        region.putInt(offset + 8, count);
+        region.putInt(offset + 12, FRAME_MARKER);
+        offset += FRAME_HEADER_SIZE;
+
+        // Copy the state arrays slot by slot
+        for (int slot = 0; slot < count; slot++, offset += VEHICLE_SIZE) {
+            region.putInt(offset + ID, store.handleAt(slot));
+            region.putShort(offset + LANE, (short) store.lane[slot]);
+            region.put(offset + TYPE, store.type[slot]);
+            region.put(offset + FLAGS, store.changingLane[slot] ? FLAG_CHANGING_LANE : 0);
+            region.putDouble(offset + ANGLE, store.angle[slot]);
+            region.putFloat(offset + VELOCITY, (float) store.velocity[slot]);
+            region.putFloat(offset + ACCELERATION, (float) store.acceleration[slot]);
+        }
+        position += size;
+    }
+
+    /**
+     * Makes sure the mapped region can hold a number of bytes at the current position,
+     * mapping a new region starting there if it cannot.
+     * 
+     * @param size The number of bytes to write
+     * @throws IOException If the region cannot be mapped
+     */
+    private void ensureMapped(long size) throws IOException {
+        if (region != null && position + size <= regionStart + region.capacity()) {
+            return;
+        }
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, size));
+        region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Remembers where a frame starts.
+     * 
+     * @param step The step of the frame
+     * @param offset The offset of the frame in the file
+     */
+    private void addToIndex(long step, long offset) {
+        if (frameCount == frameSteps.length) {
+            frameSteps = Arrays.copyOf(frameSteps, frameCount * 2);
+            frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+        }
+        frameSteps[frameCount] = step;
+        frameOffsets[frameCount] = offset;
+        frameCount++;
+    }
+
+    /**
+     * Stops recording, appends the index of the frames and closes the file.
+     * 
+     * @throws IOException If the index cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        simulation.removeListener(this);
+
+        // Append the index and point the header at it
+        long indexOffset = position;
+        ensureMapped(8 + (long) frameCount * INDEX_ENTRY_SIZE);
+        int offset = (int) (position - regionStart);
+        region.putLong(offset, frameCount);
+        offset += 8;
+        for (int i = 0; i < frameCount; i++, offset += INDEX_ENTRY_SIZE) {
+            region.putLong(offset, frameSteps[i]);
+            region.putLong(offset + 8, frameOffsets[i]);
+        }
+        position += 8 + (long) frameCount * INDEX_ENTRY_SIZE;
+        region.force();
+        header.putLong(INDEX_OFFSET, indexOffset);
+        header.force();
+        region = null;
+        header = null;
+
+        // Cut off the unused rest of the last region; some platforms refuse to truncate a file that is
+        // still mapped, in which case the padding stays and readers find the index through the header
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            // Keep the padding
+        }
+        channel.close();
+    }
+
+    /**
+     * Gets the number of frames written so far.
+     * 
+     * @return The number of frames
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     * 
+     * @return The size of the recorded data in bytes
+     */
+    public long getSize() {
+        return position;
+    }
+}
@@ -0,0 +1,63 @@
+package sk.mpar.trafficsim.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of {@link KinematicsKernel#VECTOR}.
+ * 
+ * Kept apart from the kernel enum, so that this class and the incubating module are only loaded once
+ * the module is known to be present. Every lane performs the operations of the scalar kernel in the
+ * same order, without fused multiply-adds, so the results are bit-identical.
+ */
+final class VectorKinematics {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private VectorKinematics() {
+    }
+
+    /**
+     * Checks if the processor has vectors wide enough to gain anything over the scalar kernel.
+     * 
+     * @return true if a vector holds at least two doubles
+     */
+    static boolean isSupported() {
+        return SPECIES.length() >= 2;
+    }
+
+    /**
+     * Advances the vehicles in the first slots by one step.
+     * 
+     * @see KinematicsKernel#advance
+     */
+    static void advance(double[] velocity, double[] acceleration, double[] maxVelocity,
+                        double[] angle, double[] laneRadius, int count, double deltaTime) {
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(count);
+        for (int slot = 0; slot < bound; slot += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, velocity, slot)
+                    .add(DoubleVector.fromArray(SPECIES, acceleration, slot).mul(deltaTime));
+            v = zero.max(v.min(DoubleVector.fromArray(SPECIES, maxVelocity, slot)));
+            v.intoArray(velocity, slot);
+
+            DoubleVector a = DoubleVector.fromArray(SPECIES, angle, slot)
+                    .add(v.mul(deltaTime).mul(Vehicle.SPEED_MULTIPLIER).div(DoubleVector.fromArray(SPECIES, laneRadius, slot)));
+
+            // Subtracting one turn is exact below two turns, so it equals the remainder of the scalar
+            // kernel; the rare vehicles that travel further wrap with the remainder themselves
+            VectorMask<Double> wrapped = a.compare(VectorOperators.GE, TWO_PI);
+            if (a.compare(VectorOperators.GE, 2 * TWO_PI).anyTrue()) {
+                a.intoArray(angle, slot);
+                for (int i = slot; i < slot + SPECIES.length(); i++) {
+                    angle[i] = angle[i] < TWO_PI ? angle[i] : angle[i] % TWO_PI;
+                }
+            } else {
+                a.sub(TWO_PI, wrapped).intoArray(angle, slot);
+            }
+        }
+        KinematicsKernel.advanceScalar(velocity, acceleration, maxVelocity, angle, laneRadius, bound, count, deltaTime);
+    }
+}
@@ -1,192 +1,342 @@
 package sk.mpar.trafficsim.model;
 
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-
 /**
  * Abstract class representing a vehicle in the traffic simulation.
+ * A vehicle is a thin view over a handle in a {@link VehicleStore}, which holds the actual state.
+ * A vehicle created with the public constructors keeps its state in a store of its own until it is
+ * adopted; a simulation creates its vehicles directly in its store. A vehicle released from a store
+ * keeps its last state in a store of its own.
  */
 public abstract class Vehicle {
-    // Position
-    protected double x;
-    protected double y;
-
-    // Velocity and acceleration
-    protected double velocity;
-    protected double acceleration;
-    protected double maxVelocity;
-
     // Speed multiplier to make vehicles move faster
     protected static final double SPEED_MULTIPLIER = 3.0;
 
-    // Lane information
-    protected int lane; // 0 for inner lane, 1 for outer lane
-    protected boolean isChangingLane;
+    // Store holding the state of the vehicle and the handle of the vehicle in it
+    VehicleStore store;
+    int handle;
 
-    // Visual representation
-    protected Rectangle shape;
+    // Position of the vehicle in the lane index, maintained by LaneIndex
+    int indexedLane = -1;
+    int indexedSlot;
 
     /**
-     * Creates a new vehicle.
+     * Creates a new vehicle in a store of its own.
      * 
+     * @param type The type id of the vehicle
      * @param x Initial x position
      * @param y Initial y position
-     * @param lane Initial lane (0 for inner, 1 for outer)
-     * @param color Color of the vehicle
+     * @param lane Initial lane (0 for the innermost)
+     * @param centerX X coordinate of the center of the circular road
+     * @param centerY Y coordinate of the center of the circular road
+     * @param laneRadius Radius of the initial lane
+     * @param color Color of the vehicle as packed 0xAARRGGBB
      * @param width Width of the vehicle
      * @param height Height of the vehicle
+     * @param profile Driving parameters of the vehicle
      */
-    public Vehicle(double x, double y, int lane, Color color, double width, double height) {
-        this.x = x;
-        this.y = y;
-        this.lane = lane;
-        this.velocity = 0;
-        this.acceleration = 0;
-        this.maxVelocity = 5;
-        this.isChangingLane = false;
-
-        // Create visual representation
-        this.shape = new Rectangle(width, height);
-        this.shape.setFill(color);
-        updateShapePosition();
+    protected Vehicle(byte type, double x, double y, int lane, double centerX, double centerY, double laneRadius,
+                      int color, double width, double height, ParameterProfile profile) {
+        this.store = new VehicleStore(centerX, centerY, 1);
+
+        // Calculate initial angle based on position
+        double angle = Math.atan2(y - centerY, x - centerX);
+        this.handle = store.add(type, angle, lane, laneRadius, color, width, height, profile);
+        store.views[store.slotOf(handle)] = this;
     }
 
     /**
-     * Updates the vehicle's position based on its velocity and acceleration.
+     * Creates a view over a vehicle that already exists in a store.
      * 
-     * @param deltaTime Time elapsed since last update in seconds
+     * @param store The store holding the vehicle
+     * @param handle The handle of the vehicle
      */
-    public void update(double deltaTime) {
-        // Update velocity based on acceleration
-        velocity += acceleration * deltaTime;
-
-        // Clamp velocity between 0 and maxVelocity
-        velocity = Math.max(0, Math.min(velocity, maxVelocity));
-
-        // Update position based on velocity
-        // This will be implemented by subclasses to handle the circular movement
-        updatePosition(deltaTime);
+    protected Vehicle(VehicleStore store, int handle) {
+        this.store = store;
+        this.handle = handle;
+        store.views[store.slotOf(handle)] = this;
+    }
 
-        // Update the visual representation
-        updateShapePosition();
+    /**
+     * Points the view at another store.
+     */
+    void bind(VehicleStore store, int handle) {
+        this.store = store;
+        this.handle = handle;
     }
 
     /**
-     * Updates the position of the vehicle based on its velocity.
-     * This method should be implemented by subclasses to handle the specific movement pattern.
-     * 
-     * @param deltaTime Time elapsed since last update in seconds
+     * Gets the slot of the vehicle in its store.
      */
-    protected abstract void updatePosition(double deltaTime);
+    private int slot() {
+        return store.slotOf(handle);
+    }
 
     /**
-     * Updates the position of the shape to match the vehicle's position.
+     * Rejects lanes that no road has, before any state is changed.
      */
-    protected void updateShapePosition() {
-        // Center the shape on the vehicle's position
-        shape.setX(x - shape.getWidth() / 2);
-        shape.setY(y - shape.getHeight() / 2);
+    private static void checkLane(int lane) {
+        if (lane < 0) {
+            throw new IllegalArgumentException("Negative lane " + lane);
+        }
     }
 
     /**
-     * Checks if this vehicle collides with another vehicle.
+     * Updates the vehicle's position based on its velocity and acceleration.
      * 
-     * @param other The other vehicle to check collision with
-     * @return true if the vehicles collide, false otherwise
+     * @param deltaTime Time elapsed since last update in seconds
      */
-    public boolean collidesWith(Vehicle other) {
-        return shape.getBoundsInParent().intersects(other.shape.getBoundsInParent());
+    public void update(double deltaTime) {
+        store.integrate(slot(), deltaTime);
     }
 
     /**
-     * Checks if this vehicle collides with a rectangle (obstacle).
+     * Checks if a point lies inside the rotated body of the vehicle.
      * 
-     * @param obstacle The obstacle to check collision with
-     * @return true if the vehicle collides with the obstacle, false otherwise
+     * @param pointX X coordinate of the point
+     * @param pointY Y coordinate of the point
+     * @return true if the point is inside the vehicle, false otherwise
      */
-    public boolean collidesWithObstacle(Rectangle obstacle) {
-        return shape.getBoundsInParent().intersects(obstacle.getBoundsInParent());
+    public boolean contains(double pointX, double pointY) {
+        // Transform the point into the vehicle's local coordinates
+        double radians = Math.toRadians(getRotation());
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double dx = pointX - getX();
+        double dy = pointY - getY();
+        double localX = dx * cos + dy * sin;
+        double localY = -dx * sin + dy * cos;
+
+        return Math.abs(localX) <= getWidth() / 2 && Math.abs(localY) <= getHeight() / 2;
     }
 
     // Getters and setters
 
     public double getX() {
-        return x;
+        return store.x[slot()];
     }
 
     public double getY() {
-        return y;
+        return store.y[slot()];
     }
 
     public double getVelocity() {
-        return velocity;
+        return store.velocity[slot()];
     }
 
     public void setVelocity(double velocity) {
-        this.velocity = Math.max(0, Math.min(velocity, maxVelocity));
+        int slot = slot();
+        store.velocity[slot] = Math.max(0, Math.min(velocity, store.profile[slot].getMaxVelocity()));
     }
 
     public double getAcceleration() {
-        return acceleration;
+        return store.acceleration[slot()];
     }
 
     public void setAcceleration(double acceleration) {
-        this.acceleration = acceleration;
+        store.acceleration[slot()] = acceleration;
     }
 
     public double getMaxVelocity() {
-        return maxVelocity;
+        return store.profile[slot()].getMaxVelocity();
     }
 
+    /**
+     * Sets the maximum velocity of this vehicle only.
+     * The vehicle gets an override profile, so later changes to its shared profile no longer
+     * affect its maximum velocity.
+     * 
+     * @param maxVelocity The new maximum velocity
+     */
     public void setMaxVelocity(double maxVelocity) {
-        this.maxVelocity = maxVelocity;
+        overrideProfile().setMaxVelocity(maxVelocity);
+    }
+
+    /**
+     * Gets the driving parameters of the vehicle.
+     * 
+     * @return The shared profile of the vehicle, or its override profile
+     */
+    public ParameterProfile getProfile() {
+        return store.profile[slot()];
+    }
+
+    /**
+     * Makes the vehicle use a profile, dropping any override it had.
+     * 
+     * @param profile The new profile
+     */
+    public void setProfile(ParameterProfile profile) {
+        store.profile[slot()] = profile;
+    }
+
+    /**
+     * Gets the override profile of the vehicle, deriving one from its shared profile if needed.
+     */
+    private ParameterProfile overrideProfile() {
+        int slot = slot();
+        ParameterProfile profile = store.profile[slot];
+        if (!profile.isOverride()) {
+            profile = new ParameterProfile(profile);
+            store.profile[slot] = profile;
+        }
+        return profile;
     }
 
     public int getLane() {
-        return lane;
+        return store.lane[slot()];
     }
 
+    /**
+     * Sets the lane of the vehicle without moving it to the radius of the lane.
+     * A lane the road does not have puts the vehicle off the road.
+     * 
+     * @param lane The new lane (0 for the innermost)
+     * @throws IllegalArgumentException If the lane is negative
+     */
     public void setLane(int lane) {
-        this.lane = lane;
+        checkLane(lane);
+        store.lane[slot()] = lane;
     }
 
     public boolean isChangingLane() {
-        return isChangingLane;
+        return store.changingLane[slot()];
     }
 
     public void setChangingLane(boolean changingLane) {
-        isChangingLane = changingLane;
+        store.changingLane[slot()] = changingLane;
     }
 
     /**
-     * Updates the lane of the vehicle and adjusts its position accordingly.
-     * This method should be implemented by subclasses to handle the specific lane changing behavior.
+     * Updates the lane of the vehicle and moves it to the new radius.
+     * A lane the road does not have puts the vehicle off the road, where it stands still.
      * 
-     * @param newLane The new lane (0 for inner, 1 for outer)
+     * @param newLane The new lane (0 for the innermost)
      * @param innerRadius Radius of the inner lane
      * @param laneWidth Width of each lane
+     * @throws IllegalArgumentException If the lane is negative
+     */
+    public void changeLane(int newLane, double innerRadius, double laneWidth) {
+        checkLane(newLane);
+        int slot = slot();
+        store.lane[slot] = newLane;
+        store.laneRadius[slot] = innerRadius + (newLane * laneWidth) + (laneWidth / 2);
+
+        // Keep the position consistent with the lane, so that hit testing by lane finds the vehicle
+        store.updatePosition(slot);
+    }
+
+    public double getWidth() {
+        return store.width[slot()];
+    }
+
+    public double getHeight() {
+        return store.height[slot()];
+    }
+
+    /**
+     * Sets the dimensions of the vehicle.
+     * 
+     * @param width The new width (in direction of travel)
+     * @param height The new height (perpendicular to travel)
+     */
+    public void setDimensions(double width, double height) {
+        store.setDimensions(slot(), width, height);
+    }
+
+    /**
+     * Gets the angular position of the vehicle on the road.
+     * The angle is kept up to date by every update, so reading it needs no trigonometry.
+     * 
+     * @return The angle in radians, normalized to [0, 2*PI)
+     */
+    public double getAngle() {
+        return store.angle[slot()];
+    }
+
+    /**
+     * Gets the distance from the center of the road to the middle of the vehicle's lane.
+     * 
+     * @return The radius of the lane
      */
-    public abstract void changeLane(int newLane, double innerRadius, double laneWidth);
+    public double getLaneRadius() {
+        return store.laneRadius[slot()];
+    }
 
-    public Rectangle getShape() {
-        return shape;
+    /**
+     * Gets the position of the vehicle along its lane, measured from angle 0 in direction of travel.
+     * 
+     * @return The arc length in the same units as the road
+     */
+    public double getArcPosition() {
+        int slot = slot();
+        return store.angle[slot] * store.laneRadius[slot];
+    }
+
+    /**
+     * Gets the rotation of the vehicle body.
+     * 
+     * @return The rotation in degrees
+     */
+    public double getRotation() {
+        return Math.toDegrees(store.angle[slot()]) + 90; // +90 because vehicles move perpendicular to the radius
+    }
+
+    /**
+     * Interpolates the x position between the state before the last step and the current state.
+     * 
+     * @param alpha The fraction of the way from the previous to the current state, between 0 and 1
+     * @return The interpolated x position
+     */
+    public double getInterpolatedX(double alpha) {
+        int slot = slot();
+        return store.getCenterX() + store.getInterpolatedLaneRadius(slot, alpha) * Math.cos(store.getInterpolatedAngle(slot, alpha));
+    }
+
+    /**
+     * Interpolates the y position between the state before the last step and the current state.
+     * 
+     * @param alpha The fraction of the way from the previous to the current state, between 0 and 1
+     * @return The interpolated y position
+     */
+    public double getInterpolatedY(double alpha) {
+        int slot = slot();
+        return store.getCenterY() + store.getInterpolatedLaneRadius(slot, alpha) * Math.sin(store.getInterpolatedAngle(slot, alpha));
+    }
+
+    /**
+     * Interpolates the rotation of the body between the state before the last step and the current state.
+     * 
+     * @param alpha The fraction of the way from the previous to the current state, between 0 and 1
+     * @return The interpolated rotation in degrees
+     */
+    public double getInterpolatedRotation(double alpha) {
+        return Math.toDegrees(store.getInterpolatedAngle(slot(), alpha)) + 90;
     }
 
     /**
      * Sets the color of the vehicle.
      * 
-     * @param color The new color
+     * @param color The new color as packed 0xAARRGGBB
      */
-    public void setColor(Color color) {
-        shape.setFill(color);
+    public void setColor(int color) {
+        store.color[slot()] = color;
     }
 
     /**
      * Gets the current color of the vehicle.
      * 
-     * @return The current color
+     * @return The current color as packed 0xAARRGGBB
+     */
+    public int getColor() {
+        return store.color[slot()];
+    }
+
+    /**
+     * Gets the handle of the vehicle in its store.
+     * 
+     * @return The handle
      */
-    public Color getColor() {
-        return (Color) shape.getFill();
+    public int getHandle() {
+        return handle;
     }
 }
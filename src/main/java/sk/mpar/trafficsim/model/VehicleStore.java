@@ -0,0 +1,783 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Structure-of-arrays storage of vehicle state.
+ * 
+ * Every vehicle occupies one slot in a set of contiguous primitive arrays, so stepping all vehicles
+ * walks memory linearly instead of chasing one object per vehicle. Vehicles are identified by stable
+ * handles: removing a vehicle moves the last slot into the freed one, so removal is O(1) while the
+ * handles of the other vehicles stay valid. {@link Vehicle} objects are thin views over a handle.
+ */
+public class VehicleStore {
+    // Type ids
+    public static final byte TYPE_PERSONAL_CAR = 0;
+    public static final byte TYPE_TRUCK = 1;
+    public static final int TYPE_COUNT = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final double TWO_PI = 2 * Math.PI;
+
+    // Center of the circular road the positions are relative to
+    private double centerX;
+    private double centerY;
+
+    // State of the vehicles, indexed by slot
+    double[] x;
+    double[] y;
+    double[] angle;        // Angle in radians, kept normalized to [0, 2*PI)
+    double[] laneRadius;   // Distance from the center to the middle of the lane
+    double[] velocity;
+    double[] acceleration;
+    double[] width;        // Longer side in direction of travel
+    double[] height;       // Shorter side perpendicular to travel
+    int[] lane;
+    int[] color;           // Packed 0xAARRGGBB color
+    byte[] type;
+    boolean[] changingLane;
+    ParameterProfile[] profile; // Shared driving parameters, or an override of the vehicle
+    Vehicle[] views;
+
+    // Angle and lane radius before the last step, for interpolating between the last two states
+    double[] previousAngle;
+    double[] previousLaneRadius;
+
+    // Kernel of the integration pass, and the maximum velocities gathered from the profiles for it
+    private KinematicsKernel kinematicsKernel = KinematicsKernel.getDefault();
+    private double[] maxVelocity = new double[0];
+
+    // Mapping between handles and slots
+    private int[] handleOfSlot;
+    private int[] slotOfHandle; // -1 for handles that are not in use
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+
+    // Number of occupied slots
+    private int size;
+
+    // Largest dimensions of the vehicles and how many vehicles have them; recomputed on the next
+    // query once the last of the vehicles with a largest dimension leaves or a type is resized
+    private double maxWidth;
+    private double maxHeight;
+    private int maxWidthCount;
+    private int maxHeightCount;
+    private boolean maxDimensionsStale;
+
+    // Slots partitioned by type, and the position of every slot in its partition
+    private int[][] slotsOfType;
+    private int[] typeCounts = new int[TYPE_COUNT];
+    private int[] positionInType;
+
+    // Read-only list of the views, in slot order, and one per type
+    private List<Vehicle> vehicleList;
+    private List<Vehicle>[] typeLists;
+
+    /**
+     * Creates an empty store.
+     * 
+     * @param centerX X coordinate of the center of the circular road
+     * @param centerY Y coordinate of the center of the circular road
+     */
+    public VehicleStore(double centerX, double centerY) {
+        this(centerX, centerY, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with the given initial capacity.
+     * 
+     * @param centerX X coordinate of the center of the circular road
+     * @param centerY Y coordinate of the center of the circular road
+     * @param capacity The number of vehicles the store can hold before it grows
+     */
+    public VehicleStore(double centerX, double centerY, int capacity) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * Adds a vehicle to the store.
+     * 
+     * @param type The type id of the vehicle
+     * @param angle The angle of the vehicle on the road in radians
+     * @param lane The lane of the vehicle
+     * @param laneRadius The radius of the lane
+     * @param color The color as packed 0xAARRGGBB
+     * @param width The width of the vehicle (in direction of travel)
+     * @param height The height of the vehicle (perpendicular to travel)
+     * @param profile The driving parameters of the vehicle
+     * @return The handle of the new vehicle
+     */
+    public int add(byte type, double angle, int lane, double laneRadius, int color,
+                   double width, double height, ParameterProfile profile) {
+        int slot = size;
+        ensureCapacity(slot + 1);
+
+        int handle = freeHandleCount > 0 ? freeHandles[--freeHandleCount] : handleCount++;
+        if (handle >= slotOfHandle.length) {
+            int oldLength = slotOfHandle.length;
+            slotOfHandle = Arrays.copyOf(slotOfHandle, Math.max(handle + 1, oldLength * 2));
+            Arrays.fill(slotOfHandle, oldLength, slotOfHandle.length, -1);
+        }
+        slotOfHandle[handle] = slot;
+        handleOfSlot[slot] = handle;
+
+        this.type[slot] = type;
+        this.angle[slot] = normalize(angle);
+        this.lane[slot] = lane;
+        this.laneRadius[slot] = laneRadius;
+        this.color[slot] = color;
+        this.width[slot] = width;
+        this.height[slot] = height;
+        this.profile[slot] = profile;
+        this.velocity[slot] = 0;
+        this.acceleration[slot] = 0;
+        this.changingLane[slot] = false;
+        this.views[slot] = null;
+        this.previousAngle[slot] = this.angle[slot];
+        this.previousLaneRadius[slot] = laneRadius;
+        updatePosition(slot);
+        addDimensions(width, height);
+
+        // Append the slot to the partition of its type
+        int[] partition = slotsOfType[type];
+        if (typeCounts[type] == partition.length) {
+            partition = slotsOfType[type] = Arrays.copyOf(partition, partition.length * 2);
+        }
+        positionInType[slot] = typeCounts[type];
+        partition[typeCounts[type]++] = slot;
+
+        size++;
+        return handle;
+    }
+
+    /**
+     * Removes a vehicle from the store in O(1) by moving the last slot into its slot.
+     * 
+     * @param handle The handle of the vehicle to remove
+     */
+    public void remove(int handle) {
+        int slot = slotOf(handle);
+        int last = size - 1;
+        removeDimensions(width[slot], height[slot]);
+
+        // Fill the position of the slot in its partition with the last slot of the partition
+        byte slotType = type[slot];
+        int[] partition = slotsOfType[slotType];
+        int lastInType = partition[--typeCounts[slotType]];
+        partition[positionInType[slot]] = lastInType;
+        positionInType[lastInType] = positionInType[slot];
+
+        if (slot != last) {
+            copySlot(this, last, slot);
+            handleOfSlot[slot] = handleOfSlot[last];
+            slotOfHandle[handleOfSlot[slot]] = slot;
+
+            // The last slot has moved, so its partition entry follows it
+            positionInType[slot] = positionInType[last];
+            slotsOfType[type[slot]][positionInType[slot]] = slot;
+        }
+        views[last] = null;
+        profile[last] = null;
+        slotOfHandle[handle] = -1;
+        freeHandles[freeHandleCount++] = handle;
+        size--;
+    }
+
+    /**
+     * Moves a vehicle into this store and rebinds its view to the new handle.
+     * 
+     * @param vehicle The vehicle to move
+     */
+    public void adopt(Vehicle vehicle) {
+        VehicleStore source = vehicle.store;
+        int sourceSlot = source.slotOf(vehicle.handle);
+        int handle = add(source.type[sourceSlot], 0, 0, 0, 0, source.width[sourceSlot], source.height[sourceSlot], null);
+        int slot = slotOf(handle);
+        copySlot(source, sourceSlot, slot);
+        source.remove(vehicle.handle);
+
+        views[slot] = vehicle;
+        vehicle.bind(this, handle);
+    }
+
+    /**
+     * Removes a vehicle from this store and moves its state into a store of its own, so the view
+     * keeps the state the vehicle had when it was removed. Writes through the view have no effect
+     * on this store.
+     * 
+     * @param vehicle The vehicle to release
+     */
+    public void release(Vehicle vehicle) {
+        new VehicleStore(centerX, centerY, 1).adopt(vehicle);
+    }
+
+    /**
+     * Advances all vehicles by their velocity and acceleration.
+     * The velocities and angles are advanced by the kinematics kernel in one pass over the arrays,
+     * then the positions are recalculated.
+     * 
+     * @param deltaTime Time elapsed since last update in seconds
+     */
+    public void integrate(double deltaTime) {
+        // Keep the state before the step for interpolation
+        syncPreviousState();
+
+        // Profiles are shared objects, so their maximum velocities are gathered into an array first
+        if (maxVelocity.length < size) {
+            maxVelocity = new double[x.length];
+        }
+        for (int slot = 0; slot < size; slot++) {
+            maxVelocity[slot] = profile[slot].getMaxVelocity();
+        }
+        kinematicsKernel.advance(velocity, acceleration, maxVelocity, angle, laneRadius, size, deltaTime);
+
+        for (int slot = 0; slot < size; slot++) {
+            updatePosition(slot);
+        }
+    }
+
+    /**
+     * Advances a single vehicle by its velocity and acceleration.
+     * 
+     * @param slot The slot of the vehicle
+     * @param deltaTime Time elapsed since last update in seconds
+     */
+    void integrate(int slot, double deltaTime) {
+        // Keep the state before the step for interpolation
+        previousAngle[slot] = angle[slot];
+        previousLaneRadius[slot] = laneRadius[slot];
+
+        // Update velocity based on acceleration and clamp it between 0 and the maximum velocity of the profile
+        double v = velocity[slot] + acceleration[slot] * deltaTime;
+        velocity[slot] = Math.max(0, Math.min(v, profile[slot].getMaxVelocity()));
+
+        // The angle change depends on the velocity and the radius of the lane
+        // Smaller radius means the vehicle needs to turn more to travel the same distance
+        double a = angle[slot] + (velocity[slot] * deltaTime * Vehicle.SPEED_MULTIPLIER) / laneRadius[slot];
+        angle[slot] = a < TWO_PI ? a : a % TWO_PI;
+
+        updatePosition(slot);
+    }
+
+    /**
+     * Recalculates the position of a vehicle from its angle and lane radius.
+     * 
+     * @param slot The slot of the vehicle
+     */
+    void updatePosition(int slot) {
+        x[slot] = centerX + laneRadius[slot] * Math.cos(angle[slot]);
+        y[slot] = centerY + laneRadius[slot] * Math.sin(angle[slot]);
+    }
+
+    /**
+     * Makes the current state also the previous state of all vehicles, so that interpolation
+     * shows the current state for any fraction.
+     */
+    public void syncPreviousState() {
+        System.arraycopy(angle, 0, previousAngle, 0, size);
+        System.arraycopy(laneRadius, 0, previousLaneRadius, 0, size);
+    }
+
+    /**
+     * Interpolates the angle of a vehicle between the state before the last step and the current state.
+     * Vehicles only move forward, so the interpolation follows the forward direction across 2*PI.
+     * 
+     * @param slot The slot
+     * @param alpha The fraction of the way from the previous to the current state, between 0 and 1
+     * @return The interpolated angle in radians
+     */
+    public double getInterpolatedAngle(int slot, double alpha) {
+        double previous = previousAngle[slot];
+        double difference = angle[slot] - previous;
+        if (difference < 0) {
+            difference += TWO_PI;
+        }
+        return previous + difference * alpha;
+    }
+
+    /**
+     * Interpolates the lane radius of a vehicle between the state before the last step and the current state.
+     * 
+     * @param slot The slot
+     * @param alpha The fraction of the way from the previous to the current state, between 0 and 1
+     * @return The interpolated lane radius
+     */
+    public double getInterpolatedLaneRadius(int slot, double alpha) {
+        double previous = previousLaneRadius[slot];
+        return previous + (laneRadius[slot] - previous) * alpha;
+    }
+
+    /**
+     * Selects the kernel of the integration pass.
+     * All kernels give the same result, so the kernel can be changed between any two steps.
+     * 
+     * @param kinematicsKernel The kernel
+     * @throws IllegalArgumentException if the kernel is not available on this runtime
+     */
+    public void setKinematicsKernel(KinematicsKernel kinematicsKernel) {
+        if (!kinematicsKernel.isAvailable()) {
+            throw new IllegalArgumentException("Kinematics kernel not available: " + kinematicsKernel);
+        }
+        this.kinematicsKernel = kinematicsKernel;
+    }
+
+    /**
+     * Gets the kernel of the integration pass.
+     * 
+     * @return The kernel, {@link KinematicsKernel#getDefault()} unless another one was selected
+     */
+    public KinematicsKernel getKinematicsKernel() {
+        return kinematicsKernel;
+    }
+
+    /**
+     * Normalizes an angle to [0, 2*PI).
+     * 
+     * @param angle The angle in radians
+     * @return The normalized angle
+     */
+    public static double normalize(double angle) {
+        double normalized = angle % TWO_PI;
+        return normalized < 0 ? normalized + TWO_PI : normalized;
+    }
+
+    /**
+     * Gets the slot of a vehicle.
+     * 
+     * @param handle The handle of the vehicle
+     * @return The slot
+     */
+    public int slotOf(int handle) {
+        return slotOfHandle[handle];
+    }
+
+    /**
+     * Gets the handle of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The handle
+     */
+    public int handleAt(int slot) {
+        return handleOfSlot[slot];
+    }
+
+    /**
+     * Gets the view of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The view, or null if the vehicle has none
+     */
+    public Vehicle getVehicle(int slot) {
+        return views[slot];
+    }
+
+    /**
+     * Gets the x position of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The x position
+     */
+    public double getX(int slot) {
+        return x[slot];
+    }
+
+    /**
+     * Gets the y position of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The y position
+     */
+    public double getY(int slot) {
+        return y[slot];
+    }
+
+    /**
+     * Gets the angular position of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The angle in radians, normalized to [0, 2*PI)
+     */
+    public double getAngle(int slot) {
+        return angle[slot];
+    }
+
+    /**
+     * Gets the width of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The width (in direction of travel)
+     */
+    public double getWidth(int slot) {
+        return width[slot];
+    }
+
+    /**
+     * Gets the height of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The height (perpendicular to travel)
+     */
+    public double getHeight(int slot) {
+        return height[slot];
+    }
+
+    /**
+     * Gets the color of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @return The color as packed 0xAARRGGBB
+     */
+    public int getColor(int slot) {
+        return color[slot];
+    }
+
+    /**
+     * Gets a read-only list of the vehicle views in slot order.
+     * 
+     * @return The list of vehicles
+     */
+    public List<Vehicle> getVehicles() {
+        if (vehicleList == null) {
+            vehicleList = new AbstractList<>() {
+                @Override
+                public Vehicle get(int index) {
+                    if (index >= size) {
+                        throw new IndexOutOfBoundsException(index);
+                    }
+                    return views[index];
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return vehicleList;
+    }
+
+    /**
+     * Gets a read-only live list of the vehicle views of a type.
+     * The order changes when vehicles of the type are removed.
+     * 
+     * @param vehicleType The type id
+     * @return The list of vehicles of the type
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Vehicle> getVehicles(byte vehicleType) {
+        if (typeLists == null) {
+            typeLists = new List[TYPE_COUNT];
+        }
+        if (typeLists[vehicleType] == null) {
+            typeLists[vehicleType] = new AbstractList<>() {
+                @Override
+                public Vehicle get(int index) {
+                    if (index >= typeCounts[vehicleType]) {
+                        throw new IndexOutOfBoundsException(index);
+                    }
+                    return views[slotsOfType[vehicleType][index]];
+                }
+
+                @Override
+                public int size() {
+                    return typeCounts[vehicleType];
+                }
+            };
+        }
+        return typeLists[vehicleType];
+    }
+
+    /**
+     * Gets the number of vehicles of a type.
+     * 
+     * @param vehicleType The type id
+     * @return The number of vehicles of the type
+     */
+    public int count(byte vehicleType) {
+        return typeCounts[vehicleType];
+    }
+
+    /**
+     * Sets the color of all vehicles of a type.
+     * 
+     * @param vehicleType The type id
+     * @param newColor The color as packed 0xAARRGGBB
+     */
+    public void setColor(byte vehicleType, int newColor) {
+        int[] partition = slotsOfType[vehicleType];
+        for (int i = 0; i < typeCounts[vehicleType]; i++) {
+            color[partition[i]] = newColor;
+        }
+    }
+
+    /**
+     * Sets the dimensions of all vehicles of a type.
+     * 
+     * @param vehicleType The type id
+     * @param newWidth The width (in direction of travel)
+     * @param newHeight The height (perpendicular to travel)
+     */
+    public void setDimensions(byte vehicleType, double newWidth, double newHeight) {
+        int[] partition = slotsOfType[vehicleType];
+        for (int i = 0; i < typeCounts[vehicleType]; i++) {
+            width[partition[i]] = newWidth;
+            height[partition[i]] = newHeight;
+        }
+        maxDimensionsStale = true;
+    }
+
+    /**
+     * Sets the dimensions of the vehicle in a slot.
+     * 
+     * @param slot The slot
+     * @param newWidth The width (in direction of travel)
+     * @param newHeight The height (perpendicular to travel)
+     */
+    void setDimensions(int slot, double newWidth, double newHeight) {
+        removeDimensions(width[slot], height[slot]);
+        width[slot] = newWidth;
+        height[slot] = newHeight;
+        addDimensions(newWidth, newHeight);
+    }
+
+    /**
+     * Gets the number of vehicles in the store.
+     * 
+     * @return The number of vehicles
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the largest width of any vehicle in the store.
+     * The maximum is kept up to date as vehicles come and go, so this is O(1) unless the last of the
+     * widest vehicles has left or a type has been resized since the last call.
+     * 
+     * @return The largest width, or 0 if the store is empty
+     */
+    public double getMaxWidth() {
+        if (maxDimensionsStale) {
+            recomputeMaxDimensions();
+        }
+        return maxWidth;
+    }
+
+    /**
+     * Gets the largest height of any vehicle in the store.
+     * The maximum is kept up to date like the largest width.
+     * 
+     * @return The largest height, or 0 if the store is empty
+     */
+    public double getMaxHeight() {
+        if (maxDimensionsStale) {
+            recomputeMaxDimensions();
+        }
+        return maxHeight;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * Empties the store and makes room for a number of vehicles whose state is then written straight
+     * into the state arrays, as done when a checkpoint is loaded. The vehicles become part of the
+     * store once {@link #restoreHandles(int, int[], int, int[], int)} is called.
+     * 
+     * @param capacity The number of slots and handles to allocate
+     */
+    void clear(int capacity) {
+        allocate(Math.max(1, capacity));
+        size = 0;
+        handleCount = 0;
+        freeHandleCount = 0;
+        Arrays.fill(typeCounts, 0);
+        maxDimensionsStale = true;
+    }
+
+    /**
+     * Completes loading vehicles written into the state arrays after {@link #clear(int)}, restoring
+     * the handles they had when they were saved and rebuilding the partitions by type in slot order.
+     * 
+     * @param size The number of vehicles
+     * @param handles The handle of every slot
+     * @param handleCount The number of handles ever given out
+     * @param freeHandles The handles available for reuse, the next one last
+     * @param freeHandleCount The number of handles available for reuse
+     */
+    void restoreHandles(int size, int[] handles, int handleCount, int[] freeHandles, int freeHandleCount) {
+        System.arraycopy(handles, 0, handleOfSlot, 0, size);
+        for (int slot = 0; slot < size; slot++) {
+            slotOfHandle[handles[slot]] = slot;
+        }
+        System.arraycopy(freeHandles, 0, this.freeHandles, 0, freeHandleCount);
+        this.handleCount = handleCount;
+        this.freeHandleCount = freeHandleCount;
+
+        for (int slot = 0; slot < size; slot++) {
+            positionInType[slot] = typeCounts[type[slot]];
+            slotsOfType[type[slot]][typeCounts[type[slot]]++] = slot;
+        }
+        this.size = size;
+    }
+
+    /**
+     * Gets the number of handles ever given out, which is one more than the largest handle.
+     * 
+     * @return The number of handles
+     */
+    int getHandleCount() {
+        return handleCount;
+    }
+
+    /**
+     * Copies the handles available for reuse into an array, the next one to be reused last.
+     * 
+     * @return The free handles
+     */
+    int[] getFreeHandles() {
+        return Arrays.copyOf(freeHandles, freeHandleCount);
+    }
+
+    /**
+     * Counts the dimensions of a vehicle that joined the store towards the maxima.
+     */
+    private void addDimensions(double newWidth, double newHeight) {
+        if (maxDimensionsStale) {
+            return;
+        }
+        if (newWidth > maxWidth || maxWidthCount == 0) {
+            maxWidth = newWidth;
+            maxWidthCount = 1;
+        } else if (newWidth == maxWidth) {
+            maxWidthCount++;
+        }
+        if (newHeight > maxHeight || maxHeightCount == 0) {
+            maxHeight = newHeight;
+            maxHeightCount = 1;
+        } else if (newHeight == maxHeight) {
+            maxHeightCount++;
+        }
+    }
+
+    /**
+     * Takes the dimensions of a vehicle that leaves the store out of the maxima.
+     */
+    private void removeDimensions(double oldWidth, double oldHeight) {
+        if (maxDimensionsStale) {
+            return;
+        }
+        if (oldWidth == maxWidth && --maxWidthCount == 0) {
+            maxDimensionsStale = true;
+        }
+        if (oldHeight == maxHeight && --maxHeightCount == 0) {
+            maxDimensionsStale = true;
+        }
+    }
+
+    /**
+     * Finds the largest dimensions and how many vehicles have them with a scan of all slots.
+     */
+    private void recomputeMaxDimensions() {
+        maxWidth = 0;
+        maxHeight = 0;
+        maxWidthCount = 0;
+        maxHeightCount = 0;
+        maxDimensionsStale = false;
+        for (int slot = 0; slot < size; slot++) {
+            addDimensions(width[slot], height[slot]);
+        }
+    }
+
+    /**
+     * Copies the state of a slot of a store into a slot of this store.
+     */
+    private void copySlot(VehicleStore source, int sourceSlot, int slot) {
+        x[slot] = source.x[sourceSlot];
+        y[slot] = source.y[sourceSlot];
+        angle[slot] = source.angle[sourceSlot];
+        laneRadius[slot] = source.laneRadius[sourceSlot];
+        velocity[slot] = source.velocity[sourceSlot];
+        acceleration[slot] = source.acceleration[sourceSlot];
+        width[slot] = source.width[sourceSlot];
+        height[slot] = source.height[sourceSlot];
+        lane[slot] = source.lane[sourceSlot];
+        color[slot] = source.color[sourceSlot];
+        type[slot] = source.type[sourceSlot];
+        changingLane[slot] = source.changingLane[sourceSlot];
+        profile[slot] = source.profile[sourceSlot];
+        views[slot] = source.views[sourceSlot];
+        previousAngle[slot] = source.previousAngle[sourceSlot];
+        previousLaneRadius[slot] = source.previousLaneRadius[sourceSlot];
+    }
+
+    /**
+     * Allocates the arrays for the given capacity.
+     */
+    private void allocate(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        angle = new double[capacity];
+        laneRadius = new double[capacity];
+        velocity = new double[capacity];
+        acceleration = new double[capacity];
+        width = new double[capacity];
+        height = new double[capacity];
+        lane = new int[capacity];
+        color = new int[capacity];
+        type = new byte[capacity];
+        changingLane = new boolean[capacity];
+        profile = new ParameterProfile[capacity];
+        views = new Vehicle[capacity];
+        previousAngle = new double[capacity];
+        previousLaneRadius = new double[capacity];
+        handleOfSlot = new int[capacity];
+        slotOfHandle = new int[capacity];
+        Arrays.fill(slotOfHandle, -1);
+        freeHandles = new int[capacity];
+        positionInType = new int[capacity];
+        slotsOfType = new int[TYPE_COUNT][];
+        for (int t = 0; t < TYPE_COUNT; t++) {
+            slotsOfType[t] = new int[capacity];
+        }
+    }
+
+    /**
+     * Grows the arrays so that they can hold at least the given number of vehicles.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length * 2);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        angle = Arrays.copyOf(angle, newCapacity);
+        laneRadius = Arrays.copyOf(laneRadius, newCapacity);
+        velocity = Arrays.copyOf(velocity, newCapacity);
+        acceleration = Arrays.copyOf(acceleration, newCapacity);
+        width = Arrays.copyOf(width, newCapacity);
+        height = Arrays.copyOf(height, newCapacity);
+        lane = Arrays.copyOf(lane, newCapacity);
+        color = Arrays.copyOf(color, newCapacity);
+        type = Arrays.copyOf(type, newCapacity);
+        changingLane = Arrays.copyOf(changingLane, newCapacity);
+        profile = Arrays.copyOf(profile, newCapacity);
+        views = Arrays.copyOf(views, newCapacity);
+        previousAngle = Arrays.copyOf(previousAngle, newCapacity);
+        previousLaneRadius = Arrays.copyOf(previousLaneRadius, newCapacity);
+        handleOfSlot = Arrays.copyOf(handleOfSlot, newCapacity);
+        freeHandles = Arrays.copyOf(freeHandles, newCapacity);
+        positionInType = Arrays.copyOf(positionInType, newCapacity);
+    }
+}
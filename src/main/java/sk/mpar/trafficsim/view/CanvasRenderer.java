@@ -0,0 +1,272 @@
+package sk.mpar.trafficsim.view;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.ArcType;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.transform.Transform;
+import sk.mpar.trafficsim.model.LaneHistogram;
+import sk.mpar.trafficsim.model.Road;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.Vehicle;
+import sk.mpar.trafficsim.model.VehicleStore;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders all vehicles onto a single canvas on every pulse.
+ * 
+ * The scene graph only contains the canvas, so the number of vehicles does not affect layout or CSS
+ * passes. Vehicles are drawn straight from the vehicle store, sorted by color so that the fill is
+ * changed once per color instead of once per vehicle. The canvas ignores the mouse; picking goes
+ * through the simulation.
+ * 
+ * The level of detail adapts to the fleet: vehicles whose bodies would be smaller than a few pixels,
+ * or would overlap their neighbors, are drawn as points, and when even points would pile up the lanes
+ * are drawn as a heatmap of binned engine state whose cost does not grow with the fleet.
+ */
+class CanvasRenderer implements VehicleRenderer {
+    // Below this on-screen length in pixels, bodies are drawn as points
+    private static final double POINT_THRESHOLD = 4;
+    // Below this average on-screen spacing in pixels, points are replaced by the heatmap
+    private static final double HEATMAP_THRESHOLD = 1.5;
+    // Size of a point in pixels
+    private static final double POINT_SIZE = 2;
+    // Number of angular bins per lane in the heatmap
+    private static final int HEATMAP_BINS = 180;
+    // Number of distinct heatmap colors
+    private static final int HEATMAP_COLORS = 64;
+
+    private Pane simulationPane;
+    private Road road;
+    private VehicleStore store;
+    private Canvas canvas;
+
+    // Level of detail
+    private DetailLevel detailLevel = DetailLevel.AUTOMATIC;
+    private HeatmapMetric heatmapMetric = HeatmapMetric.DENSITY;
+    private DetailLevel drawnLevel;
+
+    // Slots packed together with their colors, sorted to group the vehicles by color
+    private long[] colorSlots = new long[0];
+
+    // Corners of the vehicle being drawn
+    private final double[] cornersX = new double[4];
+    private final double[] cornersY = new double[4];
+
+    // Paints of the colors seen so far
+    private Map<Integer, Color> paints = new HashMap<>();
+
+    // Binned engine state and the color ramps of the heatmap
+    private LaneHistogram histogram;
+    private Color[] densityRamp = new Color[HEATMAP_COLORS];
+    private Color[] speedRamp = new Color[HEATMAP_COLORS];
+
+    /**
+     * Creates a renderer drawing the vehicles of a simulation onto a canvas covering a pane.
+     * 
+     * @param simulationPane The pane where the vehicles will be rendered
+     * @param simulation The simulation to render
+     */
+    CanvasRenderer(Pane simulationPane, Simulation simulation) {
+        this.simulationPane = simulationPane;
+        this.road = simulation.getRoad();
+        this.store = simulation.getStore();
+        this.histogram = new LaneHistogram(road.getLaneCount(), HEATMAP_BINS);
+        for (int i = 0; i < HEATMAP_COLORS; i++) {
+            double value = i / (HEATMAP_COLORS - 1.0);
+            densityRamp[i] = Color.hsb(240 * (1 - value), 1, 1);
+            speedRamp[i] = Color.hsb(120 * value, 1, 1);
+        }
+
+        canvas = new Canvas();
+        canvas.setMouseTransparent(true);
+        canvas.widthProperty().bind(simulationPane.widthProperty());
+        canvas.heightProperty().bind(simulationPane.heightProperty());
+        simulationPane.getChildren().add(canvas);
+    }
+
+    @Override
+    public void vehiclesAdded(List<Vehicle> vehicles) {
+        // Vehicles are read from the store on every pulse
+    }
+
+    @Override
+    public void vehicleRemoved(Vehicle vehicle) {
+        // Vehicles are read from the store on every pulse
+    }
+
+    @Override
+    public void render(double alpha) {
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        drawnLevel = detailLevel == DetailLevel.AUTOMATIC ? chooseLevel() : detailLevel;
+        if (drawnLevel == DetailLevel.HEATMAP) {
+            drawHeatmap(graphics);
+            return;
+        }
+
+        // Group the vehicles by color
+        int size = store.size();
+        if (colorSlots.length < size) {
+            colorSlots = new long[Math.max(size, colorSlots.length * 2)];
+        }
+        for (int slot = 0; slot < size; slot++) {
+            colorSlots[slot] = ((long) store.getColor(slot) << 32) | slot;
+        }
+        Arrays.sort(colorSlots, 0, size);
+
+        boolean points = drawnLevel == DetailLevel.POINTS;
+        int currentColor = 0;
+        for (int i = 0; i < size; i++) {
+            int color = (int) (colorSlots[i] >> 32);
+            int slot = (int) colorSlots[i];
+            if (i == 0 || color != currentColor) {
+                currentColor = color;
+                graphics.setFill(paints.computeIfAbsent(color, Colors::toColor));
+            }
+            if (points) {
+                drawPoint(graphics, slot, alpha);
+            } else {
+                drawVehicle(graphics, slot, alpha);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        canvas.widthProperty().unbind();
+        canvas.heightProperty().unbind();
+        simulationPane.getChildren().remove(canvas);
+    }
+
+    void setDetailLevel(DetailLevel detailLevel) {
+        this.detailLevel = detailLevel;
+    }
+
+    void setHeatmapMetric(HeatmapMetric heatmapMetric) {
+        this.heatmapMetric = heatmapMetric;
+    }
+
+    /**
+     * Gets the level of detail used by the last render.
+     * 
+     * @return The drawn level, never {@link DetailLevel#AUTOMATIC}
+     */
+    DetailLevel getDrawnLevel() {
+        return drawnLevel;
+    }
+
+    /**
+     * Chooses the level of detail from the on-screen size of the vehicles and the spacing between them.
+     */
+    private DetailLevel chooseLevel() {
+        int size = store.size();
+        if (size == 0) {
+            return DetailLevel.BODIES;
+        }
+
+        // Pixels per unit of the road, taking any scaling of the pane into account
+        Transform transform = canvas.getLocalToSceneTransform();
+        double scale = Math.hypot(transform.getMxx(), transform.getMyx());
+
+        // Average spacing of the vehicles along the lanes
+        double laneLength = 0;
+        for (int lane = 0; lane < road.getLaneCount(); lane++) {
+            laneLength += 2 * Math.PI * road.getLaneRadius(lane);
+        }
+        double spacing = laneLength / size * scale;
+        if (spacing < HEATMAP_THRESHOLD) {
+            return DetailLevel.HEATMAP;
+        }
+
+        // Bodies that are tiny or overlap into a smear are not worth drawing
+        double length = Math.min(store.getMaxWidth() * scale, spacing);
+        return length < POINT_THRESHOLD ? DetailLevel.POINTS : DetailLevel.BODIES;
+    }
+
+    /**
+     * Fills the rotated body of a vehicle at its interpolated position.
+     */
+    private void drawVehicle(GraphicsContext graphics, int slot, double alpha) {
+        // The body is tangent to the lane: its length runs along the direction of travel
+        double angle = store.getInterpolatedAngle(slot, alpha);
+        double radius = store.getInterpolatedLaneRadius(slot, alpha);
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double halfLength = store.getWidth(slot) / 2;
+        double halfWidth = store.getHeight(slot) / 2;
+        double alongX = -sin * halfLength;
+        double alongY = cos * halfLength;
+        double acrossX = cos * halfWidth;
+        double acrossY = sin * halfWidth;
+        double x = store.getCenterX() + radius * cos;
+        double y = store.getCenterY() + radius * sin;
+
+        cornersX[0] = x + alongX + acrossX;
+        cornersY[0] = y + alongY + acrossY;
+        cornersX[1] = x + alongX - acrossX;
+        cornersY[1] = y + alongY - acrossY;
+        cornersX[2] = x - alongX - acrossX;
+        cornersY[2] = y - alongY - acrossY;
+        cornersX[3] = x - alongX + acrossX;
+        cornersY[3] = y - alongY + acrossY;
+        graphics.fillPolygon(cornersX, cornersY, 4);
+    }
+
+    /**
+     * Fills a point at the interpolated position of a vehicle.
+     */
+    private void drawPoint(GraphicsContext graphics, int slot, double alpha) {
+        double angle = store.getInterpolatedAngle(slot, alpha);
+        double radius = store.getInterpolatedLaneRadius(slot, alpha);
+        double x = store.getCenterX() + radius * Math.cos(angle);
+        double y = store.getCenterY() + radius * Math.sin(angle);
+        graphics.fillRect(x - POINT_SIZE / 2, y - POINT_SIZE / 2, POINT_SIZE, POINT_SIZE);
+    }
+
+    /**
+     * Strokes every non-empty bin of every lane as an arc colored by the heatmap metric.
+     */
+    private void drawHeatmap(GraphicsContext graphics) {
+        histogram.update(store);
+
+        // Speeds are shown relative to the fastest bin
+        double maxSpeed = 0;
+        if (heatmapMetric == HeatmapMetric.SPEED) {
+            for (int lane = 0; lane < road.getLaneCount(); lane++) {
+                for (int bin = 0; bin < HEATMAP_BINS; bin++) {
+                    maxSpeed = Math.max(maxSpeed, histogram.getMeanSpeed(lane, bin));
+                }
+            }
+        }
+
+        graphics.setLineWidth(road.getLaneWidth());
+        graphics.setLineCap(StrokeLineCap.BUTT);
+        double extent = 360.0 / HEATMAP_BINS;
+        for (int lane = 0; lane < road.getLaneCount(); lane++) {
+            double radius = road.getLaneRadius(lane);
+            for (int bin = 0; bin < HEATMAP_BINS; bin++) {
+                int count = histogram.getCount(lane, bin);
+                if (count == 0) {
+                    continue;
+                }
+                double value = heatmapMetric == HeatmapMetric.SPEED
+                        ? (maxSpeed > 0 ? histogram.getMeanSpeed(lane, bin) / maxSpeed : 0)
+                        : (double) count / histogram.getMaxCount();
+                Color[] ramp = heatmapMetric == HeatmapMetric.SPEED ? speedRamp : densityRamp;
+                graphics.setStroke(ramp[(int) Math.round(value * (HEATMAP_COLORS - 1))]);
+
+                // Canvas arcs run counterclockwise on screen, while road angles run clockwise
+                graphics.strokeArc(road.getCenterX() - radius, road.getCenterY() - radius, 2 * radius, 2 * radius,
+                        -(bin + 1) * extent, extent, ArcType.OPEN);
+            }
+        }
+    }
+}
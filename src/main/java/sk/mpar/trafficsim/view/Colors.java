@@ -0,0 +1,35 @@
+package sk.mpar.trafficsim.view;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Conversions between JavaFX colors and the packed 0xAARRGGBB colors used by the model.
+ */
+public final class Colors {
+    private Colors() {
+    }
+
+    /**
+     * Converts a packed color to a JavaFX color.
+     * 
+     * @param argb The color as packed 0xAARRGGBB
+     * @return The JavaFX color
+     */
+    public static Color toColor(int argb) {
+        return Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, ((argb >>> 24) & 0xFF) / 255.0);
+    }
+
+    /**
+     * Converts a JavaFX color to a packed color.
+     * 
+     * @param color The JavaFX color
+     * @return The color as packed 0xAARRGGBB
+     */
+    public static int toArgb(Color color) {
+        int alpha = (int) Math.round(color.getOpacity() * 255);
+        int red = (int) Math.round(color.getRed() * 255);
+        int green = (int) Math.round(color.getGreen() * 255);
+        int blue = (int) Math.round(color.getBlue() * 255);
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+}
@@ -0,0 +1,26 @@
+package sk.mpar.trafficsim.view;
+
+/**
+ * How much detail the canvas renderer draws per vehicle.
+ */
+public enum DetailLevel {
+    /**
+     * Chooses the level from the on-screen size of the vehicles and the spacing between them.
+     */
+    AUTOMATIC,
+
+    /**
+     * Every vehicle as its rotated body.
+     */
+    BODIES,
+
+    /**
+     * Every vehicle as a point.
+     */
+    POINTS,
+
+    /**
+     * A per-lane heatmap of the vehicles binned by angle instead of individual vehicles.
+     */
+    HEATMAP
+}
@@ -0,0 +1,16 @@
+package sk.mpar.trafficsim.view;
+
+/**
+ * The value shown by the heatmap level of detail.
+ */
+public enum HeatmapMetric {
+    /**
+     * Number of vehicles per bin, from blue (few) to red (many).
+     */
+    DENSITY,
+
+    /**
+     * Mean velocity per bin, from red (stopped) to green (fast).
+     */
+    SPEED
+}
@@ -0,0 +1,104 @@
+package sk.mpar.trafficsim.view;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
+import sk.mpar.trafficsim.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders every vehicle as its own rectangle node in the pane.
+ */
+class NodeRenderer implements VehicleRenderer {
+    private Pane simulationPane;
+
+    // One shape per vehicle
+    private Map<Vehicle, VehicleShape> vehicleShapes = new HashMap<>();
+
+    /**
+     * Creates a renderer adding its nodes to a pane.
+     * 
+     * @param simulationPane The pane where the vehicles will be rendered
+     */
+    NodeRenderer(Pane simulationPane) {
+        this.simulationPane = simulationPane;
+    }
+
+    @Override
+    public void vehiclesAdded(List<Vehicle> vehicles) {
+        // Add all shapes with a single change to the scene graph
+        List<Rectangle> shapes = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            VehicleShape vehicleShape = new VehicleShape(vehicle);
+            vehicleShapes.put(vehicle, vehicleShape);
+            shapes.add(vehicleShape.shape);
+        }
+        simulationPane.getChildren().addAll(shapes);
+    }
+
+    @Override
+    public void vehicleRemoved(Vehicle vehicle) {
+        VehicleShape vehicleShape = vehicleShapes.remove(vehicle);
+        if (vehicleShape != null) {
+            simulationPane.getChildren().remove(vehicleShape.shape);
+        }
+    }
+
+    /**
+     * Copies the interpolated state of all vehicles to their shapes.
+     */
+    @Override
+    public void render(double alpha) {
+        for (Map.Entry<Vehicle, VehicleShape> entry : vehicleShapes.entrySet()) {
+            entry.getValue().update(entry.getKey(), alpha);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        List<Rectangle> shapes = new ArrayList<>(vehicleShapes.size());
+        for (VehicleShape vehicleShape : vehicleShapes.values()) {
+            shapes.add(vehicleShape.shape);
+        }
+        simulationPane.getChildren().removeAll(shapes);
+        vehicleShapes.clear();
+    }
+
+    /**
+     * Rectangle node mirroring the state of a single vehicle.
+     */
+    private static class VehicleShape {
+        private final Rectangle shape = new Rectangle();
+        private int color;
+
+        VehicleShape(Vehicle vehicle) {
+            color = vehicle.getColor();
+            shape.setFill(Colors.toColor(color));
+            update(vehicle, 1);
+        }
+
+        /**
+         * Updates the shape to match the vehicle's position, rotation, dimensions and color.
+         * 
+         * @param vehicle The vehicle to mirror
+         * @param alpha The fraction of the way from the previous to the current state
+         */
+        void update(Vehicle vehicle, double alpha) {
+            // Center the shape on the vehicle's interpolated position
+            shape.setWidth(vehicle.getWidth());
+            shape.setHeight(vehicle.getHeight());
+            shape.setX(vehicle.getInterpolatedX(alpha) - vehicle.getWidth() / 2);
+            shape.setY(vehicle.getInterpolatedY(alpha) - vehicle.getHeight() / 2);
+            shape.setRotate(vehicle.getInterpolatedRotation(alpha));
+
+            // Only create a new paint when the color has changed
+            if (vehicle.getColor() != color) {
+                color = vehicle.getColor();
+                shape.setFill(Colors.toColor(color));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package sk.mpar.trafficsim.view;
+
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import sk.mpar.trafficsim.model.LatencyHistogram;
+import sk.mpar.trafficsim.model.StepCounter;
+import sk.mpar.trafficsim.model.StepPhase;
+import sk.mpar.trafficsim.model.StepProfiler;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Overlay in the corner of the simulation pane showing the output of a {@link StepProfiler}.
+ * 
+ * The text is rebuilt a few times per second from the totals recorded since the last refresh, so it
+ * shows stable averages per step instead of flickering with every step. Below them it shows the
+ * percentiles of the step and frame times recorded since the view was created.
+ */
+class ProfilerHud {
+    // Time between refreshes of the text in nanoseconds
+    private static final long REFRESH_INTERVAL = 500_000_000L;
+
+    private StepProfiler profiler;
+    private LatencyHistogram stepTimes;
+    private LatencyHistogram frameTimes;
+    private Pane simulationPane;
+    private Label label;
+
+    // Totals at the last refresh
+    private long lastRefresh;
+    private long lastSteps;
+    private long[] lastNanos = new long[StepPhase.values().length];
+    private long[] lastCounts = new long[StepCounter.values().length];
+
+    /**
+     * Creates an overlay showing a profiler in a pane.
+     * 
+     * @param profiler The profiler to show
+     * @param stepTimes The histogram of step times to show
+     * @param frameTimes The histogram of frame times to show
+     * @param simulationPane The pane the overlay is added to
+     */
+    ProfilerHud(StepProfiler profiler, LatencyHistogram stepTimes, LatencyHistogram frameTimes, Pane simulationPane) {
+        this.profiler = profiler;
+        this.stepTimes = stepTimes;
+        this.frameTimes = frameTimes;
+        this.simulationPane = simulationPane;
+
+        label = new Label("Profiling...");
+        label.setMouseTransparent(true);
+        label.setStyle("-fx-font-family: monospace; -fx-font-size: 11px; -fx-text-fill: white; "
+                + "-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 6;");
+        label.setLayoutX(8);
+        label.setLayoutY(8);
+        simulationPane.getChildren().add(label);
+    }
+
+    /**
+     * Refreshes the text if the refresh interval has passed.
+     * 
+     * @param now The timestamp of the current pulse in nanoseconds
+     * @param drawnLevel The level of detail drawn by the renderer, or null if it has none
+     */
+    void update(long now, DetailLevel drawnLevel) {
+        // Keep the overlay above the vehicles added since it was created
+        List<Node> children = simulationPane.getChildren();
+        if (children.get(children.size() - 1) != label) {
+            label.toFront();
+        }
+        if (lastRefresh != 0 && now - lastRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+        double seconds = lastRefresh == 0 ? 0 : (now - lastRefresh) / 1e9;
+        lastRefresh = now;
+
+        long steps = profiler.getProfiledSteps() - lastSteps;
+        lastSteps = profiler.getProfiledSteps();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%-22s %8.1f/s%n", "steps", seconds > 0 ? steps / seconds : 0.0));
+
+        // Average time of every phase per step
+        long stepNanos = 0;
+        for (StepPhase phase : StepPhase.values()) {
+            long nanos = profiler.getTotalNanos(phase) - lastNanos[phase.ordinal()];
+            lastNanos[phase.ordinal()] = profiler.getTotalNanos(phase);
+            stepNanos += nanos;
+            if (nanos > 0) {
+                text.append(String.format(Locale.ROOT, "%-22s %8.1f us%n", name(phase), perStep(nanos, steps) / 1000));
+            }
+        }
+        text.append(String.format(Locale.ROOT, "%-22s %8.1f us%n", "step", perStep(stepNanos, steps) / 1000));
+
+        // Average number of every event per step
+        for (StepCounter counter : StepCounter.values()) {
+            long count = profiler.getTotalCount(counter) - lastCounts[counter.ordinal()];
+            lastCounts[counter.ordinal()] = profiler.getTotalCount(counter);
+            text.append(String.format(Locale.ROOT, "%-22s %8.1f%n", name(counter), perStep(count, steps)));
+        }
+
+        // Percentiles of the step and frame times
+        text.append(percentiles("step", stepTimes));
+        text.append(percentiles("frame", frameTimes));
+
+        if (drawnLevel != null) {
+            text.append(String.format(Locale.ROOT, "%-22s %8s", "detail", name(drawnLevel)));
+        }
+        label.setText(text.toString().stripTrailing());
+    }
+
+    /**
+     * Removes the overlay from the pane.
+     */
+    void dispose() {
+        simulationPane.getChildren().remove(label);
+    }
+
+    private static String percentiles(String name, LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "%-6s p50/p99/max %6.2f/%6.2f/%6.2f ms%n", name,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getMax() / 1e6);
+    }
+
+    private static double perStep(long total, long steps) {
+        return steps > 0 ? (double) total / steps : 0;
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+    }
+}
@@ -0,0 +1,33 @@
+package sk.mpar.trafficsim.view;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering a single pulse of the animation timer of a {@link SimulationView},
+ * including the simulation steps taken in it and the drawing of the vehicles.
+ */
+@Name("sk.mpar.trafficsim.Render")
+@Label("Render Pulse")
+@Category({"Traffic Simulator", "View"})
+@Description("A single pulse of the animation timer")
+@StackTrace(false)
+class RenderEvent extends Event {
+    @Label("Vehicle Count")
+    int vehicleCount;
+
+    @Label("Delta Time")
+    @Description("Wall-clock time since the previous pulse in seconds")
+    double deltaTime;
+
+    @Label("Steps")
+    @Description("Number of simulation steps taken in the pulse")
+    int steps;
+
+    @Label("Render Mode")
+    String renderMode;
+}
@@ -0,0 +1,16 @@
+package sk.mpar.trafficsim.view;
+
+/**
+ * How a {@link SimulationView} draws the vehicles.
+ */
+public enum RenderMode {
+    /**
+     * One rectangle node per vehicle in the scene graph.
+     */
+    NODES,
+
+    /**
+     * All vehicles drawn onto a single canvas on every pulse, batched by color.
+     */
+    CANVAS
+}
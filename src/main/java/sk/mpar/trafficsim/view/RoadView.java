@@ -0,0 +1,135 @@
+package sk.mpar.trafficsim.view;
+
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.shape.Shape;
+import sk.mpar.trafficsim.model.Road;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Visual representation of a {@link Road}.
+ */
+public class RoadView {
+    // Visual representation
+    private Circle innerCircle;
+    private Circle outerCircle;
+    private List<Circle> dividers = new ArrayList<>(); // Dashed circles between adjacent lanes
+    private Shape roadShape; // The actual road shape (ring)
+    private Rectangle obstacle;
+
+    /**
+     * Creates the visual representation of a road.
+     * 
+     * @param road The road to represent
+     */
+    public RoadView(Road road) {
+        createRoadShape(road);
+        if (road.hasObstacle()) {
+            createObstacle(road);
+        }
+    }
+
+    /**
+     * Creates the visual representation of the road.
+     * 
+     * @param road The road to represent
+     */
+    private void createRoadShape(Road road) {
+        double centerX = road.getCenterX();
+        double centerY = road.getCenterY();
+
+        // Create inner and outer circles
+        innerCircle = new Circle(centerX, centerY, road.getInnerRadius());
+        innerCircle.setStroke(Color.WHITE);
+        innerCircle.setStrokeWidth(2);
+        innerCircle.setFill(Color.TRANSPARENT);
+
+        // Create a lane divider between every two adjacent lanes
+        for (int lane = 1; lane < road.getLaneCount(); lane++) {
+            double dividerRadius = road.getInnerRadius() + lane * road.getLaneWidth();
+            Circle divider = new Circle(centerX, centerY, dividerRadius);
+            divider.setStroke(Color.WHITE);
+            divider.setStrokeWidth(2);
+            divider.getStrokeDashArray().addAll(10.0, 10.0); // Dashed line
+            divider.setFill(Color.TRANSPARENT);
+            dividers.add(divider);
+        }
+
+        // Create outer circle
+        outerCircle = new Circle(centerX, centerY, road.getOuterRadius());
+        outerCircle.setStroke(Color.WHITE);
+        outerCircle.setStrokeWidth(2);
+        outerCircle.setFill(Color.TRANSPARENT);
+
+        // Create the road shape as a ring (outer circle minus inner circle)
+        roadShape = Shape.subtract(outerCircle, innerCircle);
+        roadShape.setFill(Color.DARKGRAY);
+    }
+
+    /**
+     * Creates the obstacle on the road.
+     * 
+     * @param road The road to represent
+     */
+    private void createObstacle(Road road) {
+        double size = Road.OBSTACLE_SIZE;
+
+        // Create the obstacle as a rectangle centered on the obstacle position
+        obstacle = new Rectangle(road.getObstacleX() - size / 2, road.getObstacleY() - size / 2, size, size);
+        obstacle.setFill(Color.ORANGE);
+        obstacle.setRotate(Math.toDegrees(road.getObstacleAngle()) + 45); // Rotate to align with the road
+    }
+
+    /**
+     * Gets all nodes of the road in the order they should be added to the scene.
+     * 
+     * @return The nodes of the road
+     */
+    public List<Node> getNodes() {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(roadShape);
+        nodes.add(innerCircle);
+        nodes.addAll(dividers);
+        nodes.add(outerCircle);
+        if (obstacle != null) {
+            nodes.add(obstacle);
+        }
+        return nodes;
+    }
+
+    // Getters
+
+    public Shape getRoadShape() {
+        return roadShape;
+    }
+
+    /**
+     * Gets the obstacle.
+     * 
+     * @return The obstacle, or null if the road has none
+     */
+    public Rectangle getObstacle() {
+        return obstacle;
+    }
+
+    public Circle getInnerCircle() {
+        return innerCircle;
+    }
+
+    /**
+     * Gets the lane dividers.
+     * 
+     * @return The dashed circles between adjacent lanes, from the inside out
+     */
+    public List<Circle> getDividers() {
+        return dividers;
+    }
+
+    public Circle getOuterCircle() {
+        return outerCircle;
+    }
+}
@@ -0,0 +1,299 @@
+package sk.mpar.trafficsim.view;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.layout.Pane;
+import sk.mpar.trafficsim.model.LatencyHistogram;
+import sk.mpar.trafficsim.model.Simulation;
+import sk.mpar.trafficsim.model.SimulationListener;
+import sk.mpar.trafficsim.model.Vehicle;
+
+import java.util.List;
+
+/**
+ * Renders a {@link Simulation} into a JavaFX pane and drives it from an animation timer.
+ * The view only observes the simulation and reads its state once per pulse.
+ * The vehicles are drawn by a {@link VehicleRenderer} selected through the {@link RenderMode}.
+ */
+public class SimulationView implements SimulationListener {
+    // Observed simulation and the pane it is rendered into
+    private Simulation simulation;
+    private Pane simulationPane;
+    private RoadView roadView;
+
+    // Renderer of the vehicles
+    private RenderMode renderMode;
+    private VehicleRenderer renderer;
+
+    // Animation timer for the simulation loop
+    private AnimationTimer animationTimer;
+    private boolean isRunning = false;
+
+    // Time tracking for the elapsed time calculation
+    private long lastUpdateTime = 0;
+
+    // Time between consecutive pulses of the animation timer
+    private long lastPulseTime = 0;
+    private LatencyHistogram frameTimes = new LatencyHistogram();
+
+    // Whether vehicles are drawn between the last two simulation states
+    private boolean interpolating = true;
+
+    // Level of detail of the canvas renderer
+    private DetailLevel detailLevel = DetailLevel.AUTOMATIC;
+    private HeatmapMetric heatmapMetric = HeatmapMetric.DENSITY;
+
+    // Overlay showing the step profiler, or null while profiling is off
+    private ProfilerHud profilerHud;
+
+    /**
+     * Creates a new view of a simulation that renders every vehicle as a node.
+     * 
+     * @param simulation The simulation to render
+     * @param simulationPane The pane where the simulation will be rendered
+     */
+    public SimulationView(Simulation simulation, Pane simulationPane) {
+        this(simulation, simulationPane, RenderMode.NODES);
+    }
+
+    /**
+     * Creates a new view of a simulation.
+     * 
+     * @param simulation The simulation to render
+     * @param simulationPane The pane where the simulation will be rendered
+     * @param renderMode How the vehicles are drawn
+     */
+    public SimulationView(Simulation simulation, Pane simulationPane, RenderMode renderMode) {
+        this.simulation = simulation;
+        this.simulationPane = simulationPane;
+
+        // Add the road, lane markings and the obstacle to the pane
+        roadView = new RoadView(simulation.getRoad());
+        simulationPane.getChildren().addAll(roadView.getNodes());
+
+        // Add the vehicles that are already in the simulation and observe further changes
+        setRenderMode(renderMode);
+        simulation.addListener(this);
+
+        // Initialize the animation timer; it renders on every pulse and steps the simulation while running
+        initializeAnimationTimer();
+        animationTimer.start();
+    }
+
+    /**
+     * Initializes the animation timer for the simulation loop.
+     */
+    private void initializeAnimationTimer() {
+        animationTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                RenderEvent event = new RenderEvent();
+                event.begin();
+                long frameTime = lastPulseTime != 0 ? now - lastPulseTime : 0;
+                if (lastPulseTime != 0) {
+                    frameTimes.record(frameTime);
+                }
+                lastPulseTime = now;
+
+                int steps = 0;
+                if (isRunning) {
+                    // Calculate delta time in seconds
+                    if (lastUpdateTime != 0) {
+                        double elapsedTime = (now - lastUpdateTime) / 1_000_000_000.0; // Convert nanoseconds to seconds
+
+                        // Advance the simulation in fixed steps
+                        steps = simulation.advance(elapsedTime);
+                    }
+                    lastUpdateTime = now;
+                }
+
+                render();
+                if (profilerHud != null) {
+                    profilerHud.update(now, renderer instanceof CanvasRenderer canvasRenderer
+                            ? canvasRenderer.getDrawnLevel() : null);
+                }
+
+                event.end();
+                if (event.shouldCommit()) {
+                    event.vehicleCount = simulation.getVehicleCount();
+                    event.deltaTime = frameTime / 1_000_000_000.0;
+                    event.steps = steps;
+                    event.renderMode = renderMode.name();
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    /**
+     * Draws all vehicles. While the simulation runs and interpolation is enabled, the vehicles are drawn
+     * between the last two simulation states by the fraction of a step accumulated since the last step,
+     * so the output stays smooth even when the simulation steps less often than the display refreshes.
+     */
+    public void render() {
+        double alpha = isRunning && interpolating ? simulation.getAccumulatedFraction() : 1;
+        renderer.render(alpha);
+    }
+
+    /**
+     * Enables or disables drawing vehicles between the last two simulation states.
+     * 
+     * @param interpolating true to interpolate, false to draw the current state
+     */
+    public void setInterpolating(boolean interpolating) {
+        this.interpolating = interpolating;
+    }
+
+    public boolean isInterpolating() {
+        return interpolating;
+    }
+
+    /**
+     * Switches how the vehicles are drawn.
+     * 
+     * @param renderMode The new render mode
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        if (renderMode == this.renderMode) {
+            return;
+        }
+        if (renderer != null) {
+            renderer.dispose();
+        }
+        this.renderMode = renderMode;
+        if (renderMode == RenderMode.CANVAS) {
+            CanvasRenderer canvasRenderer = new CanvasRenderer(simulationPane, simulation);
+            canvasRenderer.setDetailLevel(detailLevel);
+            canvasRenderer.setHeatmapMetric(heatmapMetric);
+            renderer = canvasRenderer;
+        } else {
+            renderer = new NodeRenderer(simulationPane);
+        }
+        renderer.vehiclesAdded(simulation.getVehicles());
+        render();
+    }
+
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Sets how much detail the canvas render mode draws per vehicle.
+     * The node render mode always draws every vehicle as its body.
+     * 
+     * @param detailLevel The level of detail, or {@link DetailLevel#AUTOMATIC} to adapt it to the fleet
+     */
+    public void setDetailLevel(DetailLevel detailLevel) {
+        this.detailLevel = detailLevel;
+        if (renderer instanceof CanvasRenderer canvasRenderer) {
+            canvasRenderer.setDetailLevel(detailLevel);
+        }
+    }
+
+    public DetailLevel getDetailLevel() {
+        return detailLevel;
+    }
+
+    /**
+     * Sets the value shown when the canvas render mode draws the heatmap.
+     * 
+     * @param heatmapMetric The metric of the heatmap
+     */
+    public void setHeatmapMetric(HeatmapMetric heatmapMetric) {
+        this.heatmapMetric = heatmapMetric;
+        if (renderer instanceof CanvasRenderer canvasRenderer) {
+            canvasRenderer.setHeatmapMetric(heatmapMetric);
+        }
+    }
+
+    public HeatmapMetric getHeatmapMetric() {
+        return heatmapMetric;
+    }
+
+    /**
+     * Switches the step profiler of the simulation on or off, together with an overlay showing
+     * the average time of every phase and the event counts per step.
+     * 
+     * @param profiling true to profile and show the overlay, false to stop
+     */
+    public void setProfiling(boolean profiling) {
+        simulation.getProfiler().setEnabled(profiling);
+        if (profiling && profilerHud == null) {
+            profilerHud = new ProfilerHud(simulation.getProfiler(), simulation.getStepTimes(), frameTimes,
+                    simulationPane);
+        } else if (!profiling && profilerHud != null) {
+            profilerHud.dispose();
+            profilerHud = null;
+        }
+    }
+
+    public boolean isProfiling() {
+        return profilerHud != null;
+    }
+
+    /**
+     * Gets the histogram of the time between consecutive pulses of the animation timer, recorded
+     * for as long as the view exists. It is updated on the JavaFX application thread.
+     * 
+     * @return The histogram of frame times in nanoseconds
+     */
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    @Override
+    public void vehicleAdded(Vehicle vehicle) {
+        renderer.vehiclesAdded(List.of(vehicle));
+    }
+
+    @Override
+    public void vehiclesAdded(List<Vehicle> vehicles) {
+        renderer.vehiclesAdded(vehicles);
+    }
+
+    @Override
+    public void vehicleRemoved(Vehicle vehicle) {
+        renderer.vehicleRemoved(vehicle);
+    }
+
+    /**
+     * Starts the simulation.
+     */
+    public void start() {
+        if (!isRunning) {
+            isRunning = true;
+            lastUpdateTime = 0;
+            simulation.resetAccumulator();
+        }
+    }
+
+    /**
+     * Stops the simulation.
+     */
+    public void stop() {
+        isRunning = false;
+    }
+
+    /**
+     * Checks if the simulation is running.
+     * 
+     * @return true if the simulation is running, false otherwise
+     */
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * Stops the animation timer and removes everything this view added to the pane.
+     */
+    public void dispose() {
+        animationTimer.stop();
+        simulation.removeListener(this);
+        simulationPane.getChildren().removeAll(roadView.getNodes());
+        renderer.dispose();
+        setProfiling(false);
+    }
+
+    public Simulation getSimulation() {
+        return simulation;
+    }
+}
@@ -0,0 +1,37 @@
+package sk.mpar.trafficsim.view;
+
+import sk.mpar.trafficsim.model.Vehicle;
+
+import java.util.List;
+
+/**
+ * Draws the vehicles of a simulation into a pane.
+ * A renderer is told about added and removed vehicles and is asked to render once per pulse.
+ */
+interface VehicleRenderer {
+    /**
+     * Called after vehicles have been added to the simulation.
+     * 
+     * @param vehicles The added vehicles
+     */
+    void vehiclesAdded(List<Vehicle> vehicles);
+
+    /**
+     * Called after a vehicle has been removed from the simulation.
+     * 
+     * @param vehicle The removed vehicle
+     */
+    void vehicleRemoved(Vehicle vehicle);
+
+    /**
+     * Draws all vehicles between the state before the last step and the current state.
+     * 
+     * @param alpha The fraction of the way from the previous to the current state, between 0 and 1
+     */
+    void render(double alpha);
+
+    /**
+     * Removes everything this renderer added to the pane.
+     */
+    void dispose();
+}
@@ -0,0 +1,41 @@
+package sk.mpar.trafficsim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RunningStatisticsTest {
+    // Quantiles of Student's t distribution from tables, per degrees of freedom from 1 to 6, at 0.975
+    // and 0.995
+    private static final double[] T_975 = {12.7062047, 4.30265273, 3.18244631, 2.77644511, 2.57058184, 2.44691185};
+    private static final double[] T_995 = {63.6567412, 9.92484320, 5.84090931, 4.60409487, 4.03214298, 3.70742802};
+
+    @Test
+    void studentQuantilesMatchTheTables() {
+        for (int i = 0; i < T_975.length; i++) {
+            long degreesOfFreedom = i + 1;
+            assertEquals(T_975[i], RunningStatistics.studentQuantile(0.975, degreesOfFreedom), 1e-3 * T_975[i]);
+            assertEquals(T_995[i], RunningStatistics.studentQuantile(0.995, degreesOfFreedom), 1e-3 * T_995[i]);
+            assertEquals(-T_975[i], RunningStatistics.studentQuantile(0.025, degreesOfFreedom), 1e-3 * T_975[i]);
+        }
+    }
+
+    @Test
+    void smallSamplesUseTheExactQuantile() {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(T_975[i], RunningStatistics.studentQuantile(0.975, i + 1), 1e-6);
+        }
+        assertEquals(0, RunningStatistics.studentQuantile(0.5, 3), 1e-12);
+    }
+
+    @Test
+    void halfWidthOfTwoValuesUsesOneDegreeOfFreedom() {
+        RunningStatistics statistics = new RunningStatistics();
+        statistics.add(1);
+        statistics.add(3);
+
+        // The standard error of the mean is 1
+        assertEquals(2, statistics.getMean());
+        assertEquals(T_975[0], statistics.getHalfWidth(0.95), 1e-6);
+    }
+}
@@ -0,0 +1,153 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CollisionDetectorTest {
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private final Road road = new Road(500, 500, 200, 50, 3, Double.NaN);
+    private final VehicleStore store = new VehicleStore(road.getCenterX(), road.getCenterY());
+    private final LaneIndex index = new LaneIndex(road, road.getLaneCount());
+    private final CollisionDetector detector = new CollisionDetector(road, index);
+
+    @Test
+    void angularDistanceTakesTheShorterWay() {
+        assertEquals(0.2, CollisionDetector.angularDistance(TWO_PI - 0.1, 0.1), 1e-12);
+        assertEquals(0.2, CollisionDetector.angularDistance(0.1, TWO_PI - 0.1), 1e-12);
+        assertEquals(Math.PI, CollisionDetector.angularDistance(0, Math.PI), 1e-12);
+        assertEquals(0.5, CollisionDetector.angularDistance(1.0, 1.5 + 2 * TWO_PI), 1e-12);
+    }
+
+    @Test
+    void bodiesOverlapAcrossZero() {
+        double radius = road.getLaneRadius(0);
+        double halfSpan = PersonalCar.WIDTH / 2 / radius;
+
+        assertTrue(CollisionDetector.overlaps(TWO_PI - 0.9 * halfSpan, radius, PersonalCar.WIDTH, PersonalCar.HEIGHT,
+                0.9 * halfSpan, radius, PersonalCar.WIDTH, PersonalCar.HEIGHT));
+        assertFalse(CollisionDetector.overlaps(TWO_PI - 1.1 * halfSpan, radius, PersonalCar.WIDTH, PersonalCar.HEIGHT,
+                1.1 * halfSpan, radius, PersonalCar.WIDTH, PersonalCar.HEIGHT));
+    }
+
+    @Test
+    void bodiesInAdjacentLanesOnlyOverlapIfTheirBandsDo() {
+        double inner = road.getLaneRadius(0);
+        double outer = road.getLaneRadius(1);
+
+        // Lanes are 50 apart, so bodies 30 and 40 wide do not reach each other, but 60 and 60 do
+        assertFalse(CollisionDetector.overlaps(1.0, inner, 60, 30, 1.0, outer, 60, 40));
+        assertTrue(CollisionDetector.overlaps(1.0, inner, 60, 60, 1.0, outer, 60, 60));
+    }
+
+    @Test
+    void findsIndexedVehiclesAcrossZeroButNotItself() {
+        Vehicle before = add(0, TWO_PI - 0.05);
+        Vehicle after = add(0, 0.05);
+        add(0, Math.PI);
+        detector.setMaxDimensions(PersonalCar.WIDTH, PersonalCar.HEIGHT);
+
+        assertEquals(1, detector.findCollisions(before));
+        assertSame(after, detector.getCollision(0));
+        assertEquals(1, detector.findCollisions(after));
+        assertSame(before, detector.getCollision(0));
+    }
+
+    @Test
+    void checksOnlyTheWindowAroundTheVehicle() {
+        for (int i = 0; i < 100; i++) {
+            add(1, TWO_PI * i / 100);
+        }
+        Vehicle vehicle = add(0, 1.0);
+        detector.setMaxDimensions(PersonalCar.WIDTH, PersonalCar.HEIGHT);
+
+        long pairChecks = detector.getPairChecks();
+        assertEquals(0, detector.findCollisions(vehicle));
+        assertTrue(detector.getPairChecks() - pairChecks <= 4, "pair checks");
+    }
+
+    @Test
+    void findsTheSameCollisionsAsTestingEveryPair() {
+        Random random = new Random(5);
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            boolean truck = random.nextInt(4) == 0;
+            vehicles.add(truck
+                    ? addTruck(random.nextInt(road.getLaneCount()), random.nextDouble() * TWO_PI)
+                    : add(random.nextInt(road.getLaneCount()), random.nextDouble() * TWO_PI));
+        }
+        detector.setMaxDimensions(Truck.WIDTH, Truck.HEIGHT);
+
+        for (Vehicle vehicle : vehicles) {
+            Set<Vehicle> expected = new HashSet<>();
+            for (Vehicle other : vehicles) {
+                if (other != vehicle && detector.collides(vehicle, other)) {
+                    expected.add(other);
+                }
+            }
+            Set<Vehicle> found = new HashSet<>();
+            int count = detector.findCollisions(vehicle);
+            for (int i = 0; i < count; i++) {
+                found.add(detector.getCollision(i));
+            }
+            assertEquals(expected.size(), count, "no vehicle is reported twice");
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    void findsTallBodiesSeveralNarrowLanesAway() {
+        // Trucks are 40 tall, so trucks two lanes of 15 apart still overlap
+        Road narrow = new Road(500, 500, 200, 15, 6, Double.NaN);
+        VehicleStore narrowStore = new VehicleStore(narrow.getCenterX(), narrow.getCenterY());
+        LaneIndex narrowIndex = new LaneIndex(narrow, narrow.getLaneCount());
+        CollisionDetector narrowDetector = new CollisionDetector(narrow, narrowIndex);
+        Vehicle[] trucks = new Vehicle[3];
+        for (int i = 0; i < trucks.length; i++) {
+            int lane = 2 * i;
+            int handle = narrowStore.add(VehicleStore.TYPE_TRUCK, 1.0, lane, narrow.getLaneRadius(lane),
+                    Truck.DEFAULT_COLOR, Truck.WIDTH, Truck.HEIGHT, Truck.createDefaultProfile());
+            trucks[i] = new Truck(narrowStore, handle);
+            narrowIndex.add(trucks[i]);
+        }
+        narrowDetector.setMaxDimensions(Truck.WIDTH, Truck.HEIGHT);
+
+        assertEquals(1, narrowDetector.findCollisions(trucks[0]));
+        assertSame(trucks[1], narrowDetector.getCollision(0));
+        assertEquals(2, narrowDetector.findCollisions(trucks[1]));
+        assertEquals(1, narrowDetector.findCollisions(trucks[2]));
+        assertSame(trucks[1], narrowDetector.getCollision(0));
+    }
+
+    /**
+     * Adds a personal car to the store and the index.
+     */
+    private Vehicle add(int lane, double angle) {
+        int handle = store.add(VehicleStore.TYPE_PERSONAL_CAR, angle, lane, road.getLaneRadius(lane),
+                PersonalCar.DEFAULT_COLOR, PersonalCar.WIDTH, PersonalCar.HEIGHT, PersonalCar.createDefaultProfile());
+        Vehicle vehicle = new PersonalCar(store, handle);
+        index.add(vehicle);
+        return vehicle;
+    }
+
+    /**
+     * Adds a truck to the store and the index.
+     */
+    private Vehicle addTruck(int lane, double angle) {
+        int handle = store.add(VehicleStore.TYPE_TRUCK, angle, lane, road.getLaneRadius(lane),
+                Truck.DEFAULT_COLOR, Truck.WIDTH, Truck.HEIGHT, Truck.createDefaultProfile());
+        Vehicle vehicle = new Truck(store, handle);
+        index.add(vehicle);
+        return vehicle;
+    }
+}
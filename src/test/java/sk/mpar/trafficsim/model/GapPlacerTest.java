@@ -0,0 +1,99 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GapPlacerTest {
+    private static final long SEED = 11;
+
+    @Test
+    void placedVehiclesNeverOverlap() {
+        // The bodies cover about half of the three lanes
+        Simulation simulation = new Simulation(new Road(2000, 2000, 1500, 50, 3, Math.PI / 3), SEED);
+        simulation.populate(150, 50);
+
+        assertEquals(200, simulation.getVehicleCount());
+        assertNoOverlaps(simulation);
+
+        // Positions are drawn from all gaps, not packed into the gap of the previous vehicle
+        for (int lane = 0; lane < 3; lane++) {
+            assertTrue(countInLane(simulation, lane) > 40, "lane " + lane);
+        }
+    }
+
+    @Test
+    void fillsTheRoadUntilNoGapIsLeft() {
+        Simulation simulation = new Simulation(new Road(500, 500, 200, 50, 2, 0), SEED);
+        List<Vehicle> trucks = simulation.addTrucks(1000);
+        List<Vehicle> cars = simulation.addPersonalCars(1000);
+
+        assertTrue(trucks.size() < 1000 && cars.size() < 1000, "the road should fill up");
+        assertNoOverlaps(simulation);
+
+        // The gaps left by a run of placements are the gaps collected from scratch
+        assertNull(simulation.addPersonalCar(PersonalCar.DEFAULT_COLOR));
+        assertFalse(simulation.addTrucks(1).size() > 0, "no truck fits where no car does");
+    }
+
+    @Test
+    void vehiclesWiderThanTheLanesBlockTheNeighboringLanes() {
+        // Cars are 30 wide, so cars in neighboring lanes 20 apart overlap
+        Simulation simulation = new Simulation(new Road(500, 500, 200, 20, 4, Double.NaN), SEED);
+        simulation.addPersonalCars(1000);
+
+        assertNoOverlaps(simulation);
+    }
+
+    @Test
+    void vehiclesTallerThanTwoLanesBlockTheLanesTheyReach() {
+        // Trucks are 40 tall, so trucks two lanes of 15 apart overlap
+        Simulation simulation = new Simulation(new Road(500, 500, 200, 15, 6, Double.NaN), SEED);
+        simulation.addTrucks(1000);
+
+        assertNoOverlaps(simulation);
+    }
+
+    @Test
+    void placementInOneLaneKeepsToThatLane() {
+        Simulation simulation = new Simulation(new Road(500, 500, 200, 50, 3, Math.PI), SEED);
+        simulation.populateDensity(0.4, 0.25);
+
+        assertNoOverlaps(simulation);
+        for (int lane = 0; lane < 3; lane++) {
+            assertTrue(countInLane(simulation, lane) > 0, "lane " + lane);
+        }
+    }
+
+    /**
+     * Asserts that no two vehicles overlap and that no vehicle overlaps the obstacle.
+     */
+    private static void assertNoOverlaps(Simulation simulation) {
+        Road road = simulation.getRoad();
+        List<Vehicle> vehicles = simulation.getVehicles();
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle a = vehicles.get(i);
+            assertFalse(road.collidesWithObstacle(a), "obstacle");
+            for (int j = i + 1; j < vehicles.size(); j++) {
+                Vehicle b = vehicles.get(j);
+                assertFalse(CollisionDetector.overlaps(a.getAngle(), road.getLaneRadius(a.getLane()), a.getWidth(), a.getHeight(),
+                        b.getAngle(), road.getLaneRadius(b.getLane()), b.getWidth(), b.getHeight()), "overlap");
+            }
+        }
+    }
+
+    private static int countInLane(Simulation simulation, int lane) {
+        int count = 0;
+        for (Vehicle vehicle : simulation.getVehicles()) {
+            if (vehicle.getLane() == lane) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,63 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class KinematicsKernelTest {
+    private static final int VEHICLES = 2000;
+    private static final int STEPS = 300;
+    private static final long SEED = 13;
+
+    @Test
+    void kernelsGiveTheSameStateAfterEveryStep() {
+        assumeTrue(KinematicsKernel.VECTOR.isAvailable(), "the Vector API is not available");
+        Simulation scalar = TestTraffic.create(VEHICLES, SEED);
+        scalar.setKinematicsKernel(KinematicsKernel.SCALAR);
+        Simulation vector = TestTraffic.create(VEHICLES, SEED);
+        vector.setKinematicsKernel(KinematicsKernel.VECTOR);
+
+        for (int step = 0; step < STEPS; step++) {
+            scalar.step();
+            vector.step();
+            assertEquals(TestTraffic.hash(scalar), TestTraffic.hash(vector), "state hash after step " + step);
+        }
+        assertEquals(scalar.getLaneChangeCount(), vector.getLaneChangeCount(), "lane changes");
+    }
+
+    @Test
+    void kernelsAgreeOnClampingAndWrapping() {
+        assumeTrue(KinematicsKernel.VECTOR.isAvailable(), "the Vector API is not available");
+
+        // Velocities beyond both bounds, angles close to and past one and two turns, and a count
+        // that leaves slots over for the scalar tail of the vector kernel
+        Random random = new Random(SEED);
+        int count = 1003;
+        double[] velocity = new double[count];
+        double[] acceleration = new double[count];
+        double[] maxVelocity = new double[count];
+        double[] angle = new double[count];
+        double[] laneRadius = new double[count];
+        for (int slot = 0; slot < count; slot++) {
+            maxVelocity[slot] = 1 + random.nextDouble() * 4;
+            velocity[slot] = random.nextDouble() * maxVelocity[slot];
+            acceleration[slot] = (random.nextDouble() - 0.5) * 400;
+            angle[slot] = 2 * Math.PI - random.nextDouble() * 1e-3;
+            laneRadius[slot] = random.nextInt(8) == 0 ? 1e-3 : 50 + random.nextDouble() * 500;
+        }
+        double[] scalarVelocity = velocity.clone();
+        double[] scalarAngle = angle.clone();
+
+        for (int step = 0; step < 20; step++) {
+            KinematicsKernel.SCALAR.advance(scalarVelocity, acceleration, maxVelocity, scalarAngle, laneRadius, count, 0.1);
+            KinematicsKernel.VECTOR.advance(velocity, acceleration, maxVelocity, angle, laneRadius, count, 0.1);
+            for (int slot = 0; slot < count; slot++) {
+                assertEquals(Double.doubleToLongBits(scalarVelocity[slot]), Double.doubleToLongBits(velocity[slot]), "velocity");
+                assertEquals(Double.doubleToLongBits(scalarAngle[slot]), Double.doubleToLongBits(angle[slot]), "angle");
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LaneIndexTest {
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private final Road road = new Road(500, 500, 200, 50, 3, Double.NaN);
+    private final VehicleStore store = new VehicleStore(road.getCenterX(), road.getCenterY());
+    private final LaneIndex index = new LaneIndex(road, road.getLaneCount());
+
+    @Test
+    void keepsEveryLaneSortedByAngle() {
+        Vehicle c = add(0, 3.0);
+        Vehicle a = add(0, 0.5);
+        Vehicle b = add(0, 1.5);
+        Vehicle other = add(1, 1.0);
+
+        assertEquals(3, index.size(0));
+        assertEquals(1, index.size(1));
+        assertSame(a, index.get(0, 0));
+        assertSame(b, index.get(0, 1));
+        assertSame(c, index.get(0, 2));
+        assertSame(other, index.get(1, 0));
+        assertEquals(1.5, index.getAngle(b));
+    }
+
+    @Test
+    void leaderAndFollowerWrapAroundZero() {
+        Vehicle last = add(0, 6.0);
+        Vehicle first = add(0, 0.1);
+
+        assertSame(first, index.getLeader(last));
+        assertSame(last, index.getFollower(first));
+        assertEquals(0.1 + TWO_PI - 6.0, index.getGapAhead(last), 1e-12);
+        assertEquals(6.0 - 0.1, index.getGapAhead(first), 1e-12);
+    }
+
+    @Test
+    void vehiclesAtTheSameAngleAreNotLeaders() {
+        Vehicle a = add(0, 1.0);
+        Vehicle b = add(0, 1.0);
+        Vehicle ahead = add(0, 2.0);
+
+        assertSame(ahead, index.getLeader(a));
+        assertSame(ahead, index.getLeader(b));
+
+        Vehicle alone = add(1, 1.0);
+        Vehicle twin = add(1, 1.0);
+        assertNull(index.getLeader(alone));
+        assertNull(index.getFollower(twin));
+        assertEquals(Double.POSITIVE_INFINITY, index.getGapAhead(alone));
+    }
+
+    @Test
+    void lowerBoundFindsTheFirstOfEqualAngles() {
+        for (double angle : new double[]{1, 2, 2, 2, 3}) {
+            add(0, angle);
+        }
+
+        assertEquals(0, index.lowerBound(0, 0));
+        assertEquals(0, index.lowerBound(0, 1));
+        assertEquals(1, index.lowerBound(0, 1.5));
+        assertEquals(1, index.lowerBound(0, 2));
+        assertEquals(4, index.lowerBound(0, 2.5));
+        assertEquals(4, index.lowerBound(0, 3));
+        assertEquals(5, index.lowerBound(0, 3.5));
+        assertEquals(0, index.lowerBound(1, 1));
+    }
+
+    @Test
+    void gapChecksLookAcrossZero() {
+        Vehicle before = add(1, TWO_PI - 0.1);
+
+        assertFalse(index.isGapFree(1, 0.1, 0.3, null));
+        assertTrue(index.isGapFree(1, 0.1, 0.15, null));
+        assertTrue(index.isGapFree(1, 0.1, 0.3, before));
+        assertTrue(index.isGapFree(0, 0.1, 0.3, null));
+
+        Vehicle after = add(1, 0.05);
+        assertFalse(index.isGapFree(1, TWO_PI - 0.05, 0.2, null));
+        assertFalse(index.isGapFree(1, TWO_PI - 0.05, 0.2, before));
+        assertTrue(index.isGapFree(1, TWO_PI - 0.05, 0.2, before, after));
+        assertEquals(0.05 + 0.05, index.getGapAhead(1, TWO_PI - 0.05, null), 1e-12);
+        assertEquals(TWO_PI - 0.1 - 0.05, index.getGapAhead(1, 0.05, null), 1e-12);
+    }
+
+    @Test
+    void removeAndReindexKeepTheSlotsOfTheOthers() {
+        Vehicle a = add(0, 0.5);
+        Vehicle b = add(0, 1.5);
+        Vehicle c = add(0, 2.5);
+
+        index.remove(a);
+        assertEquals(2, index.size(0));
+        assertSame(b, index.get(0, 0));
+        assertSame(c, index.getLeader(b));
+
+        b.setLane(1);
+        index.reindex(b);
+        assertEquals(1, index.size(0));
+        assertSame(b, index.get(1, 0));
+        assertEquals(1.5, index.getAngle(b));
+        assertNull(index.getLeader(c));
+    }
+
+    @Test
+    void refreshFollowsVehiclesAcrossZero() {
+        Vehicle a = add(0, TWO_PI - 0.01);
+        Vehicle b = add(0, 1.0);
+        Vehicle c = add(0, 2.0);
+
+        // The last vehicle passes zero and becomes the first
+        move(a, 0.02);
+        index.refresh();
+
+        assertSame(a, index.get(0, 0));
+        assertSame(b, index.get(0, 1));
+        assertSame(c, index.get(0, 2));
+        assertEquals(0.02, index.getAngle(a));
+        assertSame(a, index.getLeader(c));
+    }
+
+    @Test
+    void refreshMergesVehiclesThatChangedLane() {
+        Vehicle stay = add(1, 1.0);
+        Vehicle moving = add(0, 1.0);
+        Vehicle other = add(0, 3.0);
+        Vehicle outer = add(2, 0.5);
+
+        // Lanes changed outside of the index join their new lane; a vehicle merged at the angle of
+        // an indexed one is placed first, as an insertion at the lower bound would place it
+        moving.setLane(1);
+        outer.setLane(1);
+        move(other, 3.5);
+        index.refresh();
+
+        assertEquals(1, index.size(0));
+        assertEquals(3, index.size(1));
+        assertEquals(0, index.size(2));
+        assertSame(other, index.get(0, 0));
+        assertSame(outer, index.get(1, 0));
+        assertSame(moving, index.get(1, 1));
+        assertSame(stay, index.get(1, 2));
+        assertConsistent();
+    }
+
+    @Test
+    void refreshMatchesASortOfAllVehicles() {
+        Random random = new Random(3);
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            vehicles.add(add(random.nextInt(road.getLaneCount()), random.nextDouble() * TWO_PI));
+        }
+
+        for (int step = 0; step < 50; step++) {
+            for (Vehicle vehicle : vehicles) {
+                move(vehicle, VehicleStore.normalize(vehicle.getAngle() + random.nextDouble() * 0.05));
+                if (random.nextInt(10) == 0) {
+                    vehicle.setLane(random.nextInt(road.getLaneCount()));
+                }
+            }
+            index.refresh();
+            assertConsistent();
+        }
+    }
+
+    @Test
+    void vehiclesChangingLaneAtTheSameAngleKeepTheirOrder() {
+        for (int i = 0; i < 40; i++) {
+            add(0, 1.0);
+        }
+        Vehicle[] order = new Vehicle[40];
+        for (int slot = 0; slot < order.length; slot++) {
+            order[slot] = index.get(0, slot);
+            order[slot].setLane(1);
+        }
+
+        index.refresh();
+        assertConsistent();
+        for (int slot = 0; slot < order.length; slot++) {
+            assertSame(order[slot], index.get(1, slot), "slot " + slot);
+        }
+    }
+
+    @Test
+    void vehiclesOffTheRoadLeaveTheLanesUntilTheyComeBack() {
+        Vehicle stay = add(0, 1.0);
+        Vehicle leaving = add(0, 2.0);
+        Vehicle outside = add(5, 3.0);
+        assertEquals(2, index.size(0));
+        assertEquals(0, index.size(2));
+
+        leaving.setLane(road.getLaneCount());
+        index.refresh();
+        assertEquals(1, index.size(0));
+        assertNull(index.getLeader(stay));
+        assertConsistent();
+
+        // Back on the road, they join their lanes like any vehicle that changed lane
+        leaving.setLane(2);
+        outside.setLane(2);
+        index.refresh();
+        assertEquals(2, index.size(2));
+        assertSame(outside, index.getLeader(leaving));
+        assertConsistent();
+
+        // Removing a vehicle off the road leaves the others where they are
+        outside.setLane(7);
+        leaving.setLane(8);
+        index.refresh();
+        index.remove(outside);
+        leaving.setLane(1);
+        index.reindex(leaving);
+        assertSame(leaving, index.get(1, 0));
+        store.remove(outside.getHandle());
+        assertConsistent();
+    }
+
+    /**
+     * Asserts that every vehicle of the store on the road is in the lane it is in, at its angle, that every lane
+     * is sorted, and that the slots kept in the vehicles match the index.
+     */
+    private void assertConsistent() {
+        int indexed = 0;
+        for (int lane = 0; lane < road.getLaneCount(); lane++) {
+            for (int slot = 0; slot < index.size(lane); slot++) {
+                Vehicle vehicle = index.get(lane, slot);
+                assertEquals(lane, vehicle.getLane(), "lane");
+                assertEquals(vehicle.getAngle(), index.getAngle(lane, slot), "angle");
+                assertEquals(slot, vehicle.indexedSlot, "slot");
+                assertEquals(lane, vehicle.indexedLane, "indexed lane");
+                if (slot > 0) {
+                    assertTrue(index.getAngle(lane, slot - 1) <= index.getAngle(lane, slot), "order");
+                }
+            }
+            indexed += index.size(lane);
+        }
+        int onRoad = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            onRoad += road.hasLane(store.lane[slot]) ? 1 : 0;
+        }
+        assertEquals(onRoad, indexed, "vehicles");
+    }
+
+    /**
+     * Adds a personal car to the store and the index.
+     */
+    private Vehicle add(int lane, double angle) {
+        int handle = store.add(VehicleStore.TYPE_PERSONAL_CAR, angle, lane, road.getLaneRadius(lane),
+                PersonalCar.DEFAULT_COLOR, PersonalCar.WIDTH, PersonalCar.HEIGHT, PersonalCar.createDefaultProfile());
+        Vehicle vehicle = new PersonalCar(store, handle);
+        index.add(vehicle);
+        return vehicle;
+    }
+
+    /**
+     * Moves a vehicle to another angle without telling the index.
+     */
+    private void move(Vehicle vehicle, double angle) {
+        int slot = store.slotOf(vehicle.getHandle());
+        store.angle[slot] = angle;
+        store.updatePosition(slot);
+    }
+}
@@ -0,0 +1,47 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelUpdaterTest {
+    // Enough vehicles to split the slots into a different number of ranges for every pool
+    private static final int VEHICLES = 10_000;
+    private static final int STEPS = 120;
+    private static final long SEED = 7;
+
+    @Test
+    void resultDoesNotDependOnTheNumberOfThreads() throws Exception {
+        Simulation expected = run(1);
+        assertTrue(expected.getLaneChangeCount() > 0, "the traffic should change lanes");
+        int many = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int threads : new int[]{2, 3, many}) {
+            TestTraffic.assertSameState(expected, run(threads));
+        }
+    }
+
+    @Test
+    void resultDoesNotDependOnTheCallingThread() throws Exception {
+        Simulation onCaller = TestTraffic.create(VEHICLES, SEED);
+        onCaller.setParallel(true);
+        onCaller.step(STEPS);
+        TestTraffic.assertSameState(run(4), onCaller);
+    }
+
+    /**
+     * Steps a simulation in parallel mode on a pool with the given number of threads.
+     */
+    private static Simulation run(int threads) throws Exception {
+        Simulation simulation = TestTraffic.create(VEHICLES, SEED);
+        simulation.setParallel(true);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> simulation.step(STEPS)).get();
+        } finally {
+            pool.shutdown();
+        }
+        return simulation;
+    }
+}
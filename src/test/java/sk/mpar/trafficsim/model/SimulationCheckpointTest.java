@@ -0,0 +1,130 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationCheckpointTest {
+    private static final long SEED = 5;
+    private static final int STEPS_BEFORE = 150;
+    private static final int STEPS_AFTER = 150;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadedSimulationContinuesLikeTheSavedOne() throws IOException {
+        Simulation original = create();
+        original.step(STEPS_BEFORE);
+        Path file = directory.resolve("checkpoint.bin");
+        SimulationCheckpoint.save(original, file);
+        Simulation loaded = SimulationCheckpoint.load(file);
+        TestTraffic.assertSameVehicles(original, loaded);
+
+        // The lane changes are counted from the time a simulation is loaded
+        long savedLaneChanges = original.getLaneChangeCount();
+        continueRun(original);
+        continueRun(loaded);
+        assertTrue(loaded.getLaneChangeCount() > 0, "the traffic should change lanes");
+        assertEquals(original.getLaneChangeCount() - savedLaneChanges, loaded.getLaneChangeCount(), "lane changes");
+        TestTraffic.assertSameVehicles(original, loaded);
+    }
+
+    @Test
+    void decodedSimulationsContinueLikeTheEncodedOne() {
+        Simulation original = create();
+        original.setParallel(true);
+        original.step(STEPS_BEFORE);
+        ByteBuffer checkpoint = SimulationCheckpoint.encode(original);
+        Simulation first = SimulationCheckpoint.decode(checkpoint);
+        Simulation second = SimulationCheckpoint.decode(checkpoint);
+
+        continueRun(original);
+        continueRun(first);
+        continueRun(second);
+        TestTraffic.assertSameVehicles(original, first);
+        TestTraffic.assertSameVehicles(original, second);
+    }
+
+    @Test
+    void drivingModelsAreSavedWithTheirParameters() {
+        Simulation original = create();
+        original.setPersonalCarDrivingModel(new KraussModel(0.8, 2.5, 0.3, new MobilLaneChange(0.5, 0.2, 3.0)));
+        original.setTruckDrivingModel(new GippsModel(1.2, 1.0, 2.0, 3.0, null));
+        original.step(STEPS_BEFORE);
+        Simulation loaded = SimulationCheckpoint.decode(SimulationCheckpoint.encode(original));
+
+        KraussModel carModel = (KraussModel) loaded.getPersonalCarDrivingModel();
+        assertEquals(0.8, carModel.getReactionTime());
+        assertEquals(2.5, carModel.getComfortableDeceleration());
+        assertEquals(0.3, carModel.getImperfection());
+        assertEquals(0.5, carModel.getLaneChange().getPoliteness());
+        assertEquals(0.2, carModel.getLaneChange().getThreshold());
+        assertEquals(3.0, carModel.getLaneChange().getSafeDeceleration());
+        GippsModel truckModel = (GippsModel) loaded.getTruckDrivingModel();
+        assertEquals(1.2, truckModel.getReactionTime());
+        assertEquals(1.0, truckModel.getComfortableDeceleration());
+        assertEquals(2.0, truckModel.getLeaderDeceleration());
+        assertEquals(3.0, truckModel.getMinGap());
+        assertNull(truckModel.getLaneChange());
+
+        continueRun(original);
+        continueRun(loaded);
+        TestTraffic.assertSameVehicles(original, loaded);
+    }
+
+    @Test
+    void unknownDrivingModelsAreNotSaved() {
+        Simulation simulation = create();
+        simulation.setTruckDrivingModel(new DrivingModel() {
+            @Override
+            public int chooseLane(DrivingContext context) {
+                return context.getLane();
+            }
+
+            @Override
+            public double getAcceleration(DrivingContext context) {
+                return 0;
+            }
+
+            @Override
+            public double getBrakingAcceleration(DrivingContext context) {
+                return 0;
+            }
+        });
+        assertThrows(IllegalArgumentException.class, () -> SimulationCheckpoint.encode(simulation));
+        assertThrows(IllegalArgumentException.class,
+                () -> SimulationCheckpoint.save(simulation, directory.resolve("unknown.bin")));
+    }
+
+    /**
+     * Creates a three-lane road with an obstacle and random traffic.
+     */
+    private static Simulation create() {
+        Simulation simulation = new Simulation(new Road(600, 600, 300, 50, 3, Math.PI / 2), SEED);
+        simulation.populate(20, 0.25);
+        return simulation;
+    }
+
+    /**
+     * Steps a simulation and spawns and removes vehicles in between, which draws from its random
+     * number generator.
+     */
+    private static void continueRun(Simulation simulation) {
+        simulation.step(STEPS_AFTER / 2);
+        for (int i = 0; i < 5; i++) {
+            simulation.removeRandomVehicle();
+        }
+        simulation.addPersonalCars(10);
+        simulation.addTrucks(3);
+        simulation.step(STEPS_AFTER / 2);
+    }
+}
@@ -0,0 +1,115 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationTest {
+    private static final long SEED = 17;
+
+    @Test
+    void vehicleOffTheRoadStandsStillUntilItIsMovedBack() {
+        for (boolean parallel : new boolean[]{false, true}) {
+            Simulation simulation = create();
+            simulation.setParallel(parallel);
+            Road road = simulation.getRoad();
+            Vehicle vehicle = simulation.getVehicles().get(0);
+
+            // A lane the road does not have puts the vehicle off the road
+            vehicle.changeLane(5, road.getInnerRadius(), road.getLaneWidth());
+
+            // It is stopped by the step after it left, and no longer moves after that
+            simulation.step();
+            double angle = vehicle.getAngle();
+            simulation.step(20);
+            assertEquals(0, vehicle.getVelocity(), "velocity");
+            assertEquals(0, vehicle.getAcceleration(), "acceleration");
+            assertEquals(angle, vehicle.getAngle(), "angle");
+            assertEquals(5, vehicle.getLane(), "lane");
+            int indexed = 0;
+            for (int lane = 0; lane < road.getLaneCount(); lane++) {
+                indexed += simulation.getLaneIndex().size(lane);
+            }
+            assertEquals(simulation.getVehicleCount() - 1, indexed, "indexed vehicles");
+
+            // A checkpoint keeps it off the road
+            ByteBuffer checkpoint = SimulationCheckpoint.encode(simulation);
+            Simulation loaded = SimulationCheckpoint.decode(checkpoint);
+            simulation.step(5);
+            loaded.step(5);
+            TestTraffic.assertSameVehicles(simulation, loaded);
+
+            // Moved back, it takes part in the traffic again
+            simulation.changeLane(vehicle, 0);
+            simulation.step(20);
+            assertTrue(vehicle.getAngle() != angle, "the vehicle should drive on");
+        }
+    }
+
+    @Test
+    void invalidLanesAreRejectedBeforeAnythingChanges() {
+        Simulation simulation = create();
+        Vehicle vehicle = simulation.getVehicles().get(0);
+        int lane = vehicle.getLane();
+        double radius = vehicle.getLaneRadius();
+
+        assertThrows(IllegalArgumentException.class, () -> simulation.changeLane(vehicle, 3));
+        assertThrows(IllegalArgumentException.class, () -> simulation.changeLane(vehicle, -1));
+        assertThrows(IllegalArgumentException.class, () -> vehicle.setLane(-1));
+        assertThrows(IllegalArgumentException.class, () -> vehicle.changeLane(-1, 200, 50));
+        assertEquals(lane, vehicle.getLane(), "lane");
+        assertEquals(radius, vehicle.getLaneRadius(), "radius");
+        assertEquals(0, simulation.getLaneChangeCount(), "lane changes");
+        simulation.step(10);
+    }
+
+    @Test
+    void classicRulesGiveTheSameResultWithAndWithoutAContext() {
+        // A model that only forwards to the classic one is called through the driving context
+        ClassicDrivingModel classic = new ClassicDrivingModel();
+        DrivingModel forwarding = new DrivingModel() {
+            @Override
+            public int chooseLane(DrivingContext context) {
+                return classic.chooseLane(context);
+            }
+
+            @Override
+            public double getAcceleration(DrivingContext context) {
+                return classic.getAcceleration(context);
+            }
+
+            @Override
+            public double getBrakingAcceleration(DrivingContext context) {
+                return classic.getBrakingAcceleration(context);
+            }
+
+            @Override
+            public boolean isEvasive() {
+                return classic.isEvasive();
+            }
+        };
+        Simulation direct = create();
+        Simulation throughContext = create();
+        throughContext.setDrivingModel(forwarding);
+
+        for (int step = 0; step < 300; step++) {
+            direct.step();
+            throughContext.step();
+            TestTraffic.assertSameState(direct, throughContext);
+        }
+        assertTrue(direct.getLaneChangeCount() > 0, "the traffic should change lanes");
+    }
+
+    /**
+     * Creates a three-lane road with an obstacle and random traffic.
+     */
+    private static Simulation create() {
+        Simulation simulation = new Simulation(new Road(600, 600, 300, 50, 3, Math.PI / 2), SEED);
+        simulation.populate(20, 0.25);
+        return simulation;
+    }
+}
@@ -0,0 +1,99 @@
+package sk.mpar.trafficsim.model;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Builds simulations with busy traffic for the tests and compares their state.
+ */
+final class TestTraffic {
+    private static final double LANE_WIDTH = 50;
+    // Share of the lane length covered by bodies
+    private static final double OCCUPANCY = 0.2;
+    private static final double TRUCK_SHARE = 0.25;
+
+    private TestTraffic() {
+    }
+
+    /**
+     * Creates a two-lane road with an obstacle and spreads the vehicles evenly over the inner lane.
+     * The outer lane starts empty, so the vehicles that evade the obstacle or overtake compete for its
+     * gaps. The personal cars follow the intelligent driver model with MOBIL lane changes and the
+     * trucks the classic rules.
+     *
+     * @param vehicles The number of vehicles
+     * @param seed The seed of the simulation and of the mix of vehicles
+     * @return The simulation
+     */
+    static Simulation create(int vehicles, long seed) {
+        double meanLength = (1 - TRUCK_SHARE) * PersonalCar.WIDTH + TRUCK_SHARE * Truck.WIDTH;
+        double radius = vehicles * meanLength / OCCUPANCY / (2 * Math.PI);
+        double innerRadius = radius - LANE_WIDTH / 2;
+        double center = innerRadius + 2 * LANE_WIDTH;
+        Simulation simulation = new Simulation(new Road(center, center, innerRadius, LANE_WIDTH, Math.PI / 2), seed);
+        simulation.setPersonalCarDrivingModel(new IntelligentDriverModel());
+
+        Random random = new Random(seed);
+        for (int i = 0; i < vehicles; i++) {
+            double angle = 2 * Math.PI * i / vehicles;
+            double x = center + radius * Math.cos(angle);
+            double y = center + radius * Math.sin(angle);
+            if (random.nextDouble() < TRUCK_SHARE) {
+                simulation.addTruck(Truck.DEFAULT_COLOR, x, y);
+            } else {
+                simulation.addPersonalCar(PersonalCar.DEFAULT_COLOR, x, y);
+            }
+        }
+        return simulation;
+    }
+
+    /**
+     * Hashes the state of every vehicle, bit for bit, in slot order, and the step count.
+     * 
+     * @param simulation The simulation
+     * @return The hash
+     */
+    static long hash(Simulation simulation) {
+        VehicleStore store = simulation.getStore();
+        long hash = simulation.getStepCount();
+        for (int slot = 0; slot < store.size(); slot++) {
+            hash = hash * 31 + store.handleAt(slot);
+            hash = hash * 31 + store.type[slot];
+            hash = hash * 31 + store.lane[slot];
+            hash = hash * 31 + (store.changingLane[slot] ? 1 : 0);
+            hash = hash * 31 + Double.doubleToLongBits(store.angle[slot]);
+            hash = hash * 31 + Double.doubleToLongBits(store.laneRadius[slot]);
+            hash = hash * 31 + Double.doubleToLongBits(store.x[slot]);
+            hash = hash * 31 + Double.doubleToLongBits(store.y[slot]);
+            hash = hash * 31 + Double.doubleToLongBits(store.velocity[slot]);
+            hash = hash * 31 + Double.doubleToLongBits(store.acceleration[slot]);
+        }
+        return hash;
+    }
+
+    /**
+     * Asserts that two simulations hold the same vehicles in the same state, bit for bit, and have
+     * counted the same lane changes.
+     * 
+     * @param expected The reference simulation
+     * @param actual The simulation to check
+     */
+    static void assertSameState(Simulation expected, Simulation actual) {
+        assertSameVehicles(expected, actual);
+        assertEquals(expected.getLaneChangeCount(), actual.getLaneChangeCount(), "lane changes");
+    }
+
+    /**
+     * Asserts that two simulations have taken the same steps and hold the same vehicles in the same
+     * state, bit for bit.
+     * 
+     * @param expected The reference simulation
+     * @param actual The simulation to check
+     */
+    static void assertSameVehicles(Simulation expected, Simulation actual) {
+        assertEquals(expected.getVehicleCount(), actual.getVehicleCount(), "vehicles");
+        assertEquals(expected.getStepCount(), actual.getStepCount(), "steps");
+        assertEquals(hash(expected), hash(actual), "state hash");
+    }
+}
@@ -0,0 +1,158 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrajectoryWriterTest {
+    private static final long SEED = 3;
+    private static final int STEPS = 120;
+
+    @TempDir
+    Path directory;
+
+    // Step count and hash of the recorded state of every step, in recording order
+    private final long[] steps = new long[STEPS + 1];
+    private final long[] hashes = new long[STEPS + 1];
+    private int recorded;
+
+    @Test
+    void readerReturnsEveryRecordedStep() throws IOException {
+        Simulation simulation = create();
+        Path file = directory.resolve("closed.traj");
+        TrajectoryWriter writer = new TrajectoryWriter(simulation, file);
+        record(simulation);
+        writer.close();
+
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            assertTrue(reader.isIndexed(), "indexed");
+            assertTrue(reader.hasObstacle(), "obstacle");
+            assertEquals(simulation.getRoad().getLaneCount(), reader.getLaneCount());
+            assertEquals(simulation.getTimeStep(), reader.getTimeStep());
+            assertFrames(reader, recorded);
+            assertEquals(10, reader.findFrame(10));
+            assertEquals(-1, reader.findFrame(-1));
+        }
+    }
+
+    @Test
+    void readerFindsTheFramesOfAFileThatWasNeverClosed() throws IOException {
+        Simulation simulation = create();
+        Path file = directory.resolve("unclosed.traj");
+        TrajectoryWriter writer = new TrajectoryWriter(simulation, file);
+        try {
+            record(simulation);
+
+            // Stop recording without closing, as if the application had been killed
+            simulation.removeListener(writer);
+            try (TrajectoryReader reader = new TrajectoryReader(file)) {
+                assertFalse(reader.isIndexed(), "indexed");
+                assertFrames(reader, recorded);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void readerSkipsAFrameThatWasCutOff() throws IOException {
+        Simulation simulation = create();
+        Path file = directory.resolve("unclosed.traj");
+        TrajectoryWriter writer = new TrajectoryWriter(simulation, file);
+        Path cut = directory.resolve("cut.traj");
+        try {
+            record(simulation);
+            simulation.removeListener(writer);
+
+            // Keep all but the last few bytes of the last frame
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(cut, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                source.transferTo(0, writer.getSize() - 10, target);
+            }
+        } finally {
+            writer.close();
+        }
+
+        try (TrajectoryReader reader = new TrajectoryReader(cut)) {
+            assertFalse(reader.isIndexed(), "indexed");
+            assertFrames(reader, recorded - 1);
+        }
+        assertTrue(Files.size(cut) < Files.size(file), "the file should be cut");
+    }
+
+    /**
+     * Creates a three-lane road with an obstacle and random traffic.
+     */
+    private static Simulation create() {
+        Simulation simulation = new Simulation(new Road(600, 600, 300, 50, 3, Math.PI / 2), SEED);
+        simulation.populate(20, 0.25);
+        return simulation;
+    }
+
+    /**
+     * Steps a simulation that is being recorded, removing and adding vehicles on the way, and
+     * remembers the state of every recorded step, starting with the current one.
+     */
+    private void record(Simulation simulation) {
+        remember(simulation);
+        for (int i = 0; i < STEPS; i++) {
+            if (i == STEPS / 3) {
+                simulation.removeRandomVehicle();
+                simulation.removeRandomVehicle();
+            } else if (i == 2 * STEPS / 3) {
+                simulation.addPersonalCars(4);
+            }
+            simulation.step();
+            remember(simulation);
+        }
+    }
+
+    private void remember(Simulation simulation) {
+        steps[recorded] = simulation.getStepCount();
+        VehicleStore store = simulation.getStore();
+        long hash = store.size();
+        for (int slot = 0; slot < store.size(); slot++) {
+            hash = hash(hash, store.handleAt(slot), store.lane[slot], store.type[slot], store.changingLane[slot],
+                    store.angle[slot], (float) store.velocity[slot], (float) store.acceleration[slot]);
+        }
+        hashes[recorded++] = hash;
+    }
+
+    /**
+     * Asserts that the first frames of a file hold the remembered steps, and that there are no others.
+     */
+    private void assertFrames(TrajectoryReader reader, int count) throws IOException {
+        assertEquals(count, reader.getFrameCount(), "frames");
+        for (int i = 0; i < count; i++) {
+            TrajectoryFrame frame = reader.readFrame(i);
+            assertEquals(steps[i], frame.getStep(), "step");
+            assertEquals(steps[i], reader.getStep(i), "indexed step");
+            long hash = frame.size();
+            for (int j = 0; j < frame.size(); j++) {
+                hash = hash(hash, frame.getId(j), frame.getLane(j), frame.getType(j), frame.isChangingLane(j),
+                        frame.getAngle(j), frame.getVelocity(j), frame.getAcceleration(j));
+            }
+            assertEquals(hashes[i], hash, "state of frame " + i);
+        }
+    }
+
+    private static long hash(long hash, int id, int lane, byte type, boolean changingLane, double angle,
+                             double velocity, double acceleration) {
+        hash = hash * 31 + id;
+        hash = hash * 31 + lane;
+        hash = hash * 31 + type;
+        hash = hash * 31 + (changingLane ? 1 : 0);
+        hash = hash * 31 + Double.doubleToLongBits(angle);
+        hash = hash * 31 + Double.doubleToLongBits(velocity);
+        return hash * 31 + Double.doubleToLongBits(acceleration);
+    }
+}
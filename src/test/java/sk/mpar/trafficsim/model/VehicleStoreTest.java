@@ -0,0 +1,105 @@
+package sk.mpar.trafficsim.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VehicleStoreTest {
+    private final VehicleStore store = new VehicleStore(0, 0);
+
+    @Test
+    void maxDimensionsFollowAddAndRemove() {
+        assertEquals(0, store.getMaxWidth());
+        int car = add(VehicleStore.TYPE_PERSONAL_CAR, PersonalCar.WIDTH, PersonalCar.HEIGHT);
+        int truck = add(VehicleStore.TYPE_TRUCK, Truck.WIDTH, Truck.HEIGHT);
+        int otherTruck = add(VehicleStore.TYPE_TRUCK, Truck.WIDTH, Truck.HEIGHT);
+        assertMax(Truck.WIDTH, Truck.HEIGHT);
+
+        // The maxima only fall once the last of the largest vehicles leaves
+        store.remove(truck);
+        assertMax(Truck.WIDTH, Truck.HEIGHT);
+        store.remove(otherTruck);
+        assertMax(PersonalCar.WIDTH, PersonalCar.HEIGHT);
+        store.remove(car);
+        assertMax(0, 0);
+    }
+
+    @Test
+    void maxDimensionsFollowResizing() {
+        int car = add(VehicleStore.TYPE_PERSONAL_CAR, PersonalCar.WIDTH, PersonalCar.HEIGHT);
+        add(VehicleStore.TYPE_TRUCK, Truck.WIDTH, Truck.HEIGHT);
+
+        store.setDimensions(VehicleStore.TYPE_TRUCK, 50, 20);
+        assertMax(PersonalCar.WIDTH, PersonalCar.HEIGHT);
+
+        Vehicle view = new PersonalCar(store, car);
+        view.setDimensions(200, 10);
+        assertMax(200, 20);
+        view.setDimensions(10, 10);
+        assertMax(50, 20);
+    }
+
+    @Test
+    void maxDimensionsMatchAScanOfAllVehicles() {
+        Random random = new Random(9);
+        List<Integer> handles = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (!handles.isEmpty() && random.nextInt(3) == 0) {
+                store.remove(handles.remove(random.nextInt(handles.size())));
+            } else {
+                handles.add(add(VehicleStore.TYPE_PERSONAL_CAR, 10 + random.nextInt(5), 5 + random.nextInt(5)));
+            }
+            double width = 0;
+            double height = 0;
+            for (int slot = 0; slot < store.size(); slot++) {
+                width = Math.max(width, store.getWidth(slot));
+                height = Math.max(height, store.getHeight(slot));
+            }
+            assertMax(width, height);
+        }
+    }
+
+    @Test
+    void releasedVehiclesKeepTheirOwnState() {
+        Vehicle first = new PersonalCar(store, store.add(VehicleStore.TYPE_PERSONAL_CAR, 1.0, 0, 100, 0, 10, 5,
+                PersonalCar.createDefaultProfile()));
+        Vehicle second = new Truck(store, store.add(VehicleStore.TYPE_TRUCK, 2.0, 1, 150, 0, 20, 8,
+                Truck.createDefaultProfile()));
+        Vehicle kept = new PersonalCar(store, store.add(VehicleStore.TYPE_PERSONAL_CAR, 3.0, 2, 200, 0, 10, 5,
+                PersonalCar.createDefaultProfile()));
+        first.setVelocity(1);
+        second.setVelocity(2);
+
+        store.release(first);
+        store.release(second);
+        assertEquals(1, store.size());
+        assertEquals(1.0, first.getAngle());
+        assertEquals(0, first.getLane());
+        assertEquals(1, first.getVelocity());
+        assertEquals(2.0, second.getAngle());
+        assertEquals(1, second.getLane());
+        assertEquals(20, second.getWidth());
+
+        // Writes through a released view only change that vehicle
+        first.setVelocity(5);
+        assertEquals(2, second.getVelocity());
+        assertEquals(0, kept.getVelocity());
+        assertEquals(3.0, kept.getAngle());
+    }
+
+    /**
+     * Adds a vehicle of the given size.
+     */
+    private int add(byte type, double width, double height) {
+        return store.add(type, 0, 0, 100, 0, width, height, null);
+    }
+
+    private void assertMax(double width, double height) {
+        assertEquals(width, store.getMaxWidth(), "width");
+        assertEquals(height, store.getMaxHeight(), "height");
+    }
+}